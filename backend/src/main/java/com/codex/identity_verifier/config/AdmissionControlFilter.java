@@ -0,0 +1,185 @@
+package com.codex.identity_verifier.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sheds verification uploads when the instance is saturated. Runs ahead of every other
+ * filter, so a rejected request is answered with 429 before its multipart body is read.
+ * Requests are admitted while both the number of in-flight verifications and their
+ * declared upload bytes stay under the configured limits; Retry-After scales with the
+ * recent average verification time and how far over the limits the instance is. An async
+ * job keeps its request's admission until the job finishes, since the buffered upload stays
+ * in memory while it is queued.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private static final String ADMISSION_ATTRIBUTE = AdmissionControlFilter.class.getName() + ".ADMISSION";
+
+    @Value("${verification.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${verification.admission.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${verification.admission.max-in-flight-megabytes:256}")
+    private long maxInFlightMegabytes;
+
+    // Charged for chunked uploads that declare no Content-Length
+    @Value("${verification.admission.unknown-length-megabytes:10}")
+    private long unknownLengthMegabytes;
+
+    @Value("${verification.admission.max-retry-after-seconds:30}")
+    private long maxRetryAfterSeconds;
+
+    private int inFlight;
+    private long inFlightBytes;
+    private double averageLatencyMs = 1000.0;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedInFlight = new AtomicLong();
+    private final AtomicLong rejectedBytes = new AtomicLong();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled
+                || !"POST".equalsIgnoreCase(request.getMethod())
+                || !request.getRequestURI().startsWith("/api/verify");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        long bytes = contentLength >= 0 ? contentLength : unknownLengthMegabytes * 1024 * 1024;
+
+        long retryAfterSeconds = tryAdmit(bytes);
+        if (retryAfterSeconds > 0) {
+            log.warn("Shedding {} ({} bytes): instance over admission limits, retry after {}s",
+                    request.getRequestURI(), bytes, retryAfterSeconds);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+            response.setHeader("Connection", "close");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many requests\","
+                    + "\"message\":\"Verification capacity is exhausted, please retry later\","
+                    + "\"status\":429}");
+            return;
+        }
+
+        Admission admission = new Admission(bytes);
+        request.setAttribute(ADMISSION_ATTRIBUTE, admission);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (!admission.detached) {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Hands the request's admission over to work that outlives the request, such as a queued
+     * verification job. The filter no longer releases it when the request ends.
+     * @param request The admitted request
+     * @return Releases the admission; runs once when the work finishes. A no-op when the
+     * request was not admitted by this filter
+     */
+    public static Runnable detach(HttpServletRequest request) {
+        Object admission = request.getAttribute(ADMISSION_ATTRIBUTE);
+        if (!(admission instanceof Admission)) {
+            return () -> { };
+        }
+        ((Admission) admission).detached = true;
+        return ((Admission) admission)::release;
+    }
+
+    /**
+     * @return 0 if the request was admitted, otherwise the Retry-After in seconds
+     */
+    private synchronized long tryAdmit(long bytes) {
+        long maxBytes = maxInFlightMegabytes * 1024 * 1024;
+        boolean overInFlight = inFlight >= maxInFlight;
+        // A single upload larger than the byte budget is still admitted when nothing else is in flight
+        boolean overBytes = inFlightBytes > 0 && inFlightBytes + bytes > maxBytes;
+        if (!overInFlight && !overBytes) {
+            inFlight++;
+            inFlightBytes += bytes;
+            admitted.incrementAndGet();
+            return 0;
+        }
+        if (overInFlight) {
+            rejectedInFlight.incrementAndGet();
+        } else {
+            rejectedBytes.incrementAndGet();
+        }
+        double load = Math.max((double) inFlight / Math.max(1, maxInFlight),
+                (double) (inFlightBytes + bytes) / Math.max(1, maxBytes));
+        long seconds = (long) Math.ceil(averageLatencyMs / 1000.0 * Math.max(1.0, load));
+        return Math.max(1, Math.min(maxRetryAfterSeconds, seconds));
+    }
+
+    private synchronized void release(long bytes, double latencyMs) {
+        inFlight--;
+        inFlightBytes -= bytes;
+        averageLatencyMs += LATENCY_SMOOTHING * (latencyMs - averageLatencyMs);
+    }
+
+    /**
+     * In-flight slot and upload bytes held by one admitted request
+     */
+    private final class Admission {
+        private final long bytes;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        // Set on the request thread before the filter checks it
+        private boolean detached;
+
+        Admission(long bytes) {
+            this.bytes = bytes;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionControlFilter.this.release(bytes, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("inFlight", inFlight);
+        stats.put("maxInFlightBytes", maxInFlightMegabytes * 1024 * 1024);
+        stats.put("inFlightBytes", inFlightBytes);
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedInFlight", rejectedInFlight.get());
+        stats.put("rejectedBytes", rejectedBytes.get());
+        stats.put("averageLatencyMs", Math.round(averageLatencyMs));
+        return stats;
+    }
+}
@@ -8,11 +8,18 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.EqualJitterBackoffStrategy;
+import software.amazon.awssdk.core.retry.backoff.FullJitterBackoffStrategy;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
 import software.amazon.awssdk.services.textract.TextractClient;
 
+import java.time.Duration;
+
 @Configuration
 @Profile("aws")
 public class AwsConfig {
@@ -26,6 +33,24 @@ public class AwsConfig {
     @Value("${aws.secret.access-key:#{null}}")
     private String secretAccessKey;
 
+    @Value("${aws.client.api-call-timeout-ms:30000}")
+    private long apiCallTimeoutMs;
+
+    @Value("${aws.client.api-call-attempt-timeout-ms:10000}")
+    private long apiCallAttemptTimeoutMs;
+
+    @Value("${aws.retry.analysis.max-retries:3}")
+    private int analysisMaxRetries;
+
+    @Value("${aws.retry.analysis.base-delay-ms:100}")
+    private long analysisBaseDelayMs;
+
+    @Value("${aws.retry.analysis.throttling-base-delay-ms:500}")
+    private long analysisThrottlingBaseDelayMs;
+
+    @Value("${aws.retry.analysis.max-backoff-ms:5000}")
+    private long analysisMaxBackoffMs;
+
     @Bean
     public AwsCredentialsProvider awsCredentialsProvider() {
         if (accessKeyId != null && secretAccessKey != null && !accessKeyId.isEmpty() && !secretAccessKey.isEmpty()) {
@@ -37,39 +62,88 @@ public class AwsConfig {
         return DefaultCredentialsProvider.create();
     }
 
+    /**
+     * Default timeouts for every AWS client. Calls made within a verification request are
+     * further capped at the request's remaining deadline by {@link DownstreamLimiterRegistry}.
+     */
+    @Bean
+    public ClientOverrideConfiguration awsClientOverrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs))
+                .apiCallAttemptTimeout(Duration.ofMillis(apiCallAttemptTimeoutMs))
+                .build();
+    }
+
+    /**
+     * Configuration for the Rekognition and Textract clients: adaptive retry mode, which
+     * slows the client down when the service starts throttling, with jittered backoff so
+     * that concurrent verifications do not retry in lockstep
+     */
+    @Bean
+    public ClientOverrideConfiguration analysisClientOverrideConfiguration(
+            ClientOverrideConfiguration awsClientOverrideConfiguration) {
+        Duration maxBackoff = Duration.ofMillis(analysisMaxBackoffMs);
+        RetryPolicy retryPolicy = RetryPolicy.builder(RetryMode.ADAPTIVE)
+                .numRetries(analysisMaxRetries)
+                .backoffStrategy(FullJitterBackoffStrategy.builder()
+                        .baseDelay(Duration.ofMillis(analysisBaseDelayMs))
+                        .maxBackoffTime(maxBackoff)
+                        .build())
+                .throttlingBackoffStrategy(EqualJitterBackoffStrategy.builder()
+                        .baseDelay(Duration.ofMillis(analysisThrottlingBaseDelayMs))
+                        .maxBackoffTime(maxBackoff)
+                        .build())
+                .build();
+        return awsClientOverrideConfiguration.toBuilder()
+                .retryPolicy(retryPolicy)
+                .build();
+    }
+
     @Bean
-    public S3Client s3Client(AwsCredentialsProvider credentialsProvider) {
+    public S3Client s3Client(AwsCredentialsProvider credentialsProvider,
+                             ClientOverrideConfiguration awsClientOverrideConfiguration,
+                             DownstreamLimiterRegistry limiterRegistry) {
         String s3Region = System.getenv("AWS_S3_BUCKET_REGION");
         if (s3Region == null || s3Region.isEmpty()) {
             s3Region = System.getProperty("aws.s3.bucket-region", region);
         }
-        return S3Client.builder()
+        S3Client client = S3Client.builder()
                 .region(Region.of(s3Region))
                 .credentialsProvider(credentialsProvider)
+                .overrideConfiguration(awsClientOverrideConfiguration)
                 .build();
+        return limiterRegistry.wrap(S3Client.class, client, "s3");
     }
 
     @Bean
-    public RekognitionClient rekognitionClient(AwsCredentialsProvider credentialsProvider) {
+    public RekognitionClient rekognitionClient(AwsCredentialsProvider credentialsProvider,
+                                               ClientOverrideConfiguration analysisClientOverrideConfiguration,
+                                               DownstreamLimiterRegistry limiterRegistry) {
         String rekognitionRegion = System.getenv("AWS_REKOGNITION_REGION");
         if (rekognitionRegion == null || rekognitionRegion.isEmpty()) {
             rekognitionRegion = System.getProperty("aws.rekognition.region", region);
         }
-        return RekognitionClient.builder()
+        RekognitionClient client = RekognitionClient.builder()
                 .region(Region.of(rekognitionRegion))
                 .credentialsProvider(credentialsProvider)
+                .overrideConfiguration(analysisClientOverrideConfiguration)
                 .build();
+        return limiterRegistry.wrap(RekognitionClient.class, client, "rekognition");
     }
 
     @Bean
-    public TextractClient textractClient(AwsCredentialsProvider credentialsProvider) {
+    public TextractClient textractClient(AwsCredentialsProvider credentialsProvider,
+                                         ClientOverrideConfiguration analysisClientOverrideConfiguration,
+                                         DownstreamLimiterRegistry limiterRegistry) {
         String textractRegion = System.getenv("AWS_TEXTRACT_REGION");
         if (textractRegion == null || textractRegion.isEmpty()) {
             textractRegion = System.getProperty("aws.textract.region", region);
         }
-        return TextractClient.builder()
+        TextractClient client = TextractClient.builder()
                 .region(Region.of(textractRegion))
                 .credentialsProvider(credentialsProvider)
+                .overrideConfiguration(analysisClientOverrideConfiguration)
                 .build();
+        return limiterRegistry.wrap(TextractClient.class, client, "textract");
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.codex.identity_verifier.config;
+
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DownstreamLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Wraps AWS SDK clients so that every API operation goes through its own
+ * {@link DownstreamLimiter}. Limits are read per operation with a per-service fallback:
+ * aws.limits.&lt;service&gt;.&lt;operation&gt;.tps, then aws.limits.&lt;service&gt;.tps.
+ * Limits are per instance, so account quotas should be divided by the replica count.
+ * <p>
+ * Paginators and waiters are rebuilt around the wrapped client, so every page and every
+ * poll is limited like a direct call; request-builder overloads go through the request
+ * overload so that they get the deadline too.
+ */
+@Component
+public class DownstreamLimiterRegistry {
+
+    // Client plumbing that never reaches the service
+    private static final Set<String> PASS_THROUGH_METHODS = Set.of(
+            "close", "serviceName", "serviceClientConfiguration", "utilities");
+
+    private final Environment environment;
+    private final ConcurrentMap<String, DownstreamLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Value("${aws.limits.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public DownstreamLimiterRegistry(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Returns a client whose operations are limited under the given service name. When a
+     * {@link Deadline} is bound to the calling thread, the request's API-call timeout is
+     * capped at the remaining budget and the limiter waits no longer than that.
+     * @param clientType The SDK client interface, e.g. RekognitionClient.class
+     * @param client The real client
+     * @param service Service name used for configuration and metrics, e.g. "rekognition"
+     */
+    public <T> T wrap(Class<T> clientType, T client, String service) {
+        if (!enabled) {
+            return client;
+        }
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class || PASS_THROUGH_METHODS.contains(method.getName())) {
+                return invoke(client, method, args);
+            }
+            if (method.getName().endsWith("Paginator")) {
+                return paginator(clientType, proxy, method, args);
+            }
+            if (method.getName().equals("waiter")) {
+                return waiter(clientType, proxy, method);
+            }
+            if (method.isDefault() && args != null && args.length == 1 && args[0] instanceof Consumer) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            Deadline deadline = Deadline.current();
+            Object[] callArgs = deadline != null ? withApiCallTimeout(args, deadline, service, method) : args;
+            return limiterFor(service, method.getName()).execute(() -> invoke(client, method, callArgs), deadline);
+        };
+        return clientType.cast(Proxy.newProxyInstance(clientType.getClassLoader(), new Class<?>[]{clientType}, handler));
+    }
+
+    /**
+     * @return Limiter statistics keyed by "service.operation", for operations called so far
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        limiters.forEach((key, limiter) -> stats.put(key, limiter.getStats()));
+        return stats;
+    }
+
+    private DownstreamLimiter limiterFor(String service, String operation) {
+        return limiters.computeIfAbsent(service + "." + operation, key -> new DownstreamLimiter(
+                key,
+                limit(service, operation, "max-concurrency", Integer.class, 0),
+                limit(service, operation, "tps", Double.class, 0.0),
+                limit(service, operation, "max-queue", Integer.class, 100),
+                limit(service, operation, "max-wait-ms", Long.class, 5000L)));
+    }
+
+    private <V> V limit(String service, String operation, String property, Class<V> type, V defaultValue) {
+        V value = environment.getProperty("aws.limits." + service + "." + operation + "." + property, type);
+        if (value != null) {
+            return value;
+        }
+        return environment.getProperty("aws.limits." + service + "." + property, type, defaultValue);
+    }
+
+    /**
+     * The real client's paginator would fetch every page from the real client, so the
+     * paginator is constructed around the proxy instead. Overloads without a request object
+     * build one and call the request overload.
+     */
+    private static Object paginator(Class<?> clientType, Object proxy, Method method, Object[] args) throws Throwable {
+        if (args == null || args.length != 1 || args[0] instanceof Consumer) {
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        }
+        return method.getReturnType()
+                .getConstructor(clientType, method.getParameterTypes()[0])
+                .newInstance(proxy, args[0]);
+    }
+
+    /**
+     * Builds the service's waiter around the proxy, so each poll is limited
+     */
+    private static Object waiter(Class<?> clientType, Object proxy, Method method) throws Exception {
+        Method builderFactory = method.getReturnType().getMethod("builder");
+        Class<?> builderType = builderFactory.getReturnType();
+        Object builder = builderFactory.invoke(null);
+        builderType.getMethod("client", clientType).invoke(builder, proxy);
+        return builderType.getMethod("build").invoke(builder);
+    }
+
+    private static Object[] withApiCallTimeout(Object[] args, Deadline deadline, String service, Method method) {
+        if (deadline.isExpired()) {
+            throw new Deadline.DeadlineExceededException(service + "." + method.getName()
+                    + " not started: request deadline reached");
+        }
+        if (args == null || args.length != 1 || !(args[0] instanceof AwsRequest request)) {
+            return args;
+        }
+        Duration remaining = deadline.remaining();
+        AwsRequestOverrideConfiguration existing = request.overrideConfiguration().orElse(null);
+        if (existing != null && existing.apiCallTimeout().map(timeout -> timeout.compareTo(remaining) <= 0).orElse(false)) {
+            return args;
+        }
+        AwsRequestOverrideConfiguration.Builder override = existing != null
+                ? existing.toBuilder()
+                : AwsRequestOverrideConfiguration.builder();
+        return new Object[]{request.toBuilder().overrideConfiguration(override.apiCallTimeout(remaining).build()).build()};
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
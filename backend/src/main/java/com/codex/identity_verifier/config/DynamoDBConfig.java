@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.beans.factory.annotation.Value;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -17,15 +18,19 @@ public class DynamoDBConfig {
     private String region;
 
     @Bean
-    public DynamoDbClient dynamoDbClient(AwsCredentialsProvider credentialsProvider) {
+    public DynamoDbClient dynamoDbClient(AwsCredentialsProvider credentialsProvider,
+                                         ClientOverrideConfiguration awsClientOverrideConfiguration,
+                                         DownstreamLimiterRegistry limiterRegistry) {
         String dynamoRegion = System.getenv("AWS_DYNAMODB_REGION");
         if (dynamoRegion == null || dynamoRegion.isEmpty()) {
             dynamoRegion = System.getProperty("aws.dynamodb.region", region);
         }
-        return DynamoDbClient.builder()
+        DynamoDbClient client = DynamoDbClient.builder()
                 .region(Region.of(dynamoRegion))
                 .credentialsProvider(credentialsProvider)
+                .overrideConfiguration(awsClientOverrideConfiguration)
                 .build();
+        return limiterRegistry.wrap(DynamoDbClient.class, client, "dynamodb");
     }
 
     @Bean
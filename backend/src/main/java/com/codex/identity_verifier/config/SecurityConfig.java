@@ -41,8 +41,8 @@ public class SecurityConfig {
                             "/api/auth/**"
                     ).permitAll()
 
-                    .requestMatchers("/api/stats").hasRole("ADMIN")
-                    .requestMatchers("/api/verifications/**", "/api/verify").authenticated()
+                    .requestMatchers("/api/stats", "/api/stats/**").hasRole("ADMIN")
+                    .requestMatchers("/api/verifications/**", "/api/verify", "/api/verify/**").authenticated()
 
                     .anyRequest().permitAll()
             )
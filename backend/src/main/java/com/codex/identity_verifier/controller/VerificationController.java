@@ -1,11 +1,32 @@
 package com.codex.identity_verifier.controller;
 
+import com.codex.identity_verifier.dto.BatchVerificationResponse;
+import com.codex.identity_verifier.dto.VerificationJobResponse;
 import com.codex.identity_verifier.dto.VerificationResponse;
 import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.config.AdmissionControlFilter;
+import com.codex.identity_verifier.config.DownstreamLimiterRegistry;
+import com.codex.identity_verifier.service.BatchVerificationService;
+import com.codex.identity_verifier.service.DocumentArchiveService;
+import com.codex.identity_verifier.service.DocumentScreener;
+import com.codex.identity_verifier.service.FaceSearchService;
+import com.codex.identity_verifier.service.NearDuplicateIndex;
+import com.codex.identity_verifier.service.RequestHedgingService;
+import com.codex.identity_verifier.service.TesseractWorkerPool;
+import com.codex.identity_verifier.service.TextractService;
+import com.codex.identity_verifier.service.VerificationJobService;
+import com.codex.identity_verifier.service.VerificationStageExecutor;
 import com.codex.identity_verifier.service.VerificationService;
 import com.codex.identity_verifier.service.DynamoDBService;
+import com.codex.identity_verifier.service.VerificationResultCache;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DownstreamLimiter;
+import com.codex.identity_verifier.util.DocumentBuffer;
 import com.codex.identity_verifier.util.InputValidator;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -14,9 +35,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 
+import java.net.URI;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api")
@@ -28,6 +52,48 @@ public class VerificationController {
     
     @Autowired
     private DynamoDBService dynamoDBService;
+
+    @Autowired
+    private VerificationJobService verificationJobService;
+
+    @Autowired
+    private BatchVerificationService batchVerificationService;
+
+    @Autowired
+    private VerificationResultCache verificationResultCache;
+
+    @Autowired
+    private DocumentArchiveService documentArchiveService;
+
+    @Autowired
+    private DownstreamLimiterRegistry downstreamLimiterRegistry;
+
+    @Autowired
+    private AdmissionControlFilter admissionControlFilter;
+
+    @Autowired
+    private RequestHedgingService requestHedgingService;
+
+    @Autowired
+    private TextractService textractService;
+
+    @Autowired
+    private TesseractWorkerPool tesseractWorkerPool;
+
+    @Autowired
+    private NearDuplicateIndex nearDuplicateIndex;
+
+    @Autowired
+    private FaceSearchService faceSearchService;
+
+    @Autowired
+    private DocumentScreener documentScreener;
+
+    @Autowired
+    private VerificationStageExecutor verificationStageExecutor;
+
+    @Value("${verification.deadline.verify-ms:20000}")
+    private long verifyDeadlineMs;
     
     private static final Logger log = LoggerFactory.getLogger(VerificationController.class);
 
@@ -35,6 +101,7 @@ public class VerificationController {
     public ResponseEntity<VerificationResponse> verifyDocument(
             @RequestParam("file") MultipartFile file,
             Authentication authentication) {
+        Deadline deadline = Deadline.afterMillis(verifyDeadlineMs);
         
         try {
             if (authentication == null || authentication.getName() == null) {
@@ -45,43 +112,243 @@ public class VerificationController {
             InputValidator.ValidationResult fileValidation = InputValidator.validateFile(file);
             if (!fileValidation.isValid()) {
                 log.warn("File validation failed: {}", fileValidation.getErrorMessage());
-                return ResponseEntity.badRequest()
-                    .body(VerificationResponse.builder()
-                        .riskLevel("ERROR")
-                        .riskScore(100)
-                        .explanation(List.of(fileValidation.getErrorMessage()))
-                        .extractedData(VerificationResponse.ExtractedData.builder()
-                            .name("")
-                            .idNumber("")
-                            .dob("")
-                            .build())
-                        .build());
+                return ResponseEntity.badRequest().body(errorResponse(fileValidation.getErrorMessage()));
             }
 
             log.info("Starting verification for file: {} with size: {} bytes", 
                      file.getOriginalFilename(), file.getSize());
 
             // Process the file using the service
-            VerificationResponse response = verificationService.verifyDocument(file, authentication.getName());
+            VerificationResponse response = verificationService.verifyDocument(file, authentication.getName(), deadline);
             log.info("Verification completed successfully for file: {}", file.getOriginalFilename());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
+            if (isDownstreamOverloaded(e)) {
+                // AWS capacity is saturated: shed the request so the client retries later
+                log.warn("Verification shed by downstream limiter: {}", e.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(errorResponse("Verification service is busy, please retry: " + e.getMessage()));
+            }
             log.error("Verification failed", e); // Log full stack trace
             String message = e.getMessage() != null ? e.getMessage() : "Verification failed";
+            return ResponseEntity.internalServerError().body(errorResponse("Verification failed: " + message));
+        }
+    }
+
+    /**
+     * Verifies an ID document and compares its face with a selfie of the person presenting it
+     */
+    @PostMapping("/verify/with-selfie")
+    public ResponseEntity<VerificationResponse> verifyDocumentWithSelfie(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("selfie") MultipartFile selfie,
+            Authentication authentication) {
+        Deadline deadline = Deadline.afterMillis(verifyDeadlineMs);
+
+        try {
+            if (authentication == null || authentication.getName() == null) {
+                return ResponseEntity.status(401).build();
+            }
+
+            InputValidator.ValidationResult fileValidation = InputValidator.validateFile(file);
+            if (!fileValidation.isValid()) {
+                log.warn("File validation failed: {}", fileValidation.getErrorMessage());
+                return ResponseEntity.badRequest().body(errorResponse(fileValidation.getErrorMessage()));
+            }
+            InputValidator.ValidationResult selfieValidation = InputValidator.validateFile(selfie);
+            if (!selfieValidation.isValid()) {
+                log.warn("Selfie validation failed: {}", selfieValidation.getErrorMessage());
+                return ResponseEntity.badRequest().body(errorResponse("Selfie: " + selfieValidation.getErrorMessage()));
+            }
+            String selfieName = selfie.getOriginalFilename();
+            if ("application/pdf".equalsIgnoreCase(selfie.getContentType())
+                    || (selfieName != null && selfieName.toLowerCase().endsWith(".pdf"))) {
+                return ResponseEntity.badRequest().body(errorResponse("Selfie must be an image"));
+            }
+
+            log.info("Starting selfie verification for file: {} with size: {} bytes",
+                     file.getOriginalFilename(), file.getSize());
+            VerificationResponse response = verificationService.verifyDocumentWithSelfie(
+                    file, selfie, authentication.getName(), deadline);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            if (isDownstreamOverloaded(e)) {
+                log.warn("Verification shed by downstream limiter: {}", e.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(errorResponse("Verification service is busy, please retry: " + e.getMessage()));
+            }
+            log.error("Verification failed", e);
+            String message = e.getMessage() != null ? e.getMessage() : "Verification failed";
+            return ResponseEntity.internalServerError().body(errorResponse("Verification failed: " + message));
+        }
+    }
+
+    private static VerificationResponse errorResponse(String message) {
+        return VerificationResponse.builder()
+            .riskLevel("ERROR")
+            .riskScore(100)
+            .explanation(List.of(message))
+            .extractedData(VerificationResponse.ExtractedData.builder()
+                .name("")
+                .idNumber("")
+                .dob("")
+                .build())
+            .build();
+    }
+
+    @PostMapping("/verify/async")
+    public ResponseEntity<VerificationJobResponse> submitVerificationJob(
+            @RequestParam("file") MultipartFile file,
+            Authentication authentication,
+            HttpServletRequest request) {
+
+        try {
+            if (authentication == null || authentication.getName() == null) {
+                return ResponseEntity.status(401).build();
+            }
+
+            InputValidator.ValidationResult fileValidation = InputValidator.validateFile(file);
+            if (!fileValidation.isValid()) {
+                log.warn("File validation failed: {}", fileValidation.getErrorMessage());
+                return ResponseEntity.badRequest()
+                    .body(VerificationJobResponse.builder()
+                        .status("REJECTED")
+                        .error(fileValidation.getErrorMessage())
+                        .build());
+            }
+
+            // The multipart temp file is gone once this request ends, so buffer it before queueing
+            DocumentBuffer document = DocumentBuffer.read(file, InputValidator.MAX_FILE_SIZE);
+            if (document == null) {
+                return ResponseEntity.badRequest()
+                    .body(VerificationJobResponse.builder()
+                        .status("REJECTED")
+                        .error("File size exceeds 10MB limit")
+                        .build());
+            }
+            // The queued job holds the upload in memory, so it keeps the request's admission until it finishes
+            VerificationJobResponse job = verificationJobService.submit(document, file.getOriginalFilename(),
+                    file.getContentType(), authentication.getName(), AdmissionControlFilter.detach(request));
+            log.info("Queued verification job {} for file: {}", job.getJobId(), file.getOriginalFilename());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/verify/jobs/" + job.getJobId()))
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            log.warn("Verification job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body(VerificationJobResponse.builder()
+                    .status("REJECTED")
+                    .error(e.getMessage())
+                    .build());
+        } catch (Exception e) {
+            log.error("Failed to queue verification job", e);
             return ResponseEntity.internalServerError()
-                .body(VerificationResponse.builder()
-                    .riskLevel("ERROR")
-                    .riskScore(100)
-                    .explanation(List.of("Verification failed: " + message))
-                    .extractedData(VerificationResponse.ExtractedData.builder()
-                        .name("")
-                        .idNumber("")
-                        .dob("")
-                        .build())
+                .body(VerificationJobResponse.builder()
+                    .status("REJECTED")
+                    .error("Failed to queue verification")
                     .build());
         }
     }
 
+    @GetMapping("/verify/jobs/{id}")
+    public ResponseEntity<VerificationJobResponse> getVerificationJob(@PathVariable String id, Authentication authentication) {
+        if (authentication == null || authentication.getName() == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        VerificationJobService.VerificationJob job = verificationJobService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean isOwner = authentication.getName().equals(job.getOwnerUsername());
+        if (!isOwner && !hasAdminRole(authentication)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(job.toResponse());
+    }
+
+    @PostMapping("/verify/batch")
+    public ResponseEntity<BatchVerificationResponse> verifyBatch(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            Authentication authentication) {
+
+        try {
+            if (authentication == null || authentication.getName() == null) {
+                return ResponseEntity.status(401).build();
+            }
+
+            boolean hasFiles = files != null && !files.isEmpty();
+            boolean hasArchive = archive != null && !archive.isEmpty();
+            if (hasFiles == hasArchive) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            BatchVerificationResponse response;
+            if (hasArchive) {
+                log.info("Starting batch verification for archive: {} with size: {} bytes",
+                         archive.getOriginalFilename(), archive.getSize());
+                try (java.io.InputStream in = archive.getInputStream()) {
+                    response = batchVerificationService.verifyZipArchive(in, authentication.getName());
+                }
+            } else {
+                log.info("Starting batch verification for {} files", files.size());
+                response = batchVerificationService.verifyFiles(files, authentication.getName());
+            }
+            log.info("Batch verification completed: {}", response.getSummary());
+            return ResponseEntity.ok(response);
+        } catch (BatchVerificationService.ArchiveTooLargeException e) {
+            log.warn("Batch archive rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (java.util.zip.ZipException e) {
+            log.warn("Invalid ZIP archive: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Batch verification failed", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Batch verification of a ZIP archive sent as the raw request body. The body is streamed
+     * entry by entry instead of being parsed as multipart, so archives up to
+     * verification.batch.max-archive-megabytes are accepted while the multipart limits stay
+     * sized for single documents.
+     */
+    @PostMapping(value = "/verify/batch", consumes = {"application/zip", "application/octet-stream"})
+    public ResponseEntity<BatchVerificationResponse> verifyBatchArchive(HttpServletRequest request,
+                                                                        Authentication authentication) {
+        try {
+            if (authentication == null || authentication.getName() == null) {
+                return ResponseEntity.status(401).build();
+            }
+            long contentLength = request.getContentLengthLong();
+            if (contentLength > batchVerificationService.getMaxArchiveBytes()) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+            }
+
+            log.info("Starting batch verification for streamed archive with size: {} bytes", contentLength);
+            BatchVerificationResponse response;
+            try (java.io.InputStream in = request.getInputStream()) {
+                response = batchVerificationService.verifyZipArchive(in, authentication.getName());
+            }
+            log.info("Batch verification completed: {}", response.getSummary());
+            return ResponseEntity.ok(response);
+        } catch (BatchVerificationService.ArchiveTooLargeException e) {
+            log.warn("Batch archive rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (java.util.zip.ZipException e) {
+            log.warn("Invalid ZIP archive: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Batch verification failed", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     @GetMapping("/verifications")
     public ResponseEntity<List<VerificationRecord>> getAllVerifications(
             @RequestParam(defaultValue = "50") int limit,
@@ -158,6 +425,34 @@ public class VerificationController {
         }
     }
 
+    @GetMapping("/stats/pipeline")
+    public ResponseEntity<Map<String, Object>> getPipelineStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("admission", admissionControlFilter.getStats());
+        stats.put("stages", verificationStageExecutor.getStats());
+        stats.put("verificationCache", verificationResultCache.getStats());
+        stats.put("archivePendingUploads", documentArchiveService.getPendingCount());
+        stats.put("archiveDroppedUploads", documentArchiveService.getDroppedCount());
+        stats.put("archiveFailedUploads", documentArchiveService.getFailedCount());
+        stats.put("downstreamLimits", downstreamLimiterRegistry.getStats());
+        stats.put("hedging", requestHedgingService.getStats());
+        stats.put("ocrFallback", textractService.getStats());
+        stats.put("tesseractPool", tesseractWorkerPool.getStats());
+        stats.put("nearDuplicates", nearDuplicateIndex.getStats());
+        stats.put("faceSearch", faceSearchService.getStats());
+        stats.put("screening", documentScreener.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    private boolean isDownstreamOverloaded(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DownstreamLimiter.LimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean hasAdminRole(Authentication authentication) {
         if (authentication == null || authentication.getAuthorities() == null) {
             return false;
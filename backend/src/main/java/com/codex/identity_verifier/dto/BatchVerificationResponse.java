@@ -0,0 +1,47 @@
+package com.codex.identity_verifier.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchVerificationResponse {
+    private List<ItemResult> items;
+    private Summary summary;
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ItemResult {
+        private Integer index;
+        private String fileName;
+        // COMPLETED, FAILED or REJECTED
+        private String status;
+        private String error;
+        private VerificationResponse result;
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Summary {
+        private Integer total;
+        private Integer completed;
+        private Integer failed;
+        private Integer rejected;
+        private Integer lowRiskCount;
+        private Integer mediumRiskCount;
+        private Integer highRiskCount;
+        private Double averageRiskScore;
+        private Boolean truncated;
+        private Long durationMs;
+    }
+}
@@ -0,0 +1,22 @@
+package com.codex.identity_verifier.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VerificationJobResponse {
+    private String jobId;
+    // QUEUED, RUNNING, COMPLETED, FAILED or REJECTED
+    private String status;
+    private Instant submittedAt;
+    private Instant completedAt;
+    private String error;
+    private VerificationResponse result;
+}
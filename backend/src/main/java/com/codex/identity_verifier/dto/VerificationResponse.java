@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -15,6 +16,8 @@ public class VerificationResponse {
     private Integer riskScore;
     private List<String> explanation;
     private ExtractedData extractedData;
+    // Similarity (0-100) between the document's face and the selfie; null without a selfie
+    private Double faceMatchConfidence;
     
     @Data
     @Builder
@@ -24,5 +27,16 @@ public class VerificationResponse {
         private String name;
         private String idNumber;
         private String dob;
+        // Source and confidence of each extracted field, keyed by field name
+        private Map<String, FieldProvenance> provenance;
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class FieldProvenance {
+        private String source;
+        private Float confidence;
     }
 }
\ No newline at end of file
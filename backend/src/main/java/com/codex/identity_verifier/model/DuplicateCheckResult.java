@@ -0,0 +1,28 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Near-duplicate lookup of a document's perceptual hash against earlier submissions
+ */
+@Value
+@Builder
+public class DuplicateCheckResult {
+
+    // Used when the check is skipped, e.g. for PDFs
+    public static final DuplicateCheckResult NONE = DuplicateCheckResult.builder()
+            .closestDistance(-1)
+            .build();
+
+    // 16 hex digits, null when the image could not be hashed
+    String perceptualHash;
+    // Earlier submissions by other owners within the Hamming radius
+    int otherOwnerMatches;
+    // Hamming distance to the closest of them, -1 when there is none
+    int closestDistance;
+
+    public boolean isDuplicateOfOtherOwner() {
+        return otherOwnerMatches > 0;
+    }
+}
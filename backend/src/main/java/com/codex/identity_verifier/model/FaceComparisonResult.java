@@ -0,0 +1,16 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Outcome of comparing the face in one image against the faces in another
+ */
+@Value
+@Builder
+public class FaceComparisonResult {
+    boolean match;
+    int matchCount;
+    int unmatchedCount;
+    double highestSimilarity;
+}
@@ -0,0 +1,27 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.services.rekognition.model.FaceDetail;
+
+import java.util.List;
+
+/**
+ * Outcome of Rekognition face detection on a document image
+ */
+@Value
+@Builder
+public class FaceDetectionResult {
+
+    public static final FaceDetectionResult NONE = FaceDetectionResult.builder()
+            .faceCount(0)
+            .faceDetected(false)
+            .highestConfidence(0.0)
+            .faces(List.of())
+            .build();
+
+    int faceCount;
+    boolean faceDetected;
+    double highestConfidence;
+    List<FaceDetail> faces;
+}
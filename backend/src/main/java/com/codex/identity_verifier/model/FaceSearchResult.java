@@ -0,0 +1,33 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Faces in the face collection that match the largest face in a document image
+ */
+@Value
+@Builder
+public class FaceSearchResult {
+
+    // Used when the search is skipped, e.g. for PDFs
+    public static final FaceSearchResult NONE = FaceSearchResult.builder()
+            .matches(List.of())
+            .build();
+
+    // False when the image has no face to search with
+    boolean faceSearched;
+    List<FaceMatch> matches;
+    String error;
+
+    @Value
+    public static class FaceMatch {
+        String faceId;
+        // Pseudonymous tag of the owner whose submission indexed the face
+        String externalImageId;
+        // 0 to 100
+        double similarity;
+    }
+}
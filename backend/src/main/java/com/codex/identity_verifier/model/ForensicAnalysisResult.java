@@ -0,0 +1,54 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Outcome of the local forensic checks on a document image: error-level analysis,
+ * double JPEG compression and copy-move detection. Scores are per heatmap tile.
+ */
+@Value
+@Builder
+public class ForensicAnalysisResult {
+
+    public static final ForensicAnalysisResult NONE = ForensicAnalysisResult.builder()
+            .heatmap(Heatmap.EMPTY)
+            .build();
+
+    boolean tampered;
+    // 0 to 1
+    double tamperProbability;
+    // Share of textured tiles whose error level stands out from the rest of the image
+    double elaOutlierFraction;
+    boolean doubleCompressed;
+    // Share of tiles whose DCT coefficients do not follow the image's double quantization
+    double doubleCompressionInconsistency;
+    // Share of textured blocks that are duplicated elsewhere in the image
+    double copyMoveFraction;
+    int copyMoveRegions;
+    Heatmap heatmap;
+    String error;
+
+    /**
+     * Summary of the per-tile tamper scores (0 to 1). The hotspot is the bounding box of the
+     * suspicious tiles as fractions of the image size, all 0 when there are none.
+     */
+    @Value
+    @Builder
+    public static class Heatmap {
+
+        public static final Heatmap EMPTY = Heatmap.builder().build();
+
+        int tileSize;
+        int columns;
+        int rows;
+        double meanScore;
+        double p95Score;
+        double maxScore;
+        double suspiciousTileFraction;
+        double hotspotLeft;
+        double hotspotTop;
+        double hotspotWidth;
+        double hotspotHeight;
+    }
+}
@@ -0,0 +1,137 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identity fields extracted from a document; absent fields are empty strings, never null
+ */
+@Value
+@Builder(toBuilder = true)
+public class IdentityInfo {
+
+    public static final IdentityInfo EMPTY = IdentityInfo.builder().build();
+
+    @Builder.Default
+    String name = "";
+    @Builder.Default
+    String idNumber = "";
+    @Builder.Default
+    String dob = "";
+    @Builder.Default
+    String address = "";
+    @Builder.Default
+    String expiryDate = "";
+    // Not persisted: a cached result keeps its explanations but reads back as ABSENT
+    @Builder.Default
+    MrzStatus mrzStatus = MrzStatus.ABSENT;
+    // Where each non-empty field came from, keyed by field name
+    @Builder.Default
+    Map<String, FieldSource> fieldSources = Map.of();
+
+    /**
+     * Outcome of reading the document's machine readable zone
+     */
+    public enum MrzStatus {
+        ABSENT,
+        VALID,
+        CHECK_DIGIT_FAILED
+    }
+
+    /**
+     * Extractor that produced a field value
+     */
+    public enum Source {
+        TEXTRACT,
+        TESSERACT,
+        // Both OCR engines read the same value
+        TEXTRACT_TESSERACT,
+        MRZ
+    }
+
+    /**
+     * Provenance of one field; confidence is 0 to 100
+     */
+    @Value
+    public static class FieldSource {
+        Source source;
+        float confidence;
+    }
+
+    public boolean hasName() {
+        return !name.isEmpty();
+    }
+
+    public boolean hasIdNumber() {
+        return !idNumber.isEmpty();
+    }
+
+    public boolean hasDob() {
+        return !dob.isEmpty();
+    }
+
+    public int missingCoreFieldCount() {
+        return (hasName() ? 0 : 1) + (hasIdNumber() ? 0 : 1) + (hasDob() ? 0 : 1);
+    }
+
+    public static IdentityInfo fromExtractedData(VerificationRecord.ExtractedData data) {
+        if (data == null) {
+            return EMPTY;
+        }
+        return IdentityInfo.builder()
+                .name(nullToEmpty(data.getName()))
+                .idNumber(nullToEmpty(data.getIdNumber()))
+                .dob(nullToEmpty(data.getDob()))
+                .address(nullToEmpty(data.getAddress()))
+                .expiryDate(nullToEmpty(data.getExpiryDate()))
+                .fieldSources(fieldSourcesOf(data))
+                .build();
+    }
+
+    public VerificationRecord.ExtractedData toExtractedData() {
+        return VerificationRecord.ExtractedData.builder()
+                .name(emptyToNull(name))
+                .idNumber(emptyToNull(idNumber))
+                .dob(emptyToNull(dob))
+                .address(emptyToNull(address))
+                .expiryDate(emptyToNull(expiryDate))
+                .fieldSources(fieldSources.isEmpty() ? null : sourceNames())
+                .fieldConfidences(fieldSources.isEmpty() ? null : confidences())
+                .build();
+    }
+
+    private Map<String, String> sourceNames() {
+        Map<String, String> names = new HashMap<>();
+        fieldSources.forEach((field, source) -> names.put(field, source.getSource().name()));
+        return names;
+    }
+
+    private Map<String, Float> confidences() {
+        Map<String, Float> confidences = new HashMap<>();
+        fieldSources.forEach((field, source) -> confidences.put(field, source.getConfidence()));
+        return confidences;
+    }
+
+    private static Map<String, FieldSource> fieldSourcesOf(VerificationRecord.ExtractedData data) {
+        if (data.getFieldSources() == null) {
+            return Map.of();
+        }
+        Map<String, FieldSource> sources = new HashMap<>();
+        data.getFieldSources().forEach((field, source) -> {
+            Float confidence = data.getFieldConfidences() != null ? data.getFieldConfidences().get(field) : null;
+            sources.put(field, new FieldSource(Source.valueOf(source), confidence != null ? confidence : 0f));
+        });
+        return sources;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,54 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Image quality indicators for a document image
+ */
+@Value
+@Builder
+public class QualityAnalysisResult {
+
+    // Used when image checks are skipped, e.g. for PDFs
+    public static final QualityAnalysisResult NONE = QualityAnalysisResult.builder()
+            .blurry(false)
+            .goodLighting(true)
+            .document(true)
+            .labels(List.of())
+            .build();
+
+    boolean blurry;
+    boolean goodLighting;
+    boolean document;
+    // Names of the indicators that fired, e.g. "Blurry" or "Glare"
+    List<String> labels;
+
+    // Variance of the Laplacian; higher is sharper
+    double sharpness;
+    // 0 to 255
+    double meanLuminance;
+    // Standard deviation of luminance
+    double contrast;
+    double glareFraction;
+    // Share of pixels on a strong edge
+    double edgeDensity;
+    // Set when the image could not be measured; it is then reported as blurry and poorly lit
+    String error;
+
+    /**
+     * Result for an image that cannot be decoded or measured, so that scoring can continue
+     * with the worst quality indicators instead of failing the request
+     */
+    public static QualityAnalysisResult unreadable(String error) {
+        return QualityAnalysisResult.builder()
+                .blurry(true)
+                .goodLighting(false)
+                .document(false)
+                .labels(List.of("Unreadable"))
+                .error(error)
+                .build();
+    }
+}
@@ -0,0 +1,29 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Outcome of the local checks run on an upload before any AWS call
+ */
+@Value
+@Builder
+public class ScreeningResult {
+
+    // jpeg, png, webp or pdf as read from the leading bytes; null when none of them
+    String detectedFormat;
+    // Format named by the content type or, failing that, the extension; null when unknown
+    String declaredFormat;
+    // Editing software named in the EXIF or XMP metadata, null when none matched
+    String editingSoftware;
+    // Nearly uniform image with no edges to speak of
+    boolean blankPage;
+
+    /**
+     * @return True when the bytes are a known format other than the declared one. Formats
+     * without a signature check (HEIC, TIFF, GIF, BMP, ...) are never a mismatch
+     */
+    public boolean isFormatMismatch() {
+        return detectedFormat != null && declaredFormat != null && !declaredFormat.equals(detectedFormat);
+    }
+}
@@ -0,0 +1,36 @@
+package com.codex.identity_verifier.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Outcome of tamper and suspicious-content checks on a document image.
+ * Width and height are 0 when the image could not be decoded.
+ */
+@Value
+@Builder
+public class TamperDetectionResult {
+
+    public static final TamperDetectionResult NONE = TamperDetectionResult.builder()
+            .tampered(false)
+            .suspiciousContent(false)
+            .moderationLabels(List.of())
+            .detectedTexts(List.of())
+            .build();
+
+    boolean tampered;
+    boolean suspiciousContent;
+    boolean lowQuality;
+    boolean uniformBackground;
+    int width;
+    int height;
+    List<String> moderationLabels;
+    List<String> detectedTexts;
+    String error;
+
+    public boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+}
@@ -0,0 +1,45 @@
+package com.codex.identity_verifier.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class VerificationCacheEntry {
+
+    // fileHash + ":" + rulesVersion
+    private String cacheKey;
+    private String fileHash;
+    private String rulesVersion;
+
+    private String riskLevel;
+    private Integer riskScore;
+    private List<String> explanation;
+    private VerificationRecord.ExtractedData extractedData;
+    private Double faceMatchConfidence;
+    private Boolean isTampered;
+    private String perceptualHash;
+
+    private Instant createdAt;
+    // Epoch seconds, used as the DynamoDB TTL attribute
+    private Long expiresAt;
+
+    @DynamoDbPartitionKey
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+}
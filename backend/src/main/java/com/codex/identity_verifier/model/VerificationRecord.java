@@ -11,9 +11,10 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortK
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @DynamoDbBean
@@ -26,6 +27,8 @@ public class VerificationRecord {
     private String s3Bucket;
     private String s3Key;
     private Boolean s3ObjectDeleted;
+    // True when the document was to be archived but never reached S3 (queue full or retries exhausted)
+    private Boolean s3ArchiveFailed;
 
     private String riskLevel;
     private Integer riskScore;
@@ -37,6 +40,12 @@ public class VerificationRecord {
     private Double faceMatchConfidence;
     private Boolean isTampered;
 
+    // Version of the risk rules that produced riskScore
+    private String rulesVersion;
+
+    // 64-bit perceptual hash of the image as 16 hex digits, for near-duplicate lookups
+    private String perceptualHash;
+
     private Instant createdAt;
     private Instant updatedAt;
 
@@ -73,6 +82,9 @@ public class VerificationRecord {
         private String dob;
         private String address;
         private String expiryDate;
+        // Extractor and confidence per field name; not personal data, so stored unencrypted
+        private Map<String, String> fieldSources;
+        private Map<String, Float> fieldConfidences;
 
         public String getName() {
             return name;
@@ -0,0 +1,414 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.dto.BatchVerificationResponse;
+import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.InputValidator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Verifies many documents in one request, either as separate multipart files or as a
+ * ZIP archive read entry by entry. A per-batch semaphore bounds both the number of
+ * documents in flight and the number of entry buffers held in memory at once.
+ * Records are saved in chunks as items complete, so a long batch does not hold every
+ * record until the end and a failure part-way keeps the records already written.
+ */
+@Service
+public class BatchVerificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchVerificationService.class);
+
+    private static final String STATUS_COMPLETED = "COMPLETED";
+    private static final String STATUS_FAILED = "FAILED";
+    private static final String STATUS_REJECTED = "REJECTED";
+
+    private final VerificationService verificationService;
+    private final DynamoDBService dynamoDBService;
+
+    @Value("${verification.batch.worker-threads:8}")
+    private int workerThreads;
+
+    @Value("${verification.batch.parallelism:4}")
+    private int parallelism;
+
+    @Value("${verification.batch.max-items:500}")
+    private int maxItems;
+
+    // Upper bound on the ZIP stream, which is not subject to the multipart limits when streamed
+    @Value("${verification.batch.max-archive-megabytes:200}")
+    private long maxArchiveMegabytes;
+
+    // Completed records are written once this many are pending; 25 is one DynamoDB BatchWriteItem
+    @Value("${verification.batch.save-chunk-size:25}")
+    private int saveChunkSize;
+
+    // Per item, counted from when the item starts running
+    @Value("${verification.deadline.batch-item-ms:60000}")
+    private long itemDeadlineMs;
+
+    private ExecutorService executor;
+
+    @Autowired
+    public BatchVerificationService(VerificationService verificationService, DynamoDBService dynamoDBService) {
+        this.verificationService = verificationService;
+        this.dynamoDBService = dynamoDBService;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "verification-batch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Verifies a list of uploaded files
+     * @param files The uploaded files
+     * @param ownerUsername The user the verifications are recorded for
+     * @return Per-item results and an aggregate summary
+     */
+    public BatchVerificationResponse verifyFiles(List<MultipartFile> files, String ownerUsername) {
+        BatchRun run = new BatchRun(ownerUsername);
+        int index = 0;
+        try {
+            for (MultipartFile file : files) {
+                if (index >= maxItems) {
+                    run.truncated = true;
+                    break;
+                }
+                InputValidator.ValidationResult validation = InputValidator.validateFile(file);
+                if (!validation.isValid()) {
+                    run.reject(index++, file.getOriginalFilename(), validation.getErrorMessage());
+                    continue;
+                }
+                run.acquire();
+                DocumentBuffer document;
+                try {
+                    document = DocumentBuffer.read(file, InputValidator.MAX_FILE_SIZE);
+                } catch (IOException e) {
+                    run.release();
+                    run.reject(index++, file.getOriginalFilename(), "Failed to read file: " + e.getMessage());
+                    continue;
+                }
+                if (document == null) {
+                    run.release();
+                    run.reject(index++, file.getOriginalFilename(), "File size exceeds 10MB limit");
+                    continue;
+                }
+                run.submit(index++, file.getOriginalFilename(), file.getContentType(), document);
+            }
+        } finally {
+            run.flush();
+        }
+        return run.finish();
+    }
+
+    public long getMaxArchiveBytes() {
+        return maxArchiveMegabytes * 1024 * 1024;
+    }
+
+    /**
+     * Verifies the documents in a ZIP archive, reading entries sequentially from the stream
+     * @param archive The ZIP stream
+     * @param ownerUsername The user the verifications are recorded for
+     * @return Per-item results and an aggregate summary
+     * @throws ArchiveTooLargeException When the stream is longer than verification.batch.max-archive-megabytes
+     */
+    public BatchVerificationResponse verifyZipArchive(InputStream archive, String ownerUsername) throws IOException {
+        BatchRun run = new BatchRun(ownerUsername);
+        int index = 0;
+        try (ZipInputStream zip = new ZipInputStream(new LimitedInputStream(archive, getMaxArchiveBytes()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                if (entry.isDirectory() || isIgnoredEntry(entryName)) {
+                    continue;
+                }
+                if (index >= maxItems) {
+                    run.truncated = true;
+                    break;
+                }
+                String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                InputValidator.ValidationResult validation = InputValidator.validateDocument(fileName, entry.getSize(), null);
+                if (!validation.isValid()) {
+                    run.reject(index++, fileName, validation.getErrorMessage());
+                    continue;
+                }
+
+                // Acquire before buffering so at most `parallelism` entries are held in memory
+                run.acquire();
+                // The declared entry size is only a sizing hint; the limit applies to inflated bytes
+                DocumentBuffer document = DocumentBuffer.read(zip, entry.getSize(), InputValidator.MAX_FILE_SIZE);
+                if (document == null || document.isEmpty()) {
+                    run.release();
+                    run.reject(index++, fileName, document == null ? "File size exceeds 10MB limit" : "File cannot be empty");
+                    continue;
+                }
+                run.submit(index++, fileName, null, document);
+            }
+        } finally {
+            // Items submitted before an oversized archive was detected are still verified and saved
+            run.flush();
+        }
+        return run.finish();
+    }
+
+    private boolean isIgnoredEntry(String entryName) {
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        return entryName.startsWith("__MACOSX/") || fileName.startsWith(".");
+    }
+
+    private class BatchRun {
+        private final String ownerUsername;
+        private final Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        private final List<CompletableFuture<BatchVerificationResponse.ItemResult>> items = new ArrayList<>();
+        // Completed records not yet saved, by item index
+        private final Map<Integer, VerificationRecord> pendingRecords = new LinkedHashMap<>();
+        private final Set<Integer> unsavedItems = ConcurrentHashMap.newKeySet();
+        private final long startedAt = System.currentTimeMillis();
+        private boolean truncated;
+
+        BatchRun(String ownerUsername) {
+            this.ownerUsername = ownerUsername;
+        }
+
+        void acquire() {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for batch capacity", e);
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        void submit(int index, String fileName, String contentType, DocumentBuffer document) {
+            items.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    VerificationService.VerificationOutcome outcome =
+                            verificationService.analyzeDocument(document, fileName, contentType, ownerUsername,
+                                    Deadline.afterMillis(itemDeadlineMs));
+                    addRecord(index, outcome.getRecord());
+                    return BatchVerificationResponse.ItemResult.builder()
+                            .index(index)
+                            .fileName(fileName)
+                            .status(STATUS_COMPLETED)
+                            .result(outcome.getResponse())
+                            .build();
+                } catch (Exception e) {
+                    log.warn("Batch item {} ({}) failed: {}", index, fileName, e.getMessage());
+                    return BatchVerificationResponse.ItemResult.builder()
+                            .index(index)
+                            .fileName(fileName)
+                            .status(STATUS_FAILED)
+                            .error(e.getMessage() != null ? e.getMessage() : "Verification failed")
+                            .build();
+                } finally {
+                    permits.release();
+                }
+            }, executor));
+        }
+
+        void reject(int index, String fileName, String error) {
+            items.add(CompletableFuture.completedFuture(BatchVerificationResponse.ItemResult.builder()
+                    .index(index)
+                    .fileName(fileName)
+                    .status(STATUS_REJECTED)
+                    .error(error)
+                    .build()));
+        }
+
+        void addRecord(int index, VerificationRecord record) {
+            Map<Integer, VerificationRecord> chunk = null;
+            synchronized (pendingRecords) {
+                pendingRecords.put(index, record);
+                if (pendingRecords.size() >= Math.max(1, saveChunkSize)) {
+                    chunk = drainPendingRecords();
+                }
+            }
+            if (chunk != null) {
+                saveRecords(chunk);
+            }
+        }
+
+        private Map<Integer, VerificationRecord> drainPendingRecords() {
+            Map<Integer, VerificationRecord> chunk = new LinkedHashMap<>(pendingRecords);
+            pendingRecords.clear();
+            return chunk;
+        }
+
+        /**
+         * Writes a chunk of records; the items of a chunk that cannot be written are reported as failed
+         */
+        private void saveRecords(Map<Integer, VerificationRecord> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            try {
+                dynamoDBService.saveVerificationRecords(new ArrayList<>(chunk.values()));
+                chunk.values().forEach(verificationService::recordSaved);
+            } catch (Exception e) {
+                log.error("Saving {} batch verification records failed", chunk.size(), e);
+                unsavedItems.addAll(chunk.keySet());
+            }
+        }
+
+        void awaitSubmitted() {
+            CompletableFuture.allOf(items.toArray(new CompletableFuture[0])).join();
+        }
+
+        /**
+         * Waits for the submitted items and saves the records still pending
+         */
+        void flush() {
+            awaitSubmitted();
+            Map<Integer, VerificationRecord> remaining;
+            synchronized (pendingRecords) {
+                remaining = drainPendingRecords();
+            }
+            saveRecords(remaining);
+        }
+
+        BatchVerificationResponse finish() {
+            flush();
+
+            List<BatchVerificationResponse.ItemResult> results = new ArrayList<>(items.size());
+            items.forEach(item -> results.add(item.join()));
+            for (BatchVerificationResponse.ItemResult result : results) {
+                if (unsavedItems.contains(result.getIndex())) {
+                    result.setStatus(STATUS_FAILED);
+                    result.setError("Verification record could not be saved");
+                    result.setResult(null);
+                }
+            }
+
+            int completed = 0, failed = 0, rejected = 0, low = 0, medium = 0, high = 0;
+            long riskScoreTotal = 0;
+            for (BatchVerificationResponse.ItemResult result : results) {
+                switch (result.getStatus()) {
+                    case STATUS_COMPLETED -> {
+                        completed++;
+                        String riskLevel = result.getResult().getRiskLevel();
+                        riskScoreTotal += result.getResult().getRiskScore();
+                        if ("LOW RISK".equals(riskLevel)) {
+                            low++;
+                        } else if ("MEDIUM RISK".equals(riskLevel)) {
+                            medium++;
+                        } else if ("HIGH RISK".equals(riskLevel)) {
+                            high++;
+                        }
+                    }
+                    case STATUS_FAILED -> failed++;
+                    default -> rejected++;
+                }
+            }
+            double averageRiskScore = completed == 0 ? 0.0 : (double) riskScoreTotal / completed;
+
+            return BatchVerificationResponse.builder()
+                    .items(results)
+                    .summary(BatchVerificationResponse.Summary.builder()
+                            .total(results.size())
+                            .completed(completed)
+                            .failed(failed)
+                            .rejected(rejected)
+                            .lowRiskCount(low)
+                            .mediumRiskCount(medium)
+                            .highRiskCount(high)
+                            .averageRiskScore(Math.round(averageRiskScore * 100.0) / 100.0)
+                            .truncated(truncated)
+                            .durationMs(System.currentTimeMillis() - startedAt)
+                            .build())
+                    .build();
+        }
+    }
+
+    /**
+     * Thrown when a ZIP archive is longer than verification.batch.max-archive-megabytes
+     */
+    public static class ArchiveTooLargeException extends IOException {
+        public ArchiveTooLargeException(long maxBytes) {
+            super("Archive exceeds the " + maxBytes / (1024 * 1024) + "MB limit");
+        }
+    }
+
+    /**
+     * Fails the read once more than maxBytes have been read from the wrapped stream
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws IOException {
+            count += bytes;
+            if (count > maxBytes) {
+                throw new ArchiveTooLargeException(maxBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Archives uploaded documents to S3 off the verification critical path.
+ * Uploads are queued with a bounded number of pending documents and retried with
+ * exponential backoff. When the queue is full the upload is dropped rather than run on the
+ * request thread, and an upload that runs out of retries is given up; either way the
+ * record's S3 key is cleared and the record is marked as not archived.
+ * The upload thread never touches the caller's record: savers report the record through
+ * {@link #recordSaved}, and a failure after that is written to a copy of it.
+ */
+@Service
+public class DocumentArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentArchiveService.class);
+
+    private final S3Service s3Service;
+    private final DynamoDBService dynamoDBService;
+
+    @Value("${verification.archive.async:true}")
+    private boolean asyncArchive;
+
+    @Value("${verification.archive.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${verification.archive.max-pending:16}")
+    private int maxPending;
+
+    @Value("${verification.archive.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${verification.archive.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // Queued uploads by S3 key, until they succeed or their failure is applied to the saved record
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public DocumentArchiveService(S3Service s3Service, DynamoDBService dynamoDBService) {
+        this.s3Service = s3Service;
+        this.dynamoDBService = dynamoDBService;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "document-archive-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Document archive shut down with {} uploads still pending", pending.get());
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Archives the document under the record's S3 key. Called before the record is saved: a
+     * dropped upload clears the key from the record straight away, while an upload given up
+     * later is applied once the record is saved.
+     * @param record The unsaved record the upload belongs to; its s3Key names the object
+     * @param document The buffered document
+     * @param contentType The content type to store with the object
+     */
+    public void archive(VerificationRecord record, DocumentBuffer document, String contentType) {
+        String key = record.getS3Key();
+        if (!asyncArchive) {
+            s3Service.uploadDocument(key, document, contentType);
+            return;
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            log.warn("Archive queue full ({} pending); {} is not archived", maxPending, key);
+            clearArchiveLocation(record);
+            return;
+        }
+        uploads.put(key, new Upload());
+        scheduler.execute(() -> attemptUpload(key, document, contentType, 1));
+    }
+
+    /**
+     * Reports that a record passed to {@link #archive} has been saved. If its upload was already
+     * given up, the cleared key is written now; otherwise a copy is kept for a later failure.
+     * @param record The saved record
+     */
+    public void recordSaved(VerificationRecord record) {
+        String key = record.getS3Key();
+        Upload upload = key != null ? uploads.get(key) : null;
+        if (upload == null) {
+            return;
+        }
+        boolean uploadFailed;
+        synchronized (upload) {
+            uploadFailed = upload.failed;
+            if (!uploadFailed) {
+                upload.savedRecord = record.toBuilder().build();
+            }
+        }
+        if (uploadFailed) {
+            uploads.remove(key);
+            markNotArchived(record);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void attemptUpload(String key, DocumentBuffer document, String contentType, int attempt) {
+        try {
+            s3Service.uploadDocument(key, document, contentType);
+            uploads.remove(key);
+            pending.decrementAndGet();
+        } catch (Exception e) {
+            if (attempt >= maxAttempts || scheduler.isShutdown()) {
+                failed.incrementAndGet();
+                log.error("Giving up archiving {} to S3 after {} attempts", key, attempt, e);
+                uploadFailed(key);
+                pending.decrementAndGet();
+                return;
+            }
+            long delay = retryBackoffMs * (1L << Math.min(attempt - 1, 10));
+            log.warn("Archiving {} to S3 failed (attempt {}/{}), retrying in {} ms: {}",
+                    key, attempt, maxAttempts, delay, e.getMessage());
+            scheduler.schedule(() -> attemptUpload(key, document, contentType, attempt + 1),
+                    delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies a given-up upload to its record if the record has been saved; otherwise
+     * {@link #recordSaved} applies it once the record is saved
+     */
+    private void uploadFailed(String key) {
+        Upload upload = uploads.get(key);
+        if (upload == null) {
+            return;
+        }
+        VerificationRecord savedRecord;
+        synchronized (upload) {
+            upload.failed = true;
+            savedRecord = upload.savedRecord;
+        }
+        if (savedRecord != null) {
+            uploads.remove(key);
+            markNotArchived(savedRecord);
+        }
+    }
+
+    private static void clearArchiveLocation(VerificationRecord record) {
+        record.setS3Key(null);
+        record.setS3Bucket(null);
+        record.setS3ArchiveFailed(true);
+    }
+
+    /**
+     * Writes a copy of a saved record with its S3 location cleared
+     */
+    private void markNotArchived(VerificationRecord savedRecord) {
+        VerificationRecord update = savedRecord.toBuilder().build();
+        clearArchiveLocation(update);
+        try {
+            dynamoDBService.updateVerificationRecord(update);
+        } catch (Exception e) {
+            log.error("Could not clear the S3 key of verification record {}", update.getId(), e);
+        }
+    }
+
+    private static final class Upload {
+        // Guarded by the Upload itself
+        private boolean failed;
+        private VerificationRecord savedRecord;
+    }
+}
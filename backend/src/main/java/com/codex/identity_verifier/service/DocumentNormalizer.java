@@ -0,0 +1,319 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.ImageContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+/**
+ * Prepares uploaded images for the AWS APIs: the image is decoded once (subsampled
+ * when it is far larger than needed), then downscaled and re-encoded as JPEG with a
+ * separate size limit for Rekognition and for Textract, which needs more pixels for
+ * OCR. Images already within both limits are passed through untouched and only their
+ * header is read here; their pixels are decoded by the first stage that needs them.
+ * Images the forensic analysis reads at full resolution are never subsampled, so that
+ * the one decode serves every stage. The original dimensions are kept for the
+ * resolution-based risk rules.
+ */
+@Service
+public class DocumentNormalizer {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentNormalizer.class);
+
+    private final ForensicAnalyzer forensicAnalyzer;
+
+    @Value("${verification.normalize.enabled:true}")
+    private boolean enabled;
+
+    @Value("${verification.normalize.rekognition-max-dimension:1920}")
+    private int rekognitionMaxDimension;
+
+    @Value("${verification.normalize.textract-max-dimension:3000}")
+    private int textractMaxDimension;
+
+    @Value("${verification.normalize.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @Autowired
+    public DocumentNormalizer(ForensicAnalyzer forensicAnalyzer) {
+        this.forensicAnalyzer = forensicAnalyzer;
+    }
+
+    /**
+     * Normalizes a document for analysis
+     * @param document The uploaded document
+     * @param imageAnalysisEnabled false for PDFs, which are passed through as-is
+     * @return The per-API variants together with the original dimensions
+     */
+    public NormalizedDocument normalize(DocumentBuffer document, boolean imageAnalysisEnabled) {
+        if (!imageAnalysisEnabled) {
+            return NormalizedDocument.passThrough(document);
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(document.newInputStream())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return NormalizedDocument.passThrough(document);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int storedWidth = reader.getWidth(0);
+                int storedHeight = reader.getHeight(0);
+                int orientation = "jpeg".equalsIgnoreCase(reader.getFormatName()) ? readExifOrientation(document) : 1;
+                boolean swapAxes = orientation >= 5;
+                int originalWidth = swapAxes ? storedHeight : storedWidth;
+                int originalHeight = swapAxes ? storedWidth : storedHeight;
+                int longestSide = Math.max(storedWidth, storedHeight);
+
+                boolean rekognitionFits = !enabled || (longestSide <= rekognitionMaxDimension && orientation == 1);
+                boolean textractFits = !enabled || (longestSide <= textractMaxDimension && orientation == 1);
+
+                if (rekognitionFits && textractFits) {
+                    ImageContext image = ImageContext.lazy(document, 0);
+                    return new NormalizedDocument(document, document, document, originalWidth, originalHeight,
+                            image, image, image);
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int largestTarget = textractFits ? rekognitionMaxDimension : Math.max(rekognitionMaxDimension, textractMaxDimension);
+                boolean fullResolution = !enabled || forensicAnalyzer.analyzesFullResolution(storedWidth, storedHeight);
+                int subsampling = fullResolution ? 1 : Math.max(1, longestSide / Math.max(1, largestTarget));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                BufferedImage rekognitionImage = rekognitionFits
+                        ? decoded
+                        : scale(decoded, orientation, rekognitionMaxDimension);
+                DocumentBuffer forRekognition = rekognitionFits ? document : encodeJpeg(rekognitionImage);
+                DocumentBuffer forTextract = textractFits
+                        ? document
+                        : encodeJpeg(scale(decoded, orientation, textractMaxDimension));
+
+                if (!rekognitionFits || !textractFits) {
+                    log.debug("Normalized {}x{} image: Rekognition {} bytes, Textract {} bytes (original {} bytes)",
+                            originalWidth, originalHeight, forRekognition.size(), forTextract.size(), document.size());
+                }
+                // Stages needing the upload's own pixels reuse this decode when it was not subsampled
+                ImageContext original = subsampling == 1 ? ImageContext.of(document, decoded) : ImageContext.lazy(document, 0);
+                return new NormalizedDocument(document, forRekognition, forTextract, originalWidth, originalHeight,
+                        ImageContext.of(forRekognition, rekognitionImage),
+                        forTextract == document ? original : ImageContext.lazy(forTextract, 0),
+                        original);
+            } finally {
+                reader.dispose();
+            }
+        } catch (Exception e) {
+            // Let the downstream stages see the original bytes and report the problem themselves
+            log.warn("Image normalization failed, using original document: {}", e.getMessage());
+            return NormalizedDocument.passThrough(document);
+        }
+    }
+
+    /**
+     * Applies the EXIF orientation and downscales so the longest side is at most maxDimension,
+     * flattening any alpha channel onto white
+     */
+    private BufferedImage scale(BufferedImage source, int orientation, int maxDimension) {
+        boolean swapAxes = orientation >= 5;
+        int sourceWidth = swapAxes ? source.getHeight() : source.getWidth();
+        int sourceHeight = swapAxes ? source.getWidth() : source.getHeight();
+        double factor = Math.min(1.0, (double) maxDimension / Math.max(sourceWidth, sourceHeight));
+        int width = Math.max(1, (int) Math.round(sourceWidth * factor));
+        int height = Math.max(1, (int) Math.round(sourceHeight * factor));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            AffineTransform transform = orientationTransform(orientation, width, height);
+            transform.scale((double) (swapAxes ? height : width) / source.getWidth(),
+                    (double) (swapAxes ? width : height) / source.getHeight());
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Maps stored pixels to display orientation for a target of the given (display) size
+     */
+    private AffineTransform orientationTransform(int orientation, int width, int height) {
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { transform.translate(width, 0); transform.scale(-1, 1); }
+            case 3 -> { transform.translate(width, height); transform.rotate(Math.PI); }
+            case 4 -> { transform.translate(0, height); transform.scale(1, -1); }
+            case 5 -> { transform.rotate(Math.PI / 2); transform.scale(1, -1); }
+            case 6 -> { transform.translate(width, 0); transform.rotate(Math.PI / 2); }
+            case 7 -> { transform.translate(width, height); transform.rotate(-Math.PI / 2); transform.scale(1, -1); }
+            case 8 -> { transform.translate(0, height); transform.rotate(-Math.PI / 2); }
+            default -> { }
+        }
+        return transform;
+    }
+
+    private DocumentBuffer encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return DocumentBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Reads the EXIF orientation tag (1-8) from a JPEG's APP1 segment; 1 if absent
+     */
+    static int readExifOrientation(DocumentBuffer document) {
+        ByteBuffer data = document.asReadOnlyByteBuffer();
+        try {
+            if (data.remaining() < 4 || (data.getShort(0) & 0xFFFF) != 0xFFD8) {
+                return 1;
+            }
+            int offset = 2;
+            while (offset + 4 <= data.limit()) {
+                int marker = data.getShort(offset) & 0xFFFF;
+                int length = data.getShort(offset + 2) & 0xFFFF;
+                if (marker == 0xFFDA || (marker & 0xFF00) != 0xFF00) {
+                    return 1; // start of scan or corrupt header: no EXIF before image data
+                }
+                if (marker == 0xFFE1 && length >= 8 && data.getInt(offset + 4) == 0x45786966) { // "Exif"
+                    return readTiffOrientation(data, offset + 10);
+                }
+                offset += 2 + length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated header
+        }
+        return 1;
+    }
+
+    private static int readTiffOrientation(ByteBuffer data, int tiffStart) {
+        ByteBuffer tiff = data.duplicate();
+        tiff.order(data.getShort(tiffStart) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiffStart + tiff.getInt(tiffStart + 4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0112) {
+                int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * A document together with the variants sent to each API
+     */
+    public static class NormalizedDocument {
+        private final DocumentBuffer original;
+        private final DocumentBuffer forRekognition;
+        private final DocumentBuffer forTextract;
+        private final int originalWidth;
+        private final int originalHeight;
+        private final ImageContext image;
+        private final ImageContext textractImage;
+        private final ImageContext originalImage;
+
+        NormalizedDocument(DocumentBuffer original, DocumentBuffer forRekognition, DocumentBuffer forTextract,
+                           int originalWidth, int originalHeight, ImageContext image, ImageContext textractImage,
+                           ImageContext originalImage) {
+            this.original = original;
+            this.forRekognition = forRekognition;
+            this.forTextract = forTextract;
+            this.originalWidth = originalWidth;
+            this.originalHeight = originalHeight;
+            this.image = image;
+            this.textractImage = textractImage;
+            this.originalImage = originalImage;
+        }
+
+        static NormalizedDocument passThrough(DocumentBuffer document) {
+            return new NormalizedDocument(document, document, document, 0, 0, ImageContext.empty(), ImageContext.empty(),
+                    ImageContext.empty());
+        }
+
+        public DocumentBuffer getOriginal() {
+            return original;
+        }
+
+        public DocumentBuffer getForRekognition() {
+            return forRekognition;
+        }
+
+        public DocumentBuffer getForTextract() {
+            return forTextract;
+        }
+
+        /**
+         * @return Width of the uploaded image as displayed, or 0 if it could not be read
+         */
+        public int getOriginalWidth() {
+            return originalWidth;
+        }
+
+        public int getOriginalHeight() {
+            return originalHeight;
+        }
+
+        /**
+         * @return The pixels of {@link #getForRekognition()}, shared by the local image analysis stages;
+         * empty for PDFs and undecodable uploads
+         */
+        public ImageContext getImage() {
+            return image;
+        }
+
+        /**
+         * @return {@link #getForTextract()} for reading full-resolution regions, e.g. OCR crops
+         */
+        public ImageContext getTextractImage() {
+            return textractImage;
+        }
+
+        /**
+         * @return The upload's stored pixels at full resolution, without EXIF orientation applied;
+         * shares the normalizer's decode unless the image was too large for forensic analysis
+         */
+        public ImageContext getOriginalImage() {
+            return originalImage;
+        }
+
+        public boolean hasDimensions() {
+            return originalWidth > 0 && originalHeight > 0;
+        }
+    }
+}
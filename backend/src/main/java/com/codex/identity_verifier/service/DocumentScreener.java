@@ -0,0 +1,374 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.ScreeningResult;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * First tier of the screening cascade: checks that need nothing but the upload's bytes and
+ * the local quality analysis, run before any paid AWS call. The file signature is compared
+ * with the declared type, the EXIF Software tag, PNG text chunks and XMP CreatorTool,
+ * UserComment and edit-history software agents are matched against known editing software, and an image
+ * without contrast or edges is reported as blank.
+ * <p>
+ * Also counts at which tier each verification was decided, for /api/stats/pipeline.
+ */
+@Service
+public class DocumentScreener {
+
+    // Metadata is written before the image data; nothing past this is parsed
+    private static final int MAX_METADATA_SCAN = 256 * 1024;
+    private static final int PDF_HEADER_SCAN = 1024;
+    private static final int MAX_SOFTWARE_LENGTH = 64;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] RIFF = ascii("RIFF");
+    private static final byte[] WEBP = ascii("WEBP");
+    private static final byte[] PDF_HEADER = ascii("%PDF-");
+    private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final Pattern XMP_SOFTWARE = Pattern.compile(
+            "(?:CreatorTool|UserComment|softwareAgent)(?:\\s*=\\s*\"([^\"]*)\"|>(?:\\s*<rdf:Alt>\\s*<rdf:li[^>]*>)?([^<]*)<)");
+
+    /**
+     * Where a verification's risk level was settled
+     */
+    public enum Tier {
+        // File signature, metadata, dimensions, sharpness and blank-page checks
+        LOCAL,
+        // Textract OCR
+        OCR,
+        // Rekognition face, moderation and face-search checks: the full pipeline
+        FULL
+    }
+
+    // Case-insensitive substrings of the metadata software names that count as edited
+    @Value("${verification.screening.editing-software:photoshop,gimp,paint.net,pixelmator,affinity photo,canva,picsart,snapseed,facetune}")
+    private String editingSoftwareKeywords;
+
+    // Standard deviation of luminance below which an image may be blank
+    @Value("${verification.screening.blank-max-contrast:10.0}")
+    private double blankMaxContrast;
+
+    // Share of edge pixels below which an image may be blank
+    @Value("${verification.screening.blank-max-edge-density:0.002}")
+    private double blankMaxEdgeDensity;
+
+    private List<String> keywords;
+
+    private final AtomicLong screened = new AtomicLong();
+    private final AtomicLong formatMismatches = new AtomicLong();
+    private final AtomicLong editedImages = new AtomicLong();
+    private final AtomicLong blankPages = new AtomicLong();
+    private final AtomicLong decidedLocal = new AtomicLong();
+    private final AtomicLong decidedAfterOcr = new AtomicLong();
+    private final AtomicLong fullPipeline = new AtomicLong();
+    private final AtomicLong awsCallsSaved = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        List<String> parsed = new ArrayList<>();
+        for (String keyword : editingSoftwareKeywords.split(",")) {
+            String trimmed = keyword.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                parsed.add(trimmed);
+            }
+        }
+        keywords = List.copyOf(parsed);
+    }
+
+    /**
+     * Runs the local checks
+     * @param document The upload as received, before normalization
+     * @param originalFilename The client-supplied filename
+     * @param contentType The client-supplied content type
+     * @param qualityAnalysisResult Local quality analysis; null when it was skipped
+     * @param imageAnalysisEnabled false for PDFs, which are not checked for blank pages
+     */
+    public ScreeningResult screen(DocumentBuffer document, String originalFilename, String contentType,
+                                  QualityAnalysisResult qualityAnalysisResult, boolean imageAnalysisEnabled) {
+        ByteBuffer data = document.asReadOnlyByteBuffer();
+        String detectedFormat = detectFormat(data);
+        String editingSoftware = null;
+        try {
+            List<String> software = "jpeg".equals(detectedFormat) ? jpegSoftware(data)
+                    : "png".equals(detectedFormat) ? pngSoftware(data)
+                    : List.of();
+            editingSoftware = matchEditingSoftware(software);
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated or corrupt metadata: nothing to match
+        }
+        boolean blankPage = imageAnalysisEnabled && qualityAnalysisResult != null
+                && qualityAnalysisResult.getError() == null
+                && qualityAnalysisResult.getContrast() < blankMaxContrast
+                && qualityAnalysisResult.getEdgeDensity() < blankMaxEdgeDensity;
+
+        ScreeningResult result = ScreeningResult.builder()
+                .detectedFormat(detectedFormat)
+                .declaredFormat(declaredFormat(originalFilename, contentType))
+                .editingSoftware(editingSoftware)
+                .blankPage(blankPage)
+                .build();
+        screened.incrementAndGet();
+        if (result.isFormatMismatch()) {
+            formatMismatches.incrementAndGet();
+        }
+        if (editingSoftware != null) {
+            editedImages.incrementAndGet();
+        }
+        if (blankPage) {
+            blankPages.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Counts where a verification was decided
+     * @param awsCallsSaved Rekognition and Textract calls the skipped tiers would have made
+     */
+    public void recordDecision(Tier tier, int awsCallsSaved) {
+        switch (tier) {
+            case LOCAL -> decidedLocal.incrementAndGet();
+            case OCR -> decidedAfterOcr.incrementAndGet();
+            case FULL -> fullPipeline.incrementAndGet();
+        }
+        this.awsCallsSaved.addAndGet(awsCallsSaved);
+    }
+
+    public Map<String, Object> getStats() {
+        long local = decidedLocal.get();
+        long afterOcr = decidedAfterOcr.get();
+        long decided = local + afterOcr + fullPipeline.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("screened", screened.get());
+        stats.put("formatMismatches", formatMismatches.get());
+        stats.put("editingSoftware", editedImages.get());
+        stats.put("blankPages", blankPages.get());
+        stats.put("decidedLocal", local);
+        stats.put("decidedAfterOcr", afterOcr);
+        stats.put("fullPipeline", fullPipeline.get());
+        // Share of the verifications reaching a tier that were decided there
+        stats.put("localHitRate", decided > 0 ? (double) local / decided : 0.0);
+        stats.put("ocrHitRate", decided - local > 0 ? (double) afterOcr / (decided - local) : 0.0);
+        stats.put("awsCallsSaved", awsCallsSaved.get());
+        return stats;
+    }
+
+    static String detectFormat(ByteBuffer data) {
+        int size = data.limit();
+        if (size >= 3 && (data.get(0) & 0xFF) == 0xFF && (data.get(1) & 0xFF) == 0xD8 && (data.get(2) & 0xFF) == 0xFF) {
+            return "jpeg";
+        }
+        if (startsWith(data, 0, PNG_SIGNATURE)) {
+            return "png";
+        }
+        if (size >= 12 && startsWith(data, 0, RIFF) && startsWith(data, 8, WEBP)) {
+            return "webp";
+        }
+        // The PDF header may follow a few bytes of junk
+        for (int offset = 0; offset + PDF_HEADER.length <= Math.min(size, PDF_HEADER_SCAN); offset++) {
+            if (startsWith(data, offset, PDF_HEADER)) {
+                return "pdf";
+            }
+        }
+        return null;
+    }
+
+    static String declaredFormat(String originalFilename, String contentType) {
+        if (contentType != null) {
+            switch (contentType.toLowerCase(Locale.ROOT).trim()) {
+                case "image/jpeg", "image/jpg" -> {
+                    return "jpeg";
+                }
+                case "image/png" -> {
+                    return "png";
+                }
+                case "image/webp" -> {
+                    return "webp";
+                }
+                case "application/pdf" -> {
+                    return "pdf";
+                }
+                default -> {
+                    // Generic types such as application/octet-stream fall back to the extension
+                }
+            }
+        }
+        if (originalFilename == null || originalFilename.lastIndexOf('.') < 0) {
+            return null;
+        }
+        return switch (originalFilename.substring(originalFilename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT)) {
+            case "jpg", "jpeg" -> "jpeg";
+            case "png" -> "png";
+            case "webp" -> "webp";
+            case "pdf" -> "pdf";
+            default -> null;
+        };
+    }
+
+    private String matchEditingSoftware(List<String> software) {
+        for (String value : software) {
+            String lower = value.toLowerCase(Locale.ROOT);
+            for (String keyword : keywords) {
+                if (lower.contains(keyword)) {
+                    String trimmed = value.trim();
+                    return trimmed.length() > MAX_SOFTWARE_LENGTH ? trimmed.substring(0, MAX_SOFTWARE_LENGTH) : trimmed;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Software named in the EXIF IFD0 Software tag and the XMP packet of a JPEG's APP1 segments
+     */
+    private static List<String> jpegSoftware(ByteBuffer data) {
+        List<String> software = new ArrayList<>();
+        int end = Math.min(data.limit(), MAX_METADATA_SCAN);
+        int offset = 2;
+        while (offset + 4 <= end) {
+            int marker = data.getShort(offset) & 0xFFFF;
+            int length = data.getShort(offset + 2) & 0xFFFF;
+            if (marker == 0xFFDA || (marker & 0xFF00) != 0xFF00) {
+                break; // start of scan or corrupt header: no metadata after this
+            }
+            int payload = offset + 4;
+            int payloadEnd = Math.min(offset + 2 + length, data.limit());
+            if (marker == 0xFFE1 && length >= 8) {
+                if (data.getInt(payload) == 0x45786966) { // "Exif"
+                    // Offsets in the TIFF structure must not reach past this segment
+                    String value = readTiffSoftware(data.slice(payload + 6, payloadEnd - payload - 6), 0);
+                    if (value != null) {
+                        software.add(value);
+                    }
+                } else if (startsWith(data, payload, XMP_HEADER)) {
+                    xmpSoftware(string(data, payload + XMP_HEADER.length, payloadEnd, StandardCharsets.UTF_8), software);
+                }
+            }
+            offset += 2 + length;
+        }
+        return software;
+    }
+
+    private static String readTiffSoftware(ByteBuffer data, int tiffStart) {
+        ByteBuffer tiff = data.duplicate();
+        tiff.order(data.getShort(tiffStart) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiffStart + tiff.getInt(tiffStart + 4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            // Software, ASCII
+            if ((tiff.getShort(entry) & 0xFFFF) == 0x0131 && (tiff.getShort(entry + 2) & 0xFFFF) == 2) {
+                int count = tiff.getInt(entry + 4);
+                if (count <= 0 || count > MAX_METADATA_SCAN) {
+                    return null;
+                }
+                int value = count <= 4 ? entry + 8 : tiffStart + tiff.getInt(entry + 8);
+                return string(data, value, value + count, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Software named in a PNG's tEXt and uncompressed iTXt chunks before the image data
+     */
+    private static List<String> pngSoftware(ByteBuffer data) {
+        List<String> software = new ArrayList<>();
+        int end = Math.min(data.limit(), MAX_METADATA_SCAN);
+        int offset = PNG_SIGNATURE.length;
+        while (offset + 8 <= end) {
+            int length = data.getInt(offset);
+            int type = data.getInt(offset + 4);
+            int chunk = offset + 8;
+            if (length < 0 || type == 0x49444154) { // IDAT
+                break;
+            }
+            int chunkEnd = Math.min(chunk + length, data.limit());
+            if (type == 0x74455874 || type == 0x69545874) { // tEXt, iTXt
+                int keywordEnd = indexOf(data, chunk, chunkEnd, (byte) 0);
+                if (keywordEnd > 0) {
+                    String keyword = string(data, chunk, keywordEnd, StandardCharsets.ISO_8859_1);
+                    String text = type == 0x74455874
+                            ? string(data, keywordEnd + 1, chunkEnd, StandardCharsets.ISO_8859_1)
+                            : iTxtText(data, keywordEnd + 1, chunkEnd);
+                    if (text != null && keyword.equals("Software")) {
+                        software.add(text);
+                    } else if (text != null && keyword.equals("XML:com.adobe.xmp")) {
+                        xmpSoftware(text, software);
+                    }
+                }
+            }
+            offset = chunk + length + 4; // past the CRC
+        }
+        return software;
+    }
+
+    // Compression flag and method, then language tag and translated keyword, each NUL-terminated
+    private static String iTxtText(ByteBuffer data, int from, int end) {
+        if (from + 2 > end || data.get(from) != 0) {
+            return null; // compressed
+        }
+        int language = indexOf(data, from + 2, end, (byte) 0);
+        int translated = language < 0 ? -1 : indexOf(data, language + 1, end, (byte) 0);
+        return translated < 0 ? null : string(data, translated + 1, end, StandardCharsets.UTF_8);
+    }
+
+    private static void xmpSoftware(String xmp, List<String> software) {
+        Matcher matcher = XMP_SOFTWARE.matcher(xmp);
+        while (matcher.find()) {
+            String value = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            if (!value.isBlank()) {
+                software.add(value);
+            }
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer data, int offset, byte[] prefix) {
+        if (offset + prefix.length > data.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer data, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (data.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Up to the first NUL
+    private static String string(ByteBuffer data, int from, int end, Charset charset) {
+        int nul = indexOf(data, from, end, (byte) 0);
+        int to = nul < 0 ? end : nul;
+        byte[] bytes = new byte[Math.max(0, to - from)];
+        data.get(from, bytes);
+        return new String(bytes, charset);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
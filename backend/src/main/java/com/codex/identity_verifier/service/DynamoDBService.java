@@ -1,19 +1,28 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.model.VerificationCacheEntry;
 import com.codex.identity_verifier.model.VerificationRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 @Service
 public class DynamoDBService {
@@ -23,6 +32,12 @@ public class DynamoDBService {
     private final DataProtectionService dataProtectionService;
     @Value("${aws.dynamodb.table-name:IdentityVerifications}")
     private String tableName;
+    @Value("${aws.dynamodb.cache-table-name:verification-result-cache}")
+    private String cacheTableName;
+
+    // DynamoDB BatchWriteItem accepts at most 25 put requests per call
+    private static final int BATCH_WRITE_LIMIT = 25;
+    private static final int BATCH_WRITE_MAX_ATTEMPTS = 5;
 
     @Autowired
     public DynamoDBService(DynamoDbEnhancedClient enhancedClient, DynamoDbClient dynamoDbClient,
@@ -116,6 +131,63 @@ public class DynamoDBService {
         }
     }
 
+    /**
+     * Saves several verification records with BatchWriteItem, retrying unprocessed items
+     * @param verificationRecords The records to save
+     */
+    public void saveVerificationRecords(List<VerificationRecord> verificationRecords) {
+        if (verificationRecords == null || verificationRecords.isEmpty()) {
+            return;
+        }
+        DynamoDbTable<VerificationRecord> verificationTable = enhancedClient
+                .table(tableName, TableSchema.fromBean(VerificationRecord.class));
+
+        Instant now = Instant.now();
+        List<VerificationRecord> pending = new ArrayList<>();
+        for (VerificationRecord verificationRecord : verificationRecords) {
+            if (verificationRecord.getId() == null || verificationRecord.getId().isEmpty()) {
+                verificationRecord.setId(UUID.randomUUID().toString());
+            }
+            verificationRecord.setCreatedAt(now);
+            verificationRecord.setUpdatedAt(now);
+            pending.add(encryptRecord(verificationRecord));
+        }
+
+        for (int start = 0; start < pending.size(); start += BATCH_WRITE_LIMIT) {
+            List<VerificationRecord> chunk = pending.subList(start, Math.min(start + BATCH_WRITE_LIMIT, pending.size()));
+            try {
+                writeBatch(verificationTable, chunk);
+            } catch (ResourceNotFoundException ex) {
+                createTableIfNotExists();
+                writeBatch(verificationTable, chunk);
+            }
+        }
+    }
+
+    private void writeBatch(DynamoDbTable<VerificationRecord> verificationTable, List<VerificationRecord> chunk) {
+        List<VerificationRecord> remaining = chunk;
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            if (attempt > BATCH_WRITE_MAX_ATTEMPTS) {
+                throw new RuntimeException("DynamoDB batch write left " + remaining.size() + " records unprocessed");
+            }
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(50L * (1L << attempt));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted during DynamoDB batch write", e);
+                }
+            }
+            WriteBatch.Builder<VerificationRecord> batch = WriteBatch.builder(VerificationRecord.class)
+                    .mappedTableResource(verificationTable);
+            remaining.forEach(batch::addPutItem);
+            BatchWriteResult result = enhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
+                    .writeBatches(batch.build())
+                    .build());
+            remaining = result.unprocessedPutItemsForTable(verificationTable);
+        }
+    }
+
     /**
      * Retrieves a verification record by ID
      * @param id The ID of the record to retrieve
@@ -180,6 +252,29 @@ public class DynamoDBService {
         }
     }
 
+    /**
+     * Scans the owner and perceptual hash of every verification record that has a hash;
+     * only those two attributes are read, so nothing needs decrypting
+     * @param consumer Receives the owner username and the hash (16 hex digits)
+     */
+    public void forEachPerceptualHash(BiConsumer<String, String> consumer) {
+        DynamoDbTable<VerificationRecord> verificationTable = enhancedClient
+                .table(tableName, TableSchema.fromBean(VerificationRecord.class));
+
+        try {
+            verificationTable.scan(ScanEnhancedRequest.builder()
+                            .attributesToProject("ownerUsername", "perceptualHash")
+                            .filterExpression(Expression.builder()
+                                    .expression("attribute_exists(perceptualHash)")
+                                    .build())
+                            .build())
+                    .items()
+                    .forEach(item -> consumer.accept(item.getOwnerUsername(), item.getPerceptualHash()));
+        } catch (ResourceNotFoundException ex) {
+            // No table yet, so nothing to index
+        }
+    }
+
     /**
      * Updates a verification record in DynamoDB
      * @param verificationRecord The record to update
@@ -206,6 +301,95 @@ public class DynamoDBService {
                 .build());
     }
 
+    /**
+     * Retrieves a cached verification result by cache key
+     * @param cacheKey The cache key (file hash and rules version)
+     * @return The decrypted cache entry or null if absent
+     */
+    public VerificationCacheEntry getVerificationCacheEntry(String cacheKey) {
+        DynamoDbTable<VerificationCacheEntry> cacheTable = enhancedClient
+                .table(cacheTableName, TableSchema.fromBean(VerificationCacheEntry.class));
+
+        try {
+            VerificationCacheEntry entry = cacheTable.getItem(Key.builder().partitionValue(cacheKey).build());
+            if (entry == null) {
+                return null;
+            }
+            entry.setExtractedData(copyExtractedData(entry.getExtractedData(), dataProtectionService::decrypt));
+            return entry;
+        } catch (ResourceNotFoundException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a verification result in the cache table; PII fields are encrypted on a copy
+     * @param entry The cache entry to store
+     */
+    public void saveVerificationCacheEntry(VerificationCacheEntry entry) {
+        DynamoDbTable<VerificationCacheEntry> cacheTable = enhancedClient
+                .table(cacheTableName, TableSchema.fromBean(VerificationCacheEntry.class));
+
+        VerificationCacheEntry stored = entry.toBuilder()
+                .extractedData(copyExtractedData(entry.getExtractedData(), dataProtectionService::encrypt))
+                .build();
+        try {
+            cacheTable.putItem(stored);
+        } catch (ResourceNotFoundException ex) {
+            createCacheTableIfMissing();
+            cacheTable.putItem(stored);
+        }
+    }
+
+    private void createCacheTableIfMissing() {
+        try {
+            dynamoDbClient.describeTable(DescribeTableRequest.builder()
+                    .tableName(cacheTableName)
+                    .build());
+            return;
+        } catch (ResourceNotFoundException ignored) {
+            // Create below.
+        }
+
+        dynamoDbClient.createTable(CreateTableRequest.builder()
+                .tableName(cacheTableName)
+                .keySchema(KeySchemaElement.builder()
+                        .attributeName("cacheKey")
+                        .keyType(KeyType.HASH)
+                        .build())
+                .attributeDefinitions(AttributeDefinition.builder()
+                        .attributeName("cacheKey")
+                        .attributeType(ScalarAttributeType.S)
+                        .build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+        dynamoDbClient.waiter().waitUntilTableExists(
+                DescribeTableRequest.builder().tableName(cacheTableName).build());
+        dynamoDbClient.updateTimeToLive(UpdateTimeToLiveRequest.builder()
+                .tableName(cacheTableName)
+                .timeToLiveSpecification(TimeToLiveSpecification.builder()
+                        .attributeName("expiresAt")
+                        .enabled(true)
+                        .build())
+                .build());
+    }
+
+    private VerificationRecord.ExtractedData copyExtractedData(VerificationRecord.ExtractedData data,
+                                                               UnaryOperator<String> transform) {
+        if (data == null) {
+            return null;
+        }
+        return VerificationRecord.ExtractedData.builder()
+                .name(transform.apply(data.getName()))
+                .idNumber(transform.apply(data.getIdNumber()))
+                .dob(transform.apply(data.getDob()))
+                .address(transform.apply(data.getAddress()))
+                .expiryDate(transform.apply(data.getExpiryDate()))
+                .fieldSources(data.getFieldSources())
+                .fieldConfidences(data.getFieldConfidences())
+                .build();
+    }
+
     private VerificationRecord encryptRecord(VerificationRecord record) {
         if (record == null || record.getExtractedData() == null) {
             return record;
@@ -0,0 +1,273 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flags a face that was already submitted under another account. The largest face in the
+ * document is searched in the face collection while the other stages run; once face
+ * detection has confirmed a face, it is indexed in the background under a pseudonymous
+ * owner tag (a truncated HMAC-SHA256 of the username under a configured key, never the
+ * username itself, so tags cannot be reversed by hashing candidate usernames). Indexing
+ * runs on its own small pool so that it never takes stage threads from verifications.
+ * <p>
+ * Search results are cached per file hash, so the same bytes are not searched twice while
+ * the entry lives. Faces indexed from a file are added to its cached result, so a cached
+ * search still sees them.
+ */
+@Service
+public class FaceSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(FaceSearchService.class);
+
+    // A face matching one the owner already indexed this closely is not indexed again
+    private static final double SAME_FACE_SIMILARITY = 99.0;
+    private static final int OWNER_TAG_LENGTH = 32;
+
+    private final RekognitionService rekognitionService;
+
+    @Value("${verification.face-search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${verification.face-search.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${verification.face-search.cache.ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    @Value("${verification.face-search.index-threads:2}")
+    private int indexThreads;
+
+    @Value("${verification.face-search.index-queue-capacity:256}")
+    private int indexQueueCapacity;
+
+    // Faces indexed under one key are not recognised as the owner's own under another
+    @Value("${verification.face-search.owner-tag-key:change-me-for-production}")
+    private String ownerTagKey;
+
+    private SecretKeySpec ownerTagKeySpec;
+    private ThreadPoolExecutor indexExecutor;
+
+    private final Map<String, CachedSearch> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong flagged = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong indexSkipped = new AtomicLong();
+
+    @Autowired
+    public FaceSearchService(RekognitionService rekognitionService) {
+        this.rekognitionService = rekognitionService;
+    }
+
+    @PostConstruct
+    void init() {
+        this.ownerTagKeySpec = new SecretKeySpec(ownerTagKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        AtomicInteger threadCounter = new AtomicInteger();
+        int threads = Math.max(1, indexThreads);
+        this.indexExecutor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, indexQueueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "face-index-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.indexExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        indexExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Searches the face collection with the document's largest face
+     * @param document The image sent to Rekognition
+     * @param fileHash SHA-256 of the upload, the cache key
+     * @return Matching collection faces; {@link FaceSearchResult#getError()} is set when the
+     * search failed, except for deadline, API-call timeout and limiter failures, which are
+     * rethrown so that the stage is reported as degraded or overloaded
+     */
+    public FaceSearchResult search(DocumentBuffer document, String fileHash) {
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CachedSearch cached = cache.get(fileHash);
+            if (cached != null) {
+                if (cached.expiresAtNanos - now > 0) {
+                    cacheHits.incrementAndGet();
+                    return cached.result;
+                }
+                cache.remove(fileHash);
+            }
+        }
+
+        FaceSearchResult result;
+        try {
+            result = rekognitionService.searchFaces(document);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            if (RekognitionService.isBudgetOrLimitFailure(e)) {
+                throw e;
+            }
+            log.warn("Face search failed for {}: {}", fileHash, e.getMessage());
+            return FaceSearchResult.builder()
+                    .matches(List.of())
+                    .error("Face search failed: " + e.getMessage())
+                    .build();
+        }
+        searches.incrementAndGet();
+        synchronized (cache) {
+            cache.put(fileHash, new CachedSearch(result, now + TimeUnit.MINUTES.toNanos(cacheTtlMinutes)));
+        }
+        return result;
+    }
+
+    /**
+     * @return Matches indexed from other owners' submissions, most similar first; a non-empty
+     * result is counted as flagged in the stats
+     */
+    public List<FaceSearchResult.FaceMatch> otherOwnerMatches(FaceSearchResult result, String ownerUsername) {
+        if (result == null || result.getMatches() == null || result.getMatches().isEmpty()) {
+            return List.of();
+        }
+        String ownerTag = ownerTag(ownerUsername);
+        List<FaceSearchResult.FaceMatch> matches = result.getMatches().stream()
+                .filter(match -> !ownerTag.equals(match.getExternalImageId()))
+                .sorted((a, b) -> Double.compare(b.getSimilarity(), a.getSimilarity()))
+                .toList();
+        if (!matches.isEmpty()) {
+            flagged.incrementAndGet();
+        }
+        return matches;
+    }
+
+    /**
+     * Indexes the document's face on the index pool without waiting for it. Skipped when
+     * the search found no face, failed, or already found this owner's face, and dropped
+     * when the index pool's queue is full.
+     */
+    public void indexInBackground(DocumentBuffer document, String ownerUsername, String fileHash,
+                                  FaceSearchResult searchResult) {
+        if (searchResult == null || !searchResult.isFaceSearched() || searchResult.getError() != null) {
+            return;
+        }
+        String ownerTag = ownerTag(ownerUsername);
+        boolean alreadyIndexed = searchResult.getMatches().stream()
+                .anyMatch(match -> ownerTag.equals(match.getExternalImageId())
+                        && match.getSimilarity() >= SAME_FACE_SIMILARITY);
+        if (alreadyIndexed) {
+            indexSkipped.incrementAndGet();
+            return;
+        }
+        try {
+            indexExecutor.execute(() -> {
+                try {
+                    String faceId = rekognitionService.indexFace(document, ownerTag);
+                    if (faceId != null) {
+                        indexed.incrementAndGet();
+                        rememberIndexedFace(fileHash, new FaceSearchResult.FaceMatch(faceId, ownerTag, 100.0));
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("Face indexing failed for {}: {}", fileHash, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failures.incrementAndGet();
+            log.warn("Face indexing not queued for {}: index pool is saturated", fileHash);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("searches", searches.get());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheSize", size);
+        stats.put("failures", failures.get());
+        stats.put("flaggedOtherOwner", flagged.get());
+        stats.put("indexed", indexed.get());
+        stats.put("indexSkipped", indexSkipped.get());
+        return stats;
+    }
+
+    // A later search of the same bytes served from the cache must see the face indexed from them
+    private void rememberIndexedFace(String fileHash, FaceSearchResult.FaceMatch match) {
+        synchronized (cache) {
+            CachedSearch cached = cache.get(fileHash);
+            if (cached == null) {
+                return;
+            }
+            List<FaceSearchResult.FaceMatch> matches = new ArrayList<>(cached.result.getMatches());
+            matches.add(match);
+            cache.put(fileHash, new CachedSearch(FaceSearchResult.builder()
+                    .faceSearched(true)
+                    .matches(List.copyOf(matches))
+                    .build(), cached.expiresAtNanos));
+        }
+    }
+
+    String ownerTag(String ownerUsername) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(ownerTagKeySpec);
+            byte[] hash = mac.doFinal(String.valueOf(ownerUsername).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash).substring(0, OWNER_TAG_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static final class CachedSearch {
+        private final FaceSearchResult result;
+        private final long expiresAtNanos;
+
+        private CachedSearch(FaceSearchResult result, long expiresAtNanos) {
+            this.result = result;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
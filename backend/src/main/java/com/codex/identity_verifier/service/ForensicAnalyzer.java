@@ -0,0 +1,907 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.ForensicAnalysisResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.ImageContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Local image forensics on the full-resolution luminance of the upload, in three checks:
+ * <ul>
+ *   <li>Error-level analysis: every 8x8 block on the JPEG grid is transformed and
+ *   re-quantized at a fixed quality; regions edited after the last save lose less (or
+ *   more) to re-quantization than the rest of the image, relative to their texture.</li>
+ *   <li>Double compression: histograms of low-frequency DCT coefficients of a re-saved
+ *   JPEG show periodic gaps; tiles whose coefficients keep landing in those gaps were not
+ *   part of the first compression, e.g. pasted content.</li>
+ *   <li>Copy-move: overlapping blocks of a downsampled plane are hashed on coarse
+ *   features and sorted; many block pairs sharing one displacement mean a duplicated
+ *   region.</li>
+ * </ul>
+ * Work is split into rows of heatmap tiles on a dedicated fork/join pool, over primitive
+ * arrays only; the transform loops are written as contiguous multiply-adds the JIT can
+ * vectorize. The workers stop once the request deadline passes or the stage thread is
+ * interrupted by its timeout, which they would not otherwise see. Scores are heuristics:
+ * they raise risk, they do not prove an edit.
+ */
+@Service
+public class ForensicAnalyzer {
+
+    private static final int BLOCK = 8;
+    // Heatmap tiles are 8x8 JPEG blocks
+    private static final int TILE_BLOCKS = 8;
+    private static final int TILE = BLOCK * TILE_BLOCKS;
+    private static final double SUSPICIOUS_TILE_SCORE = 0.5;
+
+    // Error-level analysis re-quantizes with the standard luminance table at this quality
+    private static final int ELA_QUALITY = 90;
+    // Mean AC energy per block below which a tile is too flat to compare (std dev of 4 grey levels)
+    private static final float ELA_MIN_TILE_TEXTURE = 64f * 16f;
+    private static final double ELA_OUTLIER_Z = 4.0;
+    private static final int ELA_MIN_TILES = 8;
+
+    // Low-frequency AC coefficients (row * 8 + column) whose histograms reveal double quantization
+    private static final int[] DQ_MODES = {1, 8, 9, 2, 16};
+    private static final int DQ_BINS = 24;
+    private static final int DQ_MIN_SAMPLES = 500;
+    private static final double DQ_MIN_SCORE = 0.05;
+    private static final int DQ_MIN_TILE_SAMPLES = 16;
+    // Mean log-likelihood ratio per coefficient at which a tile scores 1
+    private static final double DQ_TILE_LIKELIHOOD_RATIO = 1.0;
+
+    // Copy-move runs on a plane downsampled to about this size, over 8x8 blocks at every pixel
+    private static final int COPY_MOVE_MAX_DIMENSION = 1024;
+    private static final int COPY_MOVE_MIN_VARIANCE = 50;
+    // Nearby blocks along one edge or gradient look alike
+    private static final int COPY_MOVE_MIN_SHIFT = 32;
+    // Longer runs of identical features are flat or repetitive content, not a copy
+    private static final int COPY_MOVE_MAX_RUN = 256;
+    // A displacement needs this many block pairs, and at least one per 500 block positions,
+    // so that repeated printed words do not count as copies
+    private static final int COPY_MOVE_MIN_PAIRS = 48;
+    private static final int COPY_MOVE_POSITIONS_PER_PAIR = 500;
+    // More duplicated displacements than this is a periodic pattern (guilloche, halftone)
+    private static final int COPY_MOVE_MAX_REGIONS = 4;
+    // Block pairs kept from one run of identical features, and from all runs (32 MB). Flat or
+    // repetitive texture can fill every run; past the total the check is skipped
+    private static final int COPY_MOVE_MAX_RUN_PAIRS = 256;
+    private static final int COPY_MOVE_MAX_PAIRS = 1 << 22;
+
+    // Orthonormal 8-point DCT-II, DCT[u * 8 + x], and its transpose
+    private static final float[] DCT = dctMatrix();
+    private static final float[] DCT_TRANSPOSED = transpose(DCT);
+    private static final float[] ELA_STEPS = quantizationTable(ELA_QUALITY);
+    // Mean squared rounding error of a coefficient much larger than its step
+    private static final float[] ELA_ROUNDING_ERRORS = roundingErrors(ELA_STEPS);
+    // Natural (row-major) index of each coefficient in JPEG zig-zag order
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+
+    @Value("${verification.forensics.enabled:true}")
+    private boolean enabled;
+
+    // Fork/join workers: 0 = one per available core
+    @Value("${verification.forensics.parallelism:0}")
+    private int parallelism;
+
+    @Value("${verification.forensics.tamper-threshold:0.6}")
+    private double tamperThreshold;
+
+    // Larger uploads are not analyzed. The full-resolution raster and luminance take about
+    // 4 bytes per pixel while a request is analyzed: 50 MB for a 12 MP phone photo (4032 x
+    // 3024). With 32 requests in flight a 24 MP limit would pin several GB of heap
+    @Value("${verification.forensics.max-megapixels:12.5}")
+    private double maxMegapixels;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    void start() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("forensics-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return True when an image of this size is analyzed, from its full-resolution pixels
+     */
+    public boolean analyzesFullResolution(int width, int height) {
+        return enabled && (long) width * height <= maxMegapixels * 1_000_000;
+    }
+
+    /**
+     * Analyzes a document image
+     * @param document The normalized document; the upload is analyzed at full resolution
+     * because resampling erases compression traces
+     * @return Forensic indicators; {@link ForensicAnalysisResult#getError()} is set when the
+     * image cannot be analyzed
+     */
+    public ForensicAnalysisResult analyze(DocumentNormalizer.NormalizedDocument document) {
+        if (!enabled) {
+            return ForensicAnalysisResult.NONE;
+        }
+        if (document.hasDimensions()
+                && !analyzesFullResolution(document.getOriginalWidth(), document.getOriginalHeight())) {
+            return failure("Image larger than " + maxMegapixels + " megapixels is not analyzed");
+        }
+        ImageContext image = document.getOriginalImage();
+        byte[] luminance = image.getLuminance();
+        if (luminance == null) {
+            return failure("Unsupported image format for forensic analysis");
+        }
+        return analyze(luminance, image.getWidth(), image.getHeight(),
+                readLuminanceQuantization(document.getOriginal()), Cancellation.ofCurrentThread());
+    }
+
+    /**
+     * @param luminance Row-major 8-bit luminance, read with {@code & 0xFF}
+     * @param quantization The luminance quantization steps the image was last saved with, in
+     * row-major order; null if it is not a JPEG, which skips the double compression check
+     */
+    public ForensicAnalysisResult analyze(byte[] luminance, int width, int height, int[] quantization) {
+        return analyze(luminance, width, height, quantization, Cancellation.ofCurrentThread());
+    }
+
+    private ForensicAnalysisResult analyze(byte[] luminance, int width, int height, int[] quantization,
+                                           Cancellation cancellation) {
+        int blocksX = width / BLOCK;
+        int blocksY = height / BLOCK;
+        if (blocksX < TILE_BLOCKS || blocksY < TILE_BLOCKS) {
+            return failure("Image too small for forensic analysis");
+        }
+        int columns = (blocksX + TILE_BLOCKS - 1) / TILE_BLOCKS;
+        int rows = (blocksY + TILE_BLOCKS - 1) / TILE_BLOCKS;
+
+        BlockData blocks = new BlockData(blocksX, blocksY);
+        forEach(cancellation, rows, tileRow -> transformBlocks(luminance, width, blocks,
+                tileRow * TILE_BLOCKS, Math.min(blocksY, (tileRow + 1) * TILE_BLOCKS)));
+
+        double[] scores = new double[columns * rows];
+        double elaOutlierFraction = errorLevels(blocks, columns, rows, scores);
+        DoubleQuantization doubleQuantization = quantization != null
+                ? doubleQuantization(blocks, quantization, columns, rows, scores, cancellation)
+                : DoubleQuantization.NONE;
+        CopyMove copyMove = copyMove(luminance, width, height, columns, scores, cancellation);
+
+        double elaProbability = 1.0 - Math.exp(-elaOutlierFraction / 0.03);
+        double doubleCompressionProbability = doubleQuantization.detected
+                ? 1.0 - Math.exp(-doubleQuantization.inconsistency / 0.03)
+                : 0.0;
+        double copyMoveProbability = copyMove.regions > 0 ? Math.min(1.0, 0.5 + copyMove.fraction * 10.0) : 0.0;
+        double probability = 1.0 - (1.0 - elaProbability) * (1.0 - doubleCompressionProbability)
+                * (1.0 - copyMoveProbability);
+
+        return ForensicAnalysisResult.builder()
+                .tampered(probability >= tamperThreshold)
+                .tamperProbability(probability)
+                .elaOutlierFraction(elaOutlierFraction)
+                .doubleCompressed(doubleQuantization.detected)
+                .doubleCompressionInconsistency(doubleQuantization.inconsistency)
+                .copyMoveFraction(copyMove.fraction)
+                .copyMoveRegions(copyMove.regions)
+                .heatmap(heatmap(scores, columns, rows, width, height))
+                .build();
+    }
+
+    /**
+     * Reads the luminance quantization table (table 0) from a JPEG's DQT segments
+     * @return The 64 steps in row-major order, or null if the document is not a JPEG
+     */
+    static int[] readLuminanceQuantization(DocumentBuffer document) {
+        ByteBuffer data = document.asReadOnlyByteBuffer();
+        try {
+            if (data.remaining() < 4 || (data.getShort(0) & 0xFFFF) != 0xFFD8) {
+                return null;
+            }
+            int offset = 2;
+            while (offset + 4 <= data.limit()) {
+                int marker = data.getShort(offset) & 0xFFFF;
+                int length = data.getShort(offset + 2) & 0xFFFF;
+                if (marker == 0xFFDA || (marker & 0xFF00) != 0xFF00) {
+                    return null; // start of scan or corrupt header
+                }
+                if (marker == 0xFFDB) {
+                    int position = offset + 4;
+                    int end = offset + 2 + length;
+                    while (position < end) {
+                        int info = data.get(position++) & 0xFF;
+                        boolean sixteenBit = (info >> 4) != 0;
+                        if ((info & 0x0F) == 0) {
+                            int[] steps = new int[64];
+                            for (int i = 0; i < 64; i++) {
+                                steps[ZIGZAG[i]] = sixteenBit
+                                        ? data.getShort(position + 2 * i) & 0xFFFF
+                                        : data.get(position + i) & 0xFF;
+                            }
+                            return steps;
+                        }
+                        position += sixteenBit ? 128 : 64;
+                    }
+                }
+                offset += 2 + length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Truncated header
+        }
+        return null;
+    }
+
+    private static ForensicAnalysisResult failure(String error) {
+        return ForensicAnalysisResult.builder()
+                .heatmap(ForensicAnalysisResult.Heatmap.EMPTY)
+                .error(error)
+                .build();
+    }
+
+    /**
+     * Transforms block rows [fromRow, toRow) and records each block's re-quantization error,
+     * the error expected for content never quantized at that quality, its AC energy and the
+     * coefficients used for double quantization
+     */
+    private static void transformBlocks(byte[] luminance, int width, BlockData blocks, int fromRow, int toRow) {
+        float[] pixels = new float[64];
+        float[] partial = new float[64];
+        float[] coefficients = new float[64];
+        for (int by = fromRow; by < toRow; by++) {
+            for (int bx = 0; bx < blocks.blocksX; bx++) {
+                int origin = by * BLOCK * width + bx * BLOCK;
+                for (int y = 0; y < BLOCK; y++) {
+                    int row = origin + y * width;
+                    for (int x = 0; x < BLOCK; x++) {
+                        pixels[y * BLOCK + x] = (luminance[row + x] & 0xFF) - 128;
+                    }
+                }
+                dct(pixels, partial, coefficients);
+
+                // By Parseval, the coefficient-domain error equals the pixel-domain error
+                float error = 0f;
+                float expected = 0f;
+                float acEnergy = 0f;
+                for (int i = 0; i < 64; i++) {
+                    float coefficient = coefficients[i];
+                    float step = ELA_STEPS[i];
+                    float residual = coefficient - step * Math.round(coefficient / step);
+                    float energy = coefficient * coefficient;
+                    error += residual * residual;
+                    expected += Math.min(energy, ELA_ROUNDING_ERRORS[i]);
+                    acEnergy += energy;
+                }
+                int index = by * blocks.blocksX + bx;
+                blocks.elaError[index] = error;
+                blocks.expectedError[index] = expected;
+                blocks.acEnergy[index] = acEnergy - coefficients[0] * coefficients[0];
+                for (int m = 0; m < DQ_MODES.length; m++) {
+                    blocks.modes[m][index] = coefficients[DQ_MODES[m]];
+                }
+            }
+        }
+    }
+
+    /**
+     * 2-D DCT as two passes of contiguous multiply-adds: partial = DCT * pixels, then
+     * coefficients = partial * DCT^T
+     */
+    private static void dct(float[] pixels, float[] partial, float[] coefficients) {
+        Arrays.fill(partial, 0f);
+        for (int u = 0; u < BLOCK; u++) {
+            int out = u * BLOCK;
+            for (int y = 0; y < BLOCK; y++) {
+                float weight = DCT[out + y];
+                int in = y * BLOCK;
+                for (int x = 0; x < BLOCK; x++) {
+                    partial[out + x] += weight * pixels[in + x];
+                }
+            }
+        }
+        Arrays.fill(coefficients, 0f);
+        for (int u = 0; u < BLOCK; u++) {
+            int out = u * BLOCK;
+            for (int x = 0; x < BLOCK; x++) {
+                float weight = partial[out + x];
+                int in = x * BLOCK;
+                for (int v = 0; v < BLOCK; v++) {
+                    coefficients[out + v] += weight * DCT_TRANSPOSED[in + v];
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores each textured tile by how far its error level, relative to what content never
+     * quantized at the ELA quality would lose, lies above the image's median, in robust
+     * standard deviations. An authentic JPEG loses about the same share everywhere.
+     * @return Share of textured tiles that are outliers
+     */
+    private static double errorLevels(BlockData blocks, int columns, int rows, double[] scores) {
+        double[] levels = new double[columns * rows];
+        boolean[] textured = new boolean[columns * rows];
+        int texturedCount = 0;
+        for (int tile = 0; tile < levels.length; tile++) {
+            double error = 0.0;
+            double expected = 0.0;
+            double energy = 0.0;
+            int count = 0;
+            int firstX = (tile % columns) * TILE_BLOCKS;
+            int firstY = (tile / columns) * TILE_BLOCKS;
+            for (int by = firstY; by < Math.min(blocks.blocksY, firstY + TILE_BLOCKS); by++) {
+                for (int bx = firstX; bx < Math.min(blocks.blocksX, firstX + TILE_BLOCKS); bx++) {
+                    int index = by * blocks.blocksX + bx;
+                    error += blocks.elaError[index];
+                    expected += blocks.expectedError[index];
+                    energy += blocks.acEnergy[index];
+                    count++;
+                }
+            }
+            if (energy >= (double) ELA_MIN_TILE_TEXTURE * count) {
+                levels[tile] = Math.sqrt(error / expected);
+                textured[tile] = true;
+                texturedCount++;
+            }
+        }
+        if (texturedCount < ELA_MIN_TILES) {
+            return 0.0;
+        }
+
+        double[] sorted = new double[texturedCount];
+        int n = 0;
+        for (int tile = 0; tile < levels.length; tile++) {
+            if (textured[tile]) {
+                sorted[n++] = levels[tile];
+            }
+        }
+        Arrays.sort(sorted);
+        double median = sorted[texturedCount / 2];
+        for (int i = 0; i < texturedCount; i++) {
+            sorted[i] = Math.abs(sorted[i] - median);
+        }
+        Arrays.sort(sorted);
+        // Floor the spread so that near-identical tiles do not turn noise into outliers
+        double spread = 1.4826 * sorted[texturedCount / 2] + 0.02 * median + 1e-6;
+
+        int outliers = 0;
+        for (int tile = 0; tile < levels.length; tile++) {
+            if (textured[tile]) {
+                double z = (levels[tile] - median) / spread;
+                scores[tile] = Math.max(scores[tile], clamp((z - ELA_OUTLIER_Z / 2) / ELA_OUTLIER_Z));
+                if (z >= ELA_OUTLIER_Z) {
+                    outliers++;
+                }
+            }
+        }
+        return (double) outliers / texturedCount;
+    }
+
+    /**
+     * Detects periodic gaps and peaks in the histograms of the values the last compression
+     * stored, which appear when an earlier compression used different steps. Each tile is
+     * then scored by the log-likelihood of its coefficients under a smoothed, singly
+     * quantized histogram against the image's own: content that skipped the first
+     * compression lands in the gaps and scores high.
+     * @param quantization The steps of the last compression, from the JPEG header
+     */
+    private DoubleQuantization doubleQuantization(BlockData blocks, int[] quantization, int columns, int rows,
+                                                  double[] scores, Cancellation cancellation) {
+        int blockCount = blocks.blocksX * blocks.blocksY;
+        int[] steps = new int[DQ_MODES.length];
+        float[][] likelihoodRatios = new float[DQ_MODES.length][];
+        double[] modeScores = new double[DQ_MODES.length];
+        int detectedModes = 0;
+        for (int m = 0; m < DQ_MODES.length; m++) {
+            float[] coefficients = blocks.modes[m];
+            int step = Math.max(1, quantization[DQ_MODES[m]]);
+            int[] bins = new int[DQ_BINS + 3];
+            long nonZero = 0;
+            for (int i = 0; i < blockCount; i++) {
+                int k = Math.abs(Math.round(coefficients[i] / step));
+                if (k < bins.length) {
+                    bins[k]++;
+                    nonZero += k > 0 ? 1 : 0;
+                }
+            }
+            if (nonZero < DQ_MIN_SAMPLES) {
+                continue;
+            }
+            steps[m] = step;
+            modeScores[detectedModes++] = nonMonotonicity(bins);
+            likelihoodRatios[m] = new float[DQ_BINS + 1];
+            for (int k = 1; k <= DQ_BINS; k++) {
+                // Bin 0 holds most coefficients and is left out of the smoothing window
+                int from = Math.max(1, k - 2);
+                int to = Math.min(bins.length - 1, k + 2);
+                double smoothed = 0.0;
+                for (int j = from; j <= to; j++) {
+                    smoothed += bins[j];
+                }
+                smoothed /= to - from + 1;
+                likelihoodRatios[m][k] = (float) Math.log((smoothed + 1.0) / (bins[k] + 1.0));
+            }
+        }
+        if (detectedModes < 2) {
+            return DoubleQuantization.NONE;
+        }
+        double[] detectedScores = Arrays.copyOf(modeScores, detectedModes);
+        Arrays.sort(detectedScores);
+        if (detectedScores[detectedModes / 2] < DQ_MIN_SCORE) {
+            return DoubleQuantization.NONE;
+        }
+
+        double[] likelihoods = new double[columns * rows];
+        int[] samples = new int[columns * rows];
+        forEach(cancellation, rows, tileRow -> {
+            for (int by = tileRow * TILE_BLOCKS; by < Math.min(blocks.blocksY, (tileRow + 1) * TILE_BLOCKS); by++) {
+                for (int bx = 0; bx < blocks.blocksX; bx++) {
+                    int tile = tileRow * columns + bx / TILE_BLOCKS;
+                    int index = by * blocks.blocksX + bx;
+                    for (int m = 0; m < DQ_MODES.length; m++) {
+                        if (likelihoodRatios[m] == null) {
+                            continue;
+                        }
+                        int k = Math.abs(Math.round(blocks.modes[m][index] / steps[m]));
+                        if (k >= 1 && k <= DQ_BINS) {
+                            likelihoods[tile] += likelihoodRatios[m][k];
+                            samples[tile]++;
+                        }
+                    }
+                }
+            }
+        });
+
+        int scored = 0;
+        int inconsistent = 0;
+        for (int tile = 0; tile < likelihoods.length; tile++) {
+            if (samples[tile] >= DQ_MIN_TILE_SAMPLES) {
+                double score = clamp(likelihoods[tile] / samples[tile] / DQ_TILE_LIKELIHOOD_RATIO);
+                scores[tile] = Math.max(scores[tile], score);
+                scored++;
+                if (score >= SUSPICIOUS_TILE_SCORE) {
+                    inconsistent++;
+                }
+            }
+        }
+        return new DoubleQuantization(true, scored > 0 ? (double) inconsistent / scored : 0.0);
+    }
+
+    /**
+     * A singly quantized coefficient histogram decreases away from zero; double quantization
+     * makes it rise again periodically
+     * @return Share of the histogram in rises beyond sampling noise
+     */
+    private static double nonMonotonicity(int[] bins) {
+        double rises = 0.0;
+        long total = 0;
+        for (int k = 1; k < bins.length; k++) {
+            total += bins[k];
+        }
+        for (int k = 1; k < bins.length - 1; k++) {
+            double rise = bins[k + 1] - bins[k] - 2.0 * Math.sqrt(bins[k] + bins[k + 1]);
+            if (rise > 0) {
+                rises += rise;
+            }
+        }
+        return total > 0 ? rises / total : 0.0;
+    }
+
+    /**
+     * Finds displacements shared by many pairs of identical-looking blocks and marks the
+     * tiles covered by those blocks
+     */
+    private CopyMove copyMove(byte[] luminance, int width, int height, int columns, double[] scores,
+                              Cancellation cancellation) {
+        int factor = Math.max(1, (Math.max(width, height) + COPY_MOVE_MAX_DIMENSION - 1) / COPY_MOVE_MAX_DIMENSION);
+        int planeWidth = width / factor;
+        int planeHeight = height / factor;
+        int positionsX = planeWidth - BLOCK + 1;
+        int positionsY = planeHeight - BLOCK + 1;
+        if (positionsX <= COPY_MOVE_MIN_SHIFT || positionsY <= COPY_MOVE_MIN_SHIFT) {
+            return CopyMove.NONE;
+        }
+
+        // Summed-area tables of the downsampled plane and of its squares
+        int stride = planeWidth + 1;
+        int[] sums = new int[stride * (planeHeight + 1)];
+        long[] squares = new long[stride * (planeHeight + 1)];
+        int[] plane = downsample(luminance, width, factor, planeWidth, planeHeight, cancellation);
+        for (int y = 0; y < planeHeight; y++) {
+            int rowSum = 0;
+            long rowSquares = 0;
+            for (int x = 0; x < planeWidth; x++) {
+                int value = plane[y * planeWidth + x];
+                rowSum += value;
+                rowSquares += value * value;
+                int index = (y + 1) * stride + x + 1;
+                sums[index] = sums[index - stride] + rowSum;
+                squares[index] = squares[index - stride] + rowSquares;
+            }
+        }
+
+        // One entry per textured block: its feature key above its position
+        long[] entries = new long[positionsX * positionsY];
+        forEach(cancellation, positionsY, y -> {
+            for (int x = 0; x < positionsX; x++) {
+                entries[y * positionsX + x] = blockEntry(sums, squares, stride, x, y, planeWidth);
+            }
+        });
+        Arrays.parallelSort(entries);
+        int textured = 0;
+        while (textured < entries.length && entries[textured] != Long.MAX_VALUE) {
+            textured++;
+        }
+        if (textured == 0) {
+            return CopyMove.NONE;
+        }
+
+        long[] pairs = new long[1024];
+        int pairCount = 0;
+        int runStart = 0;
+        for (int i = 1; i <= textured; i++) {
+            if (i < textured && (entries[i] >>> 32) == (entries[runStart] >>> 32)) {
+                continue;
+            }
+            if (i - runStart > 1 && i - runStart <= COPY_MOVE_MAX_RUN) {
+                cancellation.check();
+                int runPairs = 0;
+                for (int a = runStart; a < i && runPairs < COPY_MOVE_MAX_RUN_PAIRS; a++) {
+                    for (int b = a + 1; b < i && runPairs < COPY_MOVE_MAX_RUN_PAIRS; b++) {
+                        int first = (int) entries[a];
+                        int second = (int) entries[b];
+                        int dx = second % planeWidth - first % planeWidth;
+                        int dy = second / planeWidth - first / planeWidth;
+                        if (dx * dx + dy * dy < COPY_MOVE_MIN_SHIFT * COPY_MOVE_MIN_SHIFT) {
+                            continue;
+                        }
+                        if (dy < 0 || (dy == 0 && dx < 0)) {
+                            dx = -dx;
+                            dy = -dy;
+                            first = second;
+                        }
+                        if (pairCount == COPY_MOVE_MAX_PAIRS) {
+                            return CopyMove.NONE;
+                        }
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, Math.min(COPY_MOVE_MAX_PAIRS, pairs.length * 2));
+                        }
+                        long shift = (long) dy * (2 * planeWidth + 1) + dx + planeWidth;
+                        pairs[pairCount++] = (shift << 32) | first;
+                        runPairs++;
+                    }
+                }
+            }
+            runStart = i;
+        }
+        if (pairCount == 0) {
+            return CopyMove.NONE;
+        }
+        Arrays.parallelSort(pairs, 0, pairCount);
+
+        // Displacements shared by enough pairs to be a copied region
+        int minPairs = Math.max(COPY_MOVE_MIN_PAIRS, entries.length / COPY_MOVE_POSITIONS_PER_PAIR);
+        int regions = 0;
+        int[] regionStarts = new int[COPY_MOVE_MAX_REGIONS + 1];
+        int[] regionEnds = new int[COPY_MOVE_MAX_REGIONS + 1];
+        runStart = 0;
+        for (int i = 1; i <= pairCount; i++) {
+            if (i < pairCount && (pairs[i] >>> 32) == (pairs[runStart] >>> 32)) {
+                continue;
+            }
+            if (i - runStart >= minPairs) {
+                if (regions == regionStarts.length) {
+                    return CopyMove.NONE;
+                }
+                regionStarts[regions] = runStart;
+                regionEnds[regions] = i;
+                regions++;
+            }
+            runStart = i;
+        }
+        if (regions == 0) {
+            return CopyMove.NONE;
+        }
+
+        boolean[] marked = new boolean[planeWidth * planeHeight];
+        int markedCount = 0;
+        for (int r = 0; r < regions; r++) {
+            for (int p = regionStarts[r]; p < regionEnds[r]; p++) {
+                long shift = pairs[p] >>> 32;
+                int dy = (int) (shift / (2 * planeWidth + 1));
+                int dx = (int) (shift % (2 * planeWidth + 1)) - planeWidth;
+                int first = (int) pairs[p];
+                int second = first + dy * planeWidth + dx;
+                for (int position : new int[]{first, second}) {
+                    if (!marked[position]) {
+                        marked[position] = true;
+                        markedCount++;
+                        int centerX = (position % planeWidth + BLOCK / 2) * factor;
+                        int centerY = (position / planeWidth + BLOCK / 2) * factor;
+                        int tile = Math.min(centerY / TILE, scores.length / columns - 1) * columns
+                                + Math.min(centerX / TILE, columns - 1);
+                        scores[tile] = 1.0;
+                    }
+                }
+            }
+        }
+        return new CopyMove(regions, (double) markedCount / textured);
+    }
+
+    /**
+     * Box-averages the luminance by an integer factor
+     */
+    private int[] downsample(byte[] luminance, int width, int factor, int planeWidth, int planeHeight,
+                             Cancellation cancellation) {
+        int[] plane = new int[planeWidth * planeHeight];
+        int area = factor * factor;
+        forEach(cancellation, planeHeight, y -> {
+            for (int x = 0; x < planeWidth; x++) {
+                int sum = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    int row = (y * factor + dy) * width + x * factor;
+                    for (int dx = 0; dx < factor; dx++) {
+                        sum += luminance[row + dx] & 0xFF;
+                    }
+                }
+                plane[y * planeWidth + x] = sum / area;
+            }
+        });
+        return plane;
+    }
+
+    /**
+     * Quantized mean and quadrant gradients of the 8x8 block at (x, y), packed above
+     * the block position
+     * @return The entry, or Long.MAX_VALUE for flat blocks, which sort last
+     */
+    private static long blockEntry(int[] sums, long[] squares, int stride, int x, int y, int planeWidth) {
+        long sumSquares = rectangle(squares, stride, x, y, BLOCK);
+        int topLeft = rectangle(sums, stride, x, y, BLOCK / 2);
+        int topRight = rectangle(sums, stride, x + BLOCK / 2, y, BLOCK / 2);
+        int bottomLeft = rectangle(sums, stride, x, y + BLOCK / 2, BLOCK / 2);
+        int bottomRight = rectangle(sums, stride, x + BLOCK / 2, y + BLOCK / 2, BLOCK / 2);
+        int total = topLeft + topRight + bottomLeft + bottomRight;
+        long variance = (sumSquares * 64 - (long) total * total) / (64 * 64);
+        if (variance < COPY_MOVE_MIN_VARIANCE) {
+            return Long.MAX_VALUE;
+        }
+        // Mean (7 bits) and differences between quadrant means (8 bits each), in steps of 3
+        // grey levels: coarse enough to survive recompression, fine enough to keep runs short
+        long mean = total / (64 * 3);
+        long vertical = Math.floorDiv(topLeft + topRight - bottomLeft - bottomRight, 32 * 3) + 85;
+        long horizontal = Math.floorDiv(topLeft - topRight + bottomLeft - bottomRight, 32 * 3) + 85;
+        long diagonal = Math.floorDiv(topLeft - topRight - bottomLeft + bottomRight, 32 * 3) + 85;
+        long key = (mean << 24) | (vertical << 16) | (horizontal << 8) | diagonal;
+        return (key << 32) | ((long) y * planeWidth + x);
+    }
+
+    private static int rectangle(int[] table, int stride, int x, int y, int size) {
+        return table[(y + size) * stride + x + size] - table[y * stride + x + size]
+                - table[(y + size) * stride + x] + table[y * stride + x];
+    }
+
+    private static long rectangle(long[] table, int stride, int x, int y, int size) {
+        return table[(y + size) * stride + x + size] - table[y * stride + x + size]
+                - table[(y + size) * stride + x] + table[y * stride + x];
+    }
+
+    private static ForensicAnalysisResult.Heatmap heatmap(double[] scores, int columns, int rows, int width, int height) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        double sum = 0.0;
+        int suspicious = 0;
+        int minColumn = columns;
+        int minRow = rows;
+        int maxColumn = -1;
+        int maxRow = -1;
+        for (int tile = 0; tile < scores.length; tile++) {
+            sum += scores[tile];
+            if (scores[tile] >= SUSPICIOUS_TILE_SCORE) {
+                suspicious++;
+                minColumn = Math.min(minColumn, tile % columns);
+                maxColumn = Math.max(maxColumn, tile % columns);
+                minRow = Math.min(minRow, tile / columns);
+                maxRow = Math.max(maxRow, tile / columns);
+            }
+        }
+        ForensicAnalysisResult.Heatmap.HeatmapBuilder heatmap = ForensicAnalysisResult.Heatmap.builder()
+                .tileSize(TILE)
+                .columns(columns)
+                .rows(rows)
+                .meanScore(sum / scores.length)
+                .p95Score(sorted[(int) Math.min(sorted.length - 1, Math.round(sorted.length * 0.95))])
+                .maxScore(sorted[sorted.length - 1])
+                .suspiciousTileFraction((double) suspicious / scores.length);
+        if (suspicious > 0) {
+            double left = (double) minColumn * TILE / width;
+            double top = (double) minRow * TILE / height;
+            heatmap.hotspotLeft(left)
+                    .hotspotTop(top)
+                    .hotspotWidth(Math.min(1.0, (double) (maxColumn + 1) * TILE / width) - left)
+                    .hotspotHeight(Math.min(1.0, (double) (maxRow + 1) * TILE / height) - top);
+        }
+        return heatmap.build();
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    private void forEach(Cancellation cancellation, int count, IntConsumer body) {
+        pool.invoke(new RangeTask(0, count, body, cancellation));
+    }
+
+    /**
+     * Runs the body for every index in [from, to), splitting in halves down to single indexes
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+        private final Cancellation cancellation;
+
+        RangeTask(int from, int to, IntConsumer body, Cancellation cancellation) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = from; i < to; i++) {
+                    cancellation.check();
+                    body.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, body, cancellation), new RangeTask(middle, to, body, cancellation));
+        }
+    }
+
+    /**
+     * The request deadline and the stage thread, whose interrupt the pool workers do not see
+     */
+    private static final class Cancellation {
+        private final Deadline deadline;
+        private final Thread caller;
+
+        private Cancellation(Deadline deadline, Thread caller) {
+            this.deadline = deadline;
+            this.caller = caller;
+        }
+
+        static Cancellation ofCurrentThread() {
+            Deadline deadline = Deadline.current();
+            return new Cancellation(deadline != null ? deadline : Deadline.none(), Thread.currentThread());
+        }
+
+        void check() {
+            if (caller.isInterrupted()) {
+                throw new CancellationException("Forensic analysis interrupted");
+            }
+            if (deadline.isExpired()) {
+                throw new Deadline.DeadlineExceededException("Request deadline reached during forensic analysis");
+            }
+        }
+    }
+
+    private static float[] roundingErrors(float[] steps) {
+        float[] errors = new float[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            errors[i] = steps[i] * steps[i] / 12f;
+        }
+        return errors;
+    }
+
+    private static float[] dctMatrix() {
+        float[] matrix = new float[BLOCK * BLOCK];
+        for (int u = 0; u < BLOCK; u++) {
+            double scale = u == 0 ? Math.sqrt(1.0 / BLOCK) : Math.sqrt(2.0 / BLOCK);
+            for (int x = 0; x < BLOCK; x++) {
+                matrix[u * BLOCK + x] = (float) (scale * Math.cos((2 * x + 1) * u * Math.PI / (2 * BLOCK)));
+            }
+        }
+        return matrix;
+    }
+
+    private static float[] transpose(float[] matrix) {
+        float[] transposed = new float[matrix.length];
+        for (int row = 0; row < BLOCK; row++) {
+            for (int column = 0; column < BLOCK; column++) {
+                transposed[column * BLOCK + row] = matrix[row * BLOCK + column];
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * The JPEG standard luminance table (Annex K) scaled to a quality as libjpeg does
+     */
+    private static float[] quantizationTable(int quality) {
+        int[] base = {
+                16, 11, 10, 16, 24, 40, 51, 61,
+                12, 12, 14, 19, 26, 58, 60, 55,
+                14, 13, 16, 24, 40, 57, 69, 56,
+                14, 17, 22, 29, 51, 87, 80, 62,
+                18, 22, 37, 56, 68, 109, 103, 77,
+                24, 35, 55, 64, 81, 104, 113, 92,
+                49, 64, 78, 87, 103, 121, 120, 101,
+                72, 92, 95, 98, 112, 100, 103, 99};
+        int scale = quality < 50 ? 5000 / quality : 200 - 2 * quality;
+        float[] table = new float[base.length];
+        for (int i = 0; i < base.length; i++) {
+            table[i] = Math.max(1, Math.min(255, (base[i] * scale + 50) / 100));
+        }
+        return table;
+    }
+
+    /**
+     * Per-block values of the first pass, indexed by blockY * blocksX + blockX
+     */
+    private static final class BlockData {
+        private final int blocksX;
+        private final int blocksY;
+        private final float[] elaError;
+        private final float[] expectedError;
+        private final float[] acEnergy;
+        private final float[][] modes;
+
+        BlockData(int blocksX, int blocksY) {
+            this.blocksX = blocksX;
+            this.blocksY = blocksY;
+            this.elaError = new float[blocksX * blocksY];
+            this.expectedError = new float[blocksX * blocksY];
+            this.acEnergy = new float[blocksX * blocksY];
+            this.modes = new float[DQ_MODES.length][blocksX * blocksY];
+        }
+    }
+
+    private static final class DoubleQuantization {
+        private static final DoubleQuantization NONE = new DoubleQuantization(false, 0.0);
+
+        private final boolean detected;
+        private final double inconsistency;
+
+        DoubleQuantization(boolean detected, double inconsistency) {
+            this.detected = detected;
+            this.inconsistency = inconsistency;
+        }
+    }
+
+    private static final class CopyMove {
+        private static final CopyMove NONE = new CopyMove(0, 0.0);
+
+        private final int regions;
+        private final double fraction;
+
+        CopyMove(int regions, double fraction) {
+            this.regions = regions;
+            this.fraction = fraction;
+        }
+    }
+}
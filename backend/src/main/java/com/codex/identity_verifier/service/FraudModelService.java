@@ -1,5 +1,6 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.util.Deadline;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -25,15 +26,32 @@ public class FraudModelService {
             .connectTimeout(Duration.ofSeconds(2))
             .build();
 
+    public boolean isEnabled() {
+        return modelEnabled && modelUrl != null && !modelUrl.isBlank();
+    }
+
     public int getAdditionalRiskScore(String sha256, String riskLevelHint) {
-        if (!modelEnabled || modelUrl == null || modelUrl.isBlank()) {
+        return getAdditionalRiskScore(sha256, riskLevelHint, Deadline.none());
+    }
+
+    /**
+     * Queries the external model, waiting no longer than the configured timeout or the
+     * request's remaining budget, whichever is shorter
+     * @return Additional risk points (0-25), or 0 if the model is disabled, fails or runs out of time
+     */
+    public int getAdditionalRiskScore(String sha256, String riskLevelHint, Deadline deadline) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long requestTimeoutMs = Math.min(timeoutMs, deadline.remainingMillis());
+        if (requestTimeoutMs <= 0) {
             return 0;
         }
         try {
             String payload = "{\"sha256\":\"" + sha256 + "\",\"riskHint\":\"" + sanitize(riskLevelHint) + "\"}";
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(modelUrl))
-                    .timeout(Duration.ofMillis(timeoutMs))
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
                     .header("Content-Type", "application/json")
                     .POST(HttpRequest.BodyPublishers.ofString(payload))
                     .build();
@@ -0,0 +1,553 @@
+package com.codex.identity_verifier.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts identity fields from OCR lines in a single pass. All label keywords of all
+ * document templates are compiled into one Aho-Corasick automaton, so each line is
+ * scanned once regardless of how many labels exist; the text following a label (or the
+ * next line) is checked by the field's precompiled recognizer. Templates are loaded from
+ * document-templates.properties; the template whose detection keywords occur most often
+ * is used, with its labels overriding the default template's per field.
+ */
+@Service
+public class IdentityFieldExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(IdentityFieldExtractor.class);
+
+    public static final String DEFAULT_TEMPLATE = "default";
+
+    private static final String TEMPLATE_PREFIX = "template.";
+
+    /** Output field names, in the order of the F_ constants */
+    static final String[] FIELDS = {"name", "idNumber", "dob", "expiryDate", "address"};
+    private static final int F_NAME = 0;
+    private static final int F_ID_NUMBER = 1;
+    private static final int F_DOB = 2;
+    private static final int F_EXPIRY = 3;
+    private static final int F_ADDRESS = 4;
+
+    private static final int KIND_LABEL = 0;
+    private static final int KIND_DETECT = 1;
+    private static final int KIND_ADDRESS_WORD = 2;
+
+    private static final Pattern DATE = Pattern.compile(
+            "\\d{1,2}[/.-]\\d{1,2}[/.-]\\d{2,4}"
+                    + "|\\d{2,4}[/.-]\\d{1,2}[/.-]\\d{1,2}"
+                    + "|\\d{1,2} ?[A-Za-z]{3,9}[ ,]{0,2}\\d{2,4}");
+
+    private final ResourceLoader resourceLoader;
+
+    @Value("${verification.extraction.templates-location:classpath:document-templates.properties}")
+    private String templatesLocation;
+
+    private volatile Templates templates;
+
+    @Autowired
+    public IdentityFieldExtractor(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    void init() {
+        Resource resource = resourceLoader.getResource(templatesLocation);
+        Properties properties = new Properties();
+        try (InputStream in = resource.getInputStream()) {
+            properties.load(in);
+            this.templates = compile(properties);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Failed to load document templates from " + templatesLocation, e);
+        }
+        log.info("Loaded {} document templates ({} keywords) from {}",
+                templates.names.length, templates.keywordCount(), templatesLocation);
+    }
+
+    /**
+     * Extracts identity fields from OCR lines
+     * @param lines Text lines in reading order
+     * @return The fields found, keyed by name, idNumber, dob, expiryDate and address
+     */
+    public Extraction extract(List<String> lines) {
+        return extract(templates, lines);
+    }
+
+    static Extraction extract(Templates templates, List<String> lines) {
+        int lineCount = lines.size();
+        String[] text = new String[lineCount];
+        // Keyword hits per line, as [keyword, start, end] triples
+        int[][] hits = new int[lineCount][];
+        int[] detectCounts = new int[templates.names.length];
+        for (int i = 0; i < lineCount; i++) {
+            String line = lines.get(i);
+            text[i] = line != null ? line.trim() : "";
+            hits[i] = templates.scan(text[i], detectCounts);
+        }
+
+        int template = 0;
+        for (int t = 1; t < detectCounts.length; t++) {
+            if (detectCounts[t] > detectCounts[template]) {
+                template = t;
+            }
+        }
+
+        String[] labeled = new String[FIELDS.length];
+        String[] unlabeled = new String[FIELDS.length];
+        // Lines a field was read from: the label line and the value line, which differ
+        // when the value sits under its label
+        int[][] labeledLines = new int[FIELDS.length][];
+        int[][] unlabeledLines = new int[FIELDS.length][];
+        boolean[] consumed = new boolean[lineCount];
+        int[] labels = new int[3 * FIELDS.length * 2];
+        for (int i = 0; i < lineCount; i++) {
+            int labelCount = templates.selectLabels(hits[i], template, labels);
+            for (int h = 0; h < labelCount; h++) {
+                int keyword = labels[h * 3];
+                int field = templates.fields[keyword];
+                if (labeled[field] != null) {
+                    continue;
+                }
+                int end = h + 1 < labelCount ? labels[(h + 1) * 3 + 1] : text[i].length();
+                String value = stripSeparators(text[i], labels[h * 3 + 2], end);
+                if (!value.isEmpty()) {
+                    labeled[field] = recognize(field, value, true);
+                    labeledLines[field] = new int[]{i, i};
+                } else if (i + 1 < lineCount && !consumed[i + 1]
+                        && templates.selectLabels(hits[i + 1], template, null) == 0) {
+                    labeled[field] = recognize(field, text[i + 1], true);
+                    labeledLines[field] = new int[]{i, i + 1};
+                    consumed[i + 1] = labeled[field] != null;
+                }
+            }
+            if (labelCount > 0 || consumed[i] || text[i].isEmpty()) {
+                continue;
+            }
+            if (unlabeled[F_ID_NUMBER] == null) {
+                unlabeled[F_ID_NUMBER] = recognize(F_ID_NUMBER, text[i], false);
+                unlabeledLines[F_ID_NUMBER] = new int[]{i, i};
+            }
+            if (unlabeled[F_DOB] == null) {
+                unlabeled[F_DOB] = recognize(F_DOB, text[i], false);
+                unlabeledLines[F_DOB] = new int[]{i, i};
+            }
+            if (unlabeled[F_ADDRESS] == null && templates.hasAddressWord(hits[i])) {
+                unlabeled[F_ADDRESS] = text[i];
+                unlabeledLines[F_ADDRESS] = new int[]{i, i};
+            }
+        }
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        Map<String, int[]> sourceLines = new HashMap<>();
+        for (int f = 0; f < FIELDS.length; f++) {
+            boolean fromLabel = labeled[f] != null;
+            String value = fromLabel ? labeled[f] : unlabeled[f];
+            if (value != null) {
+                fields.put(FIELDS[f], value);
+                sourceLines.put(FIELDS[f], fromLabel ? labeledLines[f] : unlabeledLines[f]);
+            }
+        }
+        return new Extraction(templates.names[template], fields, sourceLines);
+    }
+
+    /**
+     * @param labeled Whether the value followed a label; unlabeled ID numbers must mix letters and digits
+     * @return The normalized value, or null if it does not look like the field
+     */
+    private static String recognize(int field, String value, boolean labeled) {
+        switch (field) {
+            case F_NAME:
+                return isLikelyName(value) ? value : null;
+            case F_ID_NUMBER:
+                return isLikelyIdNumber(value, labeled) ? value.toUpperCase() : null;
+            case F_DOB:
+            case F_EXPIRY:
+                return !value.isEmpty() && Character.isDigit(value.charAt(0)) && DATE.matcher(value).matches()
+                        ? value
+                        : null;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * One to three words of ASCII letters
+     */
+    static boolean isLikelyName(String value) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ' ' || c == '\t') {
+                inWord = false;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                if (!inWord) {
+                    inWord = true;
+                    if (++words > 3) {
+                        return false;
+                    }
+                }
+            } else {
+                return false;
+            }
+        }
+        return words > 0;
+    }
+
+    /**
+     * More than four alphanumeric characters, mixing letters and digits unless the value was labeled
+     */
+    static boolean isLikelyIdNumber(String value, boolean labeled) {
+        int letters = 0;
+        int digits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters++;
+            }
+        }
+        if (letters + digits <= 4) {
+            return false;
+        }
+        return labeled ? digits > 0 : letters > 0 && digits > 0;
+    }
+
+    private static String stripSeparators(String line, int from, int to) {
+        while (from < to && isSeparator(line.charAt(from))) {
+            from++;
+        }
+        while (to > from && isSeparator(line.charAt(to - 1))) {
+            to--;
+        }
+        return line.substring(from, to);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == ':' || c == '-' || c == '#' || c == '.' || c == '/' || c == '|';
+    }
+
+    static Templates compile(Properties properties) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(TEMPLATE_PREFIX)) {
+                int dot = key.indexOf('.', TEMPLATE_PREFIX.length());
+                if (dot < 0) {
+                    throw new IllegalArgumentException("Malformed template key '" + key + "'");
+                }
+                names.add(key.substring(TEMPLATE_PREFIX.length(), dot));
+            }
+        }
+        if (!names.remove(DEFAULT_TEMPLATE)) {
+            throw new IllegalArgumentException("A '" + DEFAULT_TEMPLATE + "' template is required");
+        }
+        List<String> ordered = new ArrayList<>();
+        ordered.add(DEFAULT_TEMPLATE);
+        ordered.addAll(names);
+
+        Templates compiled = new Templates(ordered.toArray(new String[0]));
+        for (int t = 0; t < ordered.size(); t++) {
+            String prefix = TEMPLATE_PREFIX + ordered.get(t) + ".";
+            for (String keyword : keywords(properties.getProperty(prefix + "detect"))) {
+                compiled.add(keyword, KIND_DETECT, t, -1);
+            }
+            for (int f = 0; f < FIELDS.length; f++) {
+                String labels = properties.getProperty(prefix + "label." + FIELDS[f]);
+                if (labels != null) {
+                    compiled.overrides[t][f] = true;
+                    for (String keyword : keywords(labels)) {
+                        compiled.add(keyword, KIND_LABEL, t, f);
+                    }
+                }
+            }
+        }
+        for (String keyword : keywords(properties.getProperty("address.words"))) {
+            compiled.add(keyword, KIND_ADDRESS_WORD, -1, F_ADDRESS);
+        }
+        compiled.build();
+        return compiled;
+    }
+
+    private static List<String> keywords(String value) {
+        List<String> keywords = new ArrayList<>();
+        if (value != null) {
+            for (String keyword : value.split(",")) {
+                String trimmed = keyword.trim().toLowerCase();
+                if (!trimmed.isEmpty()) {
+                    for (int i = 0; i < trimmed.length(); i++) {
+                        if (trimmed.charAt(i) >= 128) {
+                            throw new IllegalArgumentException("Keyword '" + trimmed + "' must be ASCII");
+                        }
+                    }
+                    keywords.add(trimmed);
+                }
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * Compiled templates: keyword metadata in parallel arrays and the shared automaton
+     */
+    static final class Templates {
+        private static final int ALPHABET = 128;
+
+        final String[] names;
+        final boolean[][] overrides;
+
+        private final List<String> keywords = new ArrayList<>();
+        private int[] kinds = new int[16];
+        private int[] owners = new int[16];
+        int[] fields = new int[16];
+        private int[] lengths = new int[16];
+
+        private final List<int[]> gotoTable = new ArrayList<>();
+        private int[][] transitions;
+        private int[][] outputs;
+
+        Templates(String[] names) {
+            this.names = names;
+            this.overrides = new boolean[names.length][FIELDS.length];
+            gotoTable.add(newState());
+        }
+
+        int keywordCount() {
+            return keywords.size();
+        }
+
+        void add(String keyword, int kind, int owner, int field) {
+            int id = keywords.size();
+            if (id == kinds.length) {
+                kinds = Arrays.copyOf(kinds, id * 2);
+                owners = Arrays.copyOf(owners, id * 2);
+                fields = Arrays.copyOf(fields, id * 2);
+                lengths = Arrays.copyOf(lengths, id * 2);
+            }
+            keywords.add(keyword);
+            kinds[id] = kind;
+            owners[id] = owner;
+            fields[id] = field;
+            lengths[id] = keyword.length();
+        }
+
+        private static int[] newState() {
+            int[] state = new int[ALPHABET];
+            Arrays.fill(state, -1);
+            return state;
+        }
+
+        /**
+         * Builds the trie and its failure links breadth-first; outputs include those of the
+         * failure chain so that scanning never follows more than one link per character
+         */
+        void build() {
+            List<List<Integer>> stateOutputs = new ArrayList<>();
+            stateOutputs.add(new ArrayList<>());
+            for (int id = 0; id < keywords.size(); id++) {
+                String keyword = keywords.get(id);
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = keyword.charAt(i);
+                    if (gotoTable.get(state)[c] < 0) {
+                        gotoTable.get(state)[c] = gotoTable.size();
+                        gotoTable.add(newState());
+                        stateOutputs.add(new ArrayList<>());
+                    }
+                    state = gotoTable.get(state)[c];
+                }
+                stateOutputs.get(state).add(id);
+            }
+
+            int[] failure = new int[gotoTable.size()];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            int[] root = gotoTable.get(0);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    failure[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                int[] stateTransitions = gotoTable.get(state);
+                stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+                for (int c = 0; c < ALPHABET; c++) {
+                    int next = stateTransitions[c];
+                    if (next < 0) {
+                        // Complete the transition function so scanning is one lookup per character
+                        stateTransitions[c] = gotoTable.get(failure[state])[c];
+                    } else {
+                        failure[next] = gotoTable.get(failure[state])[c];
+                        queue.add(next);
+                    }
+                }
+            }
+
+            transitions = gotoTable.toArray(new int[0][]);
+            outputs = new int[stateOutputs.size()][];
+            for (int s = 0; s < outputs.length; s++) {
+                outputs[s] = stateOutputs.get(s).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        /**
+         * Scans one line, counting detection keywords per template
+         * @return Whole-word keyword hits as [keyword, start, end] triples, in order of their end
+         */
+        int[] scan(String line, int[] detectCounts) {
+            int[] hits = null;
+            int count = 0;
+            int state = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                state = c < ALPHABET ? transitions[state][c] : 0;
+                for (int id : outputs[state]) {
+                    int start = i + 1 - lengths[id];
+                    if (!isWordBoundary(line, start - 1, keywords.get(id).charAt(0))
+                            || !isWordBoundary(line, i + 1, keywords.get(id).charAt(lengths[id] - 1))) {
+                        continue;
+                    }
+                    if (kinds[id] == KIND_DETECT) {
+                        detectCounts[owners[id]]++;
+                        continue;
+                    }
+                    if (hits == null) {
+                        hits = new int[12];
+                    } else if (count * 3 == hits.length) {
+                        hits = Arrays.copyOf(hits, hits.length * 2);
+                    }
+                    hits[count * 3] = id;
+                    hits[count * 3 + 1] = start;
+                    hits[count * 3 + 2] = i + 1;
+                    count++;
+                }
+            }
+            return hits == null ? EMPTY_HITS : Arrays.copyOf(hits, count * 3);
+        }
+
+        private static final int[] EMPTY_HITS = new int[0];
+
+        /**
+         * A keyword edge that is itself punctuation (e.g. "st.") needs no boundary
+         */
+        private static boolean isWordBoundary(String line, int index, char keywordEdge) {
+            if (!Character.isLetterOrDigit(keywordEdge) || index < 0 || index >= line.length()) {
+                return true;
+            }
+            return !Character.isLetterOrDigit(line.charAt(index));
+        }
+
+        /**
+         * Picks the label hits that apply to the template: leftmost first, longest on overlap
+         * @param selected Receives [keyword, start, end] triples ordered by start; may be null to only count
+         * @return Number of labels selected
+         */
+        int selectLabels(int[] hits, int template, int[] selected) {
+            int count = 0;
+            int lastEnd = -1;
+            // Hits are ordered by end; walk them by start so overlaps resolve leftmost-longest
+            int n = hits.length / 3;
+            boolean[] used = n > 0 ? new boolean[n] : null;
+            while (true) {
+                int best = -1;
+                for (int h = 0; h < n; h++) {
+                    if (used[h] || !appliesTo(hits[h * 3], template) || hits[h * 3 + 1] < lastEnd) {
+                        continue;
+                    }
+                    if (best < 0 || hits[h * 3 + 1] < hits[best * 3 + 1]
+                            || (hits[h * 3 + 1] == hits[best * 3 + 1] && hits[h * 3 + 2] > hits[best * 3 + 2])) {
+                        best = h;
+                    }
+                }
+                if (best < 0) {
+                    return count;
+                }
+                used[best] = true;
+                lastEnd = hits[best * 3 + 2];
+                if (selected != null) {
+                    if ((count + 1) * 3 > selected.length) {
+                        return count;
+                    }
+                    System.arraycopy(hits, best * 3, selected, count * 3, 3);
+                }
+                count++;
+            }
+        }
+
+        private boolean appliesTo(int keyword, int template) {
+            if (kinds[keyword] != KIND_LABEL) {
+                return false;
+            }
+            int owner = owners[keyword];
+            return owner == template || (owner == 0 && !overrides[template][fields[keyword]]);
+        }
+
+        boolean hasAddressWord(int[] hits) {
+            for (int h = 0; h < hits.length; h += 3) {
+                if (kinds[hits[h]] == KIND_ADDRESS_WORD) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fields extracted from one document, with the template that was applied
+     */
+    public static class Extraction {
+        private final String template;
+        private final Map<String, String> fields;
+        private final Map<String, int[]> sourceLines;
+
+        Extraction(String template, Map<String, String> fields, Map<String, int[]> sourceLines) {
+            this.template = template;
+            this.fields = fields;
+            this.sourceLines = sourceLines;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * @return Extracted values keyed by field name; absent fields are not present
+         */
+        public Map<String, String> getFields() {
+            return fields;
+        }
+
+        /**
+         * @return Indexes of the first and last input line the field was read from (label and
+         * value), or null if the field was not found
+         */
+        public int[] getSourceLines(String field) {
+            int[] lines = sourceLines.get(field);
+            return lines != null ? lines.clone() : null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.util.ImageContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Measures image quality locally from the shared luminance plane instead of asking
+ * Rekognition for labels: sharpness as the variance of the Laplacian, exposure and contrast
+ * from the luminance histogram, and glare as the share of blown-out pixels. The image is
+ * split into horizontal strips that are analyzed in parallel and merged, with one pass over
+ * the pixels and primitive arrays only.
+ */
+@Service
+public class ImageQualityAnalyzer {
+
+    private static final int MIN_STRIP_ROWS = 32;
+    // Luminance at or above which a pixel is treated as blown out by glare
+    private static final int GLARE_LUMINANCE = 250;
+    // Laplacian response above which a pixel counts as an edge
+    private static final int EDGE_RESPONSE = 40;
+    // Printed documents have text edges over a few percent of their area, and are wider than tall
+    private static final double MIN_DOCUMENT_EDGE_DENSITY = 0.01;
+    private static final double MAX_DOCUMENT_EDGE_DENSITY = 0.40;
+    private static final double MIN_DOCUMENT_ASPECT = 1.2;
+    private static final double MAX_DOCUMENT_ASPECT = 1.8;
+
+    // Variance of the Laplacian below which the image is considered blurry
+    @Value("${verification.quality.blur-threshold:100.0}")
+    private double blurThreshold;
+
+    @Value("${verification.quality.min-mean-luminance:60.0}")
+    private double minMeanLuminance;
+
+    @Value("${verification.quality.max-mean-luminance:200.0}")
+    private double maxMeanLuminance;
+
+    // Standard deviation of luminance
+    @Value("${verification.quality.min-contrast:30.0}")
+    private double minContrast;
+
+    @Value("${verification.quality.max-glare-fraction:0.05}")
+    private double maxGlareFraction;
+
+    /**
+     * Analyzes a document image
+     * @param document The normalized document; its decoded pixels are reused
+     * @return Image quality indicators; {@link QualityAnalysisResult#getError()} is set when
+     * the image cannot be decoded or is too small to measure
+     */
+    public QualityAnalysisResult analyze(DocumentNormalizer.NormalizedDocument document) {
+        return analyze(document.getImage());
+    }
+
+    public QualityAnalysisResult analyze(ImageContext image) {
+        byte[] luminance = image.getLuminance();
+        if (luminance == null) {
+            return QualityAnalysisResult.unreadable("Unsupported image format for quality analysis");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width < 3 || height < 3) {
+            return QualityAnalysisResult.unreadable("Image too small for quality analysis");
+        }
+
+        int strips = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 2, height / MIN_STRIP_ROWS));
+        int rowsPerStrip = (height + strips - 1) / strips;
+        StripStats total = IntStream.range(0, strips)
+                .parallel()
+                .mapToObj(strip -> analyzeStrip(luminance, width, height,
+                        strip * rowsPerStrip, Math.min(height, (strip + 1) * rowsPerStrip)))
+                .reduce(StripStats::merge)
+                .orElseThrow();
+
+        long pixels = (long) width * height;
+        long luminanceSum = 0;
+        long luminanceSquares = 0;
+        long glarePixels = 0;
+        for (int value = 0; value < 256; value++) {
+            long count = total.histogram[value];
+            luminanceSum += count * value;
+            luminanceSquares += count * value * value;
+            if (value >= GLARE_LUMINANCE) {
+                glarePixels += count;
+            }
+        }
+        double meanLuminance = (double) luminanceSum / pixels;
+        double contrast = Math.sqrt(Math.max(0.0, (double) luminanceSquares / pixels - meanLuminance * meanLuminance));
+        double glareFraction = (double) glarePixels / pixels;
+        double laplacianMean = total.laplacianSum / (double) total.laplacianCount;
+        double sharpness = total.laplacianSquares / (double) total.laplacianCount - laplacianMean * laplacianMean;
+        double edgeDensity = total.edges / (double) total.laplacianCount;
+        double aspect = (double) Math.max(width, height) / Math.min(width, height);
+
+        boolean blurry = sharpness < blurThreshold;
+        boolean underexposed = meanLuminance < minMeanLuminance;
+        boolean overexposed = meanLuminance > maxMeanLuminance;
+        boolean lowContrast = contrast < minContrast;
+        boolean glare = glareFraction > maxGlareFraction;
+        boolean document = edgeDensity >= MIN_DOCUMENT_EDGE_DENSITY && edgeDensity <= MAX_DOCUMENT_EDGE_DENSITY
+                && aspect >= MIN_DOCUMENT_ASPECT && aspect <= MAX_DOCUMENT_ASPECT;
+
+        List<String> labels = new ArrayList<>();
+        addIf(labels, blurry, "Blurry");
+        addIf(labels, underexposed, "Underexposed");
+        addIf(labels, overexposed, "Overexposed");
+        addIf(labels, lowContrast, "LowContrast");
+        addIf(labels, glare, "Glare");
+        addIf(labels, document, "Document");
+
+        return QualityAnalysisResult.builder()
+                .blurry(blurry)
+                .goodLighting(!underexposed && !overexposed && !lowContrast && !glare)
+                .document(document)
+                .labels(labels)
+                .sharpness(sharpness)
+                .meanLuminance(meanLuminance)
+                .contrast(contrast)
+                .glareFraction(glareFraction)
+                .edgeDensity(edgeDensity)
+                .build();
+    }
+
+    /**
+     * Histogram of rows [from, to) and the 4-neighbour Laplacian of their interior pixels
+     */
+    private static StripStats analyzeStrip(byte[] luminance, int width, int height, int from, int to) {
+        StripStats stats = new StripStats();
+        long[] histogram = stats.histogram;
+        for (int y = from; y < to; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                histogram[luminance[row + x] & 0xFF]++;
+            }
+            if (y > 0 && y < height - 1) {
+                long sum = 0;
+                long squares = 0;
+                long edges = 0;
+                for (int x = 1; x < width - 1; x++) {
+                    int i = row + x;
+                    int laplacian = (luminance[i - width] & 0xFF) + (luminance[i + width] & 0xFF)
+                            + (luminance[i - 1] & 0xFF) + (luminance[i + 1] & 0xFF) - 4 * (luminance[i] & 0xFF);
+                    sum += laplacian;
+                    squares += (long) laplacian * laplacian;
+                    if (laplacian > EDGE_RESPONSE || laplacian < -EDGE_RESPONSE) {
+                        edges++;
+                    }
+                }
+                stats.laplacianSum += sum;
+                stats.laplacianSquares += squares;
+                stats.laplacianCount += width - 2;
+                stats.edges += edges;
+            }
+        }
+        return stats;
+    }
+
+    private static void addIf(List<String> labels, boolean condition, String label) {
+        if (condition) {
+            labels.add(label);
+        }
+    }
+
+    private static final class StripStats {
+        private final long[] histogram = new long[256];
+        private long laplacianSum;
+        private long laplacianSquares;
+        private long laplacianCount;
+        private long edges;
+
+        StripStats merge(StripStats other) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            laplacianSum += other.laplacianSum;
+            laplacianSquares += other.laplacianSquares;
+            laplacianCount += other.laplacianCount;
+            edges += other.edges;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.DuplicateCheckResult;
+import com.codex.identity_verifier.util.ImageContext;
+import com.codex.identity_verifier.util.PerceptualHash;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the perceptual hashes of earlier submissions, used to flag a document
+ * that is a near-duplicate (recompressed, rescaled, slightly cropped) of one submitted by a
+ * different owner. Exact re-submissions are already caught by the SHA-256 file hash.
+ * <p>
+ * Lookups use multi-index hashing: every hash is filed under each of its four 16-bit
+ * substrings. Two hashes within r bits differ in at most r / 4 bits in at least one
+ * substring, so a lookup only probes the buckets within that many bits of the query's
+ * substrings and verifies the candidates with a full popcount. It is rebuilt from the
+ * stored verification records on startup, in the background; until then lookups see only
+ * the submissions made since.
+ */
+@Service
+public class NearDuplicateIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(NearDuplicateIndex.class);
+
+    private static final int TABLES = 4;
+    private static final int SUBSTRING_BITS = 64 / TABLES;
+    private static final int SUBSTRING_MASK = (1 << SUBSTRING_BITS) - 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    private final DynamoDBService dynamoDBService;
+
+    @Value("${verification.duplicates.enabled:true}")
+    private boolean enabled;
+
+    // Hamming radius (of 64 bits) within which two documents count as near-duplicates
+    @Value("${verification.duplicates.max-distance:8}")
+    private int maxDistance;
+
+    @Value("${verification.duplicates.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    // Substring values within maxDistance / TABLES bits of 0, XORed into a query substring
+    private int[] probeMasks;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Owner of entry i
+    private String[] owners = new String[INITIAL_CAPACITY];
+    private int size;
+    // buckets[table][substring] holds entry indexes, bucketSizes[table][substring] of them used;
+    // bucketHashes repeats their hashes so candidates are verified in one sequential pass
+    private final int[][][] buckets = new int[TABLES][1 << SUBSTRING_BITS][];
+    private final long[][][] bucketHashes = new long[TABLES][1 << SUBSTRING_BITS][];
+    private final int[][] bucketSizes = new int[TABLES][1 << SUBSTRING_BITS];
+    // One String instance per owner, shared by all of its entries
+    private final Map<String, String> ownerNames = new HashMap<>();
+
+    private volatile boolean rebuilt;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong flagged = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong maxLookupNanos = new AtomicLong();
+
+    @Autowired
+    public NearDuplicateIndex(DynamoDBService dynamoDBService) {
+        this.dynamoDBService = dynamoDBService;
+    }
+
+    @PostConstruct
+    void init() {
+        probeMasks = probeMasks(maxDistance / TABLES);
+        if (!enabled || !rebuildOnStartup) {
+            rebuilt = true;
+            return;
+        }
+        Thread loader = new Thread(this::rebuild, "near-duplicate-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hashes a document image and looks up earlier submissions by other owners
+     * @param image The decoded document image
+     * @param ownerUsername The user submitting the document; their own earlier submissions
+     * are not reported
+     * @return The hash and its matches; without a hash when the image cannot be hashed
+     */
+    public DuplicateCheckResult check(ImageContext image, String ownerUsername) {
+        byte[] luminance = image.getLuminance();
+        if (luminance == null || !PerceptualHash.canHash(image.getWidth(), image.getHeight())) {
+            return DuplicateCheckResult.NONE;
+        }
+        return lookup(PerceptualHash.of(luminance, image.getWidth(), image.getHeight()), ownerUsername);
+    }
+
+    /**
+     * Looks up a hash computed earlier, e.g. one stored with a cached result
+     * @param perceptualHash 16 hex digits; null or malformed values find nothing
+     */
+    public DuplicateCheckResult check(String perceptualHash, String ownerUsername) {
+        Long hash = PerceptualHash.fromHex(perceptualHash);
+        return hash != null ? lookup(hash, ownerUsername) : DuplicateCheckResult.NONE;
+    }
+
+    private DuplicateCheckResult lookup(long hash, String ownerUsername) {
+        long start = System.nanoTime();
+        int matches = 0;
+        int closest = Integer.MAX_VALUE;
+        int substringRadius = maxDistance / TABLES;
+        lock.readLock().lock();
+        try {
+            for (int table = 0; table < TABLES; table++) {
+                int substring = substring(hash, table);
+                for (int mask : probeMasks) {
+                    int bucket = substring ^ mask;
+                    long[] candidates = bucketHashes[table][bucket];
+                    int count = bucketSizes[table][bucket];
+                    for (int i = 0; i < count; i++) {
+                        long candidate = candidates[i];
+                        int distance = PerceptualHash.distance(hash, candidate);
+                        // Each candidate is counted in the first table it is found in
+                        if (distance > maxDistance || foundInEarlierTable(hash, candidate, table, substringRadius)) {
+                            continue;
+                        }
+                        if (!Objects.equals(owners[buckets[table][bucket][i]], ownerUsername)) {
+                            matches++;
+                            closest = Math.min(closest, distance);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long elapsed = System.nanoTime() - start;
+        lookups.incrementAndGet();
+        lookupNanos.addAndGet(elapsed);
+        maxLookupNanos.accumulateAndGet(elapsed, Math::max);
+        if (matches > 0) {
+            flagged.incrementAndGet();
+        }
+
+        return DuplicateCheckResult.builder()
+                .perceptualHash(PerceptualHash.toHex(hash))
+                .otherOwnerMatches(matches)
+                .closestDistance(matches > 0 ? closest : -1)
+                .build();
+    }
+
+    /**
+     * Adds a submission to the index; a hash the owner already submitted is not added again
+     * @param perceptualHash 16 hex digits; null or malformed values are ignored
+     */
+    public void add(String perceptualHash, String ownerUsername) {
+        Long hash = PerceptualHash.fromHex(perceptualHash);
+        if (hash == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            insert(hash, ownerUsername);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int entries;
+        lock.readLock().lock();
+        try {
+            entries = size;
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = lookups.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rebuilt", rebuilt);
+        stats.put("entries", entries);
+        stats.put("maxDistance", maxDistance);
+        stats.put("lookups", count);
+        stats.put("flaggedOtherOwner", flagged.get());
+        stats.put("avgLookupMicros", count > 0 ? lookupNanos.get() / count / 1000.0 : 0.0);
+        stats.put("maxLookupMicros", maxLookupNanos.get() / 1000.0);
+        return stats;
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            dynamoDBService.forEachPerceptualHash((ownerUsername, perceptualHash) -> add(perceptualHash, ownerUsername));
+            log.info("Near-duplicate index rebuilt with {} hashes in {} ms",
+                    getStats().get("entries"), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Near-duplicate index rebuild failed; only new submissions are indexed: {}", e.getMessage());
+        } finally {
+            rebuilt = true;
+        }
+    }
+
+    private void insert(long hash, String ownerUsername) {
+        String owner = ownerUsername != null ? ownerNames.computeIfAbsent(ownerUsername, name -> name) : null;
+        int first = substring(hash, 0);
+        for (int i = 0; i < bucketSizes[0][first]; i++) {
+            if (bucketHashes[0][first][i] == hash && Objects.equals(owners[buckets[0][first][i]], owner)) {
+                return;
+            }
+        }
+
+        if (size == owners.length) {
+            owners = Arrays.copyOf(owners, size * 2);
+        }
+        int entry = size++;
+        owners[entry] = owner;
+        for (int table = 0; table < TABLES; table++) {
+            int bucket = substring(hash, table);
+            int[] entries = buckets[table][bucket];
+            long[] entryHashes = bucketHashes[table][bucket];
+            int count = bucketSizes[table][bucket];
+            if (entries == null) {
+                entries = new int[INITIAL_BUCKET_CAPACITY];
+                entryHashes = new long[INITIAL_BUCKET_CAPACITY];
+            } else if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+                entryHashes = Arrays.copyOf(entryHashes, count * 2);
+            }
+            entries[count] = entry;
+            entryHashes[count] = hash;
+            buckets[table][bucket] = entries;
+            bucketHashes[table][bucket] = entryHashes;
+            bucketSizes[table][bucket] = count + 1;
+        }
+    }
+
+    private static int substring(long hash, int table) {
+        return (int) (hash >>> (table * SUBSTRING_BITS)) & SUBSTRING_MASK;
+    }
+
+    private static boolean foundInEarlierTable(long hash, long candidate, int table, int substringRadius) {
+        for (int earlier = 0; earlier < table; earlier++) {
+            if (Integer.bitCount(substring(hash, earlier) ^ substring(candidate, earlier)) <= substringRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] probeMasks(int radius) {
+        int[] masks = new int[1 << SUBSTRING_BITS];
+        int count = 0;
+        for (int mask = 0; mask <= SUBSTRING_MASK; mask++) {
+            if (Integer.bitCount(mask) <= radius) {
+                masks[count++] = mask;
+            }
+        }
+        return Arrays.copyOf(masks, count);
+    }
+}
@@ -1,42 +1,52 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.model.FaceComparisonResult;
+import com.codex.identity_verifier.model.FaceDetectionResult;
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.DownstreamLimiter;
+import com.codex.identity_verifier.util.ImageContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
 import software.amazon.awssdk.services.rekognition.model.*;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 @Service
 public class RekognitionService {
 
     private final RekognitionClient rekognitionClient;
+    private final RequestHedgingService hedgingService;
     @Value("${aws.rekognition.collection-id:identity-docs}")
     private String collectionId;
     @Value("${aws.rekognition.face-match-threshold:80.0}")
     private Double faceMatchThreshold;
     @Value("${aws.rekognition.min-confidence:70.0}")
     private Double minConfidence;
+    @Value("${aws.rekognition.face-search.max-faces:10}")
+    private int maxSearchFaces;
 
     @Autowired
-    public RekognitionService(RekognitionClient rekognitionClient) {
+    public RekognitionService(RekognitionClient rekognitionClient, RequestHedgingService hedgingService) {
         this.rekognitionClient = rekognitionClient;
+        this.hedgingService = hedgingService;
     }
 
     /**
      * Detects faces in an image
-     * @param imageData The image data as byte array
-     * @return Map containing face detection results
+     * @param document The image document
+     * @return Face detection results
      */
-    public Map<String, Object> detectFaces(byte[] imageData) {
+    public FaceDetectionResult detectFaces(DocumentBuffer document) {
         Image image = Image.builder()
-                .bytes(SdkBytes.fromByteArray(imageData))
+                .bytes(document.asSdkBytes())
                 .build();
 
         DetectFacesRequest request = DetectFacesRequest.builder()
@@ -44,33 +54,38 @@ public class RekognitionService {
                 .attributes(Attribute.ALL)
                 .build();
 
-        DetectFacesResponse response = rekognitionClient.detectFaces(request);
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("faceCount", response.faceDetails().size());
-        result.put("faces", response.faceDetails());
-        result.put("isFaceDetected", !response.faceDetails().isEmpty());
-        result.put("highestConfidence", response.faceDetails().stream()
-                .mapToDouble(face -> face.confidence() != null ? face.confidence() : 0.0f)
-                .max()
-                .orElse(0.0));
-        
-        return result;
+        DetectFacesResponse response = hedgingService.call("rekognition.detectFaces",
+                () -> rekognitionClient.detectFaces(request));
+        List<FaceDetail> faces = response.faceDetails();
+
+        double highestConfidence = 0.0;
+        for (FaceDetail face : faces) {
+            if (face.confidence() != null && face.confidence() > highestConfidence) {
+                highestConfidence = face.confidence();
+            }
+        }
+
+        return FaceDetectionResult.builder()
+                .faceCount(faces.size())
+                .faceDetected(!faces.isEmpty())
+                .highestConfidence(highestConfidence)
+                .faces(faces)
+                .build();
     }
 
     /**
      * Compares two faces to determine if they match
-     * @param sourceImageData The source image data
-     * @param targetImageData The target image data
-     * @return Map containing face comparison results
+     * @param source The source image
+     * @param target The target image
+     * @return Face comparison results
      */
-    public Map<String, Object> compareFaces(byte[] sourceImageData, byte[] targetImageData) {
+    public FaceComparisonResult compareFaces(DocumentBuffer source, DocumentBuffer target) {
         Image sourceImage = Image.builder()
-                .bytes(SdkBytes.fromByteArray(sourceImageData))
+                .bytes(source.asSdkBytes())
                 .build();
         
         Image targetImage = Image.builder()
-                .bytes(SdkBytes.fromByteArray(targetImageData))
+                .bytes(target.asSdkBytes())
                 .build();
 
         CompareFacesRequest request = CompareFacesRequest.builder()
@@ -79,52 +94,137 @@ public class RekognitionService {
                 .similarityThreshold(faceMatchThreshold.floatValue())
                 .build();
 
-        CompareFacesResponse response = rekognitionClient.compareFaces(request);
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("faceMatches", response.faceMatches());
-        result.put("unmatchedFaces", response.unmatchedFaces());
-        result.put("isMatch", !response.faceMatches().isEmpty());
-        result.put("highestConfidence", response.faceMatches().stream()
-                .mapToDouble(match -> match.similarity())
-                .max()
-                .orElse(0.0));
-        
-        return result;
+        CompareFacesResponse response;
+        try {
+            response = hedgingService.call("rekognition.compareFaces",
+                    () -> rekognitionClient.compareFaces(request));
+        } catch (InvalidParameterException e) {
+            // Rekognition rejects a source image without a face
+            return FaceComparisonResult.builder().build();
+        }
+
+        double highestSimilarity = 0.0;
+        for (CompareFacesMatch match : response.faceMatches()) {
+            if (match.similarity() != null && match.similarity() > highestSimilarity) {
+                highestSimilarity = match.similarity();
+            }
+        }
+
+        return FaceComparisonResult.builder()
+                .match(!response.faceMatches().isEmpty())
+                .matchCount(response.faceMatches().size())
+                .unmatchedCount(response.unmatchedFaces().size())
+                .highestSimilarity(highestSimilarity)
+                .build();
+    }
+
+    /**
+     * Searches the face collection with the largest face in an image
+     * @param document The image document
+     * @return Collection faces at or above the face match threshold; not searched when the
+     * image has no face
+     */
+    public FaceSearchResult searchFaces(DocumentBuffer document) {
+        SearchFacesByImageRequest request = SearchFacesByImageRequest.builder()
+                .collectionId(collectionId)
+                .image(Image.builder().bytes(document.asSdkBytes()).build())
+                .faceMatchThreshold(faceMatchThreshold.floatValue())
+                .maxFaces(maxSearchFaces)
+                .build();
+
+        SearchFacesByImageResponse response;
+        try {
+            response = hedgingService.call("rekognition.searchFacesByImage",
+                    () -> rekognitionClient.searchFacesByImage(request));
+        } catch (InvalidParameterException e) {
+            // Rekognition rejects images without a face
+            return FaceSearchResult.builder().faceSearched(false).matches(List.of()).build();
+        } catch (ResourceNotFoundException e) {
+            // Nothing has been indexed yet
+            createCollection();
+            return FaceSearchResult.builder().faceSearched(true).matches(List.of()).build();
+        }
+
+        return FaceSearchResult.builder()
+                .faceSearched(true)
+                .matches(response.faceMatches().stream()
+                        .map(match -> new FaceSearchResult.FaceMatch(match.face().faceId(),
+                                match.face().externalImageId(),
+                                match.similarity() != null ? match.similarity() : 0.0))
+                        .toList())
+                .build();
+    }
+
+    /**
+     * Adds the largest face in an image to the face collection. Not hedged: a second
+     * request would index the face twice.
+     * @param document The image document
+     * @param externalImageId Tag stored with the face and returned by searches
+     * @return The new face ID, or null if no face passed Rekognition's quality filter
+     */
+    public String indexFace(DocumentBuffer document, String externalImageId) {
+        IndexFacesRequest request = IndexFacesRequest.builder()
+                .collectionId(collectionId)
+                .image(Image.builder().bytes(document.asSdkBytes()).build())
+                .externalImageId(externalImageId)
+                .maxFaces(1)
+                .qualityFilter("AUTO")
+                .build();
+
+        IndexFacesResponse response;
+        try {
+            response = rekognitionClient.indexFaces(request);
+        } catch (ResourceNotFoundException e) {
+            createCollection();
+            response = rekognitionClient.indexFaces(request);
+        }
+        return response.faceRecords().isEmpty() ? null : response.faceRecords().get(0).face().faceId();
+    }
+
+    private void createCollection() {
+        try {
+            rekognitionClient.createCollection(CreateCollectionRequest.builder()
+                    .collectionId(collectionId)
+                    .build());
+        } catch (ResourceAlreadyExistsException ignored) {
+            // Created concurrently
+        }
     }
 
     /**
      * Analyzes an image for potential tampering or forgery indicators
-     * @param imageData The image data to analyze
-     * @return Map containing tamper detection results
+     * @param document The normalized document; dimensions are reported for the original upload
+     * @return Tamper detection results; {@link TamperDetectionResult#getError()} is set when the
+     * analysis failed, except for the failures {@link #isBudgetOrLimitFailure} rethrows
      */
-    public Map<String, Object> detectImageTampering(byte[] imageData) {
-        Map<String, Object> result = new HashMap<>();
+    public TamperDetectionResult detectImageTampering(DocumentNormalizer.NormalizedDocument document) {
+        TamperDetectionResult.TamperDetectionResultBuilder result = TamperDetectionResult.builder()
+                .moderationLabels(List.of())
+                .detectedTexts(List.of());
+        boolean suspicious = false;
         
         try {
-            // Convert image to buffered image to check for basic properties
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
-            if (image == null) {
-                result.put("error", "Unsupported image format for tamper detection");
-                result.put("isLowQuality", false);
-                result.put("hasUniformBackground", false);
-                result.put("hasSuspiciousContent", false);
-                result.put("isTampered", false);
-                return result;
+            // Reuse the pixels shared with the other image stages
+            ImageContext image = document.getImage();
+            if (!document.hasDimensions() || !image.isAvailable()) {
+                return result
+                        .error("Unsupported image format for tamper detection")
+                        .build();
             }
             
             // Check image properties that might indicate tampering
-            result.put("width", image.getWidth());
-            result.put("height", image.getHeight());
-            result.put("colorModel", image.getColorModel().toString());
+            int width = document.getOriginalWidth();
+            int height = document.getOriginalHeight();
+            result.width(width);
+            result.height(height);
             
             // Check for common tampering indicators
-            result.put("isLowQuality", image.getWidth() < 300 || image.getHeight() < 300);
-            result.put("hasUniformBackground", checkUniformBackground(image));
+            result.lowQuality(width < 300 || height < 300);
+            result.uniformBackground(checkUniformBackground(image));
             
             // For actual tampering detection, we'll use Rekognition's moderation detection
             Image rekImage = Image.builder()
-                    .bytes(SdkBytes.fromByteArray(imageData))
+                    .bytes(document.getForRekognition().asSdkBytes())
                     .build();
 
             DetectModerationLabelsRequest moderationRequest = DetectModerationLabelsRequest.builder()
@@ -132,38 +232,63 @@ public class RekognitionService {
                     .minConfidence(minConfidence.floatValue())
                     .build();
 
-            DetectModerationLabelsResponse moderationResponse = rekognitionClient.detectModerationLabels(moderationRequest);
+            DetectModerationLabelsResponse moderationResponse = hedgingService.call(
+                    "rekognition.detectModerationLabels", () -> rekognitionClient.detectModerationLabels(moderationRequest));
             
-            result.put("moderationLabels", moderationResponse.moderationLabels());
-            result.put("hasSuspiciousContent", !moderationResponse.moderationLabels().isEmpty());
+            result.moderationLabels(moderationResponse.moderationLabels().stream()
+                    .map(ModerationLabel::name)
+                    .toList());
+            suspicious = !moderationResponse.moderationLabels().isEmpty();
             
             // Check for text detection which might indicate tampering
             DetectTextRequest textRequest = DetectTextRequest.builder()
                     .image(rekImage)
                     .build();
 
-            DetectTextResponse textResponse = rekognitionClient.detectText(textRequest);
-            result.put("detectedTexts", textResponse.textDetections());
+            DetectTextResponse textResponse = hedgingService.call("rekognition.detectText",
+                    () -> rekognitionClient.detectText(textRequest));
+            result.detectedTexts(textResponse.textDetections().stream()
+                    .map(TextDetection::detectedText)
+                    .toList());
             
         } catch (Exception e) {
-            result.put("error", "Failed to analyze image: " + e.getMessage());
-            result.put("hasSuspiciousContent", false);
-            result.put("isLowQuality", false);
+            if (isBudgetOrLimitFailure(e)) {
+                throw e;
+            }
+            result.error("Failed to analyze image: " + e.getMessage());
+            result.lowQuality(false);
+            suspicious = false;
         }
         
         // Assume tampering if suspicious content is detected
-        boolean suspicious = Boolean.TRUE.equals(result.get("hasSuspiciousContent"));
-        result.put("isTampered", suspicious);
-        
-        return result;
+        return result
+                .suspiciousContent(suspicious)
+                .tampered(suspicious)
+                .build();
+    }
+
+    /**
+     * @return True when a call failed because the request ran out of budget or the limiter
+     * shed it. Such failures are rethrown rather than reported in the result, so that the
+     * caller marks the stage as degraded (or the service as overloaded) and does not treat
+     * the result as a completed check.
+     */
+    static boolean isBudgetOrLimitFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof Deadline.DeadlineExceededException || cause instanceof ApiCallTimeoutException
+                    || cause instanceof DownstreamLimiter.LimitExceededException) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Helper method to check for uniform background which might indicate image manipulation
      */
-    private boolean checkUniformBackground(BufferedImage image) {
+    private boolean checkUniformBackground(ImageContext image) {
         // This is a simplified check - in reality, you'd want more sophisticated analysis
-        // For now, we'll just check corner pixels for similarity
+        // For now, we'll just compare the average color of small patches in the corners
         
         int width = image.getWidth();
         int height = image.getHeight();
@@ -172,66 +297,36 @@ public class RekognitionService {
             return false; // Too small to analyze
         }
         
-        // Get corner pixels
-        int topLeft = image.getRGB(5, 5);
-        int topRight = image.getRGB(width - 6, 5);
-        int bottomLeft = image.getRGB(5, height - 6);
-        int bottomRight = image.getRGB(width - 6, height - 6);
+        BufferedImage pixels = image.getImage();
+        int topLeft = cornerColor(pixels, 2, 2);
+        int topRight = cornerColor(pixels, width - 9, 2);
+        int bottomLeft = cornerColor(pixels, 2, height - 9);
+        int bottomRight = cornerColor(pixels, width - 9, height - 9);
         
         // Check if corners are similar (indicating possible uniform background)
-        return Math.abs(topLeft - topRight) < 10000 && 
-               Math.abs(topLeft - bottomLeft) < 10000 && 
-               Math.abs(topLeft - bottomRight) < 10000;
+        return similarColor(topLeft, topRight) &&
+               similarColor(topLeft, bottomLeft) &&
+               similarColor(topLeft, bottomRight);
     }
 
     /**
-     * Analyzes image quality
-     * @param imageData The image data to analyze
-     * @return Map containing image quality metrics
+     * Average 0xRRGGBB color of the 7x7 patch at (x, y)
      */
-    public Map<String, Object> analyzeImageQuality(byte[] imageData) {
-        Image image = Image.builder()
-                .bytes(SdkBytes.fromByteArray(imageData))
-                .build();
-
-        DetectLabelsRequest request = DetectLabelsRequest.builder()
-                .image(image)
-                .maxLabels(10)
-                .minConfidence(minConfidence.floatValue())
-                .build();
-
-        DetectLabelsResponse response = rekognitionClient.detectLabels(request);
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("labels", response.labels());
-        result.put("qualityIndicators", analyzeForQualityIndicators(response.labels()));
-        
-        return result;
+    private static int cornerColor(BufferedImage image, int x, int y) {
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int pixel : image.getRGB(x, y, 7, 7, null, 0, 7)) {
+            red += (pixel >> 16) & 0xFF;
+            green += (pixel >> 8) & 0xFF;
+            blue += pixel & 0xFF;
+        }
+        return ((red / 49) << 16) | ((green / 49) << 8) | (blue / 49);
     }
-    
-    /**
-     * Helper method to analyze labels for quality indicators
-     */
-    private Map<String, Boolean> analyzeForQualityIndicators(java.util.List<Label> labels) {
-        Map<String, Boolean> indicators = new HashMap<>();
-        
-        boolean hasBlur = labels.stream()
-                .anyMatch(label -> label.name().toLowerCase().contains("blur") || 
-                                 label.name().toLowerCase().contains("out of focus"));
-        
-        boolean hasGoodLighting = labels.stream()
-                .anyMatch(label -> label.name().toLowerCase().contains("light") || 
-                                 label.name().toLowerCase().contains("bright"));
-        
-        boolean hasDocument = labels.stream()
-                .anyMatch(label -> label.name().toLowerCase().contains("document") ||
-                                 label.name().toLowerCase().contains("paper") ||
-                                 label.name().toLowerCase().contains("form"));
-        
-        indicators.put("isBlurry", hasBlur);
-        indicators.put("hasGoodLighting", hasGoodLighting);
-        indicators.put("isDocument", hasDocument);
-        
-        return indicators;
+
+    private static boolean similarColor(int a, int b) {
+        return Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF)) < 16
+                && Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF)) < 16
+                && Math.abs((a & 0xFF) - (b & 0xFF)) < 16;
     }
 }
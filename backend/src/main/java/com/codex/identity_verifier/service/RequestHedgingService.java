@@ -0,0 +1,277 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.util.Deadline;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent AWS analysis calls against tail latency. Each operation keeps a window
+ * of recent latencies; once a call has been outstanding for longer than the operation's
+ * observed p95, an identical second request is sent and whichever succeeds first is used.
+ * Hedges are paid for from a budget that grows by a fixed percentage of calls, so they
+ * cannot multiply load when the downstream itself is slow. The losing request is left to
+ * finish (the SDK calls are not interruptible); its API-call timeout bounds it.
+ */
+@Service
+public class RequestHedgingService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestHedgingService.class);
+
+    private static final int LATENCY_WINDOW = 256;
+    private static final int RECOMPUTE_EVERY = 32;
+    // At most this many hedges can be saved up during quiet periods
+    private static final double MAX_BUDGET_TOKENS = 10.0;
+
+    @Value("${aws.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${aws.hedging.budget-percent:5}")
+    private double budgetPercent;
+
+    @Value("${aws.hedging.percentile:0.95}")
+    private double percentile;
+
+    // No hedging until an operation has this many samples
+    @Value("${aws.hedging.min-samples:20}")
+    private int minSamples;
+
+    @Value("${aws.hedging.min-delay-ms:50}")
+    private long minDelayMs;
+
+    @Value("${aws.hedging.max-threads:64}")
+    private int maxThreads;
+
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "aws-hedge-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // No queue: an attempt that cannot start immediately is not worth hedging
+        this.executor = new ThreadPoolExecutor(
+                0,
+                Math.max(2, maxThreads),
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs an idempotent call, hedging it if it runs past the operation's observed p95
+     * @param operation Name used for latency tracking and metrics, e.g. "textract.detectDocumentText"
+     * @param call The call; must be safe to send twice
+     * @return The result of the first attempt to succeed
+     */
+    public <T> T call(String operation, Supplier<T> call) {
+        OperationStats stats = operations.computeIfAbsent(operation, key -> new OperationStats());
+        stats.calls.increment();
+        if (!enabled) {
+            return call.get();
+        }
+        stats.deposit(budgetPercent / 100.0);
+
+        long hedgeDelayNanos = stats.hedgeDelayNanos;
+        Deadline deadline = Deadline.current();
+        if (hedgeDelayNanos <= 0 || (deadline != null && deadline.remainingNanos() <= hedgeDelayNanos)) {
+            return timed(stats, call);
+        }
+
+        CompletableFuture<T> primary;
+        try {
+            primary = attempt(stats, deadline, call);
+        } catch (RejectedExecutionException e) {
+            return timed(stats, call);
+        }
+        try {
+            return primary.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return hedge(operation, stats, deadline, call, primary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + operation, e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private <T> T hedge(String operation, OperationStats stats, Deadline deadline, Supplier<T> call,
+                        CompletableFuture<T> primary) {
+        CompletableFuture<T> secondary = null;
+        if (stats.withdraw()) {
+            try {
+                secondary = attempt(stats, deadline, call);
+                stats.hedges.increment();
+                log.debug("Hedging {} after {} ms", operation, TimeUnit.NANOSECONDS.toMillis(stats.hedgeDelayNanos));
+            } catch (RejectedExecutionException e) {
+                stats.refund();
+            }
+        } else {
+            stats.budgetExhausted.increment();
+        }
+        if (secondary == null) {
+            return await(primary);
+        }
+
+        // First success wins; the call fails only when both attempts have failed
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        });
+        secondary.whenComplete((result, error) -> {
+            if (error == null) {
+                if (winner.complete(result)) {
+                    stats.hedgeWins.increment();
+                }
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        });
+        return await(winner);
+    }
+
+    /**
+     * Starts one attempt on the hedging pool, bound to the caller's deadline
+     */
+    private <T> CompletableFuture<T> attempt(OperationStats stats, Deadline deadline, Supplier<T> call) {
+        Supplier<T> timedCall = () -> timed(stats, call);
+        return CompletableFuture.supplyAsync(deadline != null ? () -> deadline.callWith(timedCall) : timedCall, executor);
+    }
+
+    private <T> T timed(OperationStats stats, Supplier<T> call) {
+        long start = System.nanoTime();
+        T result = call.get();
+        stats.record(System.nanoTime() - start, percentile, minSamples, TimeUnit.MILLISECONDS.toNanos(minDelayMs));
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for hedged call", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                ? e.getCause().getCause()
+                : e.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new RuntimeException(cause);
+    }
+
+    /**
+     * @return Hedging counters keyed by operation
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("budgetPercent", budgetPercent);
+        Map<String, Object> byOperation = new TreeMap<>();
+        operations.forEach((operation, operationStats) -> byOperation.put(operation, operationStats.toMap()));
+        stats.put("operations", byOperation);
+        return stats;
+    }
+
+    private static final class OperationStats {
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int samples;
+        private int next;
+        private double budgetTokens;
+
+        private volatile long hedgeDelayNanos;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder hedgeWins = new LongAdder();
+        private final LongAdder budgetExhausted = new LongAdder();
+
+        synchronized void record(long latencyNanos, double percentile, int minSamples, long minDelayNanos) {
+            latencies[next] = latencyNanos;
+            next = (next + 1) % LATENCY_WINDOW;
+            samples++;
+            if (samples >= minSamples && (samples == minSamples || samples % RECOMPUTE_EVERY == 0)) {
+                int count = Math.min(samples, LATENCY_WINDOW);
+                long[] window = Arrays.copyOf(latencies, count);
+                Arrays.sort(window);
+                int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+                hedgeDelayNanos = Math.max(minDelayNanos, window[Math.max(0, index)]);
+            }
+        }
+
+        synchronized void deposit(double tokens) {
+            budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + tokens);
+        }
+
+        synchronized boolean withdraw() {
+            if (budgetTokens < 1.0) {
+                return false;
+            }
+            budgetTokens -= 1.0;
+            return true;
+        }
+
+        synchronized void refund() {
+            budgetTokens += 1.0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            long delay = hedgeDelayNanos;
+            map.put("calls", calls.sum());
+            map.put("hedgeDelayMs", delay > 0 ? TimeUnit.NANOSECONDS.toMillis(delay) : null);
+            map.put("hedges", hedges.sum());
+            map.put("hedgeWins", hedgeWins.sum());
+            map.put("budgetExhausted", budgetExhausted.sum());
+            return map;
+        }
+    }
+}
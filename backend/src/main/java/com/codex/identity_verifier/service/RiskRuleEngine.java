@@ -0,0 +1,479 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.FaceDetectionResult;
+import com.codex.identity_verifier.model.ForensicAnalysisResult;
+import com.codex.identity_verifier.model.IdentityInfo;
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Scores documents against weighted rules loaded from a versioned properties file.
+ * Rules are compiled once into a flat plan (parallel arrays, precompiled patterns) and
+ * swapped atomically when the file changes, so evaluation never parses or allocates
+ * beyond the result. See risk-rules.properties for the rule syntax.
+ */
+@Service
+public class RiskRuleEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(RiskRuleEngine.class);
+
+    private static final String RULE_PREFIX = "rule.";
+
+    private static final int OP_SIGNAL = 0;
+    private static final int OP_PIXELS_BELOW = 1;
+    private static final int OP_PIXELS_ABOVE = 2;
+    private static final int OP_FIELD_MATCHES = 3;
+    private static final int OP_FIELD_NOT_MATCHES = 4;
+    private static final int OP_FIELD_SHORTER_THAN = 5;
+
+    private static final String[] FIELDS = {"name", "idNumber", "dob", "address", "expiryDate"};
+
+    /**
+     * Boolean facts about a document that rules can be conditioned on
+     */
+    public enum Signal {
+        FACE_MISSING,
+        MULTIPLE_FACES,
+        TAMPERED,
+        SUSPICIOUS_CONTENT,
+        BLURRY,
+        POOR_LIGHTING,
+        DOCUMENT_DETECTED,
+        NAME_MISSING,
+        ID_NUMBER_MISSING,
+        DOB_MISSING,
+        ALL_CORE_FIELDS_PRESENT,
+        ANALYSIS_DEGRADED,
+        MRZ_CHECK_FAILED,
+        FORENSIC_TAMPERING,
+        // Raised by the caller: a near-duplicate of a document submitted by another owner
+        NEAR_DUPLICATE_OTHER_OWNER,
+        // Raised by the caller: the document's face was indexed from another owner's submission
+        FACE_REUSED_OTHER_OWNER,
+        // Raised by the caller for /api/verify/with-selfie
+        SELFIE_FACE_MISSING,
+        SELFIE_MISMATCH,
+        // Raised by the caller from the local screening checks (DocumentScreener)
+        BLANK_PAGE,
+        FORMAT_MISMATCH,
+        EDITING_SOFTWARE;
+
+        public long bit() {
+            return 1L << ordinal();
+        }
+    }
+
+    private final ResourceLoader resourceLoader;
+
+    @Value("${verification.rules.location:classpath:risk-rules.properties}")
+    private String rulesLocation;
+
+    @Value("${verification.rules.reload-interval-ms:30000}")
+    private long reloadIntervalMs;
+
+    private volatile RulePlan plan;
+    private volatile long loadedLastModified;
+    private ScheduledExecutorService reloader;
+
+    @Autowired
+    public RiskRuleEngine(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    void init() {
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        try {
+            this.plan = load(resource);
+            this.loadedLastModified = lastModified(resource);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Failed to load risk rules from " + rulesLocation, e);
+        }
+        log.info("Loaded {} risk rules (version {}) from {}", plan.size(), plan.version, rulesLocation);
+
+        // Rules packaged in the jar cannot change, so only external files are watched
+        if (reloadIntervalMs > 0 && isFile(resource)) {
+            this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "risk-rules-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(() -> reloadIfModified(resource),
+                    reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Version of the active rule set; stamped on records and used in cache keys
+     */
+    public String getRulesVersion() {
+        return plan.version;
+    }
+
+    /**
+     * Signals of the Rekognition face and tamper checks. Signals are collected per stage so
+     * that each tier of the screening cascade can be scored as soon as it completes. A null
+     * result marks a stage that was skipped for lack of time: it raises ANALYSIS_DEGRADED
+     * instead of its own signals.
+     * @return Bitmask of {@link Signal#bit()} values; callers OR together the signals of all
+     * stages and may add further signals
+     */
+    public long imageCheckSignals(FaceDetectionResult faceDetectionResult, TamperDetectionResult tamperDetectionResult) {
+        long signals = 0L;
+        if (faceDetectionResult == null) {
+            signals |= Signal.ANALYSIS_DEGRADED.bit();
+        } else if (!faceDetectionResult.isFaceDetected()) {
+            signals |= Signal.FACE_MISSING.bit();
+        } else if (faceDetectionResult.getFaceCount() > 1) {
+            signals |= Signal.MULTIPLE_FACES.bit();
+        }
+        if (tamperDetectionResult == null) {
+            signals |= Signal.ANALYSIS_DEGRADED.bit();
+        } else {
+            if (tamperDetectionResult.isTampered()) {
+                signals |= Signal.TAMPERED.bit();
+            }
+            if (tamperDetectionResult.isSuspiciousContent()) {
+                signals |= Signal.SUSPICIOUS_CONTENT.bit();
+            }
+        }
+        return signals;
+    }
+
+    /**
+     * Signals of the local image quality analysis; null raises ANALYSIS_DEGRADED
+     */
+    public long qualitySignals(QualityAnalysisResult qualityAnalysisResult) {
+        if (qualityAnalysisResult == null) {
+            return Signal.ANALYSIS_DEGRADED.bit();
+        }
+        long signals = 0L;
+        if (qualityAnalysisResult.isBlurry()) {
+            signals |= Signal.BLURRY.bit();
+        }
+        if (!qualityAnalysisResult.isGoodLighting()) {
+            signals |= Signal.POOR_LIGHTING.bit();
+        }
+        if (qualityAnalysisResult.isDocument()) {
+            signals |= Signal.DOCUMENT_DETECTED.bit();
+        }
+        return signals;
+    }
+
+    /**
+     * Signals of the local forensic analysis; null raises ANALYSIS_DEGRADED
+     */
+    public long forensicSignals(ForensicAnalysisResult forensicAnalysisResult) {
+        if (forensicAnalysisResult == null) {
+            return Signal.ANALYSIS_DEGRADED.bit();
+        }
+        return forensicAnalysisResult.isTampered() ? Signal.FORENSIC_TAMPERING.bit() : 0L;
+    }
+
+    /**
+     * Signals of the extracted identity fields; null raises ANALYSIS_DEGRADED
+     */
+    public long identitySignals(IdentityInfo identityInfo) {
+        if (identityInfo == null) {
+            return Signal.ANALYSIS_DEGRADED.bit();
+        }
+        long signals = 0L;
+        if (!identityInfo.hasName()) {
+            signals |= Signal.NAME_MISSING.bit();
+        }
+        if (!identityInfo.hasIdNumber()) {
+            signals |= Signal.ID_NUMBER_MISSING.bit();
+        }
+        if (!identityInfo.hasDob()) {
+            signals |= Signal.DOB_MISSING.bit();
+        }
+        if (identityInfo.missingCoreFieldCount() == 0) {
+            signals |= Signal.ALL_CORE_FIELDS_PRESENT.bit();
+        }
+        if (identityInfo.getMrzStatus() == IdentityInfo.MrzStatus.CHECK_DIGIT_FAILED) {
+            signals |= Signal.MRZ_CHECK_FAILED.bit();
+        }
+        return signals;
+    }
+
+    /**
+     * Evaluates the active rule set
+     * @param signals Bitmask from {@link #imageCheckSignals} and the other collectors
+     * @param totalPixels Image pixel count, or -1 when unknown (dimension rules are skipped)
+     * @param identityInfo Extracted fields for field rules
+     * @return Base score clamped to 0..100 and the separate consistency penalty
+     */
+    public RiskEvaluation evaluate(long signals, long totalPixels, IdentityInfo identityInfo) {
+        RulePlan current = plan;
+        int[] groupScores = score(current, signals, 0L, totalPixels, identityInfo);
+        int baseScore = Math.min(100, Math.max(0, groupScores[0]));
+        return new RiskEvaluation(baseScore, groupScores[1], current.version);
+    }
+
+    /**
+     * Lowest base score a document can still end up with while some of its analysis is
+     * pending: every rule on a pending signal that would lower the score is assumed to fire,
+     * and every one that would raise it is assumed not to
+     * @param signals Signals raised so far
+     * @param pendingSignals Signals whose stages have not run yet
+     * @param totalPixels Image pixel count, or -1 when unknown
+     * @param identityInfo Extracted fields, or null while extraction is pending
+     * @return Base score clamped to 0..100; the consistency penalty can only add to it
+     */
+    public int minimumBaseScore(long signals, long pendingSignals, long totalPixels, IdentityInfo identityInfo) {
+        int[] groupScores = score(plan, signals, pendingSignals & ~signals, totalPixels, identityInfo);
+        return Math.min(100, Math.max(0, groupScores[0]));
+    }
+
+    /**
+     * Sums the weights of the fired rules per group. Rules on pending signals, and field rules
+     * without identityInfo, count only when they would lower the score.
+     */
+    private static int[] score(RulePlan current, long signals, long pendingSignals, long totalPixels,
+                               IdentityInfo identityInfo) {
+        String[] fieldValues = identityInfo == null ? null : new String[]{
+                identityInfo.getName(),
+                identityInfo.getIdNumber(),
+                identityInfo.getDob(),
+                identityInfo.getAddress(),
+                identityInfo.getExpiryDate()
+        };
+
+        int[] groupScores = new int[2];
+        for (int i = 0; i < current.ops.length; i++) {
+            boolean fired;
+            switch (current.ops[i]) {
+                case OP_SIGNAL -> fired = (signals & current.operands[i]) != 0
+                        || (pendingSignals & current.operands[i]) != 0 && current.weights[i] < 0;
+                case OP_PIXELS_BELOW -> fired = totalPixels >= 0 && totalPixels < current.operands[i];
+                case OP_PIXELS_ABOVE -> fired = totalPixels >= 0 && totalPixels > current.operands[i];
+                default -> {
+                    String value = fieldValues != null ? fieldValues[(int) current.operands[i]] : null;
+                    if (fieldValues == null) {
+                        fired = current.weights[i] < 0;
+                    } else if (value == null || value.isBlank()) {
+                        fired = false;
+                    } else if (current.ops[i] == OP_FIELD_SHORTER_THAN) {
+                        fired = value.length() < current.lengths[i];
+                    } else {
+                        boolean found = current.patterns[i].matcher(value).find();
+                        fired = current.ops[i] == OP_FIELD_MATCHES ? found : !found;
+                    }
+                }
+            }
+            if (fired) {
+                groupScores[current.groups[i]] += current.weights[i];
+            }
+        }
+        return groupScores;
+    }
+
+    private void reloadIfModified(Resource resource) {
+        long modified = lastModified(resource);
+        if (modified == loadedLastModified) {
+            return;
+        }
+        // Recorded up front so that a broken edit is reported once, not on every check
+        this.loadedLastModified = modified;
+        try {
+            RulePlan reloaded = load(resource);
+            this.plan = reloaded;
+            log.info("Reloaded {} risk rules (version {}) from {}", reloaded.size(), reloaded.version, rulesLocation);
+        } catch (Exception e) {
+            // Keep serving the previous plan; a broken edit must not take scoring down
+            log.error("Failed to reload risk rules from {}; keeping version {}", rulesLocation, plan.version, e);
+        }
+    }
+
+    private RulePlan load(Resource resource) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = resource.getInputStream()) {
+            properties.load(in);
+        }
+        return compile(properties);
+    }
+
+    static RulePlan compile(Properties properties) {
+        String version = properties.getProperty("version", "").trim();
+        if (version.isEmpty()) {
+            throw new IllegalArgumentException("Risk rules must declare a version");
+        }
+
+        TreeSet<String> ruleIds = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(RULE_PREFIX) && key.endsWith(".when")) {
+                ruleIds.add(key.substring(RULE_PREFIX.length(), key.length() - ".when".length()));
+            }
+        }
+
+        List<String> ids = new ArrayList<>(ruleIds);
+        int n = ids.size();
+        RulePlan compiled = new RulePlan(version, n);
+        for (int i = 0; i < n; i++) {
+            String id = ids.get(i);
+            String when = properties.getProperty(RULE_PREFIX + id + ".when").trim();
+            String weight = properties.getProperty(RULE_PREFIX + id + ".weight");
+            String group = properties.getProperty(RULE_PREFIX + id + ".group", "base").trim();
+            try {
+                if (weight == null) {
+                    throw new IllegalArgumentException("missing weight");
+                }
+                compiled.weights[i] = Integer.parseInt(weight.trim());
+                compiled.groups[i] = switch (group) {
+                    case "base" -> 0;
+                    case "consistency" -> 1;
+                    default -> throw new IllegalArgumentException("unknown group '" + group + "'");
+                };
+                compileCondition(compiled, i, when);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid risk rule '" + id + "': " + e.getMessage(), e);
+            }
+        }
+        return compiled;
+    }
+
+    private static void compileCondition(RulePlan compiled, int i, String when) {
+        String[] parts = when.split(":", 3);
+        switch (parts[0]) {
+            case "PIXELS_BELOW", "PIXELS_ABOVE" -> {
+                requireParts(parts, 2, when);
+                compiled.ops[i] = parts[0].equals("PIXELS_BELOW") ? OP_PIXELS_BELOW : OP_PIXELS_ABOVE;
+                compiled.operands[i] = Long.parseLong(parts[1].trim());
+            }
+            case "FIELD_MATCHES", "FIELD_NOT_MATCHES" -> {
+                requireParts(parts, 3, when);
+                compiled.ops[i] = parts[0].equals("FIELD_MATCHES") ? OP_FIELD_MATCHES : OP_FIELD_NOT_MATCHES;
+                compiled.operands[i] = fieldIndex(parts[1]);
+                try {
+                    compiled.patterns[i] = Pattern.compile(parts[2]);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid pattern '" + parts[2] + "'", e);
+                }
+            }
+            case "FIELD_SHORTER_THAN" -> {
+                requireParts(parts, 3, when);
+                compiled.ops[i] = OP_FIELD_SHORTER_THAN;
+                compiled.operands[i] = fieldIndex(parts[1]);
+                compiled.lengths[i] = Integer.parseInt(parts[2].trim());
+            }
+            default -> {
+                requireParts(parts, 1, when);
+                compiled.ops[i] = OP_SIGNAL;
+                compiled.operands[i] = Signal.valueOf(parts[0]).bit();
+            }
+        }
+    }
+
+    private static void requireParts(String[] parts, int expected, String when) {
+        if (parts.length != expected) {
+            throw new IllegalArgumentException("malformed condition '" + when + "'");
+        }
+    }
+
+    private static int fieldIndex(String field) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(field.trim())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown field '" + field + "'");
+    }
+
+    private static boolean isFile(Resource resource) {
+        try {
+            return resource.isFile();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Compiled rule set laid out as parallel arrays indexed by rule
+     */
+    static final class RulePlan {
+        final String version;
+        final int[] ops;
+        final long[] operands;
+        final int[] lengths;
+        final Pattern[] patterns;
+        final int[] weights;
+        final int[] groups;
+
+        RulePlan(String version, int size) {
+            this.version = version;
+            this.ops = new int[size];
+            this.operands = new long[size];
+            this.lengths = new int[size];
+            this.patterns = new Pattern[size];
+            this.weights = new int[size];
+            this.groups = new int[size];
+        }
+
+        int size() {
+            return ops.length;
+        }
+    }
+
+    /**
+     * Scores produced by one evaluation
+     */
+    public static class RiskEvaluation {
+        private final int baseScore;
+        private final int consistencyPenalty;
+        private final String rulesVersion;
+
+        public RiskEvaluation(int baseScore, int consistencyPenalty, String rulesVersion) {
+            this.baseScore = baseScore;
+            this.consistencyPenalty = consistencyPenalty;
+            this.rulesVersion = rulesVersion;
+        }
+
+        public int getBaseScore() {
+            return baseScore;
+        }
+
+        public int getConsistencyPenalty() {
+            return consistencyPenalty;
+        }
+
+        public String getRulesVersion() {
+            return rulesVersion;
+        }
+    }
+}
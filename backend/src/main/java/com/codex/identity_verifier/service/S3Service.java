@@ -1,5 +1,6 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.util.DocumentBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -9,6 +10,7 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.UUID;
 
 @Service
@@ -29,8 +31,8 @@ public class S3Service {
      * @return The S3 key of the uploaded file
      */
     public String uploadFile(MultipartFile file) throws IOException {
-        ensureBucketAccessible();
         String key = generateUniqueKey(file.getOriginalFilename());
+        ensureBucketAccessible();
 
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(bucketName)
@@ -38,11 +40,35 @@ public class S3Service {
                 .contentType(file.getContentType())
                 .build();
 
-        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
-
+        // Stream from the multipart storage rather than materializing the upload
+        s3Client.putObject(putObjectRequest, RequestBody.fromContentProvider(() -> {
+            try {
+                return file.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, file.getSize(), contentTypeOrDefault(file.getContentType())));
         return key;
     }
 
+    /**
+     * Uploads an already-buffered document under a caller-chosen key
+     * @param key The S3 key to write
+     * @param document The document
+     * @param contentType The content type to store with the object
+     */
+    public void uploadDocument(String key, DocumentBuffer document, String contentType) {
+        ensureBucketAccessible();
+
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        s3Client.putObject(putObjectRequest, document.toRequestBody(contentTypeOrDefault(contentType)));
+    }
+
     /**
      * Downloads a file from S3 bucket
      * @param key The S3 key of the file to download
@@ -54,7 +80,8 @@ public class S3Service {
                 .key(key)
                 .build();
 
-        return s3Client.getObjectAsBytes(getObjectRequest).asByteArray();
+        // The response buffer is not shared, so it can be handed out without a copy
+        return s3Client.getObjectAsBytes(getObjectRequest).asByteArrayUnsafe();
     }
 
     /**
@@ -75,7 +102,7 @@ public class S3Service {
      * @param originalFilename Original filename of the file
      * @return Unique S3 key
      */
-    private String generateUniqueKey(String originalFilename) {
+    public String generateUniqueKey(String originalFilename) {
         String extension = "";
         if (originalFilename != null && originalFilename.contains(".")) {
             extension = originalFilename.substring(originalFilename.lastIndexOf("."));
@@ -110,6 +137,10 @@ public class S3Service {
         return bucketName;
     }
 
+    private String contentTypeOrDefault(String contentType) {
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
     private void ensureBucketAccessible() {
         try {
             if (bucketName == null || bucketName.isBlank()) {
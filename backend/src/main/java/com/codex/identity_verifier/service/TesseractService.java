@@ -1,64 +1,184 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @Service
 public class TesseractService {
 
+    // White space between stacked regions, so Tesseract never merges lines across them
+    private static final int REGION_GAP = 24;
+
+    private final TesseractWorkerPool workerPool;
+
     @Value("${tesseract.enabled:false}")
     private boolean tesseractEnabled;
 
-    @Value("${tesseract.command:tesseract}")
-    private String tesseractCommand;
+    @Autowired
+    public TesseractService(TesseractWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public boolean isEnabled() {
+        return tesseractEnabled;
+    }
 
-    public String extractText(byte[] imageData) {
-        if (!tesseractEnabled || imageData == null || imageData.length == 0) {
-            return "";
+    /**
+     * Recognizes a whole page
+     * @return Lines in reading order; empty if Tesseract is disabled or fails
+     */
+    public List<OcrLine> recognizeLines(DocumentBuffer document) {
+        if (!tesseractEnabled || document == null || document.isEmpty()) {
+            return Collections.emptyList();
         }
-        File input = null;
-        File outputBase = null;
-        try {
-            input = File.createTempFile("ocr-input-", ".png");
-            outputBase = File.createTempFile("ocr-output-", "");
-            Files.write(input.toPath(), imageData);
-
-            ProcessBuilder pb = new ProcessBuilder(
-                    tesseractCommand,
-                    input.getAbsolutePath(),
-                    outputBase.getAbsolutePath()
-            );
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            boolean finished = process.waitFor(5, TimeUnit.SECONDS);
-            if (!finished || process.exitValue() != 0) {
-                return "";
+        return run(out -> {
+            try (InputStream in = document.newInputStream()) {
+                in.transferTo(out);
             }
-            File outputTxt = new File(outputBase.getAbsolutePath() + ".txt");
-            if (!outputTxt.exists()) {
-                return "";
+        });
+    }
+
+    /**
+     * Recognizes several cropped regions of a page in a single Tesseract run: the regions are
+     * stacked vertically and each recognized line is assigned back to the region it falls in
+     * @return One list of lines per region, in the order given
+     */
+    public List<List<OcrLine>> recognizeRegions(List<BufferedImage> regions) {
+        List<List<OcrLine>> results = new ArrayList<>(regions.size());
+        for (int i = 0; i < regions.size(); i++) {
+            results.add(new ArrayList<>());
+        }
+        if (!tesseractEnabled || regions.isEmpty()) {
+            return results;
+        }
+
+        int width = 0;
+        int height = -REGION_GAP;
+        int[] bandEnds = new int[regions.size()];
+        for (int i = 0; i < regions.size(); i++) {
+            width = Math.max(width, regions.get(i).getWidth());
+            height += REGION_GAP + regions.get(i).getHeight();
+            bandEnds[i] = height + REGION_GAP / 2;
+        }
+        BufferedImage stacked = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = stacked.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            int y = 0;
+            for (BufferedImage region : regions) {
+                graphics.drawImage(region, 0, y, null);
+                y += region.getHeight() + REGION_GAP;
             }
-            return Files.readString(outputTxt.toPath(), StandardCharsets.UTF_8);
-        } catch (Exception ignored) {
-            return "";
         } finally {
-            if (input != null && input.exists()) {
-                input.delete();
+            graphics.dispose();
+        }
+
+        // Each region holds a label and its value, so let Tesseract find the lines itself
+        for (OcrLine line : run(out -> ImageIO.write(stacked, "png", out), "--psm", "6")) {
+            int band = 0;
+            while (band < bandEnds.length - 1 && line.centerY >= bandEnds[band]) {
+                band++;
             }
-            if (outputBase != null) {
-                File txt = new File(outputBase.getAbsolutePath() + ".txt");
-                if (txt.exists()) {
-                    txt.delete();
-                }
-                if (outputBase.exists()) {
-                    outputBase.delete();
+            results.get(band).add(line);
+        }
+        return results;
+    }
+
+    private List<OcrLine> run(TesseractWorkerPool.ImageSource image, String... options) {
+        String tsv = workerPool.recognize(image, options);
+        return tsv != null ? parseTsv(tsv) : Collections.emptyList();
+    }
+
+    /**
+     * Groups TSV word rows (level 5) into lines; a line's confidence is the mean of its words'
+     */
+    static List<OcrLine> parseTsv(String tsv) {
+        List<OcrLine> lines = new ArrayList<>();
+        String lineKey = null;
+        StringBuilder text = new StringBuilder();
+        float confidenceSum = 0f;
+        int words = 0;
+        int centerY = 0;
+        for (String row : tsv.split("\\R")) {
+            // level page block paragraph line word left top width height conf text
+            String[] columns = row.split("\t", -1);
+            if (columns.length < 12 || !"5".equals(columns[0])) {
+                continue;
+            }
+            String word = columns[11].trim();
+            float confidence;
+            int top;
+            int height;
+            try {
+                confidence = Float.parseFloat(columns[10]);
+                top = Integer.parseInt(columns[7]);
+                height = Integer.parseInt(columns[9]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (word.isEmpty() || confidence < 0) {
+                continue;
+            }
+            String key = columns[1] + '.' + columns[2] + '.' + columns[3] + '.' + columns[4];
+            if (!key.equals(lineKey)) {
+                if (words > 0) {
+                    lines.add(new OcrLine(text.toString(), confidenceSum / words, centerY));
                 }
+                lineKey = key;
+                text.setLength(0);
+                confidenceSum = 0f;
+                words = 0;
+                centerY = top + height / 2;
             }
+            if (words > 0) {
+                text.append(' ');
+            }
+            text.append(word);
+            confidenceSum += confidence;
+            words++;
+        }
+        if (words > 0) {
+            lines.add(new OcrLine(text.toString(), confidenceSum / words, centerY));
+        }
+        return lines;
+    }
+
+    /**
+     * A recognized line of text
+     */
+    public static class OcrLine {
+        private final String text;
+        private final float confidence;
+        // Vertical center of the first word, in pixels of the recognized image
+        private final int centerY;
+
+        OcrLine(String text, float confidence, int centerY) {
+            this.text = text;
+            this.confidence = confidence;
+            this.centerY = centerY;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return Mean word confidence, 0 to 100 like Textract's
+         */
+        public float getConfidence() {
+            return confidence;
         }
     }
 }
@@ -0,0 +1,473 @@
+package com.codex.identity_verifier.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed set of OCR workers fed from a bounded queue. Images are streamed to Tesseract over
+ * stdin and TSV is read back from stdout, so no temp files are written.
+ * <p>
+ * The tesseract CLI exits after each image, so by default every job still starts a
+ * process. When tesseract.server-command is set, each worker instead keeps one resident
+ * OCR server alive (e.g. a wrapper around the Tesseract API that has its language models
+ * loaded) and talks to it with a line-framed protocol:
+ * <pre>
+ *   request:  "OCR &lt;byte count&gt; &lt;tesseract options&gt;\n" followed by the image bytes
+ *   response: "OK &lt;byte count&gt;\n" followed by the TSV, or "ERR &lt;message&gt;\n"
+ *   health:   "PING\n" answered by "PONG\n"
+ * </pre>
+ * Idle resident workers are pinged every health-check interval. A server that fails a
+ * ping, errors or times out is restarted, and every server is recycled after a fixed
+ * number of jobs to bound leaks in long-lived native code.
+ */
+@Component
+public class TesseractWorkerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(TesseractWorkerPool.class);
+
+    @Value("${tesseract.enabled:false}")
+    private boolean enabled;
+
+    @Value("${tesseract.command:tesseract}")
+    private String tesseractCommand;
+
+    @Value("${tesseract.server-command:}")
+    private String serverCommand;
+
+    // 0 means one worker per available core
+    @Value("${tesseract.pool.workers:0}")
+    private int workerCount;
+
+    @Value("${tesseract.pool.max-queue:32}")
+    private int maxQueue;
+
+    // Jobs that waited longer are dropped: their caller has usually moved on
+    @Value("${tesseract.pool.max-queue-wait-ms:2000}")
+    private long maxQueueWaitMs;
+
+    @Value("${tesseract.pool.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Value("${tesseract.pool.max-jobs-per-worker:500}")
+    private int maxJobsPerWorker;
+
+    @Value("${tesseract.pool.health-check-interval-ms:30000}")
+    private long healthCheckIntervalMs;
+
+    private BlockingQueue<Job> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Worker> workers = new ArrayList<>();
+    private ScheduledExecutorService watchdog;
+    private volatile boolean running;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder recycled = new LongAdder();
+    private final LongAdder unhealthy = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final LongAdder ocrNanos = new LongAdder();
+    private final AtomicLong maxOcrNanos = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        int parallelism = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, maxQueue));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tesseract-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.running = true;
+        boolean resident = serverCommand != null && !serverCommand.isBlank();
+        for (int i = 0; i < parallelism; i++) {
+            Worker worker = resident ? new ResidentWorker() : new CliWorker();
+            Thread thread = new Thread(() -> runWorker(worker), "tesseract-worker-" + (i + 1));
+            thread.setDaemon(true);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+        log.info("Started {} Tesseract workers ({} mode)", parallelism, resident ? "resident" : "cli");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        workers.forEach(Worker::close);
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Recognizes one image on the pool
+     * @param image Writes the encoded image (PNG, JPEG, TIFF...)
+     * @param options Extra tesseract options, e.g. "--psm", "6"
+     * @return Tesseract's TSV output, or null if OCR is disabled, the pool is saturated,
+     * the job waited too long in the queue or recognition failed
+     */
+    public String recognize(ImageSource image, String... options) {
+        if (queue == null) {
+            return null;
+        }
+        Job job = new Job(image, options);
+        submitted.increment();
+        if (!queue.offer(job)) {
+            rejected.increment();
+            return null;
+        }
+        try {
+            // A worker finishes or drops every job within these bounds
+            return job.result.get(maxQueueWaitMs + timeoutMs + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        } finally {
+            job.abandoned.set(true);
+        }
+    }
+
+    private void runWorker(Worker worker) {
+        while (running) {
+            Job job;
+            try {
+                job = queue.poll(healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null) {
+                if (!worker.isHealthy()) {
+                    unhealthy.increment();
+                    recycle(worker);
+                }
+                continue;
+            }
+
+            long waited = System.nanoTime() - job.enqueuedAt;
+            queueNanos.add(waited);
+            maxQueueNanos.accumulateAndGet(waited, Math::max);
+            if (job.abandoned.get() || waited > TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMs)) {
+                expired.increment();
+                job.result.complete(null);
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                job.result.complete(worker.recognize(job));
+                completed.increment();
+            } catch (TimeoutException e) {
+                timeouts.increment();
+                job.result.complete(null);
+                recycle(worker);
+            } catch (Exception e) {
+                log.debug("Tesseract worker failed: {}", e.getMessage());
+                failures.increment();
+                job.result.complete(null);
+                recycle(worker);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                ocrNanos.add(elapsed);
+                maxOcrNanos.accumulateAndGet(elapsed, Math::max);
+            }
+            if (worker.jobs >= maxJobsPerWorker) {
+                recycle(worker);
+            }
+        }
+    }
+
+    private void recycle(Worker worker) {
+        worker.close();
+        worker.jobs = 0;
+        recycled.increment();
+    }
+
+    /**
+     * Kills a process and its children: a wrapper script's child would otherwise keep the
+     * output pipe open after the wrapper is gone
+     */
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * @return Queue and worker counters; times are in milliseconds
+     */
+    public Map<String, Object> getStats() {
+        long ocrCount = Math.max(1, completed.sum() + failures.sum() + timeouts.sum());
+        long dequeued = Math.max(1, ocrCount + expired.sum());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("mode", serverCommand != null && !serverCommand.isBlank() ? "resident" : "cli");
+        stats.put("workers", workers.size());
+        stats.put("queued", queue != null ? queue.size() : 0);
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("expired", expired.sum());
+        stats.put("completed", completed.sum());
+        stats.put("failures", failures.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("processesStarted", started.sum());
+        stats.put("recycled", recycled.sum());
+        stats.put("unhealthy", unhealthy.sum());
+        stats.put("avgQueueMs", nanosToMillis(queueNanos.sum() / dequeued));
+        stats.put("maxQueueMs", nanosToMillis(maxQueueNanos.get()));
+        stats.put("avgOcrMs", nanosToMillis(ocrNanos.sum() / ocrCount));
+        stats.put("maxOcrMs", nanosToMillis(maxOcrNanos.get()));
+        return stats;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    /**
+     * Writes an encoded image to a worker
+     */
+    public interface ImageSource {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final class Job {
+        private final ImageSource image;
+        private final String[] options;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final AtomicBoolean abandoned = new AtomicBoolean();
+
+        Job(ImageSource image, String[] options) {
+            this.image = image;
+            this.options = options;
+        }
+    }
+
+    private abstract static class Worker {
+        // Only touched by the worker's own thread
+        int jobs;
+
+        abstract String recognize(Job job) throws IOException, TimeoutException;
+
+        boolean isHealthy() {
+            return true;
+        }
+
+        void close() {
+        }
+    }
+
+    /**
+     * One tesseract process per job, reading the image from stdin and writing TSV to stdout
+     */
+    private final class CliWorker extends Worker {
+
+        @Override
+        String recognize(Job job) throws IOException, TimeoutException {
+            List<String> command = new ArrayList<>();
+            command.add(tesseractCommand);
+            command.add("stdin");
+            command.add("stdout");
+            command.addAll(Arrays.asList(job.options));
+            // Word boxes and confidences instead of plain text
+            command.add("tsv");
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            started.increment();
+            jobs++;
+            AtomicBoolean killed = new AtomicBoolean();
+            ScheduledFuture<?> kill = watchdog.schedule(() -> {
+                killed.set(true);
+                kill(process);
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                try (OutputStream stdin = new BufferedOutputStream(process.getOutputStream())) {
+                    job.image.writeTo(stdin);
+                }
+                byte[] output = process.getInputStream().readAllBytes();
+                int exitCode = process.waitFor();
+                if (killed.get()) {
+                    throw new TimeoutException("tesseract did not finish within " + timeoutMs + " ms");
+                }
+                if (exitCode != 0) {
+                    throw new IOException("tesseract exited with " + exitCode);
+                }
+                return new String(output, StandardCharsets.UTF_8);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for tesseract", e);
+            } catch (IOException e) {
+                if (killed.get()) {
+                    throw new TimeoutException("tesseract did not finish within " + timeoutMs + " ms");
+                }
+                throw e;
+            } finally {
+                kill.cancel(false);
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * A long-lived OCR server speaking the framed protocol described on the class
+     */
+    private final class ResidentWorker extends Worker {
+        private Process process;
+        private InputStream in;
+        private OutputStream out;
+
+        @Override
+        String recognize(Job job) throws IOException, TimeoutException {
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            job.image.writeTo(image);
+            StringBuilder header = new StringBuilder("OCR ").append(image.size());
+            for (String option : job.options) {
+                header.append(' ').append(option);
+            }
+            header.append('\n');
+
+            ensureStarted();
+            jobs++;
+            return exchange(header.toString(), image);
+        }
+
+        @Override
+        boolean isHealthy() {
+            if (process == null) {
+                return true;
+            }
+            try {
+                return process.isAlive() && "PONG".equals(exchange("PING\n", null));
+            } catch (IOException | TimeoutException e) {
+                return false;
+            }
+        }
+
+        @Override
+        void close() {
+            if (process != null) {
+                kill(process);
+                process = null;
+            }
+        }
+
+        private void ensureStarted() throws IOException {
+            if (process != null && process.isAlive()) {
+                return;
+            }
+            close();
+            process = new ProcessBuilder(serverCommand.trim().split("\\s+"))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            started.increment();
+            in = new BufferedInputStream(process.getInputStream());
+            out = new BufferedOutputStream(process.getOutputStream());
+        }
+
+        /**
+         * Sends a request and reads the response, killing the server if it does not answer in time
+         * @return The TSV payload of an OCR response, the response line otherwise, or null for a
+         * per-image "ERR", after which the server is still usable
+         */
+        private String exchange(String header, ByteArrayOutputStream body) throws IOException, TimeoutException {
+            Process current = process;
+            AtomicBoolean killed = new AtomicBoolean();
+            ScheduledFuture<?> kill = watchdog.schedule(() -> {
+                killed.set(true);
+                kill(current);
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                out.write(header.getBytes(StandardCharsets.US_ASCII));
+                if (body != null) {
+                    body.writeTo(out);
+                }
+                out.flush();
+                String line = readLine();
+                if (line == null) {
+                    throw new IOException("OCR server closed its output");
+                }
+                if (body == null) {
+                    return line;
+                }
+                if (line.startsWith("ERR")) {
+                    log.debug("OCR server rejected image: {}", line.substring(3).trim());
+                    return null;
+                }
+                if (!line.startsWith("OK ")) {
+                    throw new IOException("Unexpected OCR server response: " + line);
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(line.substring(3).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unexpected OCR server response: " + line);
+                }
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length) {
+                    throw new IOException("OCR server closed its output");
+                }
+                return new String(payload, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                if (killed.get()) {
+                    throw new TimeoutException("OCR server did not answer within " + timeoutMs + " ms");
+                }
+                throw e;
+            } finally {
+                kill.cancel(false);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+            return line.length() > 0 ? line.toString() : null;
+        }
+    }
+}
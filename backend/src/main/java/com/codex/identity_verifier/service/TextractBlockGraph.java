@@ -0,0 +1,248 @@
+package com.codex.identity_verifier.service;
+
+import software.amazon.awssdk.services.textract.model.Block;
+import software.amazon.awssdk.services.textract.model.BlockType;
+import software.amazon.awssdk.services.textract.model.EntityType;
+import software.amazon.awssdk.services.textract.model.Relationship;
+import software.amazon.awssdk.services.textract.model.RelationshipType;
+import software.amazon.awssdk.services.textract.model.SelectionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Textract blocks indexed by id. The index is built in one pass over the response, after
+ * which KEY_VALUE_SET, TABLE and CELL relationships are resolved with one lookup per
+ * related id, so reconstruction stays linear in the number of blocks even for large
+ * multi-page documents.
+ */
+public final class TextractBlockGraph {
+
+    private final Map<String, Block> blocksById;
+    private final List<Block> keyBlocks = new ArrayList<>();
+    private final List<Block> tableBlocks = new ArrayList<>();
+
+    private TextractBlockGraph(List<Block> blocks) {
+        this.blocksById = new HashMap<>(Math.max(16, blocks.size() * 4 / 3 + 1));
+        for (Block block : blocks) {
+            if (block.id() != null) {
+                blocksById.put(block.id(), block);
+            }
+            if (block.blockType() == BlockType.KEY_VALUE_SET && hasEntityType(block, EntityType.KEY)) {
+                keyBlocks.add(block);
+            } else if (block.blockType() == BlockType.TABLE) {
+                tableBlocks.add(block);
+            }
+        }
+    }
+
+    /**
+     * Indexes the blocks of a Textract response
+     */
+    public static TextractBlockGraph of(List<Block> blocks) {
+        return new TextractBlockGraph(blocks != null ? blocks : Collections.emptyList());
+    }
+
+    public Block get(String id) {
+        return blocksById.get(id);
+    }
+
+    public int size() {
+        return blocksById.size();
+    }
+
+    /**
+     * Resolves every KEY block to its VALUE block, in document order
+     * @return One entry per key; the value text is empty if the key has no value
+     */
+    public List<FormField> formFields() {
+        List<FormField> fields = new ArrayList<>(keyBlocks.size());
+        for (Block keyBlock : keyBlocks) {
+            String key = childText(keyBlock);
+            if (key.isEmpty()) {
+                continue;
+            }
+            Block valueBlock = null;
+            for (String valueId : relatedIds(keyBlock, RelationshipType.VALUE)) {
+                valueBlock = blocksById.get(valueId);
+                if (valueBlock != null) {
+                    break;
+                }
+            }
+            String value = valueBlock != null ? childText(valueBlock) : "";
+            float confidence = Math.min(confidenceOf(keyBlock), valueBlock != null ? confidenceOf(valueBlock) : 0f);
+            fields.add(new FormField(stripTrailingColon(key), value, confidence, pageOf(keyBlock)));
+        }
+        return fields;
+    }
+
+    /**
+     * Rebuilds every table as a grid of cell texts. A cell spanning several rows or columns
+     * is written at its top-left position; the other positions it covers stay empty.
+     */
+    public List<Table> tables() {
+        List<Table> tables = new ArrayList<>(tableBlocks.size());
+        for (Block tableBlock : tableBlocks) {
+            List<Block> cells = new ArrayList<>();
+            int rowCount = 0;
+            int columnCount = 0;
+            for (String cellId : relatedIds(tableBlock, RelationshipType.CHILD)) {
+                Block cell = blocksById.get(cellId);
+                if (cell == null || cell.blockType() != BlockType.CELL
+                        || cell.rowIndex() == null || cell.columnIndex() == null) {
+                    continue;
+                }
+                cells.add(cell);
+                rowCount = Math.max(rowCount, cell.rowIndex() + spanOf(cell.rowSpan()) - 1);
+                columnCount = Math.max(columnCount, cell.columnIndex() + spanOf(cell.columnSpan()) - 1);
+            }
+
+            String[][] grid = new String[rowCount][columnCount];
+            for (String[] row : grid) {
+                Arrays.fill(row, "");
+            }
+            for (Block cell : cells) {
+                grid[cell.rowIndex() - 1][cell.columnIndex() - 1] = childText(cell);
+            }
+            List<List<String>> rows = new ArrayList<>(rowCount);
+            for (String[] row : grid) {
+                rows.add(List.of(row));
+            }
+            tables.add(new Table(pageOf(tableBlock), confidenceOf(tableBlock), rows));
+        }
+        return tables;
+    }
+
+    /**
+     * @return The block's WORD children joined with spaces; selection elements become
+     * "SELECTED" or "NOT_SELECTED"
+     */
+    public String childText(Block block) {
+        StringBuilder text = new StringBuilder();
+        for (String childId : relatedIds(block, RelationshipType.CHILD)) {
+            Block child = blocksById.get(childId);
+            if (child == null) {
+                continue;
+            }
+            String part = null;
+            if (child.blockType() == BlockType.WORD) {
+                part = child.text();
+            } else if (child.blockType() == BlockType.SELECTION_ELEMENT && child.selectionStatus() != null) {
+                part = child.selectionStatus() == SelectionStatus.SELECTED ? "SELECTED" : "NOT_SELECTED";
+            }
+            if (part != null && !part.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(part);
+            }
+        }
+        return text.toString();
+    }
+
+    private static List<String> relatedIds(Block block, RelationshipType type) {
+        if (block.relationships() == null || block.relationships().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> ids = null;
+        for (Relationship relationship : block.relationships()) {
+            if (relationship.type() == type && relationship.ids() != null) {
+                if (ids == null) {
+                    ids = relationship.ids();
+                } else {
+                    ids = new ArrayList<>(ids);
+                    ids.addAll(relationship.ids());
+                }
+            }
+        }
+        return ids != null ? ids : Collections.emptyList();
+    }
+
+    private static boolean hasEntityType(Block block, EntityType entityType) {
+        return block.entityTypes() != null && block.entityTypes().contains(entityType);
+    }
+
+    private static int spanOf(Integer span) {
+        return span != null && span > 0 ? span : 1;
+    }
+
+    private static int pageOf(Block block) {
+        // Synchronous single-page calls leave the page unset
+        return block.page() != null ? block.page() : 1;
+    }
+
+    private static float confidenceOf(Block block) {
+        return block.confidence() != null ? block.confidence() : 0f;
+    }
+
+    private static String stripTrailingColon(String key) {
+        return key.endsWith(":") ? key.substring(0, key.length() - 1).trim() : key;
+    }
+
+    /**
+     * A FORMS key with its value
+     */
+    public static class FormField {
+        private final String key;
+        private final String value;
+        private final float confidence;
+        private final int page;
+
+        FormField(String key, String value, float confidence, int page) {
+            this.key = key;
+            this.value = value;
+            this.confidence = confidence;
+            this.page = page;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return The lower of the key and value confidences
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+
+        public int getPage() {
+            return page;
+        }
+    }
+
+    /**
+     * A reconstructed table; rows and cells are in reading order
+     */
+    public static class Table {
+        private final int page;
+        private final float confidence;
+        private final List<List<String>> rows;
+
+        Table(int page, float confidence, List<List<String>> rows) {
+            this.page = page;
+            this.confidence = confidence;
+            this.rows = rows;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public float getConfidence() {
+            return confidence;
+        }
+
+        public List<List<String>> getRows() {
+            return rows;
+        }
+    }
+}
@@ -1,352 +1,367 @@
 package com.codex.identity_verifier.service;
 
+import com.codex.identity_verifier.model.IdentityInfo;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.ImageContext;
+import com.codex.identity_verifier.util.MrzParser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.textract.TextractClient;
 import software.amazon.awssdk.services.textract.model.*;
 
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class TextractService {
 
     private final TextractClient textractClient;
     private final TesseractService tesseractService;
+    private final RequestHedgingService hedgingService;
+    private final IdentityFieldExtractor fieldExtractor;
     @Value("${aws.textract.min-confidence:80.0}")
     private Double minConfidence;
 
-    @Autowired
-    public TextractService(TextractClient textractClient, TesseractService tesseractService) {
-        this.textractClient = textractClient;
-        this.tesseractService = tesseractService;
-    }
+    @Value("${tesseract.min-confidence:60.0}")
+    private float tesseractMinConfidence;
 
-    /**
-     * Extracts text from an image using Amazon Textract
-     * @param imageData The image data as byte array
-     * @return Map containing extracted text and analysis
-     */
-    public Map<String, Object> extractText(byte[] imageData) {
-        DetectDocumentTextRequest request = DetectDocumentTextRequest.builder()
-                .document(Document.builder()
-                        .bytes(SdkBytes.fromByteArray(imageData))
-                        .build())
-                .build();
+    private static final String[] FIELDS = {"name", "idNumber", "dob", "address", "expiryDate"};
+    // A missing core field sends the whole page to Tesseract
+    private static final Set<String> CORE_FIELDS = Set.of("name", "idNumber", "dob");
 
-        DetectDocumentTextResponse response = textractClient.detectDocumentText(request);
+    private final LongAdder tesseractSkipped = new LongAdder();
+    private final LongAdder tesseractFullPage = new LongAdder();
+    private final LongAdder tesseractRegions = new LongAdder();
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("blocks", response.blocks());
-        result.put("text", extractTextFromBlocks(response.blocks()));
-        result.put("lines", extractLines(response.blocks()));
-        result.put("words", extractWords(response.blocks()));
-        
-        return result;
+    @Autowired
+    public TextractService(TextractClient textractClient, TesseractService tesseractService,
+                           RequestHedgingService hedgingService, IdentityFieldExtractor fieldExtractor) {
+        this.textractClient = textractClient;
+        this.tesseractService = tesseractService;
+        this.hedgingService = hedgingService;
+        this.fieldExtractor = fieldExtractor;
     }
 
     /**
      * Analyzes a document using Amazon Textract for structured data extraction
-     * @param imageData The image data as byte array
+     * @param document The document image or PDF
      * @return Map containing analyzed document data
      */
-    public Map<String, Object> analyzeDocument(byte[] imageData) {
+    public Map<String, Object> analyzeDocument(DocumentBuffer document) {
         AnalyzeDocumentRequest request = AnalyzeDocumentRequest.builder()
                 .document(Document.builder()
-                        .bytes(SdkBytes.fromByteArray(imageData))
+                        .bytes(document.asSdkBytes())
                         .build())
                 .featureTypes(FeatureType.TABLES, FeatureType.FORMS)
                 .build();
 
-        AnalyzeDocumentResponse response = textractClient.analyzeDocument(request);
+        AnalyzeDocumentResponse response = hedgingService.call("textract.analyzeDocument",
+                () -> textractClient.analyzeDocument(request));
+
+        TextractBlockGraph graph = TextractBlockGraph.of(response.blocks());
+        List<TextractBlockGraph.FormField> formFields = graph.formFields();
 
         Map<String, Object> result = new HashMap<>();
         result.put("blocks", response.blocks());
-        result.put("tables", extractTables(response.blocks()));
-        result.put("forms", extractForms(response.blocks()));
-        result.put("keyValuePairs", extractKeyValuePairs(response.blocks()));
+        result.put("tables", graph.tables());
+        result.put("forms", formFields);
+        result.put("keyValuePairs", extractKeyValuePairs(formFields));
         
         return result;
     }
 
     /**
      * Extracts structured identity information from document image
-     * @param imageData The image data as byte array
-     * @return Map containing extracted identity information
+     * @param document The document image or PDF
+     * @param image The same document's pixels, read only for regions re-checked by Tesseract
+     * @return Extracted identity information
      */
-    public Map<String, String> extractIdentityInformation(byte[] imageData) {
-        Map<String, String> identityInfo = new HashMap<>();
-
-        // First, extract general text
-        Map<String, Object> textResult = extractText(imageData);
-        List<String> lines = (List<String>) textResult.get("lines");
-
-        // Look for common identity document fields
-        for (int i = 0; i < lines.size(); i++) {
-            String originalLine = lines.get(i).trim();
-            String normalizedLine = originalLine.toLowerCase();
-            
-            // Extract name (look for common name patterns)
-            if (normalizedLine.contains("name") && !identityInfo.containsKey("name")) {
-                // Try to get the next line which might contain the name
-                if (i + 1 < lines.size()) {
-                    String nextLine = lines.get(i + 1);
-                    if (isLikelyName(nextLine)) {
-                        identityInfo.put("name", nextLine.trim());
-                    }
-                }
-            }
-            
-            // Extract ID number (look for common ID patterns)
-            if (isLikelyIdNumber(originalLine) && !identityInfo.containsKey("idNumber")) {
-                identityInfo.put("idNumber", originalLine.toUpperCase());
-            }
-            
-            // Extract date of birth (look for date patterns)
-            if (isLikelyDate(originalLine) && !identityInfo.containsKey("dob")) {
-                identityInfo.put("dob", originalLine);
-            }
-            
-            // Extract expiry date
-            if ((normalizedLine.contains("expiry") || normalizedLine.contains("expire") || normalizedLine.contains("valid")) && 
-                isLikelyDate(originalLine) && !identityInfo.containsKey("expiryDate")) {
-                identityInfo.put("expiryDate", originalLine);
-            }
-            
-            // Extract address (if present)
-            if (isLikelyAddress(originalLine) && !identityInfo.containsKey("address")) {
-                identityInfo.put("address", originalLine);
-            }
+    public IdentityInfo extractIdentityInformation(DocumentBuffer document, ImageContext image) {
+        // First, extract the text lines
+        DetectDocumentTextRequest request = DetectDocumentTextRequest.builder()
+                .document(Document.builder()
+                        .bytes(document.asSdkBytes())
+                        .build())
+                .build();
+        List<Block> lineBlocks = lineBlocks(hedgingService.call("textract.detectDocumentText",
+                () -> textractClient.detectDocumentText(request)).blocks());
+        List<String> lines = new ArrayList<>(lineBlocks.size());
+        float[] lineConfidences = new float[lineBlocks.size()];
+        for (int i = 0; i < lineBlocks.size(); i++) {
+            lines.add(lineBlocks.get(i).text());
+            lineConfidences[i] = confidenceOf(lineBlocks.get(i));
         }
 
-        // If we couldn't extract from the structured analysis, try a more direct approach
-        if (identityInfo.isEmpty()) {
-            identityInfo = extractIdentityInformationDirect(lines);
+        // A machine readable zone with valid check digits is authoritative; nothing else is needed
+        MrzParser.Result mrz = MrzParser.parse(lines);
+        if (mrz != null && mrz.isValid()) {
+            Map<String, Candidate> fields = new HashMap<>();
+            putMrzFields(fields, mrz, 100f);
+            return toIdentityInfo(fields, IdentityInfo.MrzStatus.VALID);
         }
 
-        // Optional fallback OCR via local tesseract binary for missed fields.
-        String fallbackText = tesseractService.extractText(imageData);
-        if (fallbackText != null && !fallbackText.isBlank()) {
-            String[] fallbackLines = fallbackText.split("\\R");
-            Map<String, String> fallback = extractIdentityInformationDirect(java.util.Arrays.asList(fallbackLines));
-            fallback.forEach(identityInfo::putIfAbsent);
+        // Tokenize and label-match every line in one pass; low-confidence lines are kept so
+        // that their fields can be re-read rather than silently lost
+        IdentityFieldExtractor.Extraction extraction = fieldExtractor.extract(lines);
+        Map<String, Candidate> textract = candidates(extraction, lineConfidences, IdentityInfo.Source.TEXTRACT);
+        Map<String, Candidate> tesseract = tesseractService.isEnabled()
+                ? recheckWithTesseract(document, image, lineBlocks, extraction, textract)
+                : Map.of();
+
+        Map<String, Candidate> fields = new HashMap<>();
+        for (String field : FIELDS) {
+            Candidate fused = fuse(textract.get(field), tesseract.get(field));
+            if (fused != null) {
+                fields.put(field, fused);
+            }
         }
 
-        return identityInfo;
+        // A zone that fails its check digits still fills gaps, but is reported to the risk rules;
+        // its values are unverified, hence no confidence
+        if (mrz != null) {
+            putMrzFields(fields, mrz, 0f);
+        }
+        return toIdentityInfo(fields, mrz != null ? IdentityInfo.MrzStatus.CHECK_DIGIT_FAILED : IdentityInfo.MrzStatus.ABSENT);
     }
 
     /**
-     * Helper method to extract text from blocks
+     * Runs Tesseract for core fields Textract missed and for fields it read with low
+     * confidence. When only low-confidence fields need it, just their regions are cropped
+     * from the source at full resolution and recognized, in one Tesseract run; a missing
+     * field has no region, so it needs the whole page, as does an image whose regions
+     * cannot be read.
+     * @return Tesseract's reading per field, only for the fields it was asked about
      */
-    private String extractTextFromBlocks(List<Block> blocks) {
-        StringBuilder text = new StringBuilder();
-        for (Block block : blocks) {
-            if (block.blockType() == BlockType.LINE || block.blockType() == BlockType.WORD) {
-                text.append(block.text()).append(" ");
+    private Map<String, Candidate> recheckWithTesseract(DocumentBuffer document, ImageContext image,
+                                                        List<Block> lineBlocks,
+                                                        IdentityFieldExtractor.Extraction extraction,
+                                                        Map<String, Candidate> textract) {
+        boolean coreFieldMissing = false;
+        List<String> lowConfidence = new ArrayList<>();
+        for (String field : FIELDS) {
+            Candidate candidate = textract.get(field);
+            if (candidate == null) {
+                coreFieldMissing |= CORE_FIELDS.contains(field);
+            } else if (candidate.confidence < minConfidence) {
+                lowConfidence.add(field);
             }
         }
-        return text.toString().trim();
-    }
+        if (!coreFieldMissing && lowConfidence.isEmpty()) {
+            tesseractSkipped.increment();
+            return Map.of();
+        }
 
-    /**
-     * Helper method to extract lines from blocks
-     */
-    private List<String> extractLines(List<Block> blocks) {
-        List<String> lines = new ArrayList<>();
-        for (Block block : blocks) {
-            if (block.blockType() == BlockType.LINE && 
-                block.confidence() >= minConfidence) {
-                lines.add(block.text());
+        List<String> croppedFields = new ArrayList<>(lowConfidence.size());
+        List<BufferedImage> regions = new ArrayList<>(lowConfidence.size());
+        if (!coreFieldMissing) {
+            for (String field : lowConfidence) {
+                BufferedImage region = crop(image, lineBlocks, extraction.getSourceLines(field));
+                if (region != null) {
+                    croppedFields.add(field);
+                    regions.add(region);
+                }
             }
         }
-        return lines;
-    }
+        if (regions.isEmpty()) {
+            tesseractFullPage.increment();
+            List<TesseractService.OcrLine> ocrLines = tesseractService.recognizeLines(document);
+            List<String> texts = new ArrayList<>(ocrLines.size());
+            float[] confidences = new float[ocrLines.size()];
+            for (int i = 0; i < ocrLines.size(); i++) {
+                texts.add(ocrLines.get(i).getText());
+                confidences[i] = ocrLines.get(i).getConfidence();
+            }
+            return candidates(fieldExtractor.extract(texts), confidences, IdentityInfo.Source.TESSERACT);
+        }
 
-    /**
-     * Helper method to extract words from blocks
-     */
-    private List<String> extractWords(List<Block> blocks) {
-        List<String> words = new ArrayList<>();
-        for (Block block : blocks) {
-            if (block.blockType() == BlockType.WORD && 
-                block.confidence() >= minConfidence) {
-                words.add(block.text());
+        tesseractRegions.add(regions.size());
+        List<List<TesseractService.OcrLine>> regionLines = tesseractService.recognizeRegions(regions);
+        Map<String, Candidate> candidates = new HashMap<>();
+        for (int r = 0; r < croppedFields.size(); r++) {
+            List<TesseractService.OcrLine> ocrLines = regionLines.get(r);
+            List<String> texts = new ArrayList<>(ocrLines.size());
+            float[] confidences = new float[ocrLines.size()];
+            for (int i = 0; i < ocrLines.size(); i++) {
+                texts.add(ocrLines.get(i).getText());
+                confidences[i] = ocrLines.get(i).getConfidence();
+            }
+            // Only the field the region was cropped for is taken from it
+            String field = croppedFields.get(r);
+            Candidate candidate = candidates(fieldExtractor.extract(texts), confidences, IdentityInfo.Source.TESSERACT)
+                    .get(field);
+            if (candidate != null) {
+                candidates.put(field, candidate);
             }
         }
-        return words;
+        return candidates;
     }
 
     /**
-     * Helper method to extract tables from blocks
+     * Each field's confidence is the lowest confidence of the lines it was read from
      */
-    private List<List<String>> extractTables(List<Block> blocks) {
-        List<List<String>> tables = new ArrayList<>();
-        // This is a simplified implementation - a full implementation would need to properly
-        // parse the relationships between blocks to reconstruct tables
-        return tables;
+    private static Map<String, Candidate> candidates(IdentityFieldExtractor.Extraction extraction,
+                                                     float[] lineConfidences, IdentityInfo.Source source) {
+        Map<String, Candidate> candidates = new HashMap<>();
+        extraction.getFields().forEach((field, value) -> {
+            int[] sourceLines = extraction.getSourceLines(field);
+            float confidence = 100f;
+            for (int i = sourceLines[0]; i <= sourceLines[1]; i++) {
+                confidence = Math.min(confidence, lineConfidences[i]);
+            }
+            candidates.put(field, new Candidate(value, source, confidence));
+        });
+        return candidates;
     }
 
     /**
-     * Helper method to extract forms from blocks
+     * Agreement between the engines always wins. Otherwise the more confident reading is
+     * used, provided it reaches its engine's minimum confidence.
      */
-    private Map<String, String> extractForms(List<Block> blocks) {
-        Map<String, String> forms = new HashMap<>();
-        // This is a simplified implementation - a full implementation would need to properly
-        // parse the relationships between key-value pairs
-        return forms;
+    private Candidate fuse(Candidate textract, Candidate tesseract) {
+        if (textract != null && tesseract != null && normalized(textract.value).equals(normalized(tesseract.value))) {
+            return new Candidate(textract.value, IdentityInfo.Source.TEXTRACT_TESSERACT,
+                    Math.max(textract.confidence, tesseract.confidence));
+        }
+        Candidate accepted = textract != null && textract.confidence >= minConfidence ? textract : null;
+        if (tesseract != null && tesseract.confidence >= tesseractMinConfidence
+                && (accepted == null || tesseract.confidence > accepted.confidence)) {
+            accepted = tesseract;
+        }
+        return accepted;
     }
 
-    /**
-     * Helper method to extract key-value pairs from blocks
-     */
-    private Map<String, String> extractKeyValuePairs(List<Block> blocks) {
-        Map<String, String> keyValuePairs = new HashMap<>();
-        
-        Block currentKey = null;
-        for (Block block : blocks) {
-            if (block.blockType() == BlockType.KEY_VALUE_SET && 
-                block.entityTypes().contains(EntityType.KEY)) {
-                currentKey = block;
-            } else if (block.blockType() == BlockType.KEY_VALUE_SET && 
-                       block.entityTypes().contains(EntityType.VALUE) && 
-                       currentKey != null) {
-                // Extract the text for the key and value
-                String keyText = extractTextForKey(currentKey, blocks);
-                String valueText = extractTextForValue(block, blocks);
-                
-                if (keyText != null && valueText != null && 
-                    block.confidence() >= minConfidence) {
-                    keyValuePairs.put(keyText, valueText);
-                }
-                currentKey = null;
+    private static String normalized(String value) {
+        StringBuilder normalized = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toUpperCase(c));
             }
         }
-        
-        return keyValuePairs;
+        return normalized.toString();
     }
 
-    /**
-     * Helper method to extract text for a key block
-     */
-    private String extractTextForKey(Block keyBlock, List<Block> allBlocks) {
-        // Find child blocks that contain the actual key text
-        for (Block block : allBlocks) {
-            if (block.id() != null && keyBlock.relationships() != null) {
-                for (Relationship rel : keyBlock.relationships()) {
-                    if (rel.type() == RelationshipType.CHILD && 
-                        rel.ids().contains(block.id())) {
-                        return block.text();
-                    }
-                }
-            }
+    private static void putMrzFields(Map<String, Candidate> fields, MrzParser.Result mrz, float confidence) {
+        putIfNotEmpty(fields, "name", mrz.getFullName(), confidence);
+        putIfNotEmpty(fields, "idNumber", mrz.getDocumentNumber(), confidence);
+        putIfNotEmpty(fields, "dob", mrz.getDob(), confidence);
+        putIfNotEmpty(fields, "expiryDate", mrz.getExpiryDate(), confidence);
+    }
+
+    private static void putIfNotEmpty(Map<String, Candidate> fields, String field, String value, float confidence) {
+        if (!value.isEmpty()) {
+            fields.putIfAbsent(field, new Candidate(value, IdentityInfo.Source.MRZ, confidence));
         }
-        return null;
     }
 
-    /**
-     * Helper method to extract text for a value block
-     */
-    private String extractTextForValue(Block valueBlock, List<Block> allBlocks) {
-        // Find child blocks that contain the actual value text
-        for (Block block : allBlocks) {
-            if (block.id() != null && valueBlock.relationships() != null) {
-                for (Relationship rel : valueBlock.relationships()) {
-                    if (rel.type() == RelationshipType.CHILD && 
-                        rel.ids().contains(block.id())) {
-                        return block.text();
-                    }
-                }
+    private static IdentityInfo toIdentityInfo(Map<String, Candidate> fields, IdentityInfo.MrzStatus mrzStatus) {
+        Map<String, IdentityInfo.FieldSource> sources = new LinkedHashMap<>();
+        for (String field : FIELDS) {
+            Candidate candidate = fields.get(field);
+            if (candidate != null) {
+                sources.put(field, new IdentityInfo.FieldSource(candidate.source, candidate.confidence));
             }
         }
-        return null;
+        return IdentityInfo.builder()
+                .name(valueOf(fields, "name"))
+                .idNumber(valueOf(fields, "idNumber"))
+                .dob(valueOf(fields, "dob"))
+                .address(valueOf(fields, "address"))
+                .expiryDate(valueOf(fields, "expiryDate"))
+                .mrzStatus(mrzStatus)
+                .fieldSources(sources)
+                .build();
+    }
+
+    private static String valueOf(Map<String, Candidate> fields, String field) {
+        Candidate candidate = fields.get(field);
+        return candidate != null ? candidate.value : "";
     }
 
     /**
-     * Helper method to check if a string looks like a name
+     * Crops the union of the given lines' bounding boxes, padded so that glyphs cut by a
+     * tight box are kept whole
+     * @return The region, or null if the lines have no usable geometry or the image cannot be read
      */
-    private boolean isLikelyName(String text) {
-        // Simple heuristic: names usually have letters and possibly spaces
-        // and are typically 2-3 words long
-        String[] words = text.trim().split("\\s+");
-        if (words.length < 1 || words.length > 3) {
-            return false;
-        }
-        
-        for (String word : words) {
-            if (!word.matches("[a-zA-Z]+")) {
-                return false;
+    private static BufferedImage crop(ImageContext image, List<Block> lineBlocks, int[] sourceLines) {
+        float left = 1f;
+        float top = 1f;
+        float right = 0f;
+        float bottom = 0f;
+        for (int i = sourceLines[0]; i <= sourceLines[1]; i++) {
+            Geometry geometry = lineBlocks.get(i).geometry();
+            BoundingBox box = geometry != null ? geometry.boundingBox() : null;
+            if (box == null || box.left() == null || box.top() == null || box.width() == null || box.height() == null) {
+                return null;
             }
+            left = Math.min(left, box.left());
+            top = Math.min(top, box.top());
+            right = Math.max(right, box.left() + box.width());
+            bottom = Math.max(bottom, box.top() + box.height());
         }
-        
-        return true;
+        float padding = (bottom - top) * 0.25f;
+        return image.readRegion(left - padding, top - padding,
+                right - left + 2 * padding, bottom - top + 2 * padding);
     }
 
-    /**
-     * Helper method to check if a string looks like an ID number
-     */
-    private boolean isLikelyIdNumber(String text) {
-        // Common patterns for ID numbers: alphanumeric sequences
-        return text.matches(".*[A-Za-z].*[0-9].*|.*[0-9].*[A-Za-z].*") && 
-               text.replaceAll("[^A-Za-z0-9]", "").length() > 4;
+    private static float confidenceOf(Block block) {
+        return block.confidence() != null ? block.confidence() : 0f;
     }
 
     /**
-     * Helper method to check if a string looks like a date
+     * @return Tesseract fallback counters
      */
-    private boolean isLikelyDate(String text) {
-        // Common date patterns: DD/MM/YYYY, MM/DD/YYYY, YYYY-MM-DD, etc.
-        return text.matches("\\d{1,2}[/-]\\d{1,2}[/-]\\d{2,4}") ||
-               text.matches("\\d{2,4}[/-]\\d{1,2}[/-]\\d{1,2}");
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tesseractEnabled", tesseractService.isEnabled());
+        stats.put("tesseractSkipped", tesseractSkipped.sum());
+        stats.put("tesseractFullPage", tesseractFullPage.sum());
+        stats.put("tesseractRegions", tesseractRegions.sum());
+        return stats;
+    }
+
+    private static final class Candidate {
+        private final String value;
+        private final IdentityInfo.Source source;
+        private final float confidence;
+
+        Candidate(String value, IdentityInfo.Source source, float confidence) {
+            this.value = value;
+            this.source = source;
+            this.confidence = confidence;
+        }
     }
 
     /**
-     * Helper method to check if a string looks like an address
+     * LINE blocks regardless of confidence, in reading order
      */
-    private boolean isLikelyAddress(String text) {
-        // Look for common address indicators
-        String lowerText = text.toLowerCase();
-        return lowerText.contains("street") || 
-               lowerText.contains("st.") || 
-               lowerText.contains("road") || 
-               lowerText.contains("rd.") || 
-               lowerText.contains("ave.") || 
-               lowerText.contains("avenue") ||
-               lowerText.contains("drive") ||
-               lowerText.contains("dr.") ||
-               lowerText.contains("lane") ||
-               lowerText.contains("ln.") ||
-               text.matches(".*\\d+.*"); // Contains numbers (house numbers)
+    private static List<Block> lineBlocks(List<Block> blocks) {
+        List<Block> lines = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.blockType() == BlockType.LINE && block.text() != null) {
+                lines.add(block);
+            }
+        }
+        return lines;
     }
 
     /**
-     * Direct extraction method for identity information
+     * Keeps the first sufficiently confident value for each form key
      */
-    private Map<String, String> extractIdentityInformationDirect(List<String> lines) {
-        Map<String, String> identityInfo = new HashMap<>();
-        
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i).toLowerCase().trim();
-            
-            // Look for common identity document keywords
-            if (line.contains("name") || line.contains("surname") || line.contains("given name")) {
-                if (i + 1 < lines.size()) {
-                    String nextLine = lines.get(i + 1);
-                    if (isLikelyName(nextLine)) {
-                        identityInfo.put("name", nextLine.trim());
-                    }
-                }
-            } else if (line.matches(".*\\b(id|identification|document)\\b.*") && 
-                       isLikelyIdNumber(line.replaceAll(".*\\b(id|identification|document)\\b", "").trim())) {
-                identityInfo.put("idNumber", line.replaceAll(".*\\b(id|identification|document)\\b", "").trim());
-            } else if (isLikelyDate(line) && !identityInfo.containsKey("dob")) {
-                identityInfo.put("dob", line);
+    private Map<String, String> extractKeyValuePairs(List<TextractBlockGraph.FormField> formFields) {
+        Map<String, String> keyValuePairs = new LinkedHashMap<>();
+        for (TextractBlockGraph.FormField field : formFields) {
+            if (!field.getValue().isEmpty() && field.getConfidence() >= minConfidence) {
+                keyValuePairs.putIfAbsent(field.getKey(), field.getValue());
             }
         }
-        
-        return identityInfo;
+        return keyValuePairs;
     }
 }
@@ -0,0 +1,217 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.dto.VerificationJobResponse;
+import com.codex.identity_verifier.dto.VerificationResponse;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs verifications as background jobs so that the servlet thread is released as soon
+ * as the upload is buffered. Job state lives in a bounded in-memory store; finished
+ * jobs expire after a configurable retention period.
+ */
+@Service
+public class VerificationJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationJobService.class);
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final String JOB_FAILED_MESSAGE = "Verification failed, please try again later";
+
+    private final VerificationService verificationService;
+
+    @Value("${verification.jobs.worker-threads:8}")
+    private int workerThreads;
+
+    @Value("${verification.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${verification.jobs.max-stored:1000}")
+    private int maxStoredJobs;
+
+    @Value("${verification.jobs.retention-minutes:30}")
+    private long retentionMinutes;
+
+    // Counted from when the job starts running, not from submission
+    @Value("${verification.deadline.async-ms:60000}")
+    private long jobDeadlineMs;
+
+    // Insertion-ordered, so the oldest jobs are visited first when purging
+    private final Map<String, VerificationJob> jobs = new LinkedHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public VerificationJobService(VerificationService verificationService) {
+        this.verificationService = verificationService;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        int threads = Math.max(1, workerThreads);
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "verification-job-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a verification job
+     * @param document The buffered document
+     * @param originalFilename The client-supplied filename
+     * @param contentType The client-supplied content type
+     * @param ownerUsername The user submitting the job
+     * @param onFinished Run once the job has finished or was rejected, e.g. to release the
+     * request's admission while the buffered document is no longer held
+     * @return The queued job's status
+     * @throws RejectedExecutionException if the job store or worker queue is full
+     */
+    public VerificationJobResponse submit(DocumentBuffer document, String originalFilename, String contentType,
+                                          String ownerUsername, Runnable onFinished) {
+        VerificationJob job = new VerificationJob(UUID.randomUUID().toString(), ownerUsername);
+        synchronized (jobs) {
+            purgeExpired();
+            if (jobs.size() >= maxStoredJobs) {
+                onFinished.run();
+                throw new RejectedExecutionException("Verification job store is full");
+            }
+            jobs.put(job.id, job);
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    run(job, document, originalFilename, contentType);
+                } finally {
+                    onFinished.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(job.id);
+            }
+            onFinished.run();
+            throw new RejectedExecutionException("Verification job queue is full", e);
+        }
+        return job.toResponse();
+    }
+
+    /**
+     * Looks up a job
+     * @param jobId The job id
+     * @return The job or null if it is unknown or expired
+     */
+    public VerificationJob getJob(String jobId) {
+        synchronized (jobs) {
+            purgeExpired();
+            return jobs.get(jobId);
+        }
+    }
+
+    private void run(VerificationJob job, DocumentBuffer document, String originalFilename, String contentType) {
+        job.markRunning();
+        try {
+            VerificationResponse result = verificationService.verifyDocument(document, originalFilename, contentType,
+                    job.ownerUsername, Deadline.afterMillis(jobDeadlineMs));
+            job.complete(result);
+        } catch (Exception e) {
+            // The cause may carry internal details, so clients only see a fixed message
+            log.error("Verification job {} failed", job.id, e);
+            job.fail(JOB_FAILED_MESSAGE);
+        }
+    }
+
+    private void purgeExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        Iterator<VerificationJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            VerificationJob job = iterator.next();
+            Instant completedAt = job.completedAt;
+            if (completedAt != null && completedAt.isBefore(cutoff)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public static class VerificationJob {
+        private final String id;
+        private final String ownerUsername;
+        private final Instant submittedAt = Instant.now();
+        private volatile String status = STATUS_QUEUED;
+        private volatile Instant completedAt;
+        private volatile String error;
+        private volatile VerificationResponse result;
+
+        VerificationJob(String id, String ownerUsername) {
+            this.id = id;
+            this.ownerUsername = ownerUsername;
+        }
+
+        void markRunning() {
+            this.status = STATUS_RUNNING;
+        }
+
+        void complete(VerificationResponse result) {
+            this.result = result;
+            this.completedAt = Instant.now();
+            this.status = STATUS_COMPLETED;
+        }
+
+        void fail(String error) {
+            this.error = error;
+            this.completedAt = Instant.now();
+            this.status = STATUS_FAILED;
+        }
+
+        public String getOwnerUsername() {
+            return ownerUsername;
+        }
+
+        public VerificationJobResponse toResponse() {
+            return VerificationJobResponse.builder()
+                    .jobId(id)
+                    .status(status)
+                    .submittedAt(submittedAt)
+                    .completedAt(completedAt)
+                    .error(error)
+                    .result(result)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.VerificationCacheEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches verification results by document content hash and rules version so that
+ * re-submitted documents skip the Rekognition/Textract pipeline entirely.
+ * L1 is a bounded in-memory LRU with TTL; L2 is an optional DynamoDB table.
+ */
+@Service
+public class VerificationResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationResultCache.class);
+
+    private final DynamoDBService dynamoDBService;
+
+    @Value("${verification.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${verification.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${verification.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${verification.cache.dynamodb.enabled:false}")
+    private boolean dynamoDbEnabled;
+
+    private final Map<String, VerificationCacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerificationCacheEntry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final AtomicLong l1Hits = new AtomicLong();
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public VerificationResultCache(DynamoDBService dynamoDBService) {
+        this.dynamoDBService = dynamoDBService;
+    }
+
+    /**
+     * Looks up a cached result
+     * @param fileHash SHA-256 of the document bytes
+     * @param rulesVersion Version of the risk rules that produced the result
+     * @return The cached entry or null on a miss
+     */
+    public VerificationCacheEntry get(String fileHash, String rulesVersion) {
+        if (!cacheEnabled || fileHash == null) {
+            return null;
+        }
+        String key = cacheKey(fileHash, rulesVersion);
+        long now = Instant.now().getEpochSecond();
+
+        synchronized (entries) {
+            VerificationCacheEntry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.getExpiresAt() != null && entry.getExpiresAt() > now) {
+                    l1Hits.incrementAndGet();
+                    return entry;
+                }
+                entries.remove(key);
+            }
+        }
+
+        if (dynamoDbEnabled) {
+            try {
+                VerificationCacheEntry entry = dynamoDBService.getVerificationCacheEntry(key);
+                // DynamoDB TTL deletion is lazy, so expired items can still be returned
+                if (entry != null && entry.getExpiresAt() != null && entry.getExpiresAt() > now) {
+                    synchronized (entries) {
+                        entries.put(key, entry);
+                    }
+                    l2Hits.incrementAndGet();
+                    return entry;
+                }
+            } catch (Exception e) {
+                log.warn("Verification cache L2 lookup failed for {}: {}", key, e.getMessage());
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a result; the entry's key and expiry are filled in here
+     * @param entry The result to cache
+     */
+    public void put(VerificationCacheEntry entry) {
+        if (!cacheEnabled || entry == null || entry.getFileHash() == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        entry.setCacheKey(cacheKey(entry.getFileHash(), entry.getRulesVersion()));
+        entry.setCreatedAt(now);
+        entry.setExpiresAt(now.plus(Duration.ofMinutes(ttlMinutes)).getEpochSecond());
+
+        synchronized (entries) {
+            entries.put(entry.getCacheKey(), entry);
+        }
+
+        if (dynamoDbEnabled) {
+            try {
+                dynamoDBService.saveVerificationCacheEntry(entry);
+            } catch (Exception e) {
+                log.warn("Verification cache L2 write failed for {}: {}", entry.getCacheKey(), e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return Map.of(
+                "size", size,
+                "l1Hits", l1Hits.get(),
+                "l2Hits", l2Hits.get(),
+                "misses", misses.get()
+        );
+    }
+
+    private String cacheKey(String fileHash, String rulesVersion) {
+        return fileHash + ":" + rulesVersion;
+    }
+}
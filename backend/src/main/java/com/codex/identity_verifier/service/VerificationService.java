@@ -1,236 +1,714 @@
 package com.codex.identity_verifier.service;
 
 import com.codex.identity_verifier.dto.VerificationResponse;
+import com.codex.identity_verifier.model.DuplicateCheckResult;
+import com.codex.identity_verifier.model.FaceComparisonResult;
+import com.codex.identity_verifier.model.FaceDetectionResult;
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.model.ForensicAnalysisResult;
+import com.codex.identity_verifier.model.IdentityInfo;
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.ScreeningResult;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import com.codex.identity_verifier.model.VerificationCacheEntry;
 import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.InputValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import java.util.Arrays;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
 public class VerificationService {
 
     private static final Logger log = LoggerFactory.getLogger(VerificationService.class);
 
+    // Signals settled once the local checks have run; the rest are still open
+    static final long LOCAL_TIER_SIGNALS = RiskRuleEngine.Signal.BLURRY.bit()
+            | RiskRuleEngine.Signal.POOR_LIGHTING.bit()
+            | RiskRuleEngine.Signal.DOCUMENT_DETECTED.bit()
+            | RiskRuleEngine.Signal.BLANK_PAGE.bit()
+            | RiskRuleEngine.Signal.FORMAT_MISMATCH.bit()
+            | RiskRuleEngine.Signal.EDITING_SOFTWARE.bit();
+    // ... and once OCR and the other local stages have run as well
+    private static final long OCR_TIER_SIGNALS = LOCAL_TIER_SIGNALS
+            | RiskRuleEngine.Signal.NAME_MISSING.bit()
+            | RiskRuleEngine.Signal.ID_NUMBER_MISSING.bit()
+            | RiskRuleEngine.Signal.DOB_MISSING.bit()
+            | RiskRuleEngine.Signal.ALL_CORE_FIELDS_PRESENT.bit()
+            | RiskRuleEngine.Signal.MRZ_CHECK_FAILED.bit()
+            | RiskRuleEngine.Signal.FORENSIC_TAMPERING.bit()
+            | RiskRuleEngine.Signal.NEAR_DUPLICATE_OTHER_OWNER.bit();
+
+    // Why a stage degraded when the request ran out of budget before or while it ran
+    private static final String DEADLINE_REACHED = "the request deadline was reached";
+
     private final S3Service s3Service;
     private final RekognitionService rekognitionService;
     private final TextractService textractService;
     private final DynamoDBService dynamoDBService;
-    private final DataProtectionService dataProtectionService;
     private final FraudModelService fraudModelService;
+    private final VerificationStageExecutor stageExecutor;
+    private final DocumentArchiveService documentArchiveService;
+    private final VerificationResultCache verificationResultCache;
+    private final RiskRuleEngine riskRuleEngine;
+    private final DocumentNormalizer documentNormalizer;
+    private final ImageQualityAnalyzer imageQualityAnalyzer;
+    private final ForensicAnalyzer forensicAnalyzer;
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final FaceSearchService faceSearchService;
+    private final DocumentScreener documentScreener;
 
     @Value("${verification.delete-uploaded-file:true}")
     private boolean deleteUploadedFile;
 
+    // Stages are skipped rather than started when less than this much of the request budget is left
+    @Value("${verification.deadline.min-stage-budget-ms:250}")
+    private long minStageBudgetMs;
+
+    // Without the cascade every tier runs; the local checks still raise their signals
+    @Value("${verification.cascade.enabled:true}")
+    private boolean cascadeEnabled;
+
+    // Base score the local checks alone must guarantee to settle the result without AWS calls
+    @Value("${verification.cascade.local-decisive-score:80}")
+    private int localDecisiveScore;
+
+    // Base score OCR and the local checks must guarantee to skip the Rekognition checks
+    @Value("${verification.cascade.ocr-decisive-score:80}")
+    private int ocrDecisiveScore;
+
+    // Start the Rekognition checks after OCR, so that they can be skipped, instead of alongside it
+    @Value("${verification.cascade.image-checks-after-ocr:false}")
+    private boolean cascadeImageChecksAfterOcr;
+
     @Autowired
     public VerificationService(S3Service s3Service, RekognitionService rekognitionService, 
                               TextractService textractService, DynamoDBService dynamoDBService,
-                              DataProtectionService dataProtectionService, FraudModelService fraudModelService) {
+                              FraudModelService fraudModelService,
+                              VerificationStageExecutor stageExecutor, DocumentArchiveService documentArchiveService,
+                              VerificationResultCache verificationResultCache, RiskRuleEngine riskRuleEngine,
+                              DocumentNormalizer documentNormalizer, ImageQualityAnalyzer imageQualityAnalyzer,
+                              ForensicAnalyzer forensicAnalyzer, NearDuplicateIndex nearDuplicateIndex,
+                              FaceSearchService faceSearchService, DocumentScreener documentScreener) {
         this.s3Service = s3Service;
         this.rekognitionService = rekognitionService;
         this.textractService = textractService;
         this.dynamoDBService = dynamoDBService;
-        this.dataProtectionService = dataProtectionService;
         this.fraudModelService = fraudModelService;
+        this.stageExecutor = stageExecutor;
+        this.documentArchiveService = documentArchiveService;
+        this.verificationResultCache = verificationResultCache;
+        this.riskRuleEngine = riskRuleEngine;
+        this.documentNormalizer = documentNormalizer;
+        this.imageQualityAnalyzer = imageQualityAnalyzer;
+        this.forensicAnalyzer = forensicAnalyzer;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        this.faceSearchService = faceSearchService;
+        this.documentScreener = documentScreener;
     }
 
     /**
      * Performs comprehensive document verification using AWS services
      * @param file The document file to verify
+     * @param deadline Budget for the whole request; stages that cannot finish in time are skipped
      * @return VerificationResponse containing the verification results
      */
-    public VerificationResponse verifyDocument(MultipartFile file, String ownerUsername) {
-        String s3Key = null;
+    public VerificationResponse verifyDocument(MultipartFile file, String ownerUsername, Deadline deadline) {
+        DocumentBuffer document;
         try {
-            // 1. Upload file to S3
-            s3Key = s3Service.uploadFile(file);
-            
-            // 2. Download the file from S3 to process locally (in a real scenario, you'd use S3 URI directly)
-            byte[] imageData = s3Service.downloadFile(s3Key);
-            String fileHash = dataProtectionService.sha256Hex(imageData);
+            // Read the upload once; all analysis runs on this buffer
+            document = DocumentBuffer.read(file, InputValidator.MAX_FILE_SIZE);
+        } catch (Exception e) {
+            log.error("Failed to read uploaded file", e);
+            throw new RuntimeException("Failed to read uploaded file", e);
+        }
+        if (document == null) {
+            throw new RuntimeException("File size exceeds 10MB limit");
+        }
+        return verifyDocument(document, file.getOriginalFilename(), file.getContentType(), ownerUsername, deadline);
+    }
 
-            boolean isPdf = isPdfFile(file);
+    /**
+     * Verifies an ID document and checks that a selfie shows the same person
+     * @param file The ID document
+     * @param selfie A photo of the person presenting the document
+     * @param deadline Budget for the whole request
+     * @return VerificationResponse with the selfie similarity in faceMatchConfidence
+     */
+    public VerificationResponse verifyDocumentWithSelfie(MultipartFile file, MultipartFile selfie, String ownerUsername,
+                                                         Deadline deadline) {
+        DocumentBuffer document;
+        DocumentBuffer selfieDocument;
+        try {
+            document = DocumentBuffer.read(file, InputValidator.MAX_FILE_SIZE);
+            selfieDocument = DocumentBuffer.read(selfie, InputValidator.MAX_FILE_SIZE);
+        } catch (Exception e) {
+            log.error("Failed to read uploaded files", e);
+            throw new RuntimeException("Failed to read uploaded files", e);
+        }
+        if (document == null || selfieDocument == null) {
+            throw new RuntimeException("File size exceeds 10MB limit");
+        }
+        VerificationOutcome outcome = analyzeDocument(document, file.getOriginalFilename(), file.getContentType(),
+                selfieDocument, ownerUsername, deadline);
+        return save(outcome);
+    }
+
+    /**
+     * Performs document verification on an already-buffered document, e.g. from a queued job
+     * @param document The buffered document
+     * @param originalFilename The client-supplied filename
+     * @param contentType The client-supplied content type
+     * @param ownerUsername The user the verification is recorded for
+     * @param deadline Budget for the whole request
+     * @return VerificationResponse containing the verification results
+     */
+    public VerificationResponse verifyDocument(DocumentBuffer document, String originalFilename, String contentType,
+                                               String ownerUsername, Deadline deadline) {
+        VerificationOutcome outcome = analyzeDocument(document, originalFilename, contentType, ownerUsername, deadline);
+        return save(outcome);
+    }
+
+    /**
+     * Saves the outcome's record
+     * @return The outcome's response
+     */
+    private VerificationResponse save(VerificationOutcome outcome) {
+        try {
+            dynamoDBService.saveVerificationRecord(outcome.getRecord());
+            recordSaved(outcome.getRecord());
+        } catch (Exception e) {
+            log.error("Verification failed", e);
+            String message = e.getMessage() != null ? e.getMessage() : "Unknown verification error";
+            throw new RuntimeException(message, e);
+        }
+        return outcome.getResponse();
+    }
+
+    /**
+     * Runs the verification pipeline without persisting the resulting record, so callers
+     * such as batch verification can write records in bulk
+     * @param document The buffered document
+     * @param originalFilename The client-supplied filename
+     * @param contentType The client-supplied content type
+     * @param ownerUsername The user the verification is recorded for
+     * @param deadline Budget for the whole request; every AWS call gets the remaining budget as
+     *                 its timeout, and stages that would exceed it are reported as degraded
+     * @return The unsaved record together with the response; pass the record to
+     *         {@link #recordSaved} once it is saved
+     */
+    public VerificationOutcome analyzeDocument(DocumentBuffer document, String originalFilename, String contentType,
+                                               String ownerUsername, Deadline deadline) {
+        return analyzeDocument(document, originalFilename, contentType, null, ownerUsername, deadline);
+    }
+
+    /**
+     * Runs the verification pipeline, comparing the document's face with a selfie if one is given
+     * @param selfie Photo of the person presenting the document, or null
+     */
+    private VerificationOutcome analyzeDocument(DocumentBuffer document, String originalFilename, String contentType,
+                                                DocumentBuffer selfie, String ownerUsername, Deadline deadline) {
+        try {
+            // 1. The document hash was computed while the upload was read
+            String fileHash = document.getSha256();
+
+            // 2. Uploads are archived to S3 only when retained; the upload is queued off the critical
+            // path once the record exists, so a failed upload can clear the key from the record
+            String s3Key = deleteUploadedFile ? null : s3Service.generateUniqueKey(originalFilename);
+
+            // 3. Serve identical documents from the result cache without re-running the AWS pipeline
+            // A selfie check depends on both images, so those results are neither served from nor stored in the cache
+            VerificationCacheEntry cached = selfie == null
+                    ? verificationResultCache.get(fileHash, riskRuleEngine.getRulesVersion())
+                    : null;
+            // The same bytes from another owner are analyzed again so that the duplicate is scored
+            if (cached != null && !nearDuplicateIndex.check(cached.getPerceptualHash(), ownerUsername).isDuplicateOfOtherOwner()) {
+                VerificationOutcome outcome = respondFromCache(cached, originalFilename, s3Key, fileHash, ownerUsername);
+                archive(outcome.getRecord(), document, contentType);
+                return outcome;
+            }
+
+            boolean isPdf = isPdfFile(originalFilename, contentType);
             boolean imageAnalysisEnabled = !isPdf;
+
+            // 4. Downscale/re-encode per API; the decoded pixels are shared by every image stage.
+            // PDFs pass through unchanged
+            DocumentNormalizer.NormalizedDocument normalized = documentNormalizer.normalize(document, imageAnalysisEnabled);
+            DocumentBuffer rekognitionDocument = normalized.getForRekognition();
+            DocumentBuffer textractDocument = normalized.getForTextract();
+            // The selfie goes through the same ingest; its Rekognition copy serves both selfie stages
+            boolean selfieEnabled = selfie != null && imageAnalysisEnabled;
+            DocumentBuffer selfieDocument = selfieEnabled
+                    ? documentNormalizer.normalize(selfie, true).getForRekognition()
+                    : null;
             
-            // 3. Perform image analysis with Rekognition
-            Map<String, Object> faceDetectionResult = imageAnalysisEnabled
-                    ? rekognitionService.detectFaces(imageData)
-                    : defaultFaceDetectionResult();
-            Map<String, Object> tamperDetectionResult = imageAnalysisEnabled
-                    ? rekognitionService.detectImageTampering(imageData)
-                    : defaultTamperDetectionResult();
-            Map<String, Object> qualityAnalysisResult = imageAnalysisEnabled
-                    ? rekognitionService.analyzeImageQuality(imageData)
-                    : defaultQualityAnalysisResult();
-            
-            // 4. Extract text from document using Textract
-            Map<String, String> identityInfo = textractService.extractIdentityInformation(imageData);
-            
-            // 5. Calculate risk score based on multiple factors
-            int riskScore = calculateRiskScore(
-                    faceDetectionResult,
-                    tamperDetectionResult,
-                    qualityAnalysisResult,
-                    identityInfo,
-                    imageAnalysisEnabled
-            );
+            // 5. Screening cascade: local checks, then OCR, then the Rekognition checks. Once the
+            // score can no longer drop below the decisive score the result is settled and the
+            // remaining tiers are not called. Stages that cost no AWS call start right away
+            // Stage name to why it degraded, in the order they were found
+            Map<String, String> degradedStages = new LinkedHashMap<>();
+            CompletableFuture<QualityAnalysisResult> qualityAnalysisFuture = imageAnalysisEnabled
+                    ? submitStage("quality-analysis", deadline, degradedStages, () -> imageQualityAnalyzer.analyze(normalized))
+                    : CompletableFuture.completedFuture(QualityAnalysisResult.NONE);
+            CompletableFuture<ForensicAnalysisResult> forensicAnalysisFuture = imageAnalysisEnabled && forensicAnalyzer.isEnabled()
+                    ? submitStage("forensic-analysis", deadline, degradedStages, () -> forensicAnalyzer.analyze(normalized))
+                    : CompletableFuture.completedFuture(ForensicAnalysisResult.NONE);
+            CompletableFuture<DuplicateCheckResult> duplicateCheckFuture = imageAnalysisEnabled && nearDuplicateIndex.isEnabled()
+                    ? submitStage("duplicate-check", deadline, degradedStages, () -> nearDuplicateIndex.check(normalized.getImage(), ownerUsername))
+                    : CompletableFuture.completedFuture(DuplicateCheckResult.NONE);
+            // Resolution rules use the uploaded dimensions, not the downscaled ones
+            long totalPixels = imageAnalysisEnabled && normalized.hasDimensions()
+                    ? (long) normalized.getOriginalWidth() * normalized.getOriginalHeight()
+                    : -1L;
+
+            // 5a. Tier 0: file signature, metadata, dimensions, sharpness and blank-page checks
+            QualityAnalysisResult qualityAnalysisResult = awaitStage("quality-analysis", qualityAnalysisFuture, deadline, degradedStages);
+            ScreeningResult screeningResult = documentScreener.screen(document, originalFilename, contentType,
+                    qualityAnalysisResult, imageAnalysisEnabled);
+            long signals = screeningSignals(screeningResult);
+            if (imageAnalysisEnabled) {
+                signals |= riskRuleEngine.qualitySignals(qualityAnalysisResult);
+            }
+            DocumentScreener.Tier decidedTier = isDecisive(signals, LOCAL_TIER_SIGNALS, totalPixels, null,
+                    localDecisiveScore, degradedStages) ? DocumentScreener.Tier.LOCAL : DocumentScreener.Tier.FULL;
+
+            // 5b. Tier 1: OCR. The Rekognition checks wait for its outcome unless configured to run alongside it
+            boolean imageChecksAfterOcr = cascadeEnabled && cascadeImageChecksAfterOcr;
+            boolean ocrEnabled = decidedTier == DocumentScreener.Tier.FULL;
+            CompletableFuture<IdentityInfo> identityInfoFuture = ocrEnabled
+                    ? submitStage("identity-extraction", deadline, degradedStages,
+                            () -> textractService.extractIdentityInformation(textractDocument, normalized.getTextractImage()))
+                    : CompletableFuture.completedFuture(null);
+            ImageChecks imageChecks = ocrEnabled && !imageChecksAfterOcr
+                    ? submitImageChecks(normalized, selfieDocument, fileHash, imageAnalysisEnabled, deadline, degradedStages)
+                    : null;
+            IdentityInfo extractedIdentity = awaitStage("identity-extraction", identityInfoFuture, deadline, degradedStages);
+            IdentityInfo identityInfo = extractedIdentity != null ? extractedIdentity : IdentityInfo.EMPTY;
+            ForensicAnalysisResult forensicAnalysisResult = awaitStage("forensic-analysis", forensicAnalysisFuture, deadline, degradedStages);
+            DuplicateCheckResult duplicateCheckResult = awaitStage("duplicate-check", duplicateCheckFuture, deadline, degradedStages);
+            if (ocrEnabled) {
+                signals |= riskRuleEngine.identitySignals(extractedIdentity);
+            }
+            if (imageAnalysisEnabled) {
+                signals |= riskRuleEngine.forensicSignals(forensicAnalysisResult);
+            }
+            if (duplicateCheckResult == null) {
+                signals |= RiskRuleEngine.Signal.ANALYSIS_DEGRADED.bit();
+            } else if (duplicateCheckResult.isDuplicateOfOtherOwner()) {
+                signals |= RiskRuleEngine.Signal.NEAR_DUPLICATE_OTHER_OWNER.bit();
+            }
+            if (ocrEnabled && imageChecksAfterOcr && isDecisive(signals, OCR_TIER_SIGNALS, totalPixels, identityInfo,
+                    ocrDecisiveScore, degradedStages)) {
+                decidedTier = DocumentScreener.Tier.OCR;
+            }
 
-            int identityConsistencyPenalty = evaluateIdentityConsistency(identityInfo);
-            riskScore = Math.min(100, riskScore + identityConsistencyPenalty);
+            // 5c. Tier 2: Rekognition face, moderation and face-search checks.
+            // A stage that ran out of budget yields null and is reported as degraded
+            if (decidedTier == DocumentScreener.Tier.FULL && imageChecks == null) {
+                imageChecks = submitImageChecks(normalized, selfieDocument, fileHash, imageAnalysisEnabled, deadline, degradedStages);
+            }
+            FaceDetectionResult faceDetectionResult = null;
+            FaceSearchResult faceSearchResult = null;
+            TamperDetectionResult tamperDetectionResult = null;
+            FaceDetectionResult selfieFaceResult = null;
+            FaceComparisonResult faceComparisonResult = null;
+            List<FaceSearchResult.FaceMatch> reusedFaces = List.of();
+            if (imageChecks != null) {
+                faceDetectionResult = awaitStage("face-detection", imageChecks.faceDetection, deadline, degradedStages);
+                faceSearchResult = awaitStage("face-search", imageChecks.faceSearch, deadline, degradedStages);
+                tamperDetectionResult = awaitStage("tamper-detection", imageChecks.tamperDetection, deadline, degradedStages);
+                selfieFaceResult = awaitStage("selfie-face-detection", imageChecks.selfieFace, deadline, degradedStages);
+                faceComparisonResult = awaitStage("face-comparison", imageChecks.faceComparison, deadline, degradedStages);
+
+                if (imageAnalysisEnabled) {
+                    signals |= riskRuleEngine.imageCheckSignals(faceDetectionResult, tamperDetectionResult);
+                }
+                reusedFaces = faceSearchService.otherOwnerMatches(faceSearchResult, ownerUsername);
+                if (faceSearchResult == null) {
+                    signals |= RiskRuleEngine.Signal.ANALYSIS_DEGRADED.bit();
+                } else if (!reusedFaces.isEmpty()) {
+                    signals |= RiskRuleEngine.Signal.FACE_REUSED_OTHER_OWNER.bit();
+                }
+                if (selfieEnabled) {
+                    if (selfieFaceResult == null || faceComparisonResult == null) {
+                        signals |= RiskRuleEngine.Signal.ANALYSIS_DEGRADED.bit();
+                    } else if (!selfieFaceResult.isFaceDetected()) {
+                        signals |= RiskRuleEngine.Signal.SELFIE_FACE_MISSING.bit();
+                    } else if (!faceComparisonResult.isMatch()) {
+                        signals |= RiskRuleEngine.Signal.SELFIE_MISMATCH.bit();
+                    }
+                }
+            }
+            int awsCallsSaved = awsCallsSaved(decidedTier, imageAnalysisEnabled, selfieEnabled);
+            documentScreener.recordDecision(decidedTier, awsCallsSaved);
+
+            // 6. Score the document against the configured risk rules
+            RiskRuleEngine.RiskEvaluation evaluation = riskRuleEngine.evaluate(signals, totalPixels, identityInfo);
+            String rulesVersion = evaluation.getRulesVersion();
+
+            int identityConsistencyPenalty = evaluation.getConsistencyPenalty();
+            int riskScore = Math.min(100, evaluation.getBaseScore() + identityConsistencyPenalty);
 
-            int modelRisk = fraudModelService.getAdditionalRiskScore(fileHash, determineRiskLevel(riskScore));
+            int modelRisk = 0;
+            if (fraudModelService.isEnabled()) {
+                if (deadline.hasAtLeastMillis(minStageBudgetMs)) {
+                    modelRisk = fraudModelService.getAdditionalRiskScore(fileHash, determineRiskLevel(riskScore), deadline);
+                } else {
+                    degradedStages.put("fraud-model", DEADLINE_REACHED);
+                }
+            }
             riskScore = Math.min(100, riskScore + modelRisk);
             String riskLevel = determineRiskLevel(riskScore);
             
-            // 6. Generate explanations based on analysis
+            // 7. Generate explanations based on analysis
             List<String> explanations = generateExplanations(faceDetectionResult, tamperDetectionResult, 
-                                                           qualityAnalysisResult, identityInfo, riskScore, imageAnalysisEnabled);
+                                                           qualityAnalysisResult, forensicAnalysisResult, extractedIdentity,
+                                                           riskScore, imageAnalysisEnabled);
+            explanations.addAll(0, screeningExplanations(screeningResult));
+            if (duplicateCheckResult != null && duplicateCheckResult.isDuplicateOfOtherOwner()) {
+                explanations.add(0, "ALERT: Near-duplicate of " + duplicateCheckResult.getOtherOwnerMatches()
+                        + " document(s) submitted by another account (closest differs in "
+                        + duplicateCheckResult.getClosestDistance() + " of 64 perceptual hash bits)");
+            }
+            if (!reusedFaces.isEmpty()) {
+                explanations.add(0, "ALERT: The document's face matches " + reusedFaces.size()
+                        + " face(s) submitted under another account (similarity "
+                        + Math.round(reusedFaces.get(0).getSimilarity()) + "%)");
+            }
+            if (selfie != null) {
+                explanations.add(0, decidedTier == DocumentScreener.Tier.FULL || !selfieEnabled
+                        ? selfieExplanation(selfieEnabled, selfieFaceResult, faceComparisonResult, degradedStages)
+                        : "Selfie comparison skipped: the document's risk was already settled by screening.");
+            }
             if (identityConsistencyPenalty > 0) {
                 explanations.add("Cross-field validation: inconsistent extracted identity fields detected.");
             }
             if (modelRisk > 0) {
                 explanations.add("External fraud model raised additional risk score by " + modelRisk + " points.");
             }
+            if (decidedTier != DocumentScreener.Tier.FULL) {
+                explanations.add(0, (decidedTier == DocumentScreener.Tier.LOCAL
+                        ? "Screening: risk settled by local checks; OCR, face and moderation checks were skipped ("
+                        : "Screening: risk settled after OCR; face and moderation checks were skipped (")
+                        + awsCallsSaved + " AWS calls saved).");
+            }
             if (isPdf) {
                 explanations.add(0, "PDF detected: OCR extraction performed via Textract; image-only checks were skipped.");
             }
+            List<String> degradations = new ArrayList<>();
+            degradedStages.forEach((stageName, reason) -> degradations.add("Degraded: " + stageName
+                    + " did not complete because " + reason + "; the result is based on partial analysis."));
+            explanations.addAll(0, degradations);
 
-            Double highestConfidence = ((Number) faceDetectionResult.getOrDefault("highestConfidence", 0.0)).doubleValue();
-            Boolean isTampered = Boolean.TRUE.equals(tamperDetectionResult.get("isTampered"));
+            // Similarity to the selfie; there is nothing to match against without one
+            Double faceMatchConfidence = faceComparisonResult != null ? faceComparisonResult.getHighestSimilarity() : null;
+            boolean isTampered = tamperDetectionResult != null && tamperDetectionResult.isTampered()
+                    || forensicAnalysisResult != null && forensicAnalysisResult.isTampered();
+            String perceptualHash = duplicateCheckResult != null ? duplicateCheckResult.getPerceptualHash() : null;
             
-            // 7. Create verification record
+            // 8. Create verification record
             VerificationRecord verificationRecord = createVerificationRecord(
-                file.getOriginalFilename(), s3Key, riskLevel, riskScore, 
+                originalFilename, s3Key, riskLevel, riskScore, 
                 explanations.toArray(new String[0]), identityInfo, 
-                highestConfidence,
+                faceMatchConfidence,
                 isTampered,
                 fileHash,
-                ownerUsername
+                ownerUsername,
+                rulesVersion,
+                perceptualHash
             );
+            archive(verificationRecord, document, contentType);
+            // Indexed before the caller persists the record so concurrent submissions see each other
+            nearDuplicateIndex.add(perceptualHash, ownerUsername);
+            if (faceDetectionResult != null && faceDetectionResult.isFaceDetected()) {
+                faceSearchService.indexInBackground(rekognitionDocument, ownerUsername, fileHash, faceSearchResult);
+            }
             
-            // 8. Save record to DynamoDB
-            dynamoDBService.saveVerificationRecord(verificationRecord);
-            
-            // 9. Build and return response
-            return VerificationResponse.builder()
-                    .riskLevel(riskLevel)
-                    .riskScore(riskScore)
-                    .explanation(explanations)
-                    .extractedData(VerificationResponse.ExtractedData.builder()
-                            .name(identityInfo.getOrDefault("name", ""))
-                            .idNumber(identityInfo.getOrDefault("idNumber", ""))
-                            .dob(identityInfo.getOrDefault("dob", ""))
-                            .build())
-                    .build();
+            // 9. Cache complete results for identical re-submissions; a degraded result, or one
+            // where a check reported an error, is not reused
+            if (degradedStages.isEmpty() && selfie == null
+                    && !hasStageErrors(tamperDetectionResult, faceSearchResult, forensicAnalysisResult)) {
+                verificationResultCache.put(VerificationCacheEntry.builder()
+                        .fileHash(fileHash)
+                        .rulesVersion(rulesVersion)
+                        .riskLevel(riskLevel)
+                        .riskScore(riskScore)
+                        .explanation(List.copyOf(explanations))
+                        .extractedData(identityInfo.toExtractedData())
+                        .faceMatchConfidence(faceMatchConfidence)
+                        .isTampered(isTampered)
+                        .perceptualHash(perceptualHash)
+                        .build());
+            } else if (!degradedStages.isEmpty()) {
+                log.warn("Verification of {} degraded; incomplete stages: {}", fileHash, degradedStages.keySet());
+            } else if (selfie == null) {
+                log.warn("Verification of {} not cached: a check reported an error", fileHash);
+            }
+
+            // 10. Build the response; the record is persisted by the caller
+            VerificationResponse response = buildResponse(riskLevel, riskScore, explanations, identityInfo);
+            response.setFaceMatchConfidence(faceMatchConfidence);
+            return new VerificationOutcome(verificationRecord, response);
                     
         } catch (Exception e) {
             // Log the full stack trace for debugging AWS-related issues
             log.error("Verification failed", e);
             String message = e.getMessage() != null ? e.getMessage() : "Unknown verification error";
             throw new RuntimeException(message, e);
-        } finally {
-            if (deleteUploadedFile && s3Key != null) {
-                try {
-                    s3Service.deleteFile(s3Key);
-                } catch (Exception cleanupException) {
-                    log.warn("Failed to delete uploaded object from S3: {}", s3Key, cleanupException);
-                }
+        }
+    }
+
+    /**
+     * @return True when a stage completed but its check failed, so its result is incomplete
+     */
+    private static boolean hasStageErrors(TamperDetectionResult tamperDetectionResult, FaceSearchResult faceSearchResult,
+                                          ForensicAnalysisResult forensicAnalysisResult) {
+        return tamperDetectionResult != null && tamperDetectionResult.getError() != null
+                || faceSearchResult != null && faceSearchResult.getError() != null
+                || forensicAnalysisResult != null && forensicAnalysisResult.getError() != null;
+    }
+
+    private void archive(VerificationRecord verificationRecord, DocumentBuffer document, String contentType) {
+        if (verificationRecord.getS3Key() != null) {
+            documentArchiveService.archive(verificationRecord, document, contentType);
+        }
+    }
+
+    /**
+     * Lets the archive apply an upload that was given up to the saved record
+     * @param verificationRecord A record returned by analyzeDocument, after it has been saved
+     */
+    public void recordSaved(VerificationRecord verificationRecord) {
+        if (verificationRecord.getS3Key() != null) {
+            documentArchiveService.recordSaved(verificationRecord);
+        }
+    }
+
+    /**
+     * Submits a stage if enough of the request budget is left, otherwise records it as degraded
+     * @return The stage future, or a future completed with null for a skipped stage
+     */
+    private <T> CompletableFuture<T> submitStage(String stageName, Deadline deadline, Map<String, String> degradedStages,
+                                                 Supplier<T> stage) {
+        if (!deadline.hasAtLeastMillis(minStageBudgetMs)) {
+            degradedStages.put(stageName, DEADLINE_REACHED);
+            return CompletableFuture.completedFuture(null);
+        }
+        return stageExecutor.submit(stageName, deadline, stage);
+    }
+
+    /**
+     * Waits for a stage; a stage cut short by the request deadline or its stage timeout, or
+     * rejected by a saturated stage pool, yields null and is recorded as degraded. Any other
+     * failure fails the verification as before
+     */
+    private <T> T awaitStage(String stageName, CompletableFuture<T> future, Deadline deadline,
+                             Map<String, String> degradedStages) {
+        try {
+            return stageExecutor.await(stageName, future);
+        } catch (RuntimeException e) {
+            if (!deadline.isExpired() && !isDegradation(e)) {
+                throw e;
             }
+            log.warn("Verification stage '{}' degraded: {}", stageName, e.getMessage());
+            degradedStages.putIfAbsent(stageName, degradationReason(e, deadline));
+            return null;
         }
     }
 
     /**
-     * Calculates the overall risk score based on multiple analysis factors
+     * Starts the Rekognition stages; for PDFs they complete at once with empty results
+     * @param selfieDocument The selfie's Rekognition copy, or null without a selfie check
      */
-    private int calculateRiskScore(Map<String, Object> faceDetectionResult, 
-                                  Map<String, Object> tamperDetectionResult,
-                                  Map<String, Object> qualityAnalysisResult,
-                                  Map<String, String> identityInfo,
-                                  boolean imageAnalysisEnabled) {
-        int baseScore = 0;
-        
+    private ImageChecks submitImageChecks(DocumentNormalizer.NormalizedDocument normalized, DocumentBuffer selfieDocument,
+                                          String fileHash, boolean imageAnalysisEnabled, Deadline deadline,
+                                          Map<String, String> degradedStages) {
+        DocumentBuffer rekognitionDocument = normalized.getForRekognition();
+        CompletableFuture<FaceDetectionResult> faceDetectionFuture = imageAnalysisEnabled
+                ? submitStage("face-detection", deadline, degradedStages, () -> rekognitionService.detectFaces(rekognitionDocument))
+                : CompletableFuture.completedFuture(FaceDetectionResult.NONE);
+        CompletableFuture<FaceSearchResult> faceSearchFuture = imageAnalysisEnabled && faceSearchService.isEnabled()
+                ? submitStage("face-search", deadline, degradedStages,
+                        () -> faceSearchService.search(rekognitionDocument, fileHash))
+                : CompletableFuture.completedFuture(FaceSearchResult.NONE);
+        CompletableFuture<TamperDetectionResult> tamperDetectionFuture = imageAnalysisEnabled
+                ? submitStage("tamper-detection", deadline, degradedStages, () -> rekognitionService.detectImageTampering(normalized))
+                : CompletableFuture.completedFuture(TamperDetectionResult.NONE);
+        CompletableFuture<FaceDetectionResult> selfieFaceFuture = selfieDocument != null
+                ? submitStage("selfie-face-detection", deadline, degradedStages, () -> rekognitionService.detectFaces(selfieDocument))
+                : CompletableFuture.completedFuture(FaceDetectionResult.NONE);
+        CompletableFuture<FaceComparisonResult> faceComparisonFuture = selfieDocument != null
+                ? submitStage("face-comparison", deadline, degradedStages,
+                        () -> rekognitionService.compareFaces(selfieDocument, rekognitionDocument))
+                : CompletableFuture.completedFuture(null);
+        return new ImageChecks(faceDetectionFuture, faceSearchFuture, tamperDetectionFuture, selfieFaceFuture,
+                faceComparisonFuture);
+    }
+
+    /**
+     * Whether a cascade tier settles the result: the base score cannot fall below the decisive
+     * score whatever the open signals turn out to be. A tier with degraded stages never does,
+     * so that running out of time does not also skip the remaining checks.
+     * @param settledSignals Signals whose stages have run
+     * @param identityInfo Extracted fields, or null before OCR
+     */
+    private boolean isDecisive(long signals, long settledSignals, long totalPixels, IdentityInfo identityInfo,
+                               int decisiveScore, Map<String, String> degradedStages) {
+        return cascadeEnabled && degradedStages.isEmpty()
+                && riskRuleEngine.minimumBaseScore(signals, ~settledSignals, totalPixels, identityInfo) >= decisiveScore;
+    }
+
+    /**
+     * Rekognition and Textract calls the tiers skipped after the deciding one would have made
+     */
+    private int awsCallsSaved(DocumentScreener.Tier decidedTier, boolean imageAnalysisEnabled, boolean selfieEnabled) {
+        if (decidedTier == DocumentScreener.Tier.FULL) {
+            return 0;
+        }
+        int calls = 0;
         if (imageAnalysisEnabled) {
-            // Factor 1: Face detection analysis
-            if (!(Boolean) faceDetectionResult.getOrDefault("isFaceDetected", false)) {
-                baseScore += 35; // High risk if no face detected in ID photo
-            } else {
-                // Check face quality if face is detected
-                Integer faceCount = (Integer) faceDetectionResult.get("faceCount");
-                if (faceCount != null && faceCount > 1) {
-                    baseScore += 15; // Multiple faces may indicate document issues
-                }
-            }
-            
-            // Factor 2: Tampering detection (highest weight)
-            if ((Boolean) tamperDetectionResult.getOrDefault("isTampered", false)) {
-                baseScore += 60; // Very high risk if tampering detected
-            }
-            
-            // Factor 3: Image quality analysis
-            @SuppressWarnings("unchecked")
-            Map<String, Boolean> qualityIndicators = (Map<String, Boolean>) qualityAnalysisResult.getOrDefault("qualityIndicators", Map.of());
-            if (qualityIndicators.getOrDefault("isBlurry", false)) {
-                baseScore += 25; // Blur significantly increases risk
-            }
-            
-            if (!qualityIndicators.getOrDefault("hasGoodLighting", false)) {
-                baseScore += 10; // Poor lighting affects analysis accuracy
-            }
-            
-            if (qualityIndicators.getOrDefault("isDocument", false)) {
-                baseScore -= 15; // Document type decreases risk
+            // DetectFaces, DetectModerationLabels and DetectText, SearchFacesByImage
+            calls += 3;
+            if (faceSearchService.isEnabled()) {
+                calls++;
             }
         }
-        
-        // Factor 4: Identity information completeness
-        int missingFields = 0;
-        if (identityInfo.get("name") == null || identityInfo.get("name").isEmpty()) {
-            missingFields++;
-            baseScore += 20; // Name is critical
+        if (selfieEnabled) {
+            // DetectFaces and CompareFaces
+            calls += 2;
         }
-        if (identityInfo.get("idNumber") == null || identityInfo.get("idNumber").isEmpty()) {
-            missingFields++;
-            baseScore += 25; // ID number is very critical
+        if (decidedTier == DocumentScreener.Tier.LOCAL) {
+            // DetectDocumentText
+            calls++;
         }
-        if (identityInfo.get("dob") == null || identityInfo.get("dob").isEmpty()) {
-            missingFields++;
-            baseScore += 10; // DOB is important
+        return calls;
+    }
+
+    private static long screeningSignals(ScreeningResult screeningResult) {
+        long signals = 0L;
+        if (screeningResult.isBlankPage()) {
+            signals |= RiskRuleEngine.Signal.BLANK_PAGE.bit();
         }
-        
-        // Bonus for complete information
-        if (missingFields == 0) {
-            baseScore -= 20; // All fields present
+        if (screeningResult.isFormatMismatch()) {
+            signals |= RiskRuleEngine.Signal.FORMAT_MISMATCH.bit();
         }
-        
-        if (imageAnalysisEnabled) {
-            // Factor 5: Suspicious content detection
-            if ((Boolean) tamperDetectionResult.getOrDefault("hasSuspiciousContent", false)) {
-                baseScore += 30;
+        if (screeningResult.getEditingSoftware() != null) {
+            signals |= RiskRuleEngine.Signal.EDITING_SOFTWARE.bit();
+        }
+        return signals;
+    }
+
+    private static List<String> screeningExplanations(ScreeningResult screeningResult) {
+        List<String> explanations = new ArrayList<>();
+        if (screeningResult.isBlankPage()) {
+            explanations.add("ALERT: The image is blank or nearly uniform - there is no document content to verify");
+        }
+        if (screeningResult.isFormatMismatch()) {
+            explanations.add("WARNING: File contents (" + screeningResult.getDetectedFormat()
+                    + ") do not match the declared type (" + screeningResult.getDeclaredFormat() + ")");
+        }
+        if (screeningResult.getEditingSoftware() != null) {
+            explanations.add("WARNING: Image metadata names editing software ("
+                    + screeningResult.getEditingSoftware() + ")");
+        }
+        return explanations;
+    }
+
+    /**
+     * @return Why a stage that failed with a degradation did not complete, worded to follow "because"
+     */
+    private static String degradationReason(Throwable error, Deadline deadline) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof VerificationStageExecutor.StageRejectedException) {
+                return "the stage pool was saturated";
             }
-            
-            // Factor 6: Image dimensions (too small/large can be suspicious)
-            Integer width = (Integer) tamperDetectionResult.get("width");
-            Integer height = (Integer) tamperDetectionResult.get("height");
-            if (width != null && height != null) {
-                int totalPixels = width * height;
-                if (totalPixels < 100000) { // Very low resolution
-                    baseScore += 20;
-                } else if (totalPixels > 20000000) { // Extremely high resolution (suspicious)
-                    baseScore += 10;
-                }
+            if (cause instanceof ApiCallTimeoutException) {
+                return "an AWS call timed out";
+            }
+            if (cause instanceof TimeoutException && !deadline.isExpired()) {
+                return "the stage timed out";
             }
         }
-        
-        // Ensure score stays within bounds
-        return Math.min(100, Math.max(0, baseScore));
+        return DEADLINE_REACHED;
+    }
+
+    private static boolean isDegradation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof Deadline.DeadlineExceededException || cause instanceof ApiCallTimeoutException
+                    || cause instanceof TimeoutException
+                    || cause instanceof VerificationStageExecutor.StageRejectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a verification for this submission from a cached result of an identical document
+     */
+    private VerificationOutcome respondFromCache(VerificationCacheEntry cached, String fileName, String s3Key,
+                                                 String fileHash, String ownerUsername) {
+        List<String> explanations = new ArrayList<>();
+        explanations.add("Identical document was analyzed before; result served from verification cache.");
+        if (cached.getExplanation() != null) {
+            explanations.addAll(cached.getExplanation());
+        }
+        IdentityInfo identityInfo = IdentityInfo.fromExtractedData(cached.getExtractedData());
+
+        VerificationRecord verificationRecord = createVerificationRecord(
+                fileName, s3Key, cached.getRiskLevel(), cached.getRiskScore(),
+                explanations.toArray(new String[0]), identityInfo,
+                cached.getFaceMatchConfidence(),
+                Boolean.TRUE.equals(cached.getIsTampered()),
+                fileHash,
+                ownerUsername,
+                cached.getRulesVersion(),
+                cached.getPerceptualHash()
+        );
+        nearDuplicateIndex.add(cached.getPerceptualHash(), ownerUsername);
+        return new VerificationOutcome(verificationRecord,
+                buildResponse(cached.getRiskLevel(), cached.getRiskScore(), explanations, identityInfo));
+    }
+
+    private VerificationResponse buildResponse(String riskLevel, int riskScore, List<String> explanations,
+                                               IdentityInfo identityInfo) {
+        return VerificationResponse.builder()
+                .riskLevel(riskLevel)
+                .riskScore(riskScore)
+                .explanation(explanations)
+                .extractedData(VerificationResponse.ExtractedData.builder()
+                        .name(identityInfo.getName())
+                        .idNumber(identityInfo.getIdNumber())
+                        .dob(identityInfo.getDob())
+                        .provenance(provenanceOf(identityInfo))
+                        .build())
+                .build();
+    }
+
+    private static Map<String, VerificationResponse.FieldProvenance> provenanceOf(IdentityInfo identityInfo) {
+        if (identityInfo.getFieldSources().isEmpty()) {
+            return null;
+        }
+        Map<String, VerificationResponse.FieldProvenance> provenance = new LinkedHashMap<>();
+        identityInfo.getFieldSources().forEach((field, source) -> provenance.put(field,
+                new VerificationResponse.FieldProvenance(source.getSource().name(), source.getConfidence())));
+        return provenance;
     }
 
     /**
@@ -249,67 +727,98 @@ public class VerificationService {
     /**
      * Generates explanations based on the analysis results
      */
-    private List<String> generateExplanations(Map<String, Object> faceDetectionResult,
-                                             Map<String, Object> tamperDetectionResult,
-                                             Map<String, Object> qualityAnalysisResult,
-                                             Map<String, String> identityInfo,
+    private List<String> generateExplanations(FaceDetectionResult faceDetectionResult,
+                                             TamperDetectionResult tamperDetectionResult,
+                                             QualityAnalysisResult qualityAnalysisResult,
+                                             ForensicAnalysisResult forensicAnalysisResult,
+                                             IdentityInfo identityInfo,
                                              int riskScore,
                                              boolean imageAnalysisEnabled) {
         List<String> explanations = new ArrayList<>();
         
+        // Results of degraded stages are null; they are explained separately
         if (imageAnalysisEnabled) {
             // Face detection results
-            Integer faceCount = (Integer) faceDetectionResult.get("faceCount");
-            if ((Boolean) faceDetectionResult.getOrDefault("isFaceDetected", false)) {
-                if (faceCount != null && faceCount > 1) {
-                    explanations.add("Face detection: Multiple faces (" + faceCount + ") detected - may indicate document issues");
+            if (faceDetectionResult != null) {
+                int faceCount = faceDetectionResult.getFaceCount();
+                if (faceDetectionResult.isFaceDetected()) {
+                    if (faceCount > 1) {
+                        explanations.add("Face detection: Multiple faces (" + faceCount + ") detected - may indicate document issues");
+                    } else {
+                        explanations.add("Face detection: Single face detected - positive indicator");
+                    }
                 } else {
-                    explanations.add("Face detection: Single face detected - positive indicator");
+                    explanations.add("WARNING: No face detected in document - potential fraud indicator");
                 }
-            } else {
-                explanations.add("WARNING: No face detected in document - potential fraud indicator");
             }
             
             // Tampering results
-            if ((Boolean) tamperDetectionResult.getOrDefault("isTampered", false)) {
-                explanations.add("ALERT: Potential tampering detected in document");
-            } else {
-                explanations.add("Document integrity check: No obvious signs of tampering detected");
+            if (tamperDetectionResult != null) {
+                if (tamperDetectionResult.isTampered()) {
+                    explanations.add("ALERT: Potential tampering detected in document");
+                } else {
+                    explanations.add("Document integrity check: No obvious signs of tampering detected");
+                }
             }
             
-            // Quality results
-            @SuppressWarnings("unchecked")
-            Map<String, Boolean> qualityIndicators = (Map<String, Boolean>) qualityAnalysisResult.getOrDefault("qualityIndicators", Map.of());
-            if (qualityIndicators.getOrDefault("isBlurry", false)) {
-                explanations.add("Image quality assessment: Low quality detected - may affect analysis accuracy");
-            } else {
-                explanations.add("Image quality assessment: Good quality for analysis");
+            // Local forensics; not reported when disabled or when the image could not be analyzed
+            if (forensicAnalysisResult != null && forensicAnalyzer.isEnabled() && forensicAnalysisResult.getError() == null) {
+                long probability = Math.round(forensicAnalysisResult.getTamperProbability() * 100);
+                if (forensicAnalysisResult.isTampered()) {
+                    explanations.add("ALERT: Forensic analysis found signs of local editing (tamper probability "
+                            + probability + "%)");
+                } else if (forensicAnalysisResult.getCopyMoveRegions() > 0) {
+                    explanations.add("Forensic analysis: possible duplicated region (tamper probability "
+                            + probability + "%)");
+                } else {
+                    explanations.add("Forensic analysis: No local signs of editing detected");
+                }
             }
             
-            if (!qualityIndicators.getOrDefault("hasGoodLighting", false)) {
-                explanations.add("Lighting conditions: Poor lighting detected - may impact OCR accuracy");
+            // Quality results
+            if (qualityAnalysisResult != null) {
+                if (qualityAnalysisResult.getError() != null) {
+                    explanations.add("Image quality assessment: Image could not be decoded for analysis - "
+                            + qualityAnalysisResult.getError());
+                } else if (qualityAnalysisResult.isBlurry()) {
+                    explanations.add("Image quality assessment: Low quality detected - may affect analysis accuracy");
+                } else {
+                    explanations.add("Image quality assessment: Good quality for analysis");
+                }
+
+                if (!qualityAnalysisResult.isGoodLighting()) {
+                    explanations.add("Lighting conditions: Poor lighting detected - may impact OCR accuracy");
+                }
             }
         } else {
             explanations.add("Image-based face and tamper checks skipped for PDF input.");
         }
         
         // Identity info extraction
-        if (identityInfo.get("name") != null && !identityInfo.get("name").isEmpty()) {
-            explanations.add("Name extracted: " + identityInfo.get("name"));
-        } else {
-            explanations.add("Name extraction: Failed to extract name from document - critical information missing");
-        }
-        
-        if (identityInfo.get("idNumber") != null && !identityInfo.get("idNumber").isEmpty()) {
-            explanations.add("ID number extracted: " + identityInfo.get("idNumber"));
-        } else {
-            explanations.add("ID number extraction: Failed to extract ID number from document - critical information missing");
-        }
-        
-        if (identityInfo.get("dob") != null && !identityInfo.get("dob").isEmpty()) {
-            explanations.add("Date of birth extracted: " + identityInfo.get("dob"));
-        } else {
-            explanations.add("Date of birth extraction: Failed to extract DOB from document");
+        if (identityInfo != null) {
+            if (identityInfo.hasName()) {
+                explanations.add("Name extracted: " + identityInfo.getName());
+            } else {
+                explanations.add("Name extraction: Failed to extract name from document - critical information missing");
+            }
+
+            if (identityInfo.hasIdNumber()) {
+                explanations.add("ID number extracted: " + identityInfo.getIdNumber());
+            } else {
+                explanations.add("ID number extraction: Failed to extract ID number from document - critical information missing");
+            }
+
+            if (identityInfo.hasDob()) {
+                explanations.add("Date of birth extracted: " + identityInfo.getDob());
+            } else {
+                explanations.add("Date of birth extraction: Failed to extract DOB from document");
+            }
+
+            if (identityInfo.getMrzStatus() == IdentityInfo.MrzStatus.VALID) {
+                explanations.add("MRZ: Machine readable zone read with valid check digits");
+            } else if (identityInfo.getMrzStatus() == IdentityInfo.MrzStatus.CHECK_DIGIT_FAILED) {
+                explanations.add("ALERT: MRZ check digits do not match its fields - possible alteration or misread");
+            }
         }
         
         // Risk assessment
@@ -333,6 +842,27 @@ public class VerificationService {
         return explanations;
     }
 
+    private static String selfieExplanation(boolean selfieEnabled, FaceDetectionResult selfieFaceResult,
+                                            FaceComparisonResult faceComparisonResult,
+                                            Map<String, String> degradedStages) {
+        if (!selfieEnabled) {
+            return "Selfie comparison skipped: the document is a PDF.";
+        }
+        if (selfieFaceResult == null || faceComparisonResult == null) {
+            String reason = degradedStages.getOrDefault("selfie-face-detection",
+                    degradedStages.getOrDefault("face-comparison", DEADLINE_REACHED));
+            return "Selfie comparison incomplete: " + reason + ".";
+        }
+        if (!selfieFaceResult.isFaceDetected()) {
+            return "WARNING: No face detected in the selfie - it could not be compared with the document";
+        }
+        if (!faceComparisonResult.isMatch()) {
+            return "ALERT: The selfie does not match the face on the document";
+        }
+        return "Selfie match: the selfie matches the face on the document (similarity "
+                + Math.round(faceComparisonResult.getHighestSimilarity()) + "%)";
+    }
+
     /**
      * Creates a verification record for storage in DynamoDB
      */
@@ -342,20 +872,15 @@ public class VerificationService {
         String riskLevel,
         int riskScore,
         String[] explanations,
-        Map<String, String> identityInfo,
+        IdentityInfo identityInfo,
         Double faceMatchConfidence,
-        Boolean isTampered,
+        boolean isTampered,
         String fileHash,
-        String ownerUsername) {
+        String ownerUsername,
+        String rulesVersion,
+        String perceptualHash) {
 
-    VerificationRecord.ExtractedData extractedData =
-            VerificationRecord.ExtractedData.builder()
-                    .name(identityInfo.get("name"))
-                    .idNumber(identityInfo.get("idNumber"))
-                    .dob(identityInfo.get("dob"))
-                    .address(identityInfo.get("address"))
-                    .expiryDate(identityInfo.get("expiryDate"))
-                    .build();
+    VerificationRecord.ExtractedData extractedData = identityInfo.toExtractedData();
 
     // Convert String[] → List<String>
     List<String> explanationList = Arrays.asList(explanations);
@@ -365,69 +890,24 @@ public class VerificationService {
             .fileHash(fileHash)
             .ownerUsername(ownerUsername)
             .s3Key(s3Key)
-            .s3Bucket(s3Service.getBucketName()) // Use actual bucket name from S3Service
-            .s3ObjectDeleted(deleteUploadedFile)
+            .s3Bucket(s3Key != null ? s3Service.getBucketName() : null)
+            .s3ObjectDeleted(s3Key == null)
             .riskLevel(riskLevel)
             .riskScore(riskScore)
             .explanation(explanationList)
             .extractedData(extractedData)
             .faceMatchConfidence(faceMatchConfidence)
             .isTampered(isTampered)
+            .rulesVersion(rulesVersion)
+            .perceptualHash(perceptualHash)
             .build();
 }
 
-    private int evaluateIdentityConsistency(Map<String, String> identityInfo) {
-        int penalty = 0;
-        String name = identityInfo.getOrDefault("name", "");
-        String idNumber = identityInfo.getOrDefault("idNumber", "");
-        String dob = identityInfo.getOrDefault("dob", "");
-
-        if (!name.isBlank() && name.matches(".*\\d.*")) {
-            penalty += 15;
-        }
-        if (!idNumber.isBlank() && idNumber.length() < 5) {
-            penalty += 10;
-        }
-        if (!dob.isBlank() && !dob.matches(".*\\d{2,4}.*")) {
-            penalty += 10;
-        }
-        return penalty;
-    }
-
-    private boolean isPdfFile(MultipartFile file) {
-        String contentType = file.getContentType();
-        String originalFilename = file.getOriginalFilename();
+    private boolean isPdfFile(String originalFilename, String contentType) {
         return "application/pdf".equalsIgnoreCase(contentType)
                 || (originalFilename != null && originalFilename.toLowerCase().endsWith(".pdf"));
     }
 
-    private Map<String, Object> defaultFaceDetectionResult() {
-        return Map.of(
-                "faceCount", 0,
-                "isFaceDetected", false,
-                "highestConfidence", 0.0d,
-                "faces", List.of()
-        );
-    }
-
-    private Map<String, Object> defaultTamperDetectionResult() {
-        return Map.of(
-                "isTampered", false,
-                "hasSuspiciousContent", false
-        );
-    }
-
-    private Map<String, Object> defaultQualityAnalysisResult() {
-        return Map.of(
-                "labels", List.of(),
-                "qualityIndicators", Map.of(
-                        "isBlurry", false,
-                        "hasGoodLighting", true,
-                        "isDocument", true
-                )
-        );
-    }
-
     /**
      * Generates SHA-256 hash of the file content
      */
@@ -448,4 +928,48 @@ public class VerificationService {
             throw new RuntimeException("SHA-256 algorithm not available", e);
         }
     }
+
+    /**
+     * Futures of the Rekognition stages, started together once the cascade reaches them
+     */
+    private static final class ImageChecks {
+        private final CompletableFuture<FaceDetectionResult> faceDetection;
+        private final CompletableFuture<FaceSearchResult> faceSearch;
+        private final CompletableFuture<TamperDetectionResult> tamperDetection;
+        private final CompletableFuture<FaceDetectionResult> selfieFace;
+        private final CompletableFuture<FaceComparisonResult> faceComparison;
+
+        private ImageChecks(CompletableFuture<FaceDetectionResult> faceDetection,
+                            CompletableFuture<FaceSearchResult> faceSearch,
+                            CompletableFuture<TamperDetectionResult> tamperDetection,
+                            CompletableFuture<FaceDetectionResult> selfieFace,
+                            CompletableFuture<FaceComparisonResult> faceComparison) {
+            this.faceDetection = faceDetection;
+            this.faceSearch = faceSearch;
+            this.tamperDetection = tamperDetection;
+            this.selfieFace = selfieFace;
+            this.faceComparison = faceComparison;
+        }
+    }
+
+    /**
+     * Result of the verification pipeline: the record to persist and the API response
+     */
+    public static class VerificationOutcome {
+        private final VerificationRecord record;
+        private final VerificationResponse response;
+
+        public VerificationOutcome(VerificationRecord record, VerificationResponse response) {
+            this.record = record;
+            this.response = response;
+        }
+
+        public VerificationRecord getRecord() {
+            return record;
+        }
+
+        public VerificationResponse getResponse() {
+            return response;
+        }
+    }
 }
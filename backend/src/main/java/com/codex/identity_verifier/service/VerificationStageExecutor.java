@@ -0,0 +1,216 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.util.Deadline;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent verification stages (Rekognition, Textract, ...) concurrently on a
+ * bounded pool so that request latency tracks the slowest stage instead of their sum.
+ * When the pool and its queue are saturated a stage is rejected rather than run on the
+ * calling thread: its future fails with {@link StageRejectedException} and the caller
+ * reports the stage as degraded. A stage that times out is interrupted so that it does
+ * not keep holding a pool thread.
+ * <p>
+ * Stages time out after verification.stages.timeout-ms, or after
+ * verification.stages.&lt;stage&gt;.timeout-ms when set for the stage.
+ * <p>
+ * By default the pool has a thread, and its queue a slot, for every stage of every
+ * verification the admission limit lets in, so admitted load is not rejected here.
+ */
+@Service
+public class VerificationStageExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationStageExecutor.class);
+
+    private final Environment environment;
+
+    // Verifications admitted at once by AdmissionControlFilter
+    @Value("${verification.admission.max-in-flight:32}")
+    private int maxInFlight;
+
+    // Most stages one verification submits: five image and OCR stages, three local ones
+    @Value("${verification.stages.per-request:8}")
+    private int stagesPerRequest;
+
+    // 0 = max-in-flight x per-request
+    @Value("${verification.stages.pool-size:0}")
+    private int poolSize;
+
+    // 0 = same as the pool size
+    @Value("${verification.stages.queue-capacity:0}")
+    private int queueCapacity;
+
+    @Value("${verification.stages.timeout-ms:15000}")
+    private long stageTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+    private final Map<String, Long> stageTimeouts = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    @Autowired
+    public VerificationStageExecutor(Environment environment) {
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "verification-stage-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int threads = poolSize > 0 ? poolSize : Math.max(1, maxInFlight * stagesPerRequest);
+        int queued = queueCapacity > 0 ? queueCapacity : threads;
+        log.info("Verification stage pool: {} threads, queue of {}", threads, queued);
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queued),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules a stage on the stage pool. The stage timeout starts counting at submission.
+     * @param stageName Name used in logs and timeout messages
+     * @param stage The stage to run
+     * @return Future completing with the stage result
+     */
+    public <T> CompletableFuture<T> submit(String stageName, Supplier<T> stage) {
+        return submit(stageName, Deadline.none(), stage);
+    }
+
+    /**
+     * Schedules a stage that must finish within the request deadline. The deadline is bound
+     * to the worker thread while the stage runs, so AWS calls made by the stage inherit the
+     * remaining budget; the stage times out at the earlier of the deadline and the stage timeout.
+     * @param stageName Name used in logs and timeout messages
+     * @param deadline The request deadline
+     * @param stage The stage to run
+     * @return Future completing with the stage result
+     */
+    public <T> CompletableFuture<T> submit(String stageName, Deadline deadline, Supplier<T> stage) {
+        long startedAt = System.nanoTime();
+        long timeoutMs = Math.max(1L, Math.min(timeoutMillis(stageName), deadline.remainingMillis()));
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(deadline.callWith(stage::get));
+                    log.debug("Verification stage '{}' finished in {} ms", stageName,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            log.warn("Verification stage '{}' rejected: stage pool and queue are full", stageName);
+            return CompletableFuture.failedFuture(new StageRejectedException(stageName));
+        }
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+            if (error instanceof TimeoutException) {
+                timedOut.incrementAndGet();
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        return stats;
+    }
+
+    private long timeoutMillis(String stageName) {
+        return stageTimeouts.computeIfAbsent(stageName, name -> environment.getProperty(
+                "verification.stages." + name + ".timeout-ms", Long.class, stageTimeoutMs));
+    }
+
+    /**
+     * Waits for a submitted stage and rethrows its failure unchanged, so callers see the
+     * same exceptions they would have seen calling the stage directly.
+     * @param stageName Name used in the timeout message
+     * @param future Future returned by {@link #submit(String, Supplier)}
+     * @return The stage result
+     */
+    public <T> T await(String stageName, CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for verification stage: " + stageName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new RuntimeException("Verification stage '" + stageName + "' timed out", cause);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * A stage that was not run because the stage pool and its queue were full
+     */
+    public static class StageRejectedException extends RuntimeException {
+        public StageRejectedException(String stageName) {
+            super("Verification stage '" + stageName + "' rejected: stage pool is saturated");
+        }
+    }
+}
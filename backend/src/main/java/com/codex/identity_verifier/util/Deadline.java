@@ -0,0 +1,93 @@
+package com.codex.identity_verifier.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Absolute time budget for one verification request. The deadline is passed explicitly
+ * between services and bound to the current thread while a stage runs, so that the AWS
+ * client layer can turn the remaining budget into each call's API-call timeout.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param budgetMs Budget from now; 0 or less means effectively unbounded
+     */
+    public static Deadline afterMillis(long budgetMs) {
+        if (budgetMs <= 0) {
+            return none();
+        }
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs));
+    }
+
+    public static Deadline none() {
+        // Far enough away to never expire, close enough that nanoTime arithmetic cannot overflow
+        return new Deadline(System.nanoTime() + TimeUnit.DAYS.toNanos(365));
+    }
+
+    /**
+     * @return The deadline bound to the current thread, or null if none is
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the task with this deadline bound to the current thread
+     */
+    public <T> T callWith(Supplier<T> task) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public long getExpiresAtNanos() {
+        return expiresAtNanos;
+    }
+
+    public long remainingNanos() {
+        return Math.max(0L, expiresAtNanos - System.nanoTime());
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() == 0L;
+    }
+
+    public boolean hasAtLeastMillis(long millis) {
+        return remainingNanos() >= TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Thrown when work is not started, or is cut short, because the request's budget ran out
+     */
+    public static class DeadlineExceededException extends RuntimeException {
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+}
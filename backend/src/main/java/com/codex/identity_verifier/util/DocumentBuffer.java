@@ -0,0 +1,147 @@
+package com.codex.identity_verifier.util;
+
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Single in-memory copy of an uploaded document, shared read-only by every verification
+ * stage. The SHA-256 is computed while the upload streams in, and the AWS SDK views
+ * ({@link #asSdkBytes()}, {@link #toRequestBody(String)}) wrap the same array instead
+ * of copying it per call.
+ */
+public final class DocumentBuffer {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final byte[] data;
+    private final String sha256;
+    private final SdkBytes sdkBytes;
+
+    private DocumentBuffer(byte[] data, String sha256) {
+        this.data = data;
+        this.sha256 = sha256;
+        this.sdkBytes = SdkBytes.fromByteArrayUnsafe(data);
+    }
+
+    /**
+     * Reads an uploaded file straight from its multipart stream
+     * @param file The upload
+     * @param maxBytes Upper bound on the document size
+     * @return The buffer, or null if the upload exceeds maxBytes
+     */
+    public static DocumentBuffer read(MultipartFile file, long maxBytes) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return read(in, file.getSize(), maxBytes);
+        }
+    }
+
+    /**
+     * Reads a stream into a single buffer, hashing as it goes. The expected size is only a
+     * sizing hint; the limit is enforced on the bytes actually read.
+     * @param in The source; not closed
+     * @param expectedSize The declared size, or -1 if unknown
+     * @param maxBytes Upper bound on the document size
+     * @return The buffer, or null if the stream exceeds maxBytes
+     */
+    public static DocumentBuffer read(InputStream in, long expectedSize, long maxBytes) throws IOException {
+        MessageDigest digest = newDigest();
+        DigestInputStream digestIn = new DigestInputStream(in, digest);
+
+        int capacity = expectedSize >= 0 && expectedSize <= maxBytes
+                ? (int) expectedSize
+                : (int) Math.min(CHUNK_SIZE, maxBytes);
+        byte[] buffer = new byte[Math.max(capacity, 1)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // Probe for EOF before growing, so a correctly declared size is never copied
+                int next = digestIn.read();
+                if (next == -1) {
+                    break;
+                }
+                if (length >= maxBytes) {
+                    return null;
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, Math.max(CHUNK_SIZE, (long) length * 2)));
+                buffer[length++] = (byte) next;
+                continue;
+            }
+            int read = digestIn.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        byte[] data = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        return new DocumentBuffer(data, hex(digest));
+    }
+
+    /**
+     * Wraps bytes that are already in memory; the array must not be modified afterwards
+     */
+    public static DocumentBuffer wrap(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return new DocumentBuffer(data, hex(digest));
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    public boolean isEmpty() {
+        return data.length == 0;
+    }
+
+    /**
+     * @return Lower-case hex SHA-256 of the document
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return Shared SDK view of the document for Rekognition/Textract requests
+     */
+    public SdkBytes asSdkBytes() {
+        return sdkBytes;
+    }
+
+    /**
+     * @return A replayable S3 request body over the document, so SDK retries do not need a copy
+     */
+    public RequestBody toRequestBody(String contentType) {
+        return RequestBody.fromContentProvider(sdkBytes.asContentStreamProvider(), data.length,
+                contentType != null ? contentType : "application/octet-stream");
+    }
+
+    public ByteBuffer asReadOnlyByteBuffer() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    public InputStream newInputStream() {
+        return sdkBytes.asInputStream();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,214 @@
+package com.codex.identity_verifier.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side guard for one downstream API: a concurrency bulkhead, a token bucket
+ * for the request rate, and a bounded wait queue with a deadline. Calls that cannot
+ * start within the deadline fail fast with {@link LimitExceededException} instead of
+ * reaching AWS and being throttled there. Queue time and service time are recorded
+ * separately so saturation can be told apart from a slow downstream.
+ */
+public class DownstreamLimiter {
+
+    private final String name;
+    private final int maxConcurrency;
+    private final double permitsPerSecond;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+
+    private final Semaphore bulkhead;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // Token bucket: up to one second of unused permits is stored for bursts
+    private final long intervalNanos;
+    private final double maxStoredPermits;
+    private double storedPermits;
+    private long nextFreeNanos = System.nanoTime();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder serviceNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    /**
+     * @param name Name used in errors and metrics, e.g. "rekognition.detectFaces"
+     * @param maxConcurrency Calls allowed in flight at once; 0 or less for no limit
+     * @param permitsPerSecond Sustained call rate; 0 or less for no limit
+     * @param maxQueue Calls allowed to wait for a slot or token before new calls are rejected
+     * @param maxWaitMs Longest a call may wait before starting
+     */
+    public DownstreamLimiter(String name, int maxConcurrency, double permitsPerSecond, int maxQueue, long maxWaitMs) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        this.bulkhead = new Semaphore(maxConcurrency > 0 ? maxConcurrency : Integer.MAX_VALUE, true);
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0L;
+        this.maxStoredPermits = Math.max(1.0, permitsPerSecond);
+        this.storedPermits = maxStoredPermits;
+    }
+
+    /**
+     * Runs the call once a concurrency slot and a rate token are available
+     * @throws LimitExceededException if the wait queue is full or the call cannot start in time
+     */
+    public <T> T execute(Callable<T> call) throws Exception {
+        return execute(call, null);
+    }
+
+    /**
+     * Runs the call, waiting no longer than the limiter's max wait or the request deadline
+     * @param requestDeadline The caller's deadline, or null
+     * @throws Deadline.DeadlineExceededException if the request deadline ends the wait
+     */
+    public <T> T execute(Callable<T> call, Deadline requestDeadline) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + maxWaitNanos;
+        boolean requestBound = requestDeadline != null && requestDeadline.getExpiresAtNanos() - deadline < 0;
+        if (requestBound) {
+            deadline = requestDeadline.getExpiresAtNanos();
+        }
+        calls.increment();
+
+        acquireSlot(deadline, requestBound);
+        try {
+            awaitPermit(deadline, requestBound);
+
+            long serviceStart = System.nanoTime();
+            long queued = serviceStart - start;
+            queueNanos.add(queued);
+            maxQueueNanos.accumulateAndGet(queued, Math::max);
+            try {
+                return call.call();
+            } catch (Exception e) {
+                failures.increment();
+                throw e;
+            } finally {
+                serviceNanos.add(System.nanoTime() - serviceStart);
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private void acquireSlot(long deadline, boolean requestBound) {
+        try {
+            // Zero-timeout tryAcquire honours fairness, unlike the no-arg variant
+            if (bulkhead.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                throw new LimitExceededException(name + " wait queue is full (" + maxQueue + " waiting)");
+            }
+            try {
+                if (!bulkhead.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    timedOut.increment();
+                    if (requestBound) {
+                        throw new Deadline.DeadlineExceededException(name + " request deadline reached waiting for a slot");
+                    }
+                    throw new LimitExceededException(name + " concurrency limit of " + maxConcurrency
+                            + " reached; no slot within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LimitExceededException(name + " interrupted while waiting for a slot");
+        }
+    }
+
+    private void awaitPermit(long deadline, boolean requestBound) {
+        long readyAt = reservePermit(System.nanoTime(), deadline);
+        if (readyAt < 0) {
+            timedOut.increment();
+            if (requestBound) {
+                throw new Deadline.DeadlineExceededException(name + " request deadline reached waiting for a rate token");
+            }
+            throw new LimitExceededException(name + " rate limit of " + permitsPerSecond
+                    + "/s reached; no token within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+        }
+        long sleepNanos = readyAt - System.nanoTime();
+        if (sleepNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LimitExceededException(name + " interrupted while waiting for a rate token");
+            }
+        }
+    }
+
+    /**
+     * Reserves the next rate token
+     * @return The time the caller may proceed, or -1 if that would be after the deadline
+     */
+    private synchronized long reservePermit(long now, long deadline) {
+        if (intervalNanos == 0) {
+            return now;
+        }
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(maxStoredPermits, storedPermits + (double) (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+        long readyAt = nextFreeNanos;
+        if (readyAt > deadline) {
+            return -1L;
+        }
+        if (storedPermits >= 1.0) {
+            storedPermits -= 1.0;
+        } else {
+            nextFreeNanos += intervalNanos;
+        }
+        return readyAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getStats() {
+        long callCount = calls.sum();
+        long started = Math.max(1, callCount - rejected.sum() - timedOut.sum());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("permitsPerSecond", permitsPerSecond);
+        stats.put("inFlight", maxConcurrency > 0 ? maxConcurrency - bulkhead.availablePermits() : null);
+        stats.put("waiting", waiting.get());
+        stats.put("calls", callCount);
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("failures", failures.sum());
+        stats.put("avgQueueMs", nanosToMillis(queueNanos.sum() / started));
+        stats.put("maxQueueMs", nanosToMillis(maxQueueNanos.get()));
+        stats.put("avgServiceMs", nanosToMillis(serviceNanos.sum() / started));
+        return stats;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    /**
+     * Thrown when a call is shed by the limiter rather than sent downstream
+     */
+    public static class LimitExceededException extends RuntimeException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
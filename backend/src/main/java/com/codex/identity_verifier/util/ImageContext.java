@@ -0,0 +1,343 @@
+package com.codex.identity_verifier.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+/**
+ * The decoded pixels of one document image, shared by every image stage of a request. The
+ * image is decoded at most once, on first use, and its 8-bit luminance is derived from it
+ * once, read straight from the raster's DataBuffer for the layouts ImageIO and the normalizer
+ * produce (interleaved bytes, packed ints), falling back to getRGB only for exotic layouts.
+ * The luminance array is shared, so callers must not modify it.
+ */
+public final class ImageContext {
+
+    private static final int ROWS_PER_TASK = 64;
+
+    private static final ImageContext EMPTY = new ImageContext(null, 0, null, true);
+
+    private final DocumentBuffer source;
+    private final int maxDimension;
+    private BufferedImage image;
+    private boolean decoded;
+    private byte[] luminance;
+
+    private ImageContext(DocumentBuffer source, int maxDimension, BufferedImage image, boolean decoded) {
+        this.source = source;
+        this.maxDimension = maxDimension;
+        this.image = image;
+        this.decoded = decoded;
+    }
+
+    /**
+     * @param source Encoded image, decoded on first use
+     * @param maxDimension When positive, the image is subsampled while decoding so that its
+     * longest side is roughly this size (never less); pixel analysis rarely needs more
+     */
+    public static ImageContext lazy(DocumentBuffer source, int maxDimension) {
+        return new ImageContext(source, maxDimension, null, false);
+    }
+
+    /**
+     * Wraps an image that is already decoded
+     * @param source The encoded form of the image, used for region reads
+     */
+    public static ImageContext of(DocumentBuffer source, BufferedImage image) {
+        return new ImageContext(source, 0, image, true);
+    }
+
+    /**
+     * No image, e.g. for PDFs
+     */
+    public static ImageContext empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return The decoded (possibly subsampled) image, or null if the source is not a decodable image
+     */
+    public synchronized BufferedImage getImage() {
+        if (!decoded) {
+            decoded = true;
+            try {
+                image = decode(source, maxDimension, null);
+            } catch (IOException | RuntimeException e) {
+                image = null;
+            }
+        }
+        return image;
+    }
+
+    public boolean isAvailable() {
+        return getImage() != null;
+    }
+
+    public int getWidth() {
+        BufferedImage decodedImage = getImage();
+        return decodedImage != null ? decodedImage.getWidth() : 0;
+    }
+
+    public int getHeight() {
+        BufferedImage decodedImage = getImage();
+        return decodedImage != null ? decodedImage.getHeight() : 0;
+    }
+
+    /**
+     * @return Row-major luminance (ITU-R BT.601, 0 to 255, read with {@code & 0xFF}) of
+     * {@link #getImage()}, or null if there is no image
+     */
+    public synchronized byte[] getLuminance() {
+        BufferedImage decodedImage = getImage();
+        if (luminance == null && decodedImage != null) {
+            int width = decodedImage.getWidth();
+            byte[] values = new byte[width * decodedImage.getHeight()];
+            forEachRowBlock(decodedImage, (y, row) -> {
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    values[offset + x] = (byte) ((77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF)
+                            + 29 * (pixel & 0xFF)) >> 8);
+                }
+            });
+            luminance = values;
+        }
+        return luminance;
+    }
+
+    /**
+     * Decodes part of the source at full resolution, without decoding the rest of a
+     * subsampled image. Coordinates are fractions of the image size, as in Textract geometry.
+     * @return The region, or null if the source cannot be decoded or the region is empty
+     */
+    public BufferedImage readRegion(double left, double top, double width, double height) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            return decode(source, 0, new double[]{left, top, width, height});
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static BufferedImage decode(DocumentBuffer source, int maxDimension, double[] region) throws IOException {
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.newInputStream())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    int x = Math.max(0, (int) (region[0] * width));
+                    int y = Math.max(0, (int) (region[1] * height));
+                    int right = Math.min(width, (int) Math.ceil((region[0] + region[2]) * width));
+                    int bottom = Math.min(height, (int) Math.ceil((region[1] + region[3]) * height));
+                    if (right <= x || bottom <= y) {
+                        return null;
+                    }
+                    param.setSourceRegion(new Rectangle(x, y, right - x, bottom - y));
+                } else if (maxDimension > 0) {
+                    int subsampling = Math.max(1, Math.max(width, height) / maxDimension);
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private interface RowConsumer {
+        void accept(int y, int[] row);
+    }
+
+    /**
+     * Reads the image as packed RGB rows, in parallel blocks of rows
+     */
+    private static void forEachRowBlock(BufferedImage image, RowConsumer consumer) {
+        int height = image.getHeight();
+        int blocks = (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        RowReader reader = RowReader.of(image);
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int[] row = new int[image.getWidth()];
+            int end = Math.min(height, (block + 1) * ROWS_PER_TASK);
+            for (int y = block * ROWS_PER_TASK; y < end; y++) {
+                reader.read(y, row);
+                consumer.accept(y, row);
+            }
+        });
+    }
+
+    /**
+     * Reads one row of pixels as 0xRRGGBB
+     */
+    private abstract static class RowReader {
+
+        abstract void read(int y, int[] row);
+
+        static RowReader of(BufferedImage image) {
+            Raster raster = image.getRaster();
+            DataBuffer buffer = raster.getDataBuffer();
+            ColorModel colorModel = image.getColorModel();
+            boolean srgb = colorModel.getColorSpace().isCS_sRGB();
+            // Offset of the image's origin in the sample model, non-zero for sub-images
+            int originX = -raster.getSampleModelTranslateX();
+            int originY = -raster.getSampleModelTranslateY();
+
+            if (buffer instanceof DataBufferByte bytes && bytes.getNumBanks() == 1
+                    && raster.getSampleModel() instanceof ComponentSampleModel sampleModel
+                    && colorModel instanceof ComponentColorModel
+                    && eightBitComponents(colorModel)) {
+                int bands = sampleModel.getNumBands();
+                boolean gray = bands <= 2 && colorModel.getColorSpace().getType() == java.awt.color.ColorSpace.TYPE_GRAY;
+                if (gray || (srgb && bands >= 3)) {
+                    return new InterleavedByteReader(bytes.getData(), bytes.getOffset(), sampleModel,
+                            originX, originY, gray);
+                }
+            }
+            if (buffer instanceof DataBufferInt ints && ints.getNumBanks() == 1
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                    && colorModel instanceof DirectColorModel direct && srgb
+                    && isByteMask(direct.getRedMask()) && isByteMask(direct.getGreenMask())
+                    && isByteMask(direct.getBlueMask())) {
+                return new PackedIntReader(ints.getData(), ints.getOffset(), sampleModel.getScanlineStride(),
+                        originX, originY, direct);
+            }
+            return new RowReader() {
+                @Override
+                void read(int y, int[] row) {
+                    image.getRGB(0, y, row.length, 1, row, 0, row.length);
+                    for (int x = 0; x < row.length; x++) {
+                        row[x] &= 0xFFFFFF;
+                    }
+                }
+            };
+        }
+
+        private static boolean eightBitComponents(ColorModel colorModel) {
+            for (int size : colorModel.getComponentSize()) {
+                if (size != 8) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isByteMask(int mask) {
+            return mask != 0 && (mask >>> Integer.numberOfTrailingZeros(mask)) == 0xFF;
+        }
+    }
+
+    /**
+     * Pixel-interleaved bytes, e.g. TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR or TYPE_BYTE_GRAY
+     */
+    private static final class InterleavedByteReader extends RowReader {
+        private final byte[] data;
+        private final int base;
+        private final int pixelStride;
+        private final int scanlineStride;
+        private final int originX;
+        private final int originY;
+        private final boolean gray;
+        private final int red;
+        private final int green;
+        private final int blue;
+
+        InterleavedByteReader(byte[] data, int base, ComponentSampleModel sampleModel,
+                              int originX, int originY, boolean gray) {
+            int[] bandOffsets = sampleModel.getBandOffsets();
+            this.data = data;
+            this.base = base;
+            this.pixelStride = sampleModel.getPixelStride();
+            this.scanlineStride = sampleModel.getScanlineStride();
+            this.originX = originX;
+            this.originY = originY;
+            this.gray = gray;
+            // Bands are in color model order (R, G, B[, A]); the offsets say where each is stored
+            this.red = bandOffsets[0];
+            this.green = gray ? bandOffsets[0] : bandOffsets[1];
+            this.blue = gray ? bandOffsets[0] : bandOffsets[2];
+        }
+
+        @Override
+        void read(int y, int[] row) {
+            int index = base + (y + originY) * scanlineStride + originX * pixelStride;
+            if (gray) {
+                for (int x = 0; x < row.length; x++, index += pixelStride) {
+                    int value = data[index + red] & 0xFF;
+                    row[x] = (value << 16) | (value << 8) | value;
+                }
+                return;
+            }
+            for (int x = 0; x < row.length; x++, index += pixelStride) {
+                row[x] = ((data[index + red] & 0xFF) << 16) | ((data[index + green] & 0xFF) << 8)
+                        | (data[index + blue] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * One int per pixel, e.g. TYPE_INT_RGB, TYPE_INT_ARGB or TYPE_INT_BGR
+     */
+    private static final class PackedIntReader extends RowReader {
+        private final int[] data;
+        private final int base;
+        private final int scanlineStride;
+        private final int originX;
+        private final int originY;
+        private final int redMask;
+        private final int redShift;
+        private final int greenMask;
+        private final int greenShift;
+        private final int blueMask;
+        private final int blueShift;
+
+        PackedIntReader(int[] data, int base, int scanlineStride, int originX, int originY, DirectColorModel colorModel) {
+            this.data = data;
+            this.base = base;
+            this.scanlineStride = scanlineStride;
+            this.originX = originX;
+            this.originY = originY;
+            this.redMask = colorModel.getRedMask();
+            this.redShift = Integer.numberOfTrailingZeros(redMask);
+            this.greenMask = colorModel.getGreenMask();
+            this.greenShift = Integer.numberOfTrailingZeros(greenMask);
+            this.blueMask = colorModel.getBlueMask();
+            this.blueShift = Integer.numberOfTrailingZeros(blueMask);
+        }
+
+        @Override
+        void read(int y, int[] row) {
+            int index = base + (y + originY) * scanlineStride + originX;
+            for (int x = 0; x < row.length; x++) {
+                int pixel = data[index + x];
+                row[x] = (((pixel & redMask) >>> redShift) << 16) | (((pixel & greenMask) >>> greenShift) << 8)
+                        | ((pixel & blueMask) >>> blueShift);
+            }
+        }
+    }
+}
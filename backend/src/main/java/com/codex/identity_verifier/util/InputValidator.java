@@ -11,7 +11,7 @@ import java.util.regex.Pattern;
 public class InputValidator {
 
     // File validation constants
-    private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
+    public static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
     private static final Set<String> ALLOWED_CONTENT_TYPES = new HashSet<>(Arrays.asList(
         "image/jpeg",
         "image/jpg", 
@@ -38,13 +38,28 @@ public class InputValidator {
             return ValidationResult.failure("File cannot be empty");
         }
 
-        if (file.getSize() > MAX_FILE_SIZE) {
+        return validateDocument(file.getOriginalFilename(), file.getSize(), file.getContentType());
+    }
+
+    /**
+     * Validates a document that did not arrive as its own multipart part, e.g. a ZIP entry
+     * @param filename The document's filename
+     * @param size The size in bytes
+     * @param contentType The content type, or null when unknown
+     * @return ValidationResult containing validation result
+     */
+    public static ValidationResult validateDocument(String filename, long size, String contentType) {
+        if (size == 0) {
+            return ValidationResult.failure("File cannot be empty");
+        }
+
+        if (size > MAX_FILE_SIZE) {
             return ValidationResult.failure("File size exceeds 10MB limit");
         }
 
-        String originalFilename = normalizeFilename(file.getOriginalFilename());
+        String originalFilename = normalizeFilename(filename);
         String extension = extractExtension(originalFilename);
-        String contentType = file.getContentType() == null ? "" : file.getContentType();
+        contentType = contentType == null ? "" : contentType;
 
         boolean validByContentType = ALLOWED_CONTENT_TYPES.contains(contentType.toLowerCase(Locale.ROOT))
                 || contentType.toLowerCase(Locale.ROOT).startsWith("image/");
@@ -0,0 +1,402 @@
+package com.codex.identity_verifier.util;
+
+import java.time.Year;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds and parses an ICAO 9303 machine readable zone in OCR lines: TD1 (3 x 30, ID cards),
+ * TD2 (2 x 36) and TD3 (2 x 44, passports). Candidate lines are normalized into one reused
+ * char buffer (spaces dropped, lower case folded, '«' read as the '<' filler, trailing
+ * fillers lost by OCR restored) and fields are read in place; strings are only created
+ * for the parsed result. Every check digit is verified, including the composite one.
+ */
+public final class MrzParser {
+
+    private static final int TD1_LENGTH = 30;
+    private static final int TD2_LENGTH = 36;
+    private static final int TD3_LENGTH = 44;
+
+    // OCR commonly drops a few trailing fillers
+    private static final int MAX_MISSING_FILLERS = 4;
+
+    private static final int[] WEIGHTS = {7, 3, 1};
+
+    private MrzParser() {
+    }
+
+    /**
+     * @param lines OCR lines in reading order
+     * @return The parsed zone, or null if the lines contain no MRZ
+     */
+    public static Result parse(List<String> lines) {
+        int count = lines.size();
+        // Normalized lines, each padded to the format length it was matched against
+        char[][] rows = new char[count][];
+        int[] lengths = new int[count];
+        char[] scratch = new char[TD3_LENGTH];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = normalize(lines.get(i), scratch);
+            if (lengths[i] > 0) {
+                rows[i] = Arrays.copyOf(scratch, TD3_LENGTH);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (i + 2 < count && fits(rows, lengths, i, 3, TD1_LENGTH)) {
+                Result result = parseTd1(rows[i], rows[i + 1], rows[i + 2]);
+                if (result != null) {
+                    return result;
+                }
+            }
+            if (i + 1 < count && fits(rows, lengths, i, 2, TD3_LENGTH)) {
+                Result result = parseTwoLine("TD3", rows[i], rows[i + 1], TD3_LENGTH);
+                if (result != null) {
+                    return result;
+                }
+            }
+            if (i + 1 < count && fits(rows, lengths, i, 2, TD2_LENGTH)) {
+                Result result = parseTwoLine("TD2", rows[i], rows[i + 1], TD2_LENGTH);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the MRZ characters of a line into the buffer
+     * @return The normalized length, or -1 if the line cannot be part of an MRZ
+     */
+    private static int normalize(String line, char[] row) {
+        if (line == null || line.length() < TD1_LENGTH - MAX_MISSING_FILLERS) {
+            return -1;
+        }
+        int length = 0;
+        boolean hasFiller = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - ('a' - 'A'));
+            } else if (c == '«') {
+                c = '<';
+            }
+            if (!((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '<')) {
+                return -1;
+            }
+            if (length == TD3_LENGTH) {
+                return -1;
+            }
+            hasFiller |= c == '<';
+            row[length++] = c;
+        }
+        return hasFiller ? length : -1;
+    }
+
+    private static boolean fits(char[][] rows, int[] lengths, int first, int lineCount, int formatLength) {
+        for (int i = first; i < first + lineCount; i++) {
+            if (lengths[i] > formatLength || lengths[i] < formatLength - MAX_MISSING_FILLERS) {
+                return false;
+            }
+        }
+        for (int i = first; i < first + lineCount; i++) {
+            for (int j = lengths[i]; j < formatLength; j++) {
+                rows[i][j] = '<';
+            }
+        }
+        return true;
+    }
+
+    /**
+     * TD2 and TD3 share a layout: names on the first line, numbers on the second
+     */
+    private static Result parseTwoLine(String format, char[] line1, char[] line2, int length) {
+        if (!isDocumentCode(line1[0])) {
+            return null;
+        }
+        int optionalEnd = length - 2;
+        foldDigits(line2, 9, 10);
+        foldDigits(line2, 13, 20);
+        foldDigits(line2, 21, 28);
+        foldDigits(line2, format.equals("TD3") ? optionalEnd : length - 1, length);
+        Result result = new Result(format);
+        result.documentType = text(line1, 0, 2);
+        result.issuingState = text(line1, 2, 5);
+        readNames(result, line1, 5, length);
+
+        result.documentNumber = text(line2, 0, 9);
+        result.nationality = text(line2, 10, 13);
+        result.dob = date(line2, 13, false);
+        result.sex = line2[20] == '<' ? "" : String.valueOf(line2[20]);
+        result.expiryDate = date(line2, 21, true);
+
+        int failures = 0;
+        failures += check(line2, 0, 9, line2[9]) ? 0 : 1;
+        failures += check(line2, 13, 19, line2[19]) ? 0 : 1;
+        failures += check(line2, 21, 27, line2[27]) ? 0 : 1;
+        if (format.equals("TD3") && line2[optionalEnd] != '<') {
+            failures += check(line2, 28, optionalEnd, line2[optionalEnd]) ? 0 : 1;
+        }
+        int composite = compositeSum(line2, 0, 10, 0, 0);
+        composite = compositeSum(line2, 13, 20, composite, 10);
+        composite = compositeSum(line2, 21, length - 1, composite, 17);
+        failures += digitValue(line2[length - 1]) == composite % 10 ? 0 : 1;
+        result.failedChecks = failures;
+        return result.isPlausible() ? result : null;
+    }
+
+    private static Result parseTd1(char[] line1, char[] line2, char[] line3) {
+        if (!isDocumentCode(line1[0])) {
+            return null;
+        }
+        foldDigits(line1, 14, 15);
+        foldDigits(line2, 0, 7);
+        foldDigits(line2, 8, 15);
+        foldDigits(line2, 29, 30);
+        Result result = new Result("TD1");
+        result.documentType = text(line1, 0, 2);
+        result.issuingState = text(line1, 2, 5);
+        result.documentNumber = text(line1, 5, 14);
+        result.dob = date(line2, 0, false);
+        result.sex = line2[7] == '<' ? "" : String.valueOf(line2[7]);
+        result.expiryDate = date(line2, 8, true);
+        result.nationality = text(line2, 15, 18);
+        readNames(result, line3, 0, TD1_LENGTH);
+
+        int failures = 0;
+        failures += check(line1, 5, 14, line1[14]) ? 0 : 1;
+        failures += check(line2, 0, 6, line2[6]) ? 0 : 1;
+        failures += check(line2, 8, 14, line2[14]) ? 0 : 1;
+        int composite = compositeSum(line1, 5, 30, 0, 0);
+        composite = compositeSum(line2, 0, 7, composite, 25);
+        composite = compositeSum(line2, 8, 15, composite, 32);
+        composite = compositeSum(line2, 18, 29, composite, 39);
+        failures += digitValue(line2[29]) == composite % 10 ? 0 : 1;
+        result.failedChecks = failures;
+        return result.isPlausible() ? result : null;
+    }
+
+    /**
+     * Rewrites letters OCR confuses with digits in numeric positions (dates and check digits),
+     * so that check digits are computed over the digits the zone actually holds
+     */
+    private static void foldDigits(char[] line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = line[i];
+            if (c >= 'A' && c <= 'Z') {
+                int digit = digitValue(c);
+                if (digit >= 0) {
+                    line[i] = (char) ('0' + digit);
+                }
+            }
+        }
+    }
+
+    private static boolean isDocumentCode(char c) {
+        return c == 'P' || c == 'I' || c == 'A' || c == 'C' || c == 'V';
+    }
+
+    /**
+     * Names are "PRIMARY<<SECONDARY<NAMES" with '<' separating words
+     */
+    private static void readNames(Result result, char[] line, int from, int to) {
+        int split = -1;
+        for (int i = from; i + 1 < to; i++) {
+            if (line[i] == '<' && line[i + 1] == '<') {
+                split = i;
+                break;
+            }
+        }
+        if (split < 0) {
+            result.surname = words(line, from, to);
+            result.givenNames = "";
+        } else {
+            result.surname = words(line, from, split);
+            result.givenNames = words(line, split + 2, to);
+        }
+    }
+
+    private static String words(char[] line, int from, int to) {
+        StringBuilder text = new StringBuilder(to - from);
+        boolean pendingSpace = false;
+        for (int i = from; i < to; i++) {
+            char c = line[i];
+            if (c == '<') {
+                pendingSpace = text.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    text.append(' ');
+                    pendingSpace = false;
+                }
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String text(char[] line, int from, int to) {
+        while (to > from && line[to - 1] == '<') {
+            to--;
+        }
+        return new String(line, from, to - from);
+    }
+
+    /**
+     * Reads YYMMDD as an ISO date; birth dates are placed in the past century when needed
+     * @return The date, or an empty string if the digits do not form a date
+     */
+    private static String date(char[] line, int from, boolean expiry) {
+        int[] parts = new int[3];
+        for (int p = 0; p < 3; p++) {
+            int high = digitValue(line[from + p * 2]);
+            int low = digitValue(line[from + p * 2 + 1]);
+            if (high < 0 || high > 9 || low < 0 || low > 9) {
+                return "";
+            }
+            parts[p] = high * 10 + low;
+        }
+        if (parts[1] < 1 || parts[1] > 12 || parts[2] < 1 || parts[2] > 31) {
+            return "";
+        }
+        int currentYear = Year.now().getValue();
+        int year = 2000 + parts[0];
+        if (!expiry && year > currentYear) {
+            year -= 100;
+        }
+        return String.format("%04d-%02d-%02d", year, parts[1], parts[2]);
+    }
+
+    private static boolean check(char[] line, int from, int to, char checkDigit) {
+        return digitValue(checkDigit) == weightedSum(line, from, to, 0) % 10;
+    }
+
+    private static int compositeSum(char[] line, int from, int to, int sum, int weightOffset) {
+        for (int i = from; i < to; i++) {
+            sum += charValue(line[i]) * WEIGHTS[(weightOffset + i - from) % 3];
+        }
+        return sum;
+    }
+
+    private static int weightedSum(char[] line, int from, int to, int sum) {
+        return compositeSum(line, from, to, sum, 0);
+    }
+
+    private static int charValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        return 0;
+    }
+
+    /**
+     * Value of a character in a numeric position, reading common OCR letter/digit confusions as digits
+     */
+    private static int digitValue(char c) {
+        return switch (c) {
+            case 'O', 'Q', 'D' -> 0;
+            case 'I', 'L' -> 1;
+            case 'Z' -> 2;
+            case 'S' -> 5;
+            case 'G' -> 6;
+            case 'B' -> 8;
+            case '<' -> 0;
+            default -> c >= '0' && c <= '9' ? c - '0' : -1;
+        };
+    }
+
+    /**
+     * Fields read from a machine readable zone
+     */
+    public static class Result {
+        private final String format;
+        private String documentType;
+        private String issuingState;
+        private String documentNumber;
+        private String surname;
+        private String givenNames;
+        private String nationality;
+        private String dob;
+        private String sex;
+        private String expiryDate;
+        private int failedChecks;
+
+        Result(String format) {
+            this.format = format;
+        }
+
+        private boolean isPlausible() {
+            // Random filler-heavy text can match the layout; a real zone has a name and a date
+            return !surname.isEmpty() && (!dob.isEmpty() || !expiryDate.isEmpty());
+        }
+
+        /**
+         * @return "TD1", "TD2" or "TD3"
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        public String getDocumentType() {
+            return documentType;
+        }
+
+        public String getIssuingState() {
+            return issuingState;
+        }
+
+        public String getDocumentNumber() {
+            return documentNumber;
+        }
+
+        public String getSurname() {
+            return surname;
+        }
+
+        public String getGivenNames() {
+            return givenNames;
+        }
+
+        /**
+         * @return Given names followed by the surname
+         */
+        public String getFullName() {
+            return givenNames.isEmpty() ? surname : givenNames + " " + surname;
+        }
+
+        public String getNationality() {
+            return nationality;
+        }
+
+        /**
+         * @return Date of birth as yyyy-MM-dd, or empty if unreadable
+         */
+        public String getDob() {
+            return dob;
+        }
+
+        public String getSex() {
+            return sex;
+        }
+
+        /**
+         * @return Expiry date as yyyy-MM-dd, or empty if unreadable
+         */
+        public String getExpiryDate() {
+            return expiryDate;
+        }
+
+        public int getFailedChecks() {
+            return failedChecks;
+        }
+
+        public boolean isValid() {
+            return failedChecks == 0;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.codex.identity_verifier.util;
+
+import java.util.Arrays;
+
+/**
+ * 64-bit DCT perceptual hash (pHash) of an image's luminance. The image is area-averaged
+ * to 32x32, the 8x8 lowest DCT frequencies are kept and each becomes one bit: set when the
+ * coefficient is above their median. Recompression, rescaling, small crops and mild colour
+ * or brightness changes move only a few bits, so near-duplicates are a small Hamming
+ * distance apart.
+ */
+public final class PerceptualHash {
+
+    private static final int SIZE = 32;
+    private static final int LOW = 8;
+
+    // Orthonormal 32-point DCT-II rows for the lowest frequencies, DCT[u * 32 + x]
+    private static final double[] DCT = dctRows();
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * @param luminance Row-major 8-bit luminance, read with {@code & 0xFF}
+     * @throws IllegalArgumentException for images smaller than 32x32
+     */
+    public static long of(byte[] luminance, int width, int height) {
+        if (width < SIZE || height < SIZE) {
+            throw new IllegalArgumentException("Image too small for a perceptual hash: " + width + "x" + height);
+        }
+        double[] cells = downsample(luminance, width, height);
+
+        // Separable transform restricted to the lowest frequencies: rows, then columns
+        double[] rows = new double[SIZE * LOW];
+        for (int y = 0; y < SIZE; y++) {
+            for (int u = 0; u < LOW; u++) {
+                double sum = 0;
+                for (int x = 0; x < SIZE; x++) {
+                    sum += DCT[u * SIZE + x] * cells[y * SIZE + x];
+                }
+                rows[y * LOW + u] = sum;
+            }
+        }
+        double[] coefficients = new double[LOW * LOW];
+        for (int v = 0; v < LOW; v++) {
+            for (int u = 0; u < LOW; u++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    sum += DCT[v * SIZE + y] * rows[y * LOW + u];
+                }
+                coefficients[v * LOW + u] = sum;
+            }
+        }
+
+        // The DC term only tracks overall brightness, so it is left out of the median
+        double[] ac = new double[LOW * LOW - 1];
+        System.arraycopy(coefficients, 1, ac, 0, ac.length);
+        Arrays.sort(ac);
+        double median = ac[ac.length / 2];
+
+        long hash = 0L;
+        for (int i = 0; i < coefficients.length; i++) {
+            if (coefficients[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    public static boolean canHash(int width, int height) {
+        return width >= SIZE && height >= SIZE;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    public static String toHex(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    /**
+     * @return The hash, or null if the value is not 16 hex digits
+     */
+    public static Long fromHex(String value) {
+        if (value == null || value.length() != 16) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(value, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Mean luminance of a 32x32 grid of equal-area cells, in one pass over the image
+     */
+    private static double[] downsample(byte[] luminance, int width, int height) {
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            cellOfColumn[x] = (int) ((long) x * SIZE / width);
+        }
+        long[] sums = new long[SIZE * SIZE];
+        for (int y = 0; y < height; y++) {
+            int cellRow = (int) ((long) y * SIZE / height) * SIZE;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                sums[cellRow + cellOfColumn[x]] += luminance[offset + x] & 0xFF;
+            }
+        }
+        double[] cells = new double[SIZE * SIZE];
+        for (int cy = 0; cy < SIZE; cy++) {
+            long cellHeight = ceilDiv((long) (cy + 1) * height, SIZE) - ceilDiv((long) cy * height, SIZE);
+            for (int cx = 0; cx < SIZE; cx++) {
+                long cellWidth = ceilDiv((long) (cx + 1) * width, SIZE) - ceilDiv((long) cx * width, SIZE);
+                cells[cy * SIZE + cx] = (double) sums[cy * SIZE + cx] / (cellWidth * cellHeight);
+            }
+        }
+        return cells;
+    }
+
+    // Pixel x falls in cell x * SIZE / length, so cell c starts at pixel ceil(c * length / SIZE)
+    private static long ceilDiv(long value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static double[] dctRows() {
+        double[] matrix = new double[LOW * SIZE];
+        for (int u = 0; u < LOW; u++) {
+            double scale = u == 0 ? Math.sqrt(1.0 / SIZE) : Math.sqrt(2.0 / SIZE);
+            for (int x = 0; x < SIZE; x++) {
+                matrix[u * SIZE + x] = scale * Math.cos((2 * x + 1) * u * Math.PI / (2.0 * SIZE));
+            }
+        }
+        return matrix;
+    }
+}
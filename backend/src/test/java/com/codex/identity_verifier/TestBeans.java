@@ -0,0 +1,50 @@
+package com.codex.identity_verifier;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Wires services for unit tests without a Spring context: @Value fields get the
+ * defaults written in their placeholders unless the environment overrides them,
+ * then the @PostConstruct methods run.
+ */
+public final class TestBeans {
+
+    private static final DefaultConversionService CONVERSION = new DefaultConversionService();
+
+    private TestBeans() {
+    }
+
+    public static <T> T initialize(T bean) {
+        return initialize(bean, new MockEnvironment());
+    }
+
+    public static <T> T initialize(T bean, MockEnvironment environment) {
+        for (Class<?> type = bean.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Value value = field.getAnnotation(Value.class);
+                if (value == null) {
+                    continue;
+                }
+                String resolved = environment.resolvePlaceholders(value.value());
+                ReflectionUtils.makeAccessible(field);
+                ReflectionUtils.setField(field, bean, CONVERSION.convert(resolved, field.getType()));
+            }
+        }
+        for (Class<?> type = bean.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(PostConstruct.class)) {
+                    ReflectionUtils.makeAccessible(method);
+                    ReflectionUtils.invokeMethod(method, bean);
+                }
+            }
+        }
+        return bean;
+    }
+}
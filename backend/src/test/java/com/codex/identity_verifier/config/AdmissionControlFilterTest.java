@@ -0,0 +1,48 @@
+package com.codex.identity_verifier.config;
+
+import com.codex.identity_verifier.TestBeans;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlFilterTest {
+
+    private final AdmissionControlFilter filter = TestBeans.initialize(new AdmissionControlFilter());
+
+    @Test
+    void releasesAdmissionWhenRequestEnds() throws Exception {
+        filter.doFilter(upload(), new MockHttpServletResponse(), (request, response) -> { });
+
+        assertThat(filter.getStats()).containsEntry("inFlight", 0).containsEntry("inFlightBytes", 0L);
+    }
+
+    @Test
+    void detachedAdmissionIsHeldUntilReleased() throws Exception {
+        AtomicReference<Runnable> release = new AtomicReference<>();
+
+        filter.doFilter(upload(), new MockHttpServletResponse(),
+                (request, response) -> release.set(AdmissionControlFilter.detach((MockHttpServletRequest) request)));
+
+        assertThat(filter.getStats()).containsEntry("inFlight", 1).containsEntry("inFlightBytes", 1024L);
+        release.get().run();
+        release.get().run();
+        assertThat(filter.getStats()).containsEntry("inFlight", 0).containsEntry("inFlightBytes", 0L);
+    }
+
+    @Test
+    void detachOutsideFilterIsNoOp() {
+        AdmissionControlFilter.detach(upload()).run();
+
+        assertThat(filter.getStats()).containsEntry("inFlight", 0);
+    }
+
+    private static MockHttpServletRequest upload() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/verify/async");
+        request.setContent(new byte[1024]);
+        return request;
+    }
+}
@@ -0,0 +1,174 @@
+package com.codex.identity_verifier.config;
+
+import com.codex.identity_verifier.TestBeans;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamLimiterRegistryTest {
+
+    private final CountingClient realClient = new CountingClient();
+    private final DownstreamLimiterRegistry registry = TestBeans.initialize(
+            new DownstreamLimiterRegistry(new MockEnvironment()), new MockEnvironment());
+    private final PageClient client = registry.wrap(PageClient.class, realClient, "pages");
+
+    @Test
+    void limitsDirectCalls() {
+        client.listPages("0");
+
+        assertThat(calls("pages.listPages")).isEqualTo(1L);
+    }
+
+    @Test
+    void limitsEveryPageFetchedByAPaginator() {
+        List<String> pages = new ArrayList<>();
+        client.listPagesPaginator("0").forEach(pages::add);
+
+        assertThat(pages).containsExactly("page-0", "page-1", "page-2");
+        assertThat(calls("pages.listPages")).isEqualTo(3L);
+    }
+
+    @Test
+    void limitsPaginatorsBuiltFromARequestBuilder() {
+        List<String> pages = new ArrayList<>();
+        client.listPagesPaginator(request -> request.append("1")).forEach(pages::add);
+
+        assertThat(pages).containsExactly("page-1", "page-2");
+        assertThat(calls("pages.listPages")).isEqualTo(2L);
+    }
+
+    @Test
+    void limitsRequestBuilderOverloadsOnce() {
+        assertThat(client.listPages(request -> request.append("2"))).isEqualTo("page-2");
+
+        assertThat(calls("pages.listPages")).isEqualTo(1L);
+    }
+
+    @Test
+    void limitsEveryPollOfAWaiter() {
+        client.waiter().waitUntilPage("2");
+
+        assertThat(calls("pages.listPages")).isEqualTo(3L);
+        assertThat(realClient.calls).isEqualTo(3);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long calls(String operation) {
+        Map<String, Object> stats = (Map<String, Object>) registry.getStats().get(operation);
+        return stats == null ? 0L : (Long) stats.get("calls");
+    }
+
+    /**
+     * Shaped like an AWS SDK client: an operation, a paginator and builder overloads
+     * implemented as interface defaults, and a waiter with a static builder
+     */
+    public interface PageClient {
+
+        String listPages(String request);
+
+        default String listPages(Consumer<StringBuilder> request) {
+            StringBuilder builder = new StringBuilder();
+            request.accept(builder);
+            return listPages(builder.toString());
+        }
+
+        default PageIterable listPagesPaginator(String request) {
+            throw new UnsupportedOperationException();
+        }
+
+        default PageIterable listPagesPaginator(Consumer<StringBuilder> request) {
+            StringBuilder builder = new StringBuilder();
+            request.accept(builder);
+            return listPagesPaginator(builder.toString());
+        }
+
+        default PageWaiter waiter() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static class PageIterable implements Iterable<String> {
+        private final PageClient client;
+        private final String firstRequest;
+
+        public PageIterable(PageClient client, String firstRequest) {
+            this.client = client;
+            this.firstRequest = firstRequest;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int next = Integer.parseInt(firstRequest);
+
+                @Override
+                public boolean hasNext() {
+                    return next < 3;
+                }
+
+                @Override
+                public String next() {
+                    return client.listPages(String.valueOf(next++));
+                }
+            };
+        }
+    }
+
+    public static class PageWaiter {
+        private final PageClient client;
+
+        private PageWaiter(PageClient client) {
+            this.client = client;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public void waitUntilPage(String page) {
+            for (int poll = 0; !client.listPages(String.valueOf(poll)).equals("page-" + page); poll++) {
+                // polls until the page shows up
+            }
+        }
+
+        public static class Builder {
+            private PageClient client;
+
+            public Builder client(PageClient client) {
+                this.client = client;
+                return this;
+            }
+
+            public PageWaiter build() {
+                return new PageWaiter(client);
+            }
+        }
+    }
+
+    private static class CountingClient implements PageClient {
+        private int calls;
+
+        @Override
+        public String listPages(String request) {
+            calls++;
+            return "page-" + request;
+        }
+
+        @Override
+        public PageIterable listPagesPaginator(String request) {
+            return new PageIterable(this, request);
+        }
+
+        @Override
+        public PageWaiter waiter() {
+            return PageWaiter.builder().client(this).build();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.codex.identity_verifier.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScreeningResultTest {
+
+    @Test
+    void flagsAKnownFormatOtherThanTheDeclaredOne() {
+        assertThat(result("png", "jpeg").isFormatMismatch()).isTrue();
+        assertThat(result("pdf", "jpeg").isFormatMismatch()).isTrue();
+    }
+
+    @Test
+    void acceptsTheDeclaredFormat() {
+        assertThat(result("jpeg", "jpeg").isFormatMismatch()).isFalse();
+    }
+
+    @Test
+    void doesNotFlagFormatsWithoutSignatureCheck() {
+        // HEIC, TIFF, GIF and BMP are not detected from their bytes
+        assertThat(result(null, null).isFormatMismatch()).isFalse();
+        assertThat(result(null, "jpeg").isFormatMismatch()).isFalse();
+        assertThat(result("jpeg", null).isFormatMismatch()).isFalse();
+    }
+
+    private static ScreeningResult result(String detectedFormat, String declaredFormat) {
+        return ScreeningResult.builder().detectedFormat(detectedFormat).declaredFormat(declaredFormat).build();
+    }
+}
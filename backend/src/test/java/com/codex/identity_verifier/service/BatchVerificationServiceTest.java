@@ -0,0 +1,120 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.dto.BatchVerificationResponse;
+import com.codex.identity_verifier.dto.VerificationResponse;
+import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchVerificationServiceTest {
+
+    private final List<List<String>> savedChunks = new CopyOnWriteArrayList<>();
+    private volatile boolean failSaves;
+
+    private final VerificationService verificationService = new VerificationService(null, null, null, null, null,
+            null, null, null, null, null, null, null, null, null, null) {
+        @Override
+        public VerificationOutcome analyzeDocument(DocumentBuffer document, String originalFilename, String contentType,
+                                                   String ownerUsername, Deadline deadline) {
+            VerificationRecord record = VerificationRecord.builder().fileName(originalFilename).build();
+            VerificationResponse response = VerificationResponse.builder().riskLevel("LOW RISK").riskScore(10).build();
+            return new VerificationOutcome(record, response);
+        }
+    };
+
+    private final DynamoDBService dynamoDBService = new DynamoDBService(null, null, null) {
+        @Override
+        public void saveVerificationRecords(List<VerificationRecord> verificationRecords) {
+            if (failSaves) {
+                throw new RuntimeException("DynamoDB unavailable");
+            }
+            savedChunks.add(verificationRecords.stream().map(VerificationRecord::getFileName).toList());
+        }
+    };
+
+    private BatchVerificationService batchService;
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    void savesRecordsInChunksAsItemsComplete() throws IOException {
+        batchService = batchService("2", "200");
+
+        BatchVerificationResponse response = batchService.verifyZipArchive(zip(5, 100), "alice");
+
+        assertThat(response.getSummary().getCompleted()).isEqualTo(5);
+        assertThat(savedChunks).hasSize(3);
+        assertThat(savedChunks.stream().mapToInt(List::size).sum()).isEqualTo(5);
+        assertThat(savedChunks.stream().mapToInt(List::size).max().getAsInt()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void reportsItemsWhoseRecordsCouldNotBeSavedAsFailed() throws IOException {
+        batchService = batchService("25", "200");
+        failSaves = true;
+
+        BatchVerificationResponse response = batchService.verifyZipArchive(zip(3, 100), "alice");
+
+        assertThat(response.getSummary().getCompleted()).isZero();
+        assertThat(response.getSummary().getFailed()).isEqualTo(3);
+        assertThat(response.getItems()).allSatisfy(item -> {
+            assertThat(item.getStatus()).isEqualTo("FAILED");
+            assertThat(item.getResult()).isNull();
+        });
+    }
+
+    @Test
+    void rejectsArchivesOverTheSizeLimit() throws IOException {
+        batchService = batchService("25", "1");
+        ByteArrayInputStream archive = zip(3, 600 * 1024);
+
+        assertThatThrownBy(() -> batchService.verifyZipArchive(archive, "alice"))
+                .isInstanceOf(BatchVerificationService.ArchiveTooLargeException.class);
+        // The entry verified before the limit was reached is still saved
+        assertThat(savedChunks).containsExactly(List.of("doc-0.jpg"));
+    }
+
+    private BatchVerificationService batchService(String saveChunkSize, String maxArchiveMegabytes) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("verification.batch.save-chunk-size", saveChunkSize)
+                .withProperty("verification.batch.max-archive-megabytes", maxArchiveMegabytes);
+        return TestBeans.initialize(new BatchVerificationService(verificationService, dynamoDBService), environment);
+    }
+
+    /**
+     * A ZIP of incompressible .jpg entries; only the analysis fake reads them
+     */
+    private static ByteArrayInputStream zip(int entries, int entrySize) throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < entries; i++) {
+                byte[] data = new byte[entrySize];
+                random.nextBytes(data);
+                zip.putNextEntry(new ZipEntry("doc-" + i + ".jpg"));
+                zip.write(data);
+                zip.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+}
@@ -0,0 +1,188 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.VerificationRecord;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentArchiveServiceTest {
+
+    private static final DocumentBuffer DOCUMENT = DocumentBuffer.wrap(new byte[]{1, 2, 3});
+
+    private final List<String> uploadedKeys = new CopyOnWriteArrayList<>();
+    private final List<VerificationRecord> updatedRecords = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blockUploads;
+    private volatile boolean failUploads;
+    private volatile CountDownLatch updated = new CountDownLatch(1);
+
+    private final S3Service s3Service = new S3Service(null) {
+        @Override
+        public void uploadDocument(String key, DocumentBuffer document, String contentType) {
+            if (blockUploads) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failUploads) {
+                throw new RuntimeException("S3 unavailable");
+            }
+            uploadedKeys.add(key);
+        }
+
+        @Override
+        public String getBucketName() {
+            return "bucket";
+        }
+    };
+
+    private final DynamoDBService dynamoDBService = new DynamoDBService(null, null, null) {
+        @Override
+        public void updateVerificationRecord(VerificationRecord verificationRecord) {
+            updatedRecords.add(verificationRecord);
+            updated.countDown();
+        }
+    };
+
+    private DocumentArchiveService archiveService;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        archiveService.shutdown();
+    }
+
+    @Test
+    void uploadsOffTheCallingThread() throws Exception {
+        archiveService = archiveService(4, 3);
+        VerificationRecord record = record("uploads/a.png");
+
+        archiveService.archive(record, DOCUMENT, "image/png");
+
+        awaitPending();
+        assertThat(uploadedKeys).containsExactly("uploads/a.png");
+        assertThat(record.getS3Key()).isEqualTo("uploads/a.png");
+        assertThat(record.getS3ArchiveFailed()).isNull();
+    }
+
+    @Test
+    void dropsUploadsWhenTheQueueIsFull() {
+        archiveService = archiveService(1, 3);
+        blockUploads = true;
+        VerificationRecord queued = record("uploads/queued.png");
+        VerificationRecord overflow = record("uploads/overflow.png");
+
+        archiveService.archive(queued, DOCUMENT, "image/png");
+        archiveService.archive(overflow, DOCUMENT, "image/png");
+
+        assertThat(overflow.getS3Key()).isNull();
+        assertThat(overflow.getS3Bucket()).isNull();
+        assertThat(overflow.getS3ArchiveFailed()).isTrue();
+        assertThat(archiveService.getDroppedCount()).isEqualTo(1);
+        // Not yet saved, so the cleared key is written by the save itself
+        assertThat(updatedRecords).isEmpty();
+        assertThat(queued.getS3Key()).isEqualTo("uploads/queued.png");
+    }
+
+    @Test
+    void clearsTheKeyOfASavedRecordWhenRetriesRunOut() throws Exception {
+        archiveService = archiveService(4, 2);
+        blockUploads = true;
+        failUploads = true;
+        VerificationRecord record = record("uploads/b.png");
+
+        archiveService.archive(record, DOCUMENT, "image/png");
+        record.setId("record-1");
+        archiveService.recordSaved(record);
+        release.countDown();
+
+        assertThat(updated.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitPending();
+        assertNotArchived(record);
+        assertThat(archiveService.getFailedCount()).isEqualTo(1);
+        assertThat(archiveService.getPendingCount()).isZero();
+    }
+
+    @Test
+    void clearsTheKeyOnceARecordWhoseUploadFailedIsSaved() throws Exception {
+        archiveService = archiveService(4, 1);
+        failUploads = true;
+        VerificationRecord record = record("uploads/c.png");
+
+        archiveService.archive(record, DOCUMENT, "image/png");
+        awaitPending();
+        assertThat(updatedRecords).isEmpty();
+
+        record.setId("record-2");
+        archiveService.recordSaved(record);
+
+        assertNotArchived(record);
+        // Reported once only
+        archiveService.recordSaved(record);
+        assertThat(updatedRecords).hasSize(1);
+    }
+
+    @Test
+    void leavesRecordsWhoseUploadSucceeded() throws Exception {
+        archiveService = archiveService(4, 3);
+        VerificationRecord record = record("uploads/d.png");
+
+        archiveService.archive(record, DOCUMENT, "image/png");
+        record.setId("record-3");
+        archiveService.recordSaved(record);
+        awaitPending();
+        archiveService.recordSaved(record);
+
+        assertThat(uploadedKeys).containsExactly("uploads/d.png");
+        assertThat(updatedRecords).isEmpty();
+    }
+
+    /**
+     * The update is written to a copy; the caller's record keeps its key
+     */
+    private void assertNotArchived(VerificationRecord record) {
+        assertThat(updatedRecords).hasSize(1);
+        VerificationRecord update = updatedRecords.get(0);
+        assertThat(update).isNotSameAs(record);
+        assertThat(update.getId()).isEqualTo(record.getId());
+        assertThat(update.getS3Key()).isNull();
+        assertThat(update.getS3Bucket()).isNull();
+        assertThat(update.getS3ArchiveFailed()).isTrue();
+        assertThat(record.getS3Key()).isNotNull();
+        assertThat(record.getS3ArchiveFailed()).isNull();
+    }
+
+    private DocumentArchiveService archiveService(int maxPending, int maxAttempts) {
+        DocumentArchiveService service = new DocumentArchiveService(s3Service, dynamoDBService);
+        ReflectionTestUtils.setField(service, "asyncArchive", true);
+        ReflectionTestUtils.setField(service, "workerThreads", 1);
+        ReflectionTestUtils.setField(service, "maxPending", maxPending);
+        ReflectionTestUtils.setField(service, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 10L);
+        service.init();
+        return service;
+    }
+
+    private VerificationRecord record(String key) {
+        return VerificationRecord.builder()
+                .s3Key(key)
+                .s3Bucket("bucket")
+                .build();
+    }
+
+    private void awaitPending() throws InterruptedException {
+        for (int i = 0; i < 500 && archiveService.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.ScreeningResult;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentScreenerTest {
+
+    private final DocumentScreener screener = TestBeans.initialize(new DocumentScreener());
+
+    @Test
+    void detectsEditingSoftwareInExif() throws IOException {
+        for (ByteOrder order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            byte[] upload = jpegWithSegment(0xFFE1, exif(order, "Adobe Photoshop 25.0 (Windows)"));
+
+            assertThat(screen(upload).getEditingSoftware()).isEqualTo("Adobe Photoshop 25.0 (Windows)");
+        }
+    }
+
+    @Test
+    void ignoresCameraSoftwareInExif() throws IOException {
+        assertThat(screen(jpegWithSegment(0xFFE1, exif(ByteOrder.BIG_ENDIAN, "Ver.1.00"))).getEditingSoftware())
+                .isNull();
+    }
+
+    @Test
+    void detectsEditingSoftwareInXmpHistory() throws IOException {
+        String xmp = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF><rdf:Description"
+                + " xmp:CreatorTool=\"Camera firmware 1.0\"><xmpMM:History><rdf:Seq>"
+                + "<rdf:li stEvt:action=\"created\" stEvt:softwareAgent=\"Camera firmware 1.0\"/>"
+                + "<rdf:li><stEvt:action>saved</stEvt:action>"
+                + "<stEvt:softwareAgent>GIMP 2.10</stEvt:softwareAgent></rdf:li>"
+                + "</rdf:Seq></xmpMM:History></rdf:Description></rdf:RDF></x:xmpmeta>";
+        byte[] payload = concat("http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1),
+                xmp.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(screen(jpegWithSegment(0xFFE1, payload)).getEditingSoftware()).isEqualTo("GIMP 2.10");
+    }
+
+    @Test
+    void detectsEditingSoftwareInPngTextChunks() throws IOException {
+        byte[] text = concat(ascii("Software\0"), ascii("Pixelmator Pro 3.3"));
+        assertThat(screen(pngWithChunk("tEXt", text), "id.png", "image/png").getEditingSoftware())
+                .isEqualTo("Pixelmator Pro 3.3");
+
+        // Uncompressed, no language tag or translated keyword
+        byte[] itxt = concat(ascii("XML:com.adobe.xmp\0\0\0\0\0"),
+                "<rdf:Description xmp:CreatorTool=\"Canva\"/>".getBytes(StandardCharsets.UTF_8));
+        assertThat(screen(pngWithChunk("iTXt", itxt), "id.png", "image/png").getEditingSoftware())
+                .isEqualTo("Canva");
+    }
+
+    @Test
+    void ignoresCompressedITxtChunks() throws IOException {
+        byte[] itxt = concat(ascii("Software\0\1\0\0\0"), ascii("Photoshop"));
+
+        assertThat(screen(pngWithChunk("iTXt", itxt), "id.png", "image/png").getEditingSoftware()).isNull();
+    }
+
+    @Test
+    void exifOffsetsDoNotReachPastTheirSegment() throws IOException {
+        // The Software value points into the comment segment that follows the Exif segment
+        ByteBuffer tiff = ByteBuffer.allocate(6 + 26).order(ByteOrder.BIG_ENDIAN);
+        tiff.put(ascii("Exif\0\0")).put(ascii("MM")).putShort((short) 0x2A).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0131).putShort((short) 2).putInt(16).putInt(30)
+                .putInt(0);
+        byte[] jpeg = jpeg();
+        byte[] upload = concat(Arrays.copyOf(jpeg, 2), segment(0xFFE1, tiff.array()),
+                segment(0xFFFE, ascii("Adobe Photoshop\0")), Arrays.copyOfRange(jpeg, 2, jpeg.length));
+
+        assertThat(screen(upload).getEditingSoftware()).isNull();
+    }
+
+    @Test
+    void survivesTruncatedUploads() throws IOException {
+        byte[] jpeg = jpegWithSegment(0xFFE1, exif(ByteOrder.LITTLE_ENDIAN, "Adobe Photoshop 25.0"));
+        byte[] png = pngWithChunk("tEXt", concat(ascii("Software\0"), ascii("GIMP 2.10")));
+
+        for (int length = 0; length <= 200; length++) {
+            assertThat(screen(Arrays.copyOf(jpeg, length)).getDetectedFormat()).isEqualTo(length >= 3 ? "jpeg" : null);
+            assertThat(screen(Arrays.copyOf(png, length), "id.png", "image/png").getDetectedFormat())
+                    .isEqualTo(length >= 8 ? "png" : null);
+        }
+    }
+
+    @Test
+    void survivesMalformedSegments() throws IOException {
+        byte[] jpeg = jpeg();
+        // Zero-length segment, Exif segment shorter than its header, and an IFD claiming 65535 entries
+        ByteBuffer entries = ByteBuffer.allocate(6 + 10).order(ByteOrder.BIG_ENDIAN);
+        entries.put(ascii("Exif\0\0")).put(ascii("MM")).putShort((short) 0x2A).putInt(8).putShort((short) 0xFFFF);
+        for (byte[] upload : List.of(
+                concat(Arrays.copyOf(jpeg, 2), new byte[]{(byte) 0xFF, (byte) 0xE1, 0, 0}, Arrays.copyOfRange(jpeg, 2, jpeg.length)),
+                concat(Arrays.copyOf(jpeg, 2), segment(0xFFE1, ascii("Exif\0\0")), Arrays.copyOfRange(jpeg, 2, jpeg.length)),
+                concat(Arrays.copyOf(jpeg, 2), segment(0xFFE1, entries.array()), Arrays.copyOfRange(jpeg, 2, jpeg.length)))) {
+            assertThat(screen(upload).getEditingSoftware()).isNull();
+        }
+
+        // A chunk length that overflows the offset arithmetic
+        byte[] png = png();
+        ByteBuffer chunk = ByteBuffer.allocate(12).putInt(Integer.MAX_VALUE - 4).put(ascii("tEXt")).putInt(0);
+        byte[] upload = concat(Arrays.copyOf(png, 33), chunk.array(), Arrays.copyOfRange(png, 33, png.length));
+        assertThat(screen(upload, "id.png", "image/png").getEditingSoftware()).isNull();
+    }
+
+    @Test
+    void survivesCorruptedMetadata() throws IOException {
+        byte[] jpeg = jpegWithSegment(0xFFE1, exif(ByteOrder.BIG_ENDIAN, "Adobe Photoshop 25.0"));
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2000; i++) {
+            byte[] upload = jpeg.clone();
+            // Leave the signature (SOI and the next marker byte) so that the metadata is parsed
+            for (int flips = 0; flips < 4; flips++) {
+                upload[3 + random.nextInt(60)] = (byte) random.nextInt(256);
+            }
+            assertThat(screen(upload).getDetectedFormat()).isEqualTo("jpeg");
+        }
+    }
+
+    @Test
+    void reportsImagesWithoutContrastOrEdgesAsBlank() throws IOException {
+        byte[] upload = jpeg();
+
+        assertThat(screen(upload, quality(2.0, 0.0), true).isBlankPage()).isTrue();
+        assertThat(screen(upload, quality(40.0, 0.0), true).isBlankPage()).isFalse();
+        assertThat(screen(upload, quality(2.0, 0.05), true).isBlankPage()).isFalse();
+        // PDFs, skipped analysis and images that could not be measured are never blank
+        assertThat(screen(upload, quality(2.0, 0.0), false).isBlankPage()).isFalse();
+        assertThat(screen(upload, null, true).isBlankPage()).isFalse();
+        assertThat(screen(upload, QualityAnalysisResult.unreadable("Unsupported image format"), true).isBlankPage())
+                .isFalse();
+    }
+
+    private ScreeningResult screen(byte[] upload) {
+        return screen(upload, "id.jpg", "image/jpeg");
+    }
+
+    private ScreeningResult screen(byte[] upload, String filename, String contentType) {
+        return screener.screen(DocumentBuffer.wrap(upload), filename, contentType, null, true);
+    }
+
+    private ScreeningResult screen(byte[] upload, QualityAnalysisResult quality, boolean imageAnalysisEnabled) {
+        return screener.screen(DocumentBuffer.wrap(upload), "id.jpg", "image/jpeg", quality, imageAnalysisEnabled);
+    }
+
+    private static QualityAnalysisResult quality(double contrast, double edgeDensity) {
+        return QualityAnalysisResult.builder()
+                .goodLighting(true)
+                .labels(List.of())
+                .contrast(contrast)
+                .edgeDensity(edgeDensity)
+                .build();
+    }
+
+    /**
+     * Exif APP1 payload whose IFD0 holds only the Software tag
+     */
+    private static byte[] exif(ByteOrder order, String software) {
+        byte[] value = ascii(software + "\0");
+        ByteBuffer payload = ByteBuffer.allocate(6 + 26 + value.length).order(order);
+        payload.put(ascii("Exif\0\0"))
+                .put(ascii(order == ByteOrder.BIG_ENDIAN ? "MM" : "II")).putShort((short) 0x2A).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0131).putShort((short) 2).putInt(value.length).putInt(26)
+                .putInt(0)
+                .put(value);
+        return payload.array();
+    }
+
+    private static byte[] jpegWithSegment(int marker, byte[] payload) throws IOException {
+        byte[] jpeg = jpeg();
+        return concat(Arrays.copyOf(jpeg, 2), segment(marker, payload), Arrays.copyOfRange(jpeg, 2, jpeg.length));
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        return ByteBuffer.allocate(4 + payload.length)
+                .putShort((short) marker)
+                .putShort((short) (payload.length + 2))
+                .put(payload)
+                .array();
+    }
+
+    // After the signature and the IHDR chunk
+    private static byte[] pngWithChunk(String type, byte[] data) throws IOException {
+        byte[] png = png();
+        CRC32 crc = new CRC32();
+        crc.update(ascii(type));
+        crc.update(data);
+        byte[] chunk = ByteBuffer.allocate(12 + data.length)
+                .putInt(data.length)
+                .put(ascii(type))
+                .put(data)
+                .putInt((int) crc.getValue())
+                .array();
+        return concat(Arrays.copyOf(png, 33), chunk, Arrays.copyOfRange(png, 33, png.length));
+    }
+
+    private static byte[] jpeg() throws IOException {
+        return encode("jpeg");
+    }
+
+    private static byte[] png() throws IOException {
+        return encode("png");
+    }
+
+    private static byte[] encode(String format) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
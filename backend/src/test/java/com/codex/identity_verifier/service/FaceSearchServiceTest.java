@@ -0,0 +1,261 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.DownstreamLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FaceSearchServiceTest {
+
+    private static final DocumentBuffer DOCUMENT = DocumentBuffer.wrap(new byte[]{1, 2, 3});
+
+    private volatile RuntimeException searchFailure;
+
+    private final RekognitionService rekognitionService = new RekognitionService(null, null) {
+        @Override
+        public FaceSearchResult searchFaces(DocumentBuffer document) {
+            throw searchFailure;
+        }
+    };
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final FaceSearchService faceSearchService = TestBeans.initialize(
+            new FaceSearchService(rekognitionService), environment);
+
+    private final LocalFaceCollection collection = new LocalFaceCollection(80.0);
+
+    @AfterEach
+    void tearDown() {
+        faceSearchService.shutdown();
+    }
+
+    @Test
+    void searchRethrowsDeadlineFailures() {
+        searchFailure = new Deadline.DeadlineExceededException("deadline reached");
+
+        assertThatThrownBy(() -> faceSearchService.search(DOCUMENT, "hash"))
+                .isInstanceOf(Deadline.DeadlineExceededException.class);
+    }
+
+    @Test
+    void searchRethrowsLimiterFailures() {
+        searchFailure = new DownstreamLimiter.LimitExceededException("rekognition.searchFacesByImage rate limit");
+
+        assertThatThrownBy(() -> faceSearchService.search(DOCUMENT, "hash"))
+                .isInstanceOf(DownstreamLimiter.LimitExceededException.class);
+    }
+
+    @Test
+    void searchReportsOtherFailuresInTheResult() {
+        searchFailure = new IllegalStateException("collection unavailable");
+
+        FaceSearchResult result = faceSearchService.search(DOCUMENT, "hash");
+
+        assertThat(result.getError()).contains("collection unavailable");
+        assertThat(result.getMatches()).isEmpty();
+    }
+
+    @Test
+    void searchFindsFaceIndexedByAnotherOwner() throws Exception {
+        FaceSearchService service = localService(environment);
+        DocumentBuffer face = picture(1);
+
+        FaceSearchResult first = service.search(face, "first-upload");
+        service.indexInBackground(face, "alice", "first-upload", first);
+        awaitIndexed(service, 1);
+        FaceSearchResult second = service.search(face, "second-upload");
+
+        assertThat(first.isFaceSearched()).isTrue();
+        assertThat(first.getMatches()).isEmpty();
+        assertThat(second.getMatches()).hasSize(1);
+        assertThat(service.otherOwnerMatches(second, "bob")).extracting(FaceSearchResult.FaceMatch::getExternalImageId)
+                .containsExactly(service.ownerTag("alice"));
+        assertThat(service.otherOwnerMatches(second, "alice")).isEmpty();
+        assertThat(service.getStats()).containsEntry("flaggedOtherOwner", 1L);
+    }
+
+    @Test
+    void searchDoesNotMatchAnotherPicture() throws Exception {
+        FaceSearchService service = localService(environment);
+        FaceSearchResult first = service.search(picture(1), "first-upload");
+        service.indexInBackground(picture(1), "alice", "first-upload", first);
+        awaitIndexed(service, 1);
+
+        assertThat(service.search(picture(2), "second-upload").getMatches()).isEmpty();
+    }
+
+    @Test
+    void searchServesRepeatedUploadsFromCache() throws Exception {
+        FaceSearchService service = localService(environment);
+        DocumentBuffer face = picture(1);
+
+        FaceSearchResult first = service.search(face, "upload");
+        FaceSearchResult second = service.search(face, "upload");
+
+        assertThat(second).isSameAs(first);
+        assertThat(collection.searchCalls).hasValue(1);
+        assertThat(service.getStats()).containsEntry("searches", 1L).containsEntry("cacheHits", 1L)
+                .containsEntry("cacheSize", 1);
+    }
+
+    @Test
+    void searchDoesNotCacheFailures() {
+        searchFailure = new IllegalStateException("collection unavailable");
+        faceSearchService.search(DOCUMENT, "hash");
+        faceSearchService.search(DOCUMENT, "hash");
+
+        assertThat(faceSearchService.getStats()).containsEntry("cacheHits", 0L).containsEntry("cacheSize", 0)
+                .containsEntry("failures", 2L);
+    }
+
+    @Test
+    void searchRepeatsExpiredSearches() throws Exception {
+        FaceSearchService service = localService(new MockEnvironment()
+                .withProperty("verification.face-search.cache.ttl-minutes", "0"));
+        DocumentBuffer face = picture(1);
+
+        service.search(face, "upload");
+        service.search(face, "upload");
+
+        assertThat(collection.searchCalls).hasValue(2);
+    }
+
+    @Test
+    void cacheEvictsLeastRecentlyUsedSearch() throws Exception {
+        FaceSearchService service = localService(new MockEnvironment()
+                .withProperty("verification.face-search.cache.max-entries", "2"));
+
+        service.search(picture(1), "one");
+        service.search(picture(2), "two");
+        service.search(picture(1), "one");
+        service.search(picture(3), "three");
+        service.search(picture(1), "one");
+        service.search(picture(2), "two");
+
+        // "two" was the least recently used entry when "three" was added
+        assertThat(collection.searchCalls).hasValue(4);
+        assertThat(service.getStats()).containsEntry("cacheSize", 2);
+    }
+
+    @Test
+    void indexedFaceIsAddedToTheCachedSearch() throws Exception {
+        FaceSearchService service = localService(environment);
+        DocumentBuffer face = picture(1);
+
+        FaceSearchResult first = service.search(face, "upload");
+        service.indexInBackground(face, "alice", "upload", first);
+        awaitIndexed(service, 1);
+        FaceSearchResult cached = service.search(face, "upload");
+
+        assertThat(collection.searchCalls).hasValue(1);
+        assertThat(cached.getMatches()).extracting(FaceSearchResult.FaceMatch::getExternalImageId)
+                .containsExactly(service.ownerTag("alice"));
+        assertThat(service.otherOwnerMatches(cached, "alice")).isEmpty();
+    }
+
+    @Test
+    void indexSkipsFaceTheOwnerAlreadyIndexed() throws Exception {
+        FaceSearchService service = localService(environment);
+        DocumentBuffer face = picture(1);
+        service.indexInBackground(face, "alice", "first-upload", service.search(face, "first-upload"));
+        awaitIndexed(service, 1);
+
+        service.indexInBackground(face, "alice", "second-upload", service.search(face, "second-upload"));
+
+        assertThat(collection.indexCalls).hasValue(1);
+        assertThat(service.getStats()).containsEntry("indexSkipped", 1L);
+    }
+
+    @Test
+    void indexSkipsSearchesWithoutFaceOrWithErrors() throws Exception {
+        FaceSearchService service = localService(environment);
+        FaceSearchResult failed = FaceSearchResult.builder()
+                .faceSearched(true)
+                .matches(List.of())
+                .error("Face search failed")
+                .build();
+
+        service.indexInBackground(picture(1), "alice", "upload", FaceSearchResult.NONE);
+        service.indexInBackground(picture(1), "alice", "upload", failed);
+        service.indexInBackground(picture(1), "alice", "upload", null);
+
+        assertThat(collection.indexCalls).hasValue(0);
+    }
+
+    @Test
+    void ownerTagIsAKeyedHashOfTheUsername() {
+        String tag = faceSearchService.ownerTag("alice@example.com");
+
+        assertThat(tag).hasSize(32).matches("[0-9a-f]+").doesNotContain("alice");
+        assertThat(faceSearchService.ownerTag("alice@example.com")).isEqualTo(tag);
+        assertThat(faceSearchService.ownerTag("bob@example.com")).isNotEqualTo(tag);
+        // Not a plain digest of the username, and different under another key
+        assertThat(tag).isNotEqualTo(sha256("alice@example.com").substring(0, 32));
+        FaceSearchService otherKey = TestBeans.initialize(new FaceSearchService(rekognitionService),
+                new MockEnvironment().withProperty("verification.face-search.owner-tag-key", "another-key"));
+        try {
+            assertThat(otherKey.ownerTag("alice@example.com")).isNotEqualTo(tag);
+        } finally {
+            otherKey.shutdown();
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private FaceSearchService localService(MockEnvironment environment) {
+        return TestBeans.initialize(new FaceSearchService(collection), environment);
+    }
+
+    private static void awaitIndexed(FaceSearchService service, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!Long.valueOf(count).equals(service.getStats().get("indexed")) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(service.getStats()).containsEntry("indexed", count);
+    }
+
+    // Random 8x8 checkerboard of grey levels; different seeds give unrelated pictures
+    private static DocumentBuffer picture(int seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_3BYTE_BGR);
+        for (int cellY = 0; cellY < 8; cellY++) {
+            for (int cellX = 0; cellX < 8; cellX++) {
+                int grey = random.nextInt(256);
+                int rgb = grey << 16 | grey << 8 | grey;
+                for (int y = cellY * 8; y < cellY * 8 + 8; y++) {
+                    for (int x = cellX * 8; x < cellX * 8 + 8; x++) {
+                        image.setRGB(x, y, rgb);
+                    }
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return DocumentBuffer.wrap(out.toByteArray());
+    }
+}
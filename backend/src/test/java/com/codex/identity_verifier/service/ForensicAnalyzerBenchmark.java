@@ -0,0 +1,139 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.ForensicAnalysisResult;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forensic analysis of 4:3 JPEG uploads from 2 to 24 megapixels, both from the encoded
+ * upload (normalization, the shared decode and the analysis, as a request runs them) and
+ * from already decoded luminance. Run with: mvn test-compile, then the main method with
+ * the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ForensicAnalyzerBenchmark {
+
+    @Param({"2", "6", "12", "24"})
+    public int megapixels;
+
+    private ForensicAnalyzer analyzer;
+    private DocumentNormalizer normalizer;
+    private DocumentBuffer upload;
+    private byte[] luminance;
+    private int[] quantization;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() throws IOException {
+        analyzer = TestBeans.initialize(new ForensicAnalyzer(),
+                new MockEnvironment().withProperty("verification.forensics.max-megapixels", "24"));
+        normalizer = TestBeans.initialize(new DocumentNormalizer(analyzer));
+        height = (int) Math.sqrt(megapixels * 1_000_000 * 3.0 / 4.0);
+        width = height * 4 / 3;
+        upload = DocumentBuffer.wrap(encodeJpeg(documentImage(width, height), 0.9f));
+        luminance = normalizer.normalize(upload, true).getOriginalImage().getLuminance();
+        quantization = ForensicAnalyzer.readLuminanceQuantization(upload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        analyzer.shutdown();
+    }
+
+    @Benchmark
+    public ForensicAnalysisResult upload() {
+        return analyzer.analyze(normalizer.normalize(upload, true));
+    }
+
+    @Benchmark
+    public ForensicAnalysisResult luminance() {
+        return analyzer.analyze(luminance, width, height, quantization);
+    }
+
+    /**
+     * Textured background with printed text, the content the checks are tuned for
+     */
+    private static BufferedImage documentImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 180 + (x * 40 / width) + random.nextInt(16);
+                int offset = (y * width + x) * 3;
+                pixels[offset] = (byte) value;
+                pixels[offset + 1] = (byte) (value - 10);
+                pixels[offset + 2] = (byte) (value - 20);
+            }
+        }
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(12, height / 40)));
+            for (int line = 1; line < 30; line++) {
+                graphics.drawString("IDENTITY DOCUMENT " + random.nextInt(1_000_000), width / 10, height * line / 30);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ForensicAnalyzerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
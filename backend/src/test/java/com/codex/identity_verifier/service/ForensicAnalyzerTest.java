@@ -0,0 +1,205 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.ForensicAnalysisResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Decisions of the three checks on generated scenes: smooth shapes over fine grain, like a
+ * photographed document, textured enough for every check and without repeated blocks
+ */
+class ForensicAnalyzerTest {
+
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 768;
+
+    private final ForensicAnalyzer analyzer = TestBeans.initialize(new ForensicAnalyzer());
+    private final DocumentNormalizer normalizer = TestBeans.initialize(new DocumentNormalizer(analyzer));
+
+    @AfterEach
+    void tearDown() {
+        analyzer.shutdown();
+    }
+
+    @Test
+    void authenticJpegIsNotFlagged() throws IOException {
+        for (float quality : new float[]{0.9f, 0.75f}) {
+            ForensicAnalysisResult result = analyze(jpeg(scene(1), quality));
+
+            assertThat(result.getError()).isNull();
+            assertThat(result.isTampered()).as("quality %s", quality).isFalse();
+            assertThat(result.getCopyMoveRegions()).isZero();
+            assertThat(result.getHeatmap().getSuspiciousTileFraction()).isZero();
+        }
+    }
+
+    @Test
+    void recompressedAuthenticJpegIsNotFlagged() throws IOException {
+        ForensicAnalysisResult result = analyze(jpeg(decode(jpeg(scene(1), 0.6f)), 0.9f));
+
+        assertThat(result.isDoubleCompressed()).isTrue();
+        assertThat(result.getDoubleCompressionInconsistency()).isZero();
+        assertThat(result.isTampered()).isFalse();
+    }
+
+    @Test
+    void copyMovedRegionIsFlagged() throws IOException {
+        BufferedImage image = scene(1);
+        // Off the 8x8 grid vertically, so the two copies are compressed differently
+        image.getRaster().setRect(600, 420, image.getRaster().createChild(120, 90, 200, 160, 0, 0, null));
+
+        ForensicAnalysisResult result = analyze(jpeg(image, 0.9f));
+
+        assertThat(result.getCopyMoveRegions()).isGreaterThan(0);
+        assertThat(result.getCopyMoveFraction()).isGreaterThan(0.0);
+        assertThat(result.isTampered()).isTrue();
+    }
+
+    @Test
+    void recompressedSpliceIsFlaggedWhereItWasPasted() throws IOException {
+        // A never-compressed region pasted into a JPEG, then saved again
+        BufferedImage image = decode(jpeg(scene(1), 0.6f));
+        image.getRaster().setRect(512, 320, scene(2).getRaster().createChild(0, 0, 256, 192, 0, 0, null));
+
+        ForensicAnalysisResult result = analyze(jpeg(image, 0.9f));
+
+        assertThat(result.isDoubleCompressed()).isTrue();
+        assertThat(result.getDoubleCompressionInconsistency()).isGreaterThan(0.0);
+        assertThat(result.isTampered()).isTrue();
+        ForensicAnalysisResult.Heatmap heatmap = result.getHeatmap();
+        assertThat(heatmap.getHotspotLeft()).isCloseTo(512.0 / WIDTH, within(0.07));
+        assertThat(heatmap.getHotspotTop()).isCloseTo(320.0 / HEIGHT, within(0.09));
+        assertThat(heatmap.getHotspotWidth()).isCloseTo(256.0 / WIDTH, within(0.13));
+        assertThat(heatmap.getHotspotHeight()).isCloseTo(192.0 / HEIGHT, within(0.17));
+    }
+
+    @Test
+    void repetitiveTextureIsNotACopy() throws IOException {
+        // Every block repeats all over the image: long runs of identical features
+        BufferedImage tile = scene(3).getSubimage(0, 0, 24, 24);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < HEIGHT; y += 24) {
+            for (int x = 0; x < WIDTH; x += 24) {
+                image.getGraphics().drawImage(tile, x, y, null);
+            }
+        }
+
+        ForensicAnalysisResult result = analyze(jpeg(image, 0.9f));
+
+        assertThat(result.getCopyMoveRegions()).isZero();
+    }
+
+    @Test
+    void stopsWhenTheStageThreadIsInterrupted() throws IOException {
+        DocumentNormalizer.NormalizedDocument document = normalizer.normalize(
+                DocumentBuffer.wrap(jpeg(scene(1), 0.9f)), true);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> analyzer.analyze(document)).isInstanceOf(CancellationException.class);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void stopsAtTheRequestDeadline() throws Exception {
+        DocumentNormalizer.NormalizedDocument document = normalizer.normalize(
+                DocumentBuffer.wrap(jpeg(scene(1), 0.9f)), true);
+        Deadline deadline = Deadline.afterMillis(1);
+        Thread.sleep(5);
+
+        assertThatThrownBy(() -> deadline.callWith(() -> analyzer.analyze(document)))
+                .isInstanceOf(Deadline.DeadlineExceededException.class);
+    }
+
+    @Test
+    void reportsImagesOutsideTheAnalyzedSizes() throws IOException {
+        ForensicAnalyzer limited = TestBeans.initialize(new ForensicAnalyzer(),
+                new MockEnvironment().withProperty("verification.forensics.max-megapixels", "0.5"));
+        try {
+            assertThat(limited.analyze(TestBeans.initialize(new DocumentNormalizer(limited))
+                    .normalize(DocumentBuffer.wrap(jpeg(scene(1), 0.9f)), true)).getError())
+                    .contains("megapixels");
+        } finally {
+            limited.shutdown();
+        }
+        assertThat(analyzer.analyze(new byte[32 * 32], 32, 32, null).getError()).contains("too small");
+    }
+
+    private ForensicAnalysisResult analyze(byte[] jpeg) {
+        return analyzer.analyze(normalizer.normalize(DocumentBuffer.wrap(jpeg), true));
+    }
+
+    private static BufferedImage scene(long seed) {
+        Random random = new Random(seed);
+        double[][] waves = new double[24][4];
+        for (double[] wave : waves) {
+            wave[0] = (random.nextDouble() - 0.5) * 0.3;
+            wave[1] = (random.nextDouble() - 0.5) * 0.3;
+            wave[2] = random.nextDouble() * Math.PI * 2;
+            wave[3] = 4 + random.nextDouble() * 8;
+        }
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double value = 128;
+                for (double[] wave : waves) {
+                    value += wave[3] * Math.sin(wave[0] * x + wave[1] * y + wave[2]);
+                }
+                value += random.nextGaussian() * 4;
+                int grey = Math.max(0, Math.min(255, (int) Math.round(value)));
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        BufferedImage image = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        image.getGraphics().drawImage(decoded, 0, 0, null);
+        return image;
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,91 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction cost per document with the packaged document-templates.properties.
+ * Run with: mvn test-compile, then the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentityFieldExtractorBenchmark {
+
+    private IdentityFieldExtractor extractor;
+    private List<String> passport;
+    private List<String> driversLicense;
+    private List<String> noisyPage;
+
+    @Setup
+    public void setUp() {
+        extractor = TestBeans.initialize(new IdentityFieldExtractor(new DefaultResourceLoader()));
+        passport = List.of(
+                "PASSPORT",
+                "United States of America",
+                "Surname",
+                "DOE",
+                "Given names",
+                "JOHN",
+                "Passport No. 123456789",
+                "Nationality USA",
+                "Date of birth 15 Mar 1985",
+                "Date of expiry 14/03/2030");
+        driversLicense = List.of(
+                "DRIVER LICENSE",
+                "DL D1234567",
+                "CLASS C",
+                "LN SMITH",
+                "FN JANE",
+                "DOB 01/02/1990",
+                "EXP 01/02/2028",
+                "123 MAIN STREET");
+        // A full page of OCR output with the fields near the end
+        noisyPage = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            noisyPage.add("Section " + i + " terms and conditions apply to the holder of this card");
+        }
+        noisyPage.addAll(driversLicense);
+    }
+
+    @Benchmark
+    public IdentityFieldExtractor.Extraction passport() {
+        return extractor.extract(passport);
+    }
+
+    @Benchmark
+    public IdentityFieldExtractor.Extraction driversLicense() {
+        return extractor.extract(driversLicense);
+    }
+
+    @Benchmark
+    public IdentityFieldExtractor.Extraction noisyPage() {
+        return extractor.extract(noisyPage);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(IdentityFieldExtractorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
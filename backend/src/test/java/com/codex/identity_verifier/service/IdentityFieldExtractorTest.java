@@ -0,0 +1,142 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdentityFieldExtractorTest {
+
+    private final IdentityFieldExtractor extractor = TestBeans.initialize(
+            new IdentityFieldExtractor(new DefaultResourceLoader()));
+
+    @Test
+    void extractsPassportFieldsWithLabelsAboveTheirValues() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of(
+                "PASSPORT",
+                "United States of America",
+                "Surname",
+                "DOE",
+                "Passport No. 123456789",
+                "Nationality USA",
+                "Date of birth 15 Mar 1985",
+                "Date of expiry 14/03/2030"));
+
+        assertThat(extraction.getTemplate()).isEqualTo("passport");
+        assertThat(extraction.getFields()).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "name", "DOE",
+                "idNumber", "123456789",
+                "dob", "15 Mar 1985",
+                "expiryDate", "14/03/2030"));
+        assertThat(extraction.getSourceLines("name")).containsExactly(2, 3);
+        assertThat(extraction.getSourceLines("idNumber")).containsExactly(4, 4);
+    }
+
+    @Test
+    void extractsDriversLicenseFieldsWithAbbreviatedLabels() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of(
+                "DRIVER LICENSE",
+                "DL D1234567",
+                "CLASS C",
+                "LN SMITH",
+                "DOB 01/02/1990",
+                "EXP 01/02/2028",
+                "123 MAIN STREET"));
+
+        assertThat(extraction.getTemplate()).isEqualTo("drivers-license");
+        assertThat(extraction.getFields()).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "name", "SMITH",
+                "idNumber", "D1234567",
+                "dob", "01/02/1990",
+                "expiryDate", "01/02/2028",
+                "address", "123 MAIN STREET"));
+    }
+
+    @Test
+    void extractsNationalIdFields() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of(
+                "REPUBLIC OF EXAMPLE",
+                "NATIONAL IDENTITY CARD",
+                "Name: Maria Garcia",
+                "National ID: 987654321",
+                "Date of Birth: 1988-07-21",
+                "Address: 42 Oak Avenue"));
+
+        assertThat(extraction.getTemplate()).isEqualTo("national-id");
+        assertThat(extraction.getFields()).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "name", "Maria Garcia",
+                "idNumber", "987654321",
+                "dob", "1988-07-21",
+                "address", "42 Oak Avenue"));
+    }
+
+    @Test
+    void fallsBackToTheDefaultTemplate() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of(
+                "Name: John Doe",
+                "ID: X1234567",
+                "DOB: 01/01/1990"));
+
+        assertThat(extraction.getTemplate()).isEqualTo(IdentityFieldExtractor.DEFAULT_TEMPLATE);
+        assertThat(extraction.getFields()).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "name", "John Doe",
+                "idNumber", "X1234567",
+                "dob", "01/01/1990"));
+    }
+
+    @Test
+    void recognizesUnlabeledValuesByTheirShape() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of(
+                "IDENTITY",
+                "X1234567",
+                "01/01/1990",
+                "12 Elm Road"));
+
+        assertThat(extraction.getFields()).containsEntry("idNumber", "X1234567")
+                .containsEntry("dob", "01/01/1990")
+                .containsEntry("address", "12 Elm Road");
+    }
+
+    @Test
+    void findsNothingInAnEmptyDocument() {
+        IdentityFieldExtractor.Extraction extraction = extractor.extract(List.of());
+
+        assertThat(extraction.getFields()).isEmpty();
+        assertThat(extraction.getSourceLines("name")).isNull();
+    }
+
+    @Test
+    void appliesTemplatesFromTheConfiguredFile(@TempDir Path directory) throws IOException {
+        Path templates = directory.resolve("document-templates.properties");
+        Files.writeString(templates, String.join("\n",
+                "template.default.label.name=name",
+                "template.default.label.idNumber=id",
+                "template.default.label.dob=dob",
+                "template.default.label.expiryDate=expiry",
+                "template.default.label.address=address",
+                "template.residence-permit.detect=residence permit",
+                "template.residence-permit.label.idNumber=permit no",
+                "address.words=street"));
+        IdentityFieldExtractor custom = TestBeans.initialize(new IdentityFieldExtractor(new DefaultResourceLoader()),
+                new MockEnvironment().withProperty("verification.extraction.templates-location",
+                        templates.toUri().toString()));
+
+        IdentityFieldExtractor.Extraction extraction = custom.extract(List.of(
+                "RESIDENCE PERMIT",
+                "Name: Ana Lopez",
+                "Permit No: RP-445566"));
+
+        assertThat(extraction.getTemplate()).isEqualTo("residence-permit");
+        assertThat(extraction.getFields()).containsEntry("name", "Ana Lopez")
+                .containsEntry("idNumber", "RP-445566");
+    }
+}
@@ -0,0 +1,109 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.ImageContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory stand-in for the Rekognition face collection: the "embedding" is the image's
+ * luminance on a 16x16 grid, compared by cosine similarity and scanned linearly. It
+ * matches the same picture, not the same person.
+ */
+class LocalFaceCollection extends RekognitionService {
+
+    private static final int GRID = 16;
+
+    private final double faceMatchThreshold;
+    private final List<float[]> embeddings = new ArrayList<>();
+    private final List<String> faceIds = new ArrayList<>();
+    private final List<String> externalImageIds = new ArrayList<>();
+
+    final AtomicInteger searchCalls = new AtomicInteger();
+    final AtomicInteger indexCalls = new AtomicInteger();
+
+    LocalFaceCollection(double faceMatchThreshold) {
+        super(null, null);
+        this.faceMatchThreshold = faceMatchThreshold;
+    }
+
+    @Override
+    public synchronized FaceSearchResult searchFaces(DocumentBuffer document) {
+        searchCalls.incrementAndGet();
+        float[] query = embed(ImageContext.lazy(document, 0));
+        if (query == null) {
+            return FaceSearchResult.builder().faceSearched(false).matches(List.of()).build();
+        }
+        List<FaceSearchResult.FaceMatch> matches = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            float[] candidate = embeddings.get(i);
+            double dot = 0;
+            for (int k = 0; k < query.length; k++) {
+                dot += query[k] * candidate[k];
+            }
+            double similarity = Math.min(100.0, Math.max(0, dot) * 100.0);
+            if (similarity >= faceMatchThreshold) {
+                matches.add(new FaceSearchResult.FaceMatch(faceIds.get(i), externalImageIds.get(i), similarity));
+            }
+        }
+        return FaceSearchResult.builder().faceSearched(true).matches(List.copyOf(matches)).build();
+    }
+
+    @Override
+    public synchronized String indexFace(DocumentBuffer document, String externalImageId) {
+        indexCalls.incrementAndGet();
+        float[] embedding = embed(ImageContext.lazy(document, 0));
+        if (embedding == null) {
+            return null;
+        }
+        String faceId = UUID.randomUUID().toString();
+        embeddings.add(embedding);
+        faceIds.add(faceId);
+        externalImageIds.add(externalImageId);
+        return faceId;
+    }
+
+    // Mean-centred, unit-length grid of cell means; null for images too small or flat
+    private static float[] embed(ImageContext image) {
+        byte[] luminance = image.getLuminance();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (luminance == null || width < GRID || height < GRID) {
+            return null;
+        }
+        double[] sums = new double[GRID * GRID];
+        int[] counts = new int[GRID * GRID];
+        for (int y = 0; y < height; y++) {
+            int row = (int) ((long) y * GRID / height) * GRID;
+            for (int x = 0; x < width; x++) {
+                int cell = row + (int) ((long) x * GRID / width);
+                sums[cell] += luminance[y * width + x] & 0xFF;
+                counts[cell]++;
+            }
+        }
+        double mean = 0;
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] /= counts[i];
+            mean += sums[i];
+        }
+        mean /= sums.length;
+        double norm = 0;
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] -= mean;
+            norm += sums[i] * sums[i];
+        }
+        if (norm == 0) {
+            return null;
+        }
+        norm = Math.sqrt(norm);
+        float[] embedding = new float[sums.length];
+        for (int i = 0; i < sums.length; i++) {
+            embedding[i] = (float) (sums[i] / norm);
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,233 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.DuplicateCheckResult;
+import com.codex.identity_verifier.util.PerceptualHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearDuplicateIndexTest {
+
+    private static final long HASH = 0x0123_4567_89ab_cdefL;
+
+    @Test
+    void findsHashesWithinTheRadius() {
+        NearDuplicateIndex index = index(8);
+        for (int distance = 0; distance <= 9; distance++) {
+            index.add(hex(flipBits(HASH, distance, 0)), "owner-" + distance);
+        }
+
+        DuplicateCheckResult result = index.check(hex(HASH), "alice");
+
+        // Distances 0 to 8; the ninth hash is one bit too far
+        assertThat(result.getOtherOwnerMatches()).isEqualTo(9);
+        assertThat(result.getClosestDistance()).isZero();
+        assertThat(result.getPerceptualHash()).isEqualTo(hex(HASH));
+    }
+
+    @Test
+    void findsHashesWhoseDifferencesAreSpreadOverEverySubstring() {
+        // A radius of 10 probes 10 / 4 = 2 bits per substring: 3 + 3 + 2 + 2 differing bits
+        // leave two substrings within it, while 3 + 3 + 3 + 3 leave none and exceed the radius
+        NearDuplicateIndex index = index(10);
+        index.add(hex(HASH ^ spread(3, 3, 2, 2)), "bob");
+        index.add(hex(HASH ^ spread(3, 3, 3, 3)), "carol");
+
+        DuplicateCheckResult result = index.check(hex(HASH), "alice");
+
+        assertThat(result.getOtherOwnerMatches()).isEqualTo(1);
+        assertThat(result.getClosestDistance()).isEqualTo(10);
+    }
+
+    @Test
+    void findsHashesAtThePigeonholeBound() {
+        // 2 differing bits in each substring: every substring is exactly at 8 / 4 bits
+        NearDuplicateIndex index = index(8);
+        index.add(hex(HASH ^ spread(2, 2, 2, 2)), "bob");
+
+        assertThat(index.check(hex(HASH), "alice").getClosestDistance()).isEqualTo(8);
+    }
+
+    @Test
+    void countsAHashFoundInSeveralSubstringsOnce() {
+        NearDuplicateIndex index = index(8);
+        // Differs in one substring only, so the other three tables all hold it
+        index.add(hex(HASH ^ spread(0, 0, 0, 5)), "bob");
+
+        assertThat(index.check(hex(HASH), "alice").getOtherOwnerMatches()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesABruteForceScan() {
+        NearDuplicateIndex index = index(8);
+        Random random = new Random(42);
+        List<Long> hashes = new ArrayList<>();
+        List<String> owners = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // Clusters of near-duplicates among unrelated hashes
+            long hash = i % 3 == 0 ? random.nextLong() : flipRandomBits(hashes.get(i - 1), random.nextInt(12), random);
+            String owner = "owner-" + random.nextInt(20);
+            hashes.add(hash);
+            owners.add(owner);
+            index.add(hex(hash), owner);
+        }
+
+        for (int query = 0; query < 300; query++) {
+            long hash = flipRandomBits(hashes.get(random.nextInt(hashes.size())), random.nextInt(6), random);
+            String owner = "owner-" + random.nextInt(20);
+            int expectedMatches = 0;
+            int expectedClosest = -1;
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                int distance = PerceptualHash.distance(hash, hashes.get(i));
+                // The index keeps one entry per owner and hash
+                boolean first = seen.add(hashes.get(i) + "/" + owners.get(i));
+                if (!first || distance > 8 || Objects.equals(owners.get(i), owner)) {
+                    continue;
+                }
+                expectedMatches++;
+                expectedClosest = expectedClosest < 0 ? distance : Math.min(expectedClosest, distance);
+            }
+
+            DuplicateCheckResult result = index.check(hex(hash), owner);
+
+            assertThat(result.getOtherOwnerMatches()).isEqualTo(expectedMatches);
+            assertThat(result.getClosestDistance()).isEqualTo(expectedClosest);
+        }
+    }
+
+    @Test
+    void excludesTheOwnersOwnSubmissions() {
+        NearDuplicateIndex index = index(8);
+        index.add(hex(HASH), "alice");
+        index.add(hex(HASH ^ 0b11), "alice");
+
+        DuplicateCheckResult own = index.check(hex(HASH), "alice");
+        assertThat(own.isDuplicateOfOtherOwner()).isFalse();
+        assertThat(own.getClosestDistance()).isEqualTo(-1);
+
+        index.add(hex(HASH ^ 0b111), "bob");
+        DuplicateCheckResult other = index.check(hex(HASH), "alice");
+        assertThat(other.getOtherOwnerMatches()).isEqualTo(1);
+        assertThat(other.getClosestDistance()).isEqualTo(3);
+        // Bob sees both of Alice's submissions, and an anonymous submitter sees all three
+        assertThat(index.check(hex(HASH), "bob").getOtherOwnerMatches()).isEqualTo(2);
+        assertThat(index.check(hex(HASH), null).getOtherOwnerMatches()).isEqualTo(3);
+    }
+
+    @Test
+    void indexesEachOwnersHashOnce() {
+        NearDuplicateIndex index = index(8);
+        index.add(hex(HASH), "bob");
+        index.add(hex(HASH), "bob");
+        index.add(hex(HASH), "carol");
+
+        assertThat(index.getStats()).containsEntry("entries", 2);
+        assertThat(index.check(hex(HASH), "alice").getOtherOwnerMatches()).isEqualTo(2);
+    }
+
+    @Test
+    void ignoresMalformedHashes() {
+        NearDuplicateIndex index = index(8);
+        index.add(null, "bob");
+        index.add("not a hash", "bob");
+        index.add(hex(HASH).substring(1), "bob");
+
+        assertThat(index.getStats()).containsEntry("entries", 0);
+        assertThat(index.check((String) null, "alice")).isSameAs(DuplicateCheckResult.NONE);
+        assertThat(index.check("zzzzzzzzzzzzzzzz", "alice")).isSameAs(DuplicateCheckResult.NONE);
+    }
+
+    @Test
+    void rebuildsFromTheStoredRecords() throws InterruptedException {
+        List<String[]> records = List.of(
+                new String[]{"bob", hex(HASH ^ 0b1)},
+                new String[]{"carol", hex(HASH ^ 0xFFFF_0000_0000_0000L)},
+                new String[]{"bob", "malformed"},
+                new String[]{null, hex(HASH ^ 0b11)});
+        DynamoDBService dynamoDBService = new DynamoDBService(null, null, null) {
+            @Override
+            public void forEachPerceptualHash(BiConsumer<String, String> consumer) {
+                records.forEach(record -> consumer.accept(record[0], record[1]));
+            }
+        };
+
+        NearDuplicateIndex index = TestBeans.initialize(new NearDuplicateIndex(dynamoDBService), new MockEnvironment());
+        awaitRebuilt(index);
+
+        assertThat(index.getStats()).containsEntry("entries", 3);
+        DuplicateCheckResult result = index.check(hex(HASH), "alice");
+        assertThat(result.getOtherOwnerMatches()).isEqualTo(2);
+        assertThat(result.getClosestDistance()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsIndexingNewSubmissionsWhenTheRebuildFails() throws InterruptedException {
+        DynamoDBService dynamoDBService = new DynamoDBService(null, null, null) {
+            @Override
+            public void forEachPerceptualHash(BiConsumer<String, String> consumer) {
+                consumer.accept("bob", hex(HASH));
+                throw new IllegalStateException("scan failed");
+            }
+        };
+
+        NearDuplicateIndex index = TestBeans.initialize(new NearDuplicateIndex(dynamoDBService), new MockEnvironment());
+        awaitRebuilt(index);
+        index.add(hex(HASH ^ 0b1), "carol");
+
+        assertThat(index.check(hex(HASH), "alice").getOtherOwnerMatches()).isEqualTo(2);
+    }
+
+    private static NearDuplicateIndex index(int maxDistance) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("verification.duplicates.max-distance", Integer.toString(maxDistance))
+                .withProperty("verification.duplicates.rebuild-on-startup", "false");
+        return TestBeans.initialize(new NearDuplicateIndex(null), environment);
+    }
+
+    private static void awaitRebuilt(NearDuplicateIndex index) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!Boolean.TRUE.equals(index.getStats().get("rebuilt")) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(index.getStats()).containsEntry("rebuilt", true);
+    }
+
+    /**
+     * @return A mask with the given number of low bits set in each 16-bit substring, lowest substring first
+     */
+    private static long spread(int... bitsPerSubstring) {
+        long mask = 0L;
+        for (int table = 0; table < bitsPerSubstring.length; table++) {
+            mask |= ((1L << bitsPerSubstring[table]) - 1) << (table * 16);
+        }
+        return mask;
+    }
+
+    // Flips `count` consecutive bits starting at `from`
+    private static long flipBits(long hash, int count, int from) {
+        return count == 0 ? hash : hash ^ (((1L << count) - 1) << from);
+    }
+
+    private static long flipRandomBits(long hash, int count, Random random) {
+        long result = hash;
+        while (PerceptualHash.distance(hash, result) < count) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+
+    private static String hex(long hash) {
+        return PerceptualHash.toHex(hash);
+    }
+}
@@ -0,0 +1,69 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.DownstreamLimiter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RekognitionServiceTest {
+
+    private static DocumentNormalizer.NormalizedDocument document;
+
+    @BeforeAll
+    static void normalizeDocument() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(640, 400, BufferedImage.TYPE_3BYTE_BGR), "jpeg", out);
+        document = TestBeans.initialize(new DocumentNormalizer(TestBeans.initialize(new ForensicAnalyzer())))
+                .normalize(DocumentBuffer.wrap(out.toByteArray()), true);
+    }
+
+    @Test
+    void tamperDetectionRethrowsDeadlineFailures() {
+        RekognitionService service = serviceFailingWith(new Deadline.DeadlineExceededException("deadline reached"));
+
+        assertThatThrownBy(() -> service.detectImageTampering(document))
+                .isInstanceOf(Deadline.DeadlineExceededException.class);
+    }
+
+    @Test
+    void tamperDetectionRethrowsLimiterFailures() {
+        RekognitionService service = serviceFailingWith(
+                new DownstreamLimiter.LimitExceededException("rekognition.detectModerationLabels wait queue is full"));
+
+        assertThatThrownBy(() -> service.detectImageTampering(document))
+                .isInstanceOf(DownstreamLimiter.LimitExceededException.class);
+    }
+
+    @Test
+    void tamperDetectionReportsOtherFailuresInTheResult() {
+        RekognitionService service = serviceFailingWith(new IllegalStateException("invalid image"));
+
+        TamperDetectionResult result = service.detectImageTampering(document);
+
+        assertThat(result.getError()).contains("invalid image");
+        assertThat(result.isTampered()).isFalse();
+    }
+
+    private static RekognitionService serviceFailingWith(RuntimeException failure) {
+        RekognitionClient client = (RekognitionClient) Proxy.newProxyInstance(
+                RekognitionClient.class.getClassLoader(), new Class<?>[]{RekognitionClient.class},
+                (proxy, method, args) -> {
+                    throw failure;
+                });
+        RequestHedgingService hedgingService = TestBeans.initialize(new RequestHedgingService());
+        return TestBeans.initialize(new RekognitionService(client, hedgingService));
+    }
+}
@@ -0,0 +1,326 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.FaceDetectionResult;
+import com.codex.identity_verifier.model.IdentityInfo;
+import com.codex.identity_verifier.model.QualityAnalysisResult;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RiskRuleEngineTest {
+
+    private static final long[] PIXEL_COUNTS = {-1L, 50_000L, 1_000_000L, 30_000_000L};
+    // verification.cascade.local-decisive-score default
+    private static final int LOCAL_DECISIVE_SCORE = 80;
+
+    private RiskRuleEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void packagedRulesScoreLikeTheOriginalHardcodedScoring() {
+        engine = engine(new MockEnvironment());
+        int compared = 0;
+        for (int faces = 0; faces <= 2; faces++) {
+            for (int flags = 0; flags < 1 << 8; flags++) {
+                for (long pixels : PIXEL_COUNTS) {
+                    for (boolean imageAnalysis : new boolean[]{true, false}) {
+                        boolean tampered = (flags & 1) != 0;
+                        boolean suspicious = (flags & 2) != 0;
+                        boolean blurry = (flags & 4) != 0;
+                        boolean goodLighting = (flags & 8) != 0;
+                        boolean document = (flags & 16) != 0;
+                        IdentityInfo identity = IdentityInfo.builder()
+                                .name((flags & 32) != 0 ? "JOHN DOE" : "")
+                                .idNumber((flags & 64) != 0 ? "12345678" : "")
+                                .dob((flags & 128) != 0 ? "01/01/1990" : "")
+                                .build();
+
+                        int expected = baselineScore(faces, tampered, suspicious, blurry, goodLighting, document,
+                                identity, imageAnalysis ? pixels : -1L, imageAnalysis);
+                        int actual = score(faces, tampered, suspicious, blurry, goodLighting, document,
+                                identity, imageAnalysis ? pixels : -1L, imageAnalysis);
+                        assertThat(actual)
+                                .as("faces=%d flags=%s pixels=%d imageAnalysis=%s", faces,
+                                        Integer.toBinaryString(flags), pixels, imageAnalysis)
+                                .isEqualTo(expected);
+                        compared++;
+                    }
+                }
+            }
+        }
+        assertThat(compared).isEqualTo(3 * 256 * PIXEL_COUNTS.length * 2);
+    }
+
+    @Test
+    void consistencyPenaltiesMatchTheOriginalCrossFieldChecks() {
+        engine = engine(new MockEnvironment());
+        for (String name : List.of("", "JOHN DOE", "J0HN DOE")) {
+            for (String idNumber : List.of("", "AB1", "12345678")) {
+                for (String dob : List.of("", "01/01/1990", "UNKNOWN")) {
+                    IdentityInfo identity = IdentityInfo.builder().name(name).idNumber(idNumber).dob(dob).build();
+                    int expected = baselineScore(1, false, false, false, true, true, identity, 1_000_000L, true);
+                    int actual = score(1, false, false, false, true, true, identity, 1_000_000L, true);
+                    assertThat(actual).as("%s / %s / %s", name, idNumber, dob).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    void minimumBaseScoreNeverExceedsTheFinalScore() {
+        engine = engine(new MockEnvironment());
+        RiskRuleEngine.Signal[] all = RiskRuleEngine.Signal.values();
+        long allSignals = (1L << all.length) - 1;
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            long finalSignals = random.nextLong() & allSignals;
+            long pendingSignals = random.nextLong() & allSignals;
+            long knownSignals = finalSignals & ~pendingSignals;
+            long pixels = PIXEL_COUNTS[random.nextInt(PIXEL_COUNTS.length)];
+            IdentityInfo identity = IdentityInfo.builder()
+                    .name(random.nextBoolean() ? "J0HN DOE" : "JOHN DOE")
+                    .idNumber(random.nextBoolean() ? "AB1" : "12345678")
+                    .dob(random.nextBoolean() ? "UNKNOWN" : "01/01/1990")
+                    .build();
+            boolean identityPending = random.nextBoolean();
+
+            int minimum = engine.minimumBaseScore(knownSignals, pendingSignals, pixels,
+                    identityPending ? null : identity);
+            int actual = engine.evaluate(finalSignals, pixels, identity).getBaseScore();
+
+            assertThat(minimum)
+                    .as("known=%s pending=%s final=%s", Long.toBinaryString(knownSignals),
+                            Long.toBinaryString(pendingSignals), Long.toBinaryString(finalSignals))
+                    .isLessThanOrEqualTo(actual);
+        }
+    }
+
+    @Test
+    void minimumBaseScoreEqualsTheScoreWhenNothingIsPending() {
+        engine = engine(new MockEnvironment());
+        long signals = RiskRuleEngine.Signal.BLURRY.bit() | RiskRuleEngine.Signal.NAME_MISSING.bit();
+
+        assertThat(engine.minimumBaseScore(signals, 0L, 1_000_000L, IdentityInfo.EMPTY))
+                .isEqualTo(engine.evaluate(signals, 1_000_000L, IdentityInfo.EMPTY).getBaseScore());
+    }
+
+    @Test
+    void blankPageSettlesTheLocalTierOnItsOwn() {
+        engine = engine(new MockEnvironment());
+        long blankPage = RiskRuleEngine.Signal.BLANK_PAGE.bit();
+
+        assertThat(engine.minimumBaseScore(blankPage, ~VerificationService.LOCAL_TIER_SIGNALS, 1_000_000L, null))
+                .isGreaterThanOrEqualTo(LOCAL_DECISIVE_SCORE);
+    }
+
+    @Test
+    void thumbnailSettlesTheLocalTierOnItsOwn() {
+        engine = engine(new MockEnvironment());
+
+        assertThat(engine.minimumBaseScore(0L, ~VerificationService.LOCAL_TIER_SIGNALS, 30_000L, null))
+                .isGreaterThanOrEqualTo(LOCAL_DECISIVE_SCORE);
+    }
+
+    @Test
+    void formatMismatchAndEditingSoftwareDoNotSettleTheLocalTier() {
+        engine = engine(new MockEnvironment());
+        long formatMismatch = RiskRuleEngine.Signal.FORMAT_MISMATCH.bit();
+        long editingSoftware = RiskRuleEngine.Signal.EDITING_SOFTWARE.bit();
+
+        for (long signals : new long[]{formatMismatch, editingSoftware, formatMismatch | editingSoftware}) {
+            assertThat(engine.minimumBaseScore(signals, ~VerificationService.LOCAL_TIER_SIGNALS, 1_000_000L, null))
+                    .as("signals=%s", Long.toBinaryString(signals))
+                    .isLessThan(LOCAL_DECISIVE_SCORE);
+        }
+    }
+
+    @Test
+    void formatMismatchOrEditingSoftwareAloneLeavesACleanDocumentAtLowRisk() {
+        engine = engine(new MockEnvironment());
+        IdentityInfo identity = IdentityInfo.builder().name("JOHN DOE").idNumber("12345678").dob("01/01/1990").build();
+        long clean = engine.identitySignals(identity);
+        long formatMismatch = RiskRuleEngine.Signal.FORMAT_MISMATCH.bit();
+        long editingSoftware = RiskRuleEngine.Signal.EDITING_SOFTWARE.bit();
+
+        assertThat(engine.evaluate(clean | formatMismatch, 1_000_000L, identity).getBaseScore()).isLessThan(30);
+        assertThat(engine.evaluate(clean | editingSoftware, 1_000_000L, identity).getBaseScore()).isLessThan(30);
+        assertThat(engine.evaluate(clean | formatMismatch | editingSoftware, 1_000_000L, identity).getBaseScore())
+                .isBetween(30, 69);
+    }
+
+    @Test
+    void reloadsAnEditedRulesFile(@TempDir Path directory) throws Exception {
+        Path rules = directory.resolve("risk-rules.properties");
+        writeRules(rules, "version=1\nrule.blurry.when=BLURRY\nrule.blurry.weight=25\n", 0);
+        engine = engine(new MockEnvironment()
+                .withProperty("verification.rules.location", rules.toUri().toString())
+                .withProperty("verification.rules.reload-interval-ms", "20"));
+        assertThat(engine.getRulesVersion()).isEqualTo("1");
+        assertThat(engine.evaluate(RiskRuleEngine.Signal.BLURRY.bit(), -1L, IdentityInfo.EMPTY).getBaseScore())
+                .isEqualTo(25);
+
+        writeRules(rules, "version=2\nrule.blurry.when=BLURRY\nrule.blurry.weight=40\n", 10_000);
+
+        awaitVersion("2");
+        RiskRuleEngine.RiskEvaluation evaluation = engine.evaluate(RiskRuleEngine.Signal.BLURRY.bit(), -1L,
+                IdentityInfo.EMPTY);
+        assertThat(evaluation.getBaseScore()).isEqualTo(40);
+        assertThat(evaluation.getRulesVersion()).isEqualTo("2");
+    }
+
+    @Test
+    void keepsThePreviousRulesWhenAnEditIsInvalid(@TempDir Path directory) throws Exception {
+        Path rules = directory.resolve("risk-rules.properties");
+        writeRules(rules, "version=1\nrule.blurry.when=BLURRY\nrule.blurry.weight=25\n", 0);
+        engine = engine(new MockEnvironment()
+                .withProperty("verification.rules.location", rules.toUri().toString())
+                .withProperty("verification.rules.reload-interval-ms", "20"));
+
+        writeRules(rules, "version=2\nrule.blurry.when=NOT_A_SIGNAL\nrule.blurry.weight=40\n", 10_000);
+        Thread.sleep(200);
+        writeRules(rules, "version=3\nrule.blurry.when=BLURRY\nrule.blurry.weight=30\n", 20_000);
+
+        awaitVersion("3");
+        assertThat(engine.evaluate(RiskRuleEngine.Signal.BLURRY.bit(), -1L, IdentityInfo.EMPTY).getBaseScore())
+                .isEqualTo(30);
+    }
+
+    /**
+     * Scores a document through the signal collectors and the packaged rules, the way
+     * VerificationService combines them
+     */
+    private int score(int faces, boolean tampered, boolean suspicious, boolean blurry, boolean goodLighting,
+                      boolean document, IdentityInfo identity, long pixels, boolean imageAnalysis) {
+        long signals = engine.identitySignals(identity);
+        if (imageAnalysis) {
+            signals |= engine.imageCheckSignals(
+                    FaceDetectionResult.builder().faceCount(faces).faceDetected(faces > 0).faces(List.of()).build(),
+                    TamperDetectionResult.builder()
+                            .tampered(tampered)
+                            .suspiciousContent(suspicious)
+                            .moderationLabels(List.of())
+                            .detectedTexts(List.of())
+                            .build());
+            signals |= engine.qualitySignals(QualityAnalysisResult.builder()
+                    .blurry(blurry)
+                    .goodLighting(goodLighting)
+                    .document(document)
+                    .labels(List.of())
+                    .build());
+        }
+        RiskRuleEngine.RiskEvaluation evaluation = engine.evaluate(signals, pixels, identity);
+        return Math.min(100, evaluation.getBaseScore() + evaluation.getConsistencyPenalty());
+    }
+
+    /**
+     * The scoring VerificationService hardcoded before the rules were externalized
+     * (calculateRiskScore plus evaluateIdentityConsistency)
+     */
+    private static int baselineScore(int faces, boolean tampered, boolean suspicious, boolean blurry,
+                                     boolean goodLighting, boolean document, IdentityInfo identity, long pixels,
+                                     boolean imageAnalysis) {
+        int baseScore = 0;
+        if (imageAnalysis) {
+            if (faces == 0) {
+                baseScore += 35;
+            } else if (faces > 1) {
+                baseScore += 15;
+            }
+            if (tampered) {
+                baseScore += 60;
+            }
+            if (blurry) {
+                baseScore += 25;
+            }
+            if (!goodLighting) {
+                baseScore += 10;
+            }
+            if (document) {
+                baseScore -= 15;
+            }
+        }
+        int missingFields = 0;
+        if (identity.getName().isEmpty()) {
+            missingFields++;
+            baseScore += 20;
+        }
+        if (identity.getIdNumber().isEmpty()) {
+            missingFields++;
+            baseScore += 25;
+        }
+        if (identity.getDob().isEmpty()) {
+            missingFields++;
+            baseScore += 10;
+        }
+        if (missingFields == 0) {
+            baseScore -= 20;
+        }
+        if (imageAnalysis) {
+            if (suspicious) {
+                baseScore += 30;
+            }
+            if (pixels >= 0) {
+                if (pixels < 100000) {
+                    baseScore += 20;
+                } else if (pixels > 20000000) {
+                    baseScore += 10;
+                }
+            }
+        }
+        int riskScore = Math.min(100, Math.max(0, baseScore));
+
+        int penalty = 0;
+        String name = identity.getName();
+        String idNumber = identity.getIdNumber();
+        String dob = identity.getDob();
+        if (!name.isBlank() && name.matches(".*\\d.*")) {
+            penalty += 15;
+        }
+        if (!idNumber.isBlank() && idNumber.length() < 5) {
+            penalty += 10;
+        }
+        if (!dob.isBlank() && !dob.matches(".*\\d{2,4}.*")) {
+            penalty += 10;
+        }
+        return Math.min(100, riskScore + penalty);
+    }
+
+    private void awaitVersion(String version) throws InterruptedException {
+        for (int i = 0; i < 250 && !version.equals(engine.getRulesVersion()); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(engine.getRulesVersion()).isEqualTo(version);
+    }
+
+    private static void writeRules(Path rules, String content, long modifiedOffsetMs) throws IOException {
+        Files.writeString(rules, content, StandardCharsets.UTF_8);
+        // Filesystems with coarse timestamps would otherwise report the edit as unmodified
+        rules.toFile().setLastModified(System.currentTimeMillis() + modifiedOffsetMs);
+    }
+
+    private static RiskRuleEngine engine(MockEnvironment environment) {
+        if (!environment.containsProperty("verification.rules.reload-interval-ms")) {
+            environment.setProperty("verification.rules.reload-interval-ms", "0");
+        }
+        return TestBeans.initialize(new RiskRuleEngine(new DefaultResourceLoader()), environment);
+    }
+}
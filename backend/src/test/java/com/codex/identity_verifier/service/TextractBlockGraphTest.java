@@ -0,0 +1,194 @@
+package com.codex.identity_verifier.service;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.textract.model.Block;
+import software.amazon.awssdk.services.textract.model.BlockType;
+import software.amazon.awssdk.services.textract.model.EntityType;
+import software.amazon.awssdk.services.textract.model.Relationship;
+import software.amazon.awssdk.services.textract.model.RelationshipType;
+import software.amazon.awssdk.services.textract.model.SelectionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextractBlockGraphTest {
+
+    @Test
+    void pairsKeysWithTheirValues() {
+        List<Block> blocks = List.of(
+                key("k1", 95f, List.of("w1"), List.of("v1")),
+                value("v1", 90f, "w2", "w3"),
+                word("w1", "Name:"),
+                word("w2", "JOHN"),
+                word("w3", "DOE"),
+                key("k2", 99f, List.of("w4", "w5"), List.of("v2")),
+                value("v2", 80f, "w6"),
+                word("w4", "Date"),
+                word("w5", "of Birth"),
+                word("w6", "01/01/1990"));
+
+        List<TextractBlockGraph.FormField> fields = TextractBlockGraph.of(blocks).formFields();
+
+        assertThat(fields).extracting(TextractBlockGraph.FormField::getKey).containsExactly("Name", "Date of Birth");
+        assertThat(fields).extracting(TextractBlockGraph.FormField::getValue).containsExactly("JOHN DOE", "01/01/1990");
+        // The lower of the key and value confidences
+        assertThat(fields).extracting(TextractBlockGraph.FormField::getConfidence).containsExactly(90f, 80f);
+        assertThat(fields).extracting(TextractBlockGraph.FormField::getPage).containsExactly(1, 1);
+    }
+
+    @Test
+    void keepsKeysWithoutAValue() {
+        List<Block> blocks = List.of(
+                key("k1", 95f, List.of("w1"), List.of()),
+                word("w1", "Signature"));
+
+        TextractBlockGraph.FormField field = TextractBlockGraph.of(blocks).formFields().get(0);
+
+        assertThat(field.getKey()).isEqualTo("Signature");
+        assertThat(field.getValue()).isEmpty();
+        assertThat(field.getConfidence()).isZero();
+    }
+
+    @Test
+    void skipsMissingAndOrphanedIds() {
+        List<Block> blocks = List.of(
+                // The first value id is missing from the response, and so is one of each block's words
+                key("k1", 95f, List.of("missing-word", "w1"), List.of("missing-value", "v1")),
+                value("v1", 90f, "w2", "missing-word"),
+                word("w1", "Surname"),
+                word("w2", "DOE"),
+                // A key whose words are all missing has no text and is dropped
+                key("k2", 95f, List.of("missing-word"), List.of("v1")),
+                // Orphaned blocks that no key or table points at
+                value("orphan-value", 90f, "w3"),
+                word("w3", "ORPHAN"),
+                cell("orphan-cell", 1, 1, "w3"));
+
+        TextractBlockGraph graph = TextractBlockGraph.of(blocks);
+        List<TextractBlockGraph.FormField> fields = graph.formFields();
+
+        assertThat(fields).hasSize(1);
+        assertThat(fields.get(0).getKey()).isEqualTo("Surname");
+        assertThat(fields.get(0).getValue()).isEqualTo("DOE");
+        assertThat(graph.tables()).isEmpty();
+    }
+
+    @Test
+    void readsSelectionElementsAsValues() {
+        List<Block> blocks = List.of(
+                key("k1", 95f, List.of("w1"), List.of("v1")),
+                value("v1", 90f, "s1"),
+                word("w1", "Organ donor"),
+                Block.builder().id("s1").blockType(BlockType.SELECTION_ELEMENT)
+                        .selectionStatus(SelectionStatus.SELECTED).build());
+
+        assertThat(TextractBlockGraph.of(blocks).formFields().get(0).getValue()).isEqualTo("SELECTED");
+    }
+
+    @Test
+    void reconstructsTablesFromTheirCells() {
+        List<Block> blocks = List.of(
+                Block.builder().id("t1").blockType(BlockType.TABLE).page(3).confidence(88f)
+                        // Cells out of reading order, split over two CHILD relationships
+                        .relationships(children("c4", "c1", "missing-cell"), children("c2", "c3", "w1"))
+                        .build(),
+                cell("c1", 1, 1, "w1"),
+                cell("c2", 1, 2, "w2"),
+                cell("c3", 1, 3, "w3", "w4"),
+                // Spans two columns; the position it also covers stays empty
+                Block.builder().id("c4").blockType(BlockType.CELL).rowIndex(2).columnIndex(1).columnSpan(2)
+                        .relationships(children("w5")).build(),
+                word("w1", "Class"),
+                word("w2", "Issued"),
+                word("w3", "Expires"),
+                word("w4", "on"),
+                word("w5", "B"));
+
+        List<TextractBlockGraph.Table> tables = TextractBlockGraph.of(blocks).tables();
+
+        assertThat(tables).hasSize(1);
+        TextractBlockGraph.Table table = tables.get(0);
+        assertThat(table.getPage()).isEqualTo(3);
+        assertThat(table.getConfidence()).isEqualTo(88f);
+        assertThat(table.getRows()).containsExactly(
+                List.of("Class", "Issued", "Expires on"),
+                List.of("B", "", ""));
+    }
+
+    @Test
+    void growsTablesToCoverSpannedCells() {
+        List<Block> blocks = List.of(
+                Block.builder().id("t1").blockType(BlockType.TABLE).relationships(children("c1", "c2", "c3")).build(),
+                Block.builder().id("c1").blockType(BlockType.CELL).rowIndex(1).columnIndex(1).rowSpan(3)
+                        .relationships(children("w1")).build(),
+                cell("c2", 1, 2, "w2"),
+                // Without indexes the cell cannot be placed
+                Block.builder().id("c3").blockType(BlockType.CELL).relationships(children("w2")).build(),
+                word("w1", "Photo"),
+                word("w2", "Name"));
+
+        assertThat(TextractBlockGraph.of(blocks).tables().get(0).getRows()).containsExactly(
+                List.of("Photo", "Name"),
+                List.of("", ""),
+                List.of("", ""));
+    }
+
+    @Test
+    void handlesEmptyResponses() {
+        TextractBlockGraph graph = TextractBlockGraph.of(null);
+
+        assertThat(graph.size()).isZero();
+        assertThat(graph.formFields()).isEmpty();
+        assertThat(graph.tables()).isEmpty();
+        assertThat(TextractBlockGraph.of(List.of(Block.builder().blockType(BlockType.WORD).text("x").build())).size())
+                .isZero();
+    }
+
+    @Test
+    void resolvesLargeDocuments() {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            blocks.add(key("k" + i, 90f, List.of("kw" + i), List.of("v" + i)));
+            blocks.add(value("v" + i, 90f, "vw" + i));
+            blocks.add(word("kw" + i, "Key" + i));
+            blocks.add(word("vw" + i, "Value" + i));
+        }
+
+        List<TextractBlockGraph.FormField> fields = TextractBlockGraph.of(blocks).formFields();
+
+        assertThat(fields).hasSize(20_000);
+        assertThat(fields.get(19_999).getValue()).isEqualTo("Value19999");
+    }
+
+    private static Block key(String id, float confidence, List<String> wordIds, List<String> valueIds) {
+        return Block.builder().id(id).blockType(BlockType.KEY_VALUE_SET).entityTypes(EntityType.KEY)
+                .confidence(confidence)
+                .relationships(
+                        Relationship.builder().type(RelationshipType.VALUE).ids(valueIds).build(),
+                        Relationship.builder().type(RelationshipType.CHILD).ids(wordIds).build())
+                .build();
+    }
+
+    private static Block value(String id, float confidence, String... wordIds) {
+        return Block.builder().id(id).blockType(BlockType.KEY_VALUE_SET).entityTypes(EntityType.VALUE)
+                .confidence(confidence)
+                .relationships(children(wordIds))
+                .build();
+    }
+
+    private static Block cell(String id, int row, int column, String... wordIds) {
+        return Block.builder().id(id).blockType(BlockType.CELL).rowIndex(row).columnIndex(column)
+                .relationships(children(wordIds))
+                .build();
+    }
+
+    private static Block word(String id, String text) {
+        return Block.builder().id(id).blockType(BlockType.WORD).text(text).build();
+    }
+
+    private static Relationship children(String... ids) {
+        return Relationship.builder().type(RelationshipType.CHILD).ids(ids).build();
+    }
+}
@@ -0,0 +1,194 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.model.FaceDetectionResult;
+import com.codex.identity_verifier.model.FaceSearchResult;
+import com.codex.identity_verifier.model.IdentityInfo;
+import com.codex.identity_verifier.model.TamperDetectionResult;
+import com.codex.identity_verifier.util.Deadline;
+import com.codex.identity_verifier.util.DocumentBuffer;
+import com.codex.identity_verifier.util.ImageContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerificationServiceTest {
+
+    private static final IdentityInfo IDENTITY = IdentityInfo.builder()
+            .name("JOHN DOE")
+            .idNumber("12345678")
+            .dob("01/01/1990")
+            .build();
+
+    private volatile TamperDetectionResult tamperResult = TamperDetectionResult.NONE;
+    private volatile long faceDetectionMillis;
+    private volatile FaceSearchResult faceSearchResult = FaceSearchResult.builder()
+            .faceSearched(true)
+            .matches(List.of())
+            .build();
+
+    private final RekognitionService rekognitionService = new RekognitionService(null, null) {
+        @Override
+        public FaceDetectionResult detectFaces(DocumentBuffer document) {
+            sleep(faceDetectionMillis);
+            return FaceDetectionResult.builder().faceCount(1).faceDetected(true).faces(List.of()).build();
+        }
+
+        @Override
+        public TamperDetectionResult detectImageTampering(DocumentNormalizer.NormalizedDocument document) {
+            return tamperResult;
+        }
+
+        @Override
+        public FaceSearchResult searchFaces(DocumentBuffer document) {
+            return faceSearchResult;
+        }
+
+        @Override
+        public String indexFace(DocumentBuffer document, String externalImageId) {
+            return null;
+        }
+    };
+
+    private final TextractService textractService = new TextractService(null, null, null, null) {
+        @Override
+        public IdentityInfo extractIdentityInformation(DocumentBuffer document, ImageContext image) {
+            return IDENTITY;
+        }
+    };
+
+    private MockEnvironment environment;
+    private VerificationStageExecutor stageExecutor;
+    private VerificationResultCache cache;
+    private RiskRuleEngine riskRuleEngine;
+    private VerificationService verificationService;
+
+    @BeforeEach
+    void setUp() {
+        environment = new MockEnvironment()
+                .withProperty("verification.rules.reload-interval-ms", "0")
+                .withProperty("verification.duplicates.rebuild-on-startup", "false");
+        stageExecutor = TestBeans.initialize(new VerificationStageExecutor(environment), environment);
+        cache = TestBeans.initialize(new VerificationResultCache(null), environment);
+        riskRuleEngine = TestBeans.initialize(new RiskRuleEngine(new DefaultResourceLoader()), environment);
+        ForensicAnalyzer forensicAnalyzer = TestBeans.initialize(new ForensicAnalyzer(), environment);
+        verificationService = TestBeans.initialize(new VerificationService(null, rekognitionService, textractService,
+                null, TestBeans.initialize(new FraudModelService(), environment), stageExecutor, null, cache,
+                riskRuleEngine,
+                TestBeans.initialize(new DocumentNormalizer(forensicAnalyzer), environment),
+                TestBeans.initialize(new ImageQualityAnalyzer(), environment),
+                forensicAnalyzer,
+                TestBeans.initialize(new NearDuplicateIndex(null), environment),
+                TestBeans.initialize(new FaceSearchService(rekognitionService), environment),
+                TestBeans.initialize(new DocumentScreener(), environment)), environment);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stageExecutor.shutdown();
+    }
+
+    @Test
+    void cachesCompleteResults() throws IOException {
+        DocumentBuffer document = document();
+
+        verificationService.analyzeDocument(document, "id.jpg", "image/jpeg", "alice", Deadline.afterMillis(20_000));
+
+        assertThat(cache.get(document.getSha256(), riskRuleEngine.getRulesVersion())).isNotNull();
+    }
+
+    @Test
+    void doesNotCacheResultsWhenTamperDetectionFailed() throws IOException {
+        tamperResult = TamperDetectionResult.builder()
+                .moderationLabels(List.of())
+                .detectedTexts(List.of())
+                .error("Tamper detection failed: throttled")
+                .build();
+        DocumentBuffer document = document();
+
+        verificationService.analyzeDocument(document, "id.jpg", "image/jpeg", "alice", Deadline.afterMillis(20_000));
+
+        assertThat(cache.get(document.getSha256(), riskRuleEngine.getRulesVersion())).isNull();
+    }
+
+    @Test
+    void doesNotCacheResultsWhenFaceSearchFailed() throws IOException {
+        faceSearchResult = FaceSearchResult.builder()
+                .matches(List.of())
+                .error("Face search failed: throttled")
+                .build();
+        DocumentBuffer document = document();
+
+        verificationService.analyzeDocument(document, "id.jpg", "image/jpeg", "alice", Deadline.afterMillis(20_000));
+
+        assertThat(cache.get(document.getSha256(), riskRuleEngine.getRulesVersion())).isNull();
+    }
+
+    @Test
+    void scoresUndecodableImages() {
+        // A WebP header that stock ImageIO cannot decode
+        byte[] webp = new byte[2048];
+        System.arraycopy("RIFF".getBytes(StandardCharsets.US_ASCII), 0, webp, 0, 4);
+        System.arraycopy("WEBPVP8 ".getBytes(StandardCharsets.US_ASCII), 0, webp, 8, 8);
+
+        VerificationService.VerificationOutcome outcome = verificationService.analyzeDocument(DocumentBuffer.wrap(webp),
+                "id.webp", "image/webp", "alice", Deadline.afterMillis(20_000));
+
+        assertThat(outcome.getResponse().getRiskLevel()).isNotNull();
+        assertThat(outcome.getResponse().getExplanation())
+                .anyMatch(line -> line.startsWith("Image quality assessment: Image could not be decoded"));
+    }
+
+    @Test
+    void explainsWhyAStageDegraded() throws IOException {
+        environment.setProperty("verification.stages.face-detection.timeout-ms", "50");
+        faceDetectionMillis = 2000;
+
+        VerificationService.VerificationOutcome outcome = verificationService.analyzeDocument(document(), "id.jpg",
+                "image/jpeg", "alice", Deadline.afterMillis(20_000));
+
+        assertThat(outcome.getResponse().getExplanation()).contains("Degraded: face-detection did not complete"
+                + " because the stage timed out; the result is based on partial analysis.");
+    }
+
+    /**
+     * A grey card with lines of text, enough for the local checks to pass it on to every tier
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DocumentBuffer document() throws IOException {
+        BufferedImage image = new BufferedImage(1000, 630, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(200, 200, 200));
+        graphics.fillRect(0, 0, 1000, 630);
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 25));
+        for (int line = 0; line < 15; line++) {
+            graphics.drawString("NAME JOHN DOE ID 12345678 DOB 01/01/1990 " + line, 40, 40 + line * 37);
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return DocumentBuffer.wrap(out.toByteArray());
+    }
+}
@@ -0,0 +1,130 @@
+package com.codex.identity_verifier.service;
+
+import com.codex.identity_verifier.TestBeans;
+import com.codex.identity_verifier.util.Deadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerificationStageExecutorTest {
+
+    private VerificationStageExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsStagesOnceThePoolAndQueueAreFull() throws Exception {
+        executor = executor(new MockEnvironment(), 1, 1, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        String caller = Thread.currentThread().getName();
+
+        CompletableFuture<String> first = executor.submit("first", () -> {
+            running.countDown();
+            await(release);
+            return "first";
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = executor.submit("queued", () -> Thread.currentThread().getName());
+        CompletableFuture<String> rejected = executor.submit("rejected", () -> Thread.currentThread().getName());
+
+        assertThatThrownBy(() -> executor.await("rejected", rejected))
+                .isInstanceOf(VerificationStageExecutor.StageRejectedException.class);
+        release.countDown();
+        assertThat(executor.await("first", first)).isEqualTo("first");
+        assertThat(executor.await("queued", queued)).isNotEqualTo(caller);
+        assertThat(executor.getStats()).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void sizesThePoolForEveryStageOfEveryAdmittedRequest() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("verification.admission.max-in-flight", "4")
+                .withProperty("verification.stages.per-request", "3");
+        executor = TestBeans.initialize(new VerificationStageExecutor(environment), environment);
+
+        assertThat(executor.getStats()).containsEntry("poolSize", 12);
+    }
+
+    @Test
+    void interruptsStagesThatTimeOut() throws Exception {
+        executor = executor(new MockEnvironment(), 2, 2, 100);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<String> stage = executor.submit("slow", () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "done";
+        });
+
+        assertThatThrownBy(() -> executor.await("slow", stage)).hasMessageContaining("timed out");
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.getStats()).containsEntry("timedOut", 1L);
+    }
+
+    @Test
+    void appliesPerStageTimeouts() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("verification.stages.fast.timeout-ms", "50");
+        executor = executor(environment, 2, 2, 5000);
+
+        CompletableFuture<String> fast = executor.submit("fast", () -> sleepThenReturn(1000, "fast"));
+        CompletableFuture<String> other = executor.submit("other", () -> sleepThenReturn(200, "other"));
+
+        assertThatThrownBy(() -> executor.await("fast", fast)).hasMessageContaining("timed out");
+        assertThat(executor.await("other", other)).isEqualTo("other");
+    }
+
+    @Test
+    void requestDeadlineShortensTheStageTimeout() {
+        executor = executor(new MockEnvironment(), 2, 2, 5000);
+
+        CompletableFuture<String> stage = executor.submit("slow", Deadline.afterMillis(50),
+                () -> sleepThenReturn(1000, "slow"));
+
+        assertThatThrownBy(() -> executor.await("slow", stage)).hasMessageContaining("timed out");
+    }
+
+    private static VerificationStageExecutor executor(MockEnvironment environment, int poolSize,
+                                                      int queueCapacity, long timeoutMs) {
+        VerificationStageExecutor executor = new VerificationStageExecutor(environment);
+        ReflectionTestUtils.setField(executor, "poolSize", poolSize);
+        ReflectionTestUtils.setField(executor, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(executor, "stageTimeoutMs", timeoutMs);
+        executor.init();
+        return executor;
+    }
+
+    private static String sleepThenReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.codex.identity_verifier.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Samples are the specimen zones from ICAO Doc 9303 parts 4 (TD3), 5 (TD1) and 6 (TD2)
+ */
+class MrzParserTest {
+
+    private static final String TD3_LINE1 = "P<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<<<<<<<<<";
+    private static final String TD3_LINE2 = "L898902C36UTO7408122F1204159ZE184226B<<<<<10";
+
+    private static final String TD1_LINE1 = "I<UTOD231458907<<<<<<<<<<<<<<<";
+    private static final String TD1_LINE2 = "7408122F1204159UTO<<<<<<<<<<<6";
+    private static final String TD1_LINE3 = "ERIKSSON<<ANNA<MARIA<<<<<<<<<<";
+
+    private static final String TD2_LINE1 = "I<UTOERIKSSON<<ANNA<MARIA<<<<<<<<<<<";
+    private static final String TD2_LINE2 = "D231458907UTO7408122F1204159<<<<<<<6";
+
+    @Test
+    void parsesTd3Passport() {
+        MrzParser.Result result = MrzParser.parse(List.of("PASSPORT", TD3_LINE1, TD3_LINE2));
+
+        assertThat(result).isNotNull();
+        assertThat(result.getFormat()).isEqualTo("TD3");
+        assertThat(result.getDocumentType()).isEqualTo("P");
+        assertThat(result.getIssuingState()).isEqualTo("UTO");
+        assertThat(result.getDocumentNumber()).isEqualTo("L898902C3");
+        assertThat(result.getSurname()).isEqualTo("ERIKSSON");
+        assertThat(result.getGivenNames()).isEqualTo("ANNA MARIA");
+        assertThat(result.getFullName()).isEqualTo("ANNA MARIA ERIKSSON");
+        assertThat(result.getNationality()).isEqualTo("UTO");
+        assertThat(result.getDob()).isEqualTo("1974-08-12");
+        assertThat(result.getSex()).isEqualTo("F");
+        assertThat(result.getExpiryDate()).isEqualTo("2012-04-15");
+        assertThat(result.isValid()).isTrue();
+    }
+
+    @Test
+    void parsesTd1IdentityCard() {
+        MrzParser.Result result = MrzParser.parse(List.of(TD1_LINE1, TD1_LINE2, TD1_LINE3));
+
+        assertThat(result).isNotNull();
+        assertThat(result.getFormat()).isEqualTo("TD1");
+        assertThat(result.getDocumentType()).isEqualTo("I");
+        assertThat(result.getDocumentNumber()).isEqualTo("D23145890");
+        assertThat(result.getFullName()).isEqualTo("ANNA MARIA ERIKSSON");
+        assertThat(result.getNationality()).isEqualTo("UTO");
+        assertThat(result.getDob()).isEqualTo("1974-08-12");
+        assertThat(result.getExpiryDate()).isEqualTo("2012-04-15");
+        assertThat(result.isValid()).isTrue();
+    }
+
+    @Test
+    void parsesTd2IdentityCard() {
+        MrzParser.Result result = MrzParser.parse(List.of(TD2_LINE1, TD2_LINE2));
+
+        assertThat(result).isNotNull();
+        assertThat(result.getFormat()).isEqualTo("TD2");
+        assertThat(result.getDocumentNumber()).isEqualTo("D23145890");
+        assertThat(result.getFullName()).isEqualTo("ANNA MARIA ERIKSSON");
+        assertThat(result.getDob()).isEqualTo("1974-08-12");
+        assertThat(result.getExpiryDate()).isEqualTo("2012-04-15");
+        assertThat(result.isValid()).isTrue();
+    }
+
+    @Test
+    void returnsNullWithoutZone() {
+        assertThat(MrzParser.parse(List.of("PASSPORT", "Surname", "ERIKSSON"))).isNull();
+        assertThat(MrzParser.parse(List.of())).isNull();
+    }
+
+    @Test
+    void reportsBadCheckDigitForEachTd3Field() {
+        // Document number, date of birth, expiry and optional data check digits; each also
+        // breaks the composite digit, which covers them
+        for (int position : new int[]{9, 19, 27, 42}) {
+            MrzParser.Result result = MrzParser.parse(List.of(TD3_LINE1, replaceDigit(TD3_LINE2, position)));
+
+            assertThat(result).as("check digit at %d", position).isNotNull();
+            assertThat(result.getFailedChecks()).as("check digit at %d", position).isEqualTo(2);
+            assertThat(result.isValid()).isFalse();
+        }
+    }
+
+    @Test
+    void reportsBadCheckDigitForEachTd1Field() {
+        MrzParser.Result documentNumber = MrzParser.parse(List.of(
+                replaceDigit(TD1_LINE1, 14), TD1_LINE2, TD1_LINE3));
+        assertThat(documentNumber.getFailedChecks()).isEqualTo(2);
+
+        for (int position : new int[]{6, 14}) {
+            MrzParser.Result result = MrzParser.parse(List.of(
+                    TD1_LINE1, replaceDigit(TD1_LINE2, position), TD1_LINE3));
+
+            assertThat(result.getFailedChecks()).as("check digit at %d", position).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void reportsBadCheckDigitForEachTd2Field() {
+        for (int position : new int[]{9, 19, 27}) {
+            MrzParser.Result result = MrzParser.parse(List.of(TD2_LINE1, replaceDigit(TD2_LINE2, position)));
+
+            assertThat(result.getFailedChecks()).as("check digit at %d", position).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void reportsBadCompositeDigitAlone() {
+        MrzParser.Result td3 = MrzParser.parse(List.of(TD3_LINE1, replaceDigit(TD3_LINE2, 43)));
+        MrzParser.Result td2 = MrzParser.parse(List.of(TD2_LINE1, replaceDigit(TD2_LINE2, 35)));
+        MrzParser.Result td1 = MrzParser.parse(List.of(TD1_LINE1, replaceDigit(TD1_LINE2, 29), TD1_LINE3));
+
+        assertThat(td3.getFailedChecks()).isEqualTo(1);
+        assertThat(td2.getFailedChecks()).isEqualTo(1);
+        assertThat(td1.getFailedChecks()).isEqualTo(1);
+    }
+
+    @Test
+    void readsLettersConfusedWithDigitsInNumericPositions() {
+        // 7408122 -> 74O8I2Z, 1204159 -> I2O4IS9, composite 0 -> O
+        String td3 = "L898902C36UTO74O8I2ZFI2O4IS9ZE184226B<<<<<1O";
+        MrzParser.Result result = MrzParser.parse(List.of(TD3_LINE1, td3));
+
+        assertThat(result.getDob()).isEqualTo("1974-08-12");
+        assertThat(result.getExpiryDate()).isEqualTo("2012-04-15");
+        assertThat(result.isValid()).isTrue();
+
+        // 7408122 -> 74O8I22, check digit 6 -> G
+        MrzParser.Result td1 = MrzParser.parse(List.of(
+                TD1_LINE1, "74O8I22F12O4I59UTO<<<<<<<<<<<G", TD1_LINE3));
+        assertThat(td1.getDob()).isEqualTo("1974-08-12");
+        assertThat(td1.isValid()).isTrue();
+    }
+
+    @Test
+    void keepsAlphanumericFieldsAsRead() {
+        // The document number may hold letters, which must not be read as digits
+        MrzParser.Result result = MrzParser.parse(List.of(TD1_LINE1, TD1_LINE2, TD1_LINE3));
+
+        assertThat(result.getDocumentNumber()).startsWith("D");
+    }
+
+    @Test
+    void restoresDroppedTrailingFillers() {
+        MrzParser.Result td3 = MrzParser.parse(List.of(dropFillers(TD3_LINE1, 4), TD3_LINE2));
+        MrzParser.Result td1 = MrzParser.parse(List.of(
+                dropFillers(TD1_LINE1, 4), TD1_LINE2, dropFillers(TD1_LINE3, 4)));
+        MrzParser.Result td2 = MrzParser.parse(List.of(dropFillers(TD2_LINE1, 3), TD2_LINE2));
+
+        assertThat(td3.getFormat()).isEqualTo("TD3");
+        assertThat(td3.isValid()).isTrue();
+        assertThat(td1.getFormat()).isEqualTo("TD1");
+        assertThat(td1.isValid()).isTrue();
+        assertThat(td2.getFormat()).isEqualTo("TD2");
+        assertThat(td2.isValid()).isTrue();
+    }
+
+    @Test
+    void rejectsLinesMissingTooManyCharacters() {
+        assertThat(MrzParser.parse(List.of(dropFillers(TD3_LINE1, 5), TD3_LINE2))).isNull();
+    }
+
+    @Test
+    void normalizesSpacesCaseAndGuillemets() {
+        String line1 = "p<uto eriksson«<anna<maria" + "<".repeat(19);
+
+        MrzParser.Result result = MrzParser.parse(List.of(line1, TD3_LINE2));
+
+        assertThat(result.getFullName()).isEqualTo("ANNA MARIA ERIKSSON");
+        assertThat(result.isValid()).isTrue();
+    }
+
+    private static String replaceDigit(String line, int position) {
+        char replacement = line.charAt(position) == '5' ? '6' : '5';
+        return line.substring(0, position) + replacement + line.substring(position + 1);
+    }
+
+    private static String dropFillers(String line, int count) {
+        assertThat(line).endsWith("<".repeat(count));
+        return line.substring(0, line.length() - count);
+    }
+}
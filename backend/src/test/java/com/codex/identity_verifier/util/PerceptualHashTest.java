@@ -0,0 +1,131 @@
+package com.codex.identity_verifier.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PerceptualHashTest {
+
+    @Test
+    void isStableUnderResizing() {
+        BufferedImage original = card(1);
+        long hash = hash(original);
+
+        assertThat(PerceptualHash.distance(hash, hash(resize(original, 400, 250)))).isLessThanOrEqualTo(4);
+        assertThat(PerceptualHash.distance(hash, hash(resize(original, 1200, 750)))).isLessThanOrEqualTo(4);
+        // A slightly different aspect ratio, as after a small crop or a careless rescale
+        assertThat(PerceptualHash.distance(hash, hash(resize(original, 760, 500)))).isLessThanOrEqualTo(6);
+    }
+
+    @Test
+    void isStableUnderRecompression() throws IOException {
+        BufferedImage original = card(2);
+        long hash = hash(original);
+
+        for (float quality : new float[]{0.9f, 0.6f, 0.3f}) {
+            BufferedImage recompressed = ImageIO.read(new ByteArrayInputStream(jpeg(original, quality)));
+            assertThat(PerceptualHash.distance(hash, hash(recompressed))).isLessThanOrEqualTo(4);
+        }
+    }
+
+    @Test
+    void separatesDifferentDocuments() {
+        long hash = hash(card(3));
+
+        for (int seed = 4; seed < 12; seed++) {
+            assertThat(PerceptualHash.distance(hash, hash(card(seed)))).isGreaterThan(12);
+        }
+    }
+
+    @Test
+    void rejectsImagesSmallerThanTheHashGrid() {
+        assertThat(PerceptualHash.canHash(32, 32)).isTrue();
+        assertThat(PerceptualHash.canHash(31, 400)).isFalse();
+        assertThatThrownBy(() -> PerceptualHash.of(new byte[31 * 400], 31, 400))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void roundTripsHex() {
+        long hash = 0x8000_0000_0000_00f1L;
+
+        assertThat(PerceptualHash.toHex(hash)).isEqualTo("80000000000000f1");
+        assertThat(PerceptualHash.fromHex(PerceptualHash.toHex(hash))).isEqualTo(hash);
+        assertThat(PerceptualHash.fromHex(null)).isNull();
+        assertThat(PerceptualHash.fromHex("80000000000000f")).isNull();
+        assertThat(PerceptualHash.fromHex("80000000000000fg")).isNull();
+    }
+
+    private static long hash(BufferedImage image) {
+        ImageContext context = ImageContext.of(null, image);
+        return PerceptualHash.of(context.getLuminance(), context.getWidth(), context.getHeight());
+    }
+
+    /**
+     * An ID-card-like layout: tinted background, coloured blocks and lines of text
+     */
+    private static BufferedImage card(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(800, 500, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(150 + random.nextInt(100), 150 + random.nextInt(100), 150 + random.nextInt(100)));
+        graphics.fillRect(0, 0, 800, 500);
+        for (int i = 0; i < 6; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            int x = random.nextInt(700);
+            int y = random.nextInt(400);
+            if (random.nextBoolean()) {
+                graphics.fillRect(x, y, 60 + random.nextInt(240), 40 + random.nextInt(160));
+            } else {
+                graphics.fillOval(x, y, 60 + random.nextInt(240), 40 + random.nextInt(160));
+            }
+        }
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 22));
+        for (int line = 0; line < 8; line++) {
+            graphics.drawString("FIELD " + random.nextInt(100_000), 300, 60 + line * 50);
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}